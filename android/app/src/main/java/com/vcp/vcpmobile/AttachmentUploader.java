@@ -0,0 +1,204 @@
+package com.vcp.vcpmobile;
+
+import android.content.SharedPreferences;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * 附件分块上传（可续传），对应服务端 /admin_api/agents/vcpchat-upload：
+ * 1. 上传 ID 取内容的 SHA-1：同一张图重复上传直接命中，进程重启后也能按 ID 找回进度
+ * 2. GET /vcpchat-upload/<id> 查询已接收字节数（404 表示尚未创建），POST /vcpchat-upload 创建
+ * 3. PUT /vcpchat-upload/<id>?offset=N 逐块上传；偏移与服务端不一致时服务端返回 409 和实际偏移
+ * 4. 网络中断后退避重试，重试前重新查询偏移，从断点继续而不是从头上传
+ *
+ * 上传完成后返回附件 ID，话题消息按 ID 引用；服务端配置了公开地址时同时返回 url，可代替 base64 发给 AI。
+ */
+public class AttachmentUploader {
+    static final int CHUNK_BYTES = 256 * 1024;
+    private static final int MAX_FAILURES = 5;
+    // 续传前的退避基数（第 n 次失败等待 n 倍）
+    private static final long RETRY_DELAY_MS = 1000;
+    private static volatile VCPApiHelper.Sleeper retrySleeper = Thread::sleep;
+
+    /** 上传完成的附件 */
+    public static class Attachment {
+        public final String id;
+        public final String name;
+        public final String type;
+        public final long size;
+        // 服务端可公开访问的地址，未配置时为 null
+        public final String url;
+
+        Attachment(JSONObject json) {
+            this.id = json.optString("attachmentId");
+            this.name = json.optString("name");
+            this.type = json.optString("type");
+            this.size = json.optLong("size");
+            String url = json.optString("url", "");
+            this.url = url.isEmpty() ? null : url;
+        }
+
+        /** 话题消息 attachments 中的引用项（服务端写入 history.json 时展开为桌面端格式） */
+        public JSONObject toReference() throws Exception {
+            return new JSONObject()
+                    .put("attachmentId", id)
+                    .put("name", name)
+                    .put("type", type)
+                    .put("size", size);
+        }
+    }
+
+    /** 替换续传前的等待，返回原来的实现以便恢复；null 恢复为 Thread.sleep */
+    static VCPApiHelper.Sleeper setRetrySleeper(VCPApiHelper.Sleeper sleeper) {
+        VCPApiHelper.Sleeper previous = retrySleeper;
+        retrySleeper = sleeper != null ? sleeper : Thread::sleep;
+        return previous;
+    }
+
+    private static class Reply {
+        final int code;
+        final JSONObject json;
+
+        Reply(int code, JSONObject json) {
+            this.code = code;
+            this.json = json;
+        }
+    }
+
+    /**
+     * 上传附件（阻塞，可被 call 取消）
+     * @return 附件；未配置管理员账号或服务端不支持上传时返回 null
+     */
+    public static Attachment upload(SharedPreferences prefs, byte[] data, String name, String type,
+                                    CancellableCall call) throws Exception {
+        String baseUrl = VCPApiHelper.getBaseUrl(prefs);
+        String adminUsername = prefs.getString("adminUsername", "");
+        String adminPassword = prefs.getString("adminPassword", "");
+        if (baseUrl.isEmpty() || adminUsername.isEmpty() || data.length == 0) return null;
+
+        String auth = VCPProtocol.basicAuthorization(adminUsername, adminPassword);
+        String endpoint = baseUrl + "/admin_api/agents/vcpchat-upload";
+        String uploadId = sha1Hex(data);
+        String traceId = call != null ? call.traceId : null;
+        VCPTrace.Span span = VCPTrace.span(traceId, "attachment.upload").arg("bytes", data.length);
+
+        int failures = 0;
+        long offset = -1;
+        long resumedFrom = 0;
+        try {
+            while (true) {
+                if (call != null) call.throwIfCancelled();
+                try {
+                    if (offset < 0) {
+                        Reply status = send(baseUrl, "GET", endpoint + "/" + uploadId, auth, null, 0, 0, call);
+                        if (status.code == 404) {
+                            JSONObject init = new JSONObject()
+                                    .put("uploadId", uploadId)
+                                    .put("name", name)
+                                    .put("type", type)
+                                    .put("size", data.length);
+                            byte[] body = init.toString().getBytes(StandardCharsets.UTF_8);
+                            status = send(baseUrl, "POST", endpoint, auth, body, 0, body.length, call);
+                            if (status.code == 404) {
+                                VCPApiHelper.fileLog("[Upload] 服务端不支持附件上传");
+                                return null;
+                            }
+                        }
+                        if (status.code != 200) throw new IOException("查询上传状态失败 " + status.code);
+                        if (status.json.optBoolean("complete", false)) {
+                            VCPMetrics.increment("attachment.dedup");
+                            return finish(status.json, data.length, 0, span);
+                        }
+                        offset = status.json.optLong("received", 0);
+                        if (failures > 0) resumedFrom = offset;
+                    }
+
+                    int len = (int) Math.min(CHUNK_BYTES, data.length - offset);
+                    Reply reply = send(baseUrl, "PUT", endpoint + "/" + uploadId + "?offset=" + offset, auth,
+                            data, (int) offset, len, call);
+                    if (reply.code == 409) {
+                        // 偏移不一致（上一块已到达但响应丢失），按服务端记录继续
+                        offset = reply.json.optLong("received", -1);
+                        continue;
+                    }
+                    if (reply.code != 200) throw new IOException("上传分块失败 " + reply.code);
+                    VCPMetrics.add("attachment.bytes", len);
+                    if (reply.json.optBoolean("complete", false)) {
+                        return finish(reply.json, data.length, resumedFrom, span);
+                    }
+                    offset = reply.json.optLong("received", offset + len);
+                    failures = 0;
+                } catch (IOException e) {
+                    if (call != null) call.throwIfCancelled();
+                    if (++failures > MAX_FAILURES) throw e;
+                    VCPMetrics.increment("attachment.resumes");
+                    VCPApiHelper.fileLog("[Upload] 上传中断（" + e.getMessage() + "），" + failures + " 次重试后续传");
+                    retrySleeper.sleep(RETRY_DELAY_MS * failures);
+                    offset = -1;
+                }
+            }
+        } finally {
+            span.end();
+        }
+    }
+
+    private static Attachment finish(JSONObject json, long size, long resumedFrom, VCPTrace.Span span) {
+        Attachment attachment = new Attachment(json);
+        span.arg("attachmentId", attachment.id);
+        if (resumedFrom > 0) span.arg("resumedFrom", resumedFrom);
+        VCPApiHelper.fileLog("[Upload] 上传完成 id=" + attachment.id + " size=" + size
+                + (resumedFrom > 0 ? " 自 " + resumedFrom + " 字节处续传" : ""));
+        return attachment;
+    }
+
+    private static Reply send(String baseUrl, String method, String url, String auth, byte[] body, int off, int len,
+                              CancellableCall call) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        // 只用于取消时断开连接（baseUrl 同时是 AI 端点，取消时对其发送的 interrupt 无副作用）
+        if (call != null) call.attach(conn, baseUrl);
+        try {
+            conn.setRequestMethod(method);
+            conn.setRequestProperty("Authorization", auth);
+            conn.setConnectTimeout(15000);
+            conn.setReadTimeout(30000);
+            if (body != null) {
+                conn.setRequestProperty("Content-Type", "PUT".equals(method)
+                        ? "application/octet-stream" : "application/json");
+                conn.setDoOutput(true);
+                conn.setFixedLengthStreamingMode(len);
+                try (OutputStream os = conn.getOutputStream()) {
+                    os.write(body, off, len);
+                }
+            }
+            int code = conn.getResponseCode();
+            InputStream in = code >= 400 ? conn.getErrorStream() : conn.getInputStream();
+            byte[] bytes = in != null ? in.readAllBytes() : new byte[0];
+            JSONObject json;
+            try {
+                json = new JSONObject(new String(bytes, StandardCharsets.UTF_8));
+            } catch (Exception e) {
+                json = new JSONObject();
+            }
+            return new Reply(code, json);
+        } finally {
+            if (call != null) call.detach(conn);
+            conn.disconnect();
+        }
+    }
+
+    static String sha1Hex(byte[] data) throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("SHA-1").digest(data)) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,312 @@
+package com.vcp.vcpmobile;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 非紧急后台任务的调度：捕获时发给 AI 的请求是紧急的，话题写入、媒体预取等可以延后，
+ * 弱网下不与紧急请求争抢同一条链路
+ * 1. 紧急请求进行中（beginUrgent 到 Urgent.end）以及结束后的 SETTLE_MS 内暂缓，连续捕获的写入合并成一批
+ * 2. 离线时暂缓，网络恢复后执行
+ * 3. 按流量计费或链路差（下行带宽低于 POOR_DOWNSTREAM_KBPS）时暂缓，最早的任务等待超过 MAX_HOLD_MS
+ *    或积压达到 MAX_QUEUED 后仍会执行，写入不会无限期推迟
+ * 4. 满足条件时按 BATCH_SIZE 一批交给工作线程依次执行；执行中有新的紧急请求开始时，剩余任务放回队首
+ *
+ * 同一 key 的任务在队列中只保留一个（如话题写入每次都写出全部待写入消息，重复提交没有意义）。
+ * 网络状况与时钟可注入（见 BackgroundSchedulerTest），应用内的实例由 get() 创建，使用 ConnectivityManager。
+ */
+public class BackgroundScheduler {
+    static final long SETTLE_MS = 500;
+    static final long MAX_HOLD_MS = 30000;
+    static final int MAX_QUEUED = 32;
+    static final int BATCH_SIZE = 8;
+    static final int POOR_DOWNSTREAM_KBPS = 500;
+    // 离线时的复查间隔（网络回调通常会先触发）
+    private static final long OFFLINE_RECHECK_MS = 10000;
+
+    /** 网络状况 */
+    public interface NetworkMonitor {
+        boolean isConnected();
+
+        boolean isMetered();
+
+        /** 链路质量差（如弱信号蜂窝网络） */
+        boolean isPoor();
+    }
+
+    public interface Clock {
+        long now();
+    }
+
+    /** 紧急请求句柄，结束时调用 end()（重复调用无副作用） */
+    public static class Urgent {
+        static final Urgent NONE = new Urgent(null);
+
+        private final BackgroundScheduler scheduler;
+        private boolean ended;
+
+        Urgent(BackgroundScheduler scheduler) {
+            this.scheduler = scheduler;
+        }
+
+        public void end() {
+            if (scheduler == null) return;
+            synchronized (this) {
+                if (ended) return;
+                ended = true;
+            }
+            scheduler.endUrgent();
+        }
+    }
+
+    private static class Task {
+        final String key;
+        final Runnable runnable;
+        final long queuedAt;
+
+        Task(String key, Runnable runnable, long queuedAt) {
+            this.key = key;
+            this.runnable = runnable;
+            this.queuedAt = queuedAt;
+        }
+    }
+
+    private static BackgroundScheduler sInstance;
+
+    private final NetworkMonitor network;
+    private final Clock clock;
+    private final Executor worker;
+    // 定时复查（测试中为 null，由测试直接调用 tick）
+    private final ScheduledExecutorService timer;
+    private final LinkedHashMap<String, Task> queue = new LinkedHashMap<>();
+    private ScheduledFuture<?> scheduledTick;
+    private int urgentInFlight = 0;
+    private long lastUrgentEnd = Long.MIN_VALUE / 2;
+    private boolean draining = false;
+    private long sequence = 0;
+    private String lastHoldReason;
+
+    public static synchronized BackgroundScheduler get(Context ctx) {
+        if (sInstance == null) {
+            ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+            sInstance = new BackgroundScheduler(androidNetwork(ctx.getApplicationContext()), System::currentTimeMillis,
+                    Executors.newSingleThreadExecutor(), timer);
+            registerNetworkCallback(ctx.getApplicationContext(), sInstance);
+        }
+        return sInstance;
+    }
+
+    /** 丢弃进程内实例，下次 get() 按新的 Context 重建（Robolectric 每个用例的 Application 不同） */
+    static synchronized void reset() {
+        if (sInstance != null) {
+            if (sInstance.timer != null) sInstance.timer.shutdownNow();
+            if (sInstance.worker instanceof ExecutorService) ((ExecutorService) sInstance.worker).shutdown();
+        }
+        sInstance = null;
+    }
+
+    /** 标记一次紧急请求；进程内还没有调度器时没有可暂缓的任务，返回空句柄 */
+    public static Urgent urgent() {
+        BackgroundScheduler scheduler;
+        synchronized (BackgroundScheduler.class) {
+            scheduler = sInstance;
+        }
+        return scheduler != null ? scheduler.beginUrgent() : Urgent.NONE;
+    }
+
+    BackgroundScheduler(NetworkMonitor network, Clock clock, Executor worker, ScheduledExecutorService timer) {
+        this.network = network;
+        this.clock = clock;
+        this.worker = worker;
+        this.timer = timer;
+    }
+
+    /**
+     * 提交可延后的任务
+     * @param key 去重键，队列中已有同 key 的任务时忽略本次提交；null 表示不去重
+     */
+    public void defer(String key, Runnable task) {
+        synchronized (this) {
+            String k = key != null ? key : "#" + (sequence++);
+            if (queue.containsKey(k)) return;
+            queue.put(k, new Task(k, task, clock.now()));
+            VCPMetrics.increment("background.deferred");
+        }
+        tick();
+    }
+
+    public synchronized Urgent beginUrgent() {
+        urgentInFlight++;
+        return new Urgent(this);
+    }
+
+    private void endUrgent() {
+        synchronized (this) {
+            urgentInFlight = Math.max(0, urgentInFlight - 1);
+            lastUrgentEnd = clock.now();
+        }
+        tick();
+    }
+
+    public synchronized int queued() {
+        return queue.size();
+    }
+
+    /** 最近一次暂缓的原因（urgent / settle / offline / metered / poor），可执行时为 null */
+    public synchronized String holdReason() {
+        return lastHoldReason;
+    }
+
+    /**
+     * 检查条件，满足时把一批任务交给工作线程
+     * @return 下次需要检查的延迟（ms），-1 表示无需定时检查（队列为空、正在执行或等待紧急请求结束）
+     */
+    public long tick() {
+        List<Task> batch;
+        long next;
+        synchronized (this) {
+            if (queue.isEmpty() || draining) return -1;
+            long now = clock.now();
+            long oldest = queue.values().iterator().next().queuedAt;
+            lastHoldReason = null;
+            next = -1;
+            if (urgentInFlight > 0) {
+                lastHoldReason = "urgent";
+            } else if (now - lastUrgentEnd < SETTLE_MS) {
+                lastHoldReason = "settle";
+                next = SETTLE_MS - (now - lastUrgentEnd);
+            } else if (!network.isConnected()) {
+                lastHoldReason = "offline";
+                next = OFFLINE_RECHECK_MS;
+            } else if (now - oldest < MAX_HOLD_MS && queue.size() < MAX_QUEUED) {
+                if (network.isMetered()) {
+                    lastHoldReason = "metered";
+                } else if (network.isPoor()) {
+                    lastHoldReason = "poor";
+                }
+                if (lastHoldReason != null) next = MAX_HOLD_MS - (now - oldest);
+            }
+            if (lastHoldReason != null) {
+                scheduleTick(next);
+                return next;
+            }
+
+            batch = new ArrayList<>();
+            Iterator<Task> it = queue.values().iterator();
+            while (it.hasNext() && batch.size() < BATCH_SIZE) {
+                Task task = it.next();
+                it.remove();
+                batch.add(task);
+                VCPMetrics.recordTime("background.wait", now - task.queuedAt);
+            }
+            draining = true;
+        }
+        VCPMetrics.increment("background.batches");
+        worker.execute(() -> drain(batch));
+        return 0;
+    }
+
+    private void drain(List<Task> batch) {
+        int run = 0;
+        try {
+            for (; run < batch.size(); run++) {
+                synchronized (this) {
+                    if (urgentInFlight > 0) break;
+                }
+                try {
+                    batch.get(run).runnable.run();
+                } catch (Exception e) {
+                    VCPApiHelper.fileLog("[Background] 任务失败: " + e.getMessage());
+                }
+                VCPMetrics.increment("background.ran");
+            }
+        } finally {
+            synchronized (this) {
+                if (run < batch.size()) {
+                    // 紧急请求开始：未执行的任务放回队首，保持原有顺序
+                    VCPMetrics.increment("background.preempted");
+                    LinkedHashMap<String, Task> rest = new LinkedHashMap<>();
+                    for (int i = run; i < batch.size(); i++) rest.put(batch.get(i).key, batch.get(i));
+                    for (Map.Entry<String, Task> e : queue.entrySet()) rest.putIfAbsent(e.getKey(), e.getValue());
+                    queue.clear();
+                    queue.putAll(rest);
+                }
+                draining = false;
+            }
+        }
+        tick();
+    }
+
+    private synchronized void scheduleTick(long delayMs) {
+        if (timer == null || delayMs < 0) return;
+        if (scheduledTick != null) scheduledTick.cancel(false);
+        scheduledTick = timer.schedule(this::tick, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    // ========== Android 网络状况 ==========
+
+    private static NetworkMonitor androidNetwork(Context ctx) {
+        ConnectivityManager cm = ctx.getSystemService(ConnectivityManager.class);
+        return new NetworkMonitor() {
+            @Override
+            public boolean isConnected() {
+                NetworkCapabilities caps = capabilities(cm);
+                return caps != null && caps.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET);
+            }
+
+            @Override
+            public boolean isMetered() {
+                return cm != null && cm.isActiveNetworkMetered();
+            }
+
+            @Override
+            public boolean isPoor() {
+                NetworkCapabilities caps = capabilities(cm);
+                if (caps == null) return false;
+                int kbps = caps.getLinkDownstreamBandwidthKbps();
+                return kbps > 0 && kbps < POOR_DOWNSTREAM_KBPS;
+            }
+        };
+    }
+
+    private static NetworkCapabilities capabilities(ConnectivityManager cm) {
+        if (cm == null) return null;
+        Network active = cm.getActiveNetwork();
+        return active != null ? cm.getNetworkCapabilities(active) : null;
+    }
+
+    /** 默认网络变化（连上 Wi-Fi、恢复联网）时立即复查 */
+    private static void registerNetworkCallback(Context ctx, BackgroundScheduler scheduler) {
+        ConnectivityManager cm = ctx.getSystemService(ConnectivityManager.class);
+        if (cm == null) return;
+        try {
+            cm.registerDefaultNetworkCallback(new ConnectivityManager.NetworkCallback() {
+                @Override
+                public void onCapabilitiesChanged(Network network, NetworkCapabilities caps) {
+                    scheduler.tick();
+                }
+
+                @Override
+                public void onAvailable(Network network) {
+                    scheduler.tick();
+                }
+            });
+        } catch (Exception e) {
+            VCPApiHelper.fileLog("[Background] 注册网络回调失败: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.vcp.vcpmobile;
+
+import android.content.SharedPreferences;
+
+import org.json.JSONObject;
+
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 可取消的 AI 调用句柄（由通知栏“取消”按钮触发）：
+ * 1. 断开当前所有连接（含对冲请求），阻塞中的读写立即失败
+ * 2. 中断工作线程，跳过剩余的重试等待
+ * 3. 向处理过该请求的每个端点调用 /v1/interrupt（与 vcpApi.js 的 interruptChat 相同），让后端停止生成
+ * 4. 一并取消 fork 出的子请求（多模型并发时每个模型一个子请求）
+ */
+public class CancellableCall {
+    public final String requestId;
+    // 所属捕获的 trace id，可为 null
+    public final String traceId;
+    private final Thread worker;
+    private volatile boolean cancelled = false;
+    private final Set<HttpURLConnection> connections = ConcurrentHashMap.newKeySet();
+    private final Set<String> endpoints = ConcurrentHashMap.newKeySet();
+    private final Set<CancellableCall> children = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param worker 执行请求的线程（取消时会被中断）
+     */
+    public CancellableCall(Thread worker) {
+        this(worker, null);
+    }
+
+    /**
+     * @param worker 执行请求的线程（取消时会被中断）
+     * @param traceId 所属捕获的 trace id（VCPTrace），可为 null
+     */
+    public CancellableCall(Thread worker, String traceId) {
+        this.requestId = "native_" + UUID.randomUUID();
+        this.traceId = traceId;
+        this.worker = worker;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    void attach(HttpURLConnection conn, String baseUrl) {
+        connections.add(conn);
+        endpoints.add(baseUrl);
+        if (cancelled) conn.disconnect();
+    }
+
+    void detach(HttpURLConnection conn) {
+        connections.remove(conn);
+    }
+
+    /**
+     * 创建子请求：独立的 requestId（可单独取消、单独中断后端生成），随父请求一起取消
+     * @param worker 执行子请求的线程
+     */
+    CancellableCall fork(Thread worker) {
+        CancellableCall child = new CancellableCall(worker, traceId);
+        children.add(child);
+        throwIfCancelled();
+        return child;
+    }
+
+    void throwIfCancelled() {
+        if (cancelled) throw new CancellationException("请求已取消");
+    }
+
+    /**
+     * 取消请求（可在任意线程调用，重复调用无副作用）
+     */
+    public void cancel(SharedPreferences prefs) {
+        if (cancelled) return;
+        cancelled = true;
+        VCPApiHelper.fileLog("[API] 取消请求 requestId=" + requestId);
+        VCPMetrics.increment("api.cancelled");
+
+        for (CancellableCall child : children) child.cancel(prefs);
+        String apiKey = prefs.getString("apiKey", "");
+        new Thread(() -> {
+            for (HttpURLConnection conn : connections) conn.disconnect();
+            if (worker != null) worker.interrupt();
+            for (String baseUrl : endpoints) sendInterrupt(baseUrl, apiKey);
+        }).start();
+    }
+
+    private void sendInterrupt(String baseUrl, String apiKey) {
+        try {
+            byte[] body = new JSONObject().put("requestId", requestId).toString()
+                    .getBytes(StandardCharsets.UTF_8);
+            HttpURLConnection conn = (HttpURLConnection) new URL(baseUrl + "/v1/interrupt").openConnection();
+            conn.setRequestMethod("POST");
+            conn.setRequestProperty("Content-Type", "application/json");
+            if (!apiKey.isEmpty()) conn.setRequestProperty("Authorization", VCPProtocol.bearerAuthorization(apiKey));
+            conn.setDoOutput(true);
+            conn.setConnectTimeout(10000);
+            conn.setReadTimeout(10000);
+            conn.setFixedLengthStreamingMode(body.length);
+            try (OutputStream os = conn.getOutputStream()) {
+                os.write(body);
+            }
+            int code = conn.getResponseCode();
+            conn.disconnect();
+            VCPApiHelper.fileLog("[API] 服务端中断请求响应码: " + code);
+        } catch (Exception e) {
+            VCPApiHelper.fileLog("[API] 服务端中断请求失败: " + e.getMessage());
+        }
+    }
+}
@@ -5,6 +5,7 @@ import android.content.ClipData;
 import android.content.ClipboardManager;
 import android.content.Context;
 import android.content.Intent;
+import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 
@@ -12,16 +13,22 @@ import android.os.Bundle;
  * 透明 Activity，用于在前台读取剪贴板内容。
  * Android 10+ 限制后台 Service 读取剪贴板，只有前台 Activity 才能读取。
  * VolumeKeyService 启动此 Activity → 获得焦点后读取剪贴板 → 传给 ClipboardSenderService → finish。
+ * 文本直接传递；图片/文件只传 content:// URI，由 Service 流式读取。
  */
 public class ClipboardReaderActivity extends Activity {
 
     private boolean hasRead = false;
+    private String traceId;
+    // 从启动到读取剪贴板（等待窗口获得焦点）的耗时
+    private VCPTrace.Span readSpan;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         VCPApiHelper.initContext(this);
-        VCPApiHelper.fileLog("[ClipboardReader] onCreate");
+        traceId = VCPTrace.ensure(getIntent().getStringExtra(VCPTrace.EXTRA_TRACE_ID), "clipboard");
+        readSpan = VCPTrace.span(traceId, "clipboard.read");
+        VCPApiHelper.fileLog("[ClipboardReader] onCreate " + traceId);
     }
 
     @Override
@@ -37,14 +44,22 @@ public class ClipboardReaderActivity extends Activity {
 
     private void readAndSend() {
         String clipText = null;
+        Uri clipUri = null;
+        String clipMime = null;
         try {
             ClipboardManager cm = (ClipboardManager) getSystemService(Context.CLIPBOARD_SERVICE);
             if (cm != null && cm.hasPrimaryClip()) {
                 ClipData clip = cm.getPrimaryClip();
                 if (clip != null && clip.getItemCount() > 0) {
-                    CharSequence text = clip.getItemAt(0).getText();
+                    ClipData.Item item = clip.getItemAt(0);
+                    CharSequence text = item.getText();
                     if (text != null) {
                         clipText = text.toString();
+                    } else if (item.getUri() != null && "content".equals(item.getUri().getScheme())) {
+                        clipUri = item.getUri();
+                        String described = clip.getDescription() != null && clip.getDescription().getMimeTypeCount() > 0
+                                ? clip.getDescription().getMimeType(0) : null;
+                        clipMime = UriContent.mimeType(getContentResolver(), clipUri, described);
                     }
                 }
             }
@@ -52,12 +67,25 @@ public class ClipboardReaderActivity extends Activity {
             VCPApiHelper.fileLog("[ClipboardReader] 读取剪贴板异常: " + e.getMessage());
         }
 
-        VCPApiHelper.fileLog("[ClipboardReader] 剪贴板内容: " + (clipText == null ? "null" : clipText.length() + "字符"));
+        if (clipUri != null) {
+            VCPApiHelper.fileLog("[ClipboardReader] 剪贴板 URI: " + clipUri + " mime=" + clipMime);
+        } else {
+            VCPApiHelper.fileLog("[ClipboardReader] 剪贴板内容: " + (clipText == null ? "null" : clipText.length() + "字符"));
+        }
+
+        readSpan.arg("uri", clipUri != null).end();
 
         // 启动 ClipboardSenderService，传入剪贴板内容
         Intent serviceIntent = new Intent(this, ClipboardSenderService.class);
+        serviceIntent.putExtra(VCPTrace.EXTRA_TRACE_ID, traceId);
         if (clipText != null && !clipText.trim().isEmpty()) {
             serviceIntent.putExtra("clip_text", clipText.trim());
+        } else if (clipUri != null) {
+            // 将读取权限转交给 Service（剪贴板授权随 Intent 传递）
+            serviceIntent.putExtra("clip_uri", clipUri.toString());
+            serviceIntent.putExtra("clip_mime", clipMime);
+            serviceIntent.setClipData(ClipData.newRawUri("clip", clipUri));
+            serviceIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
         }
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
             startForegroundService(serviceIntent);
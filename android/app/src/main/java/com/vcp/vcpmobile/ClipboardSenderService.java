@@ -3,51 +3,96 @@ package com.vcp.vcpmobile;
 import android.app.Notification;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
-import android.app.PendingIntent;
 import android.app.Service;
 import android.content.ClipData;
 import android.content.ClipboardManager;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
+import android.net.Uri;
 import android.os.Build;
 import android.os.IBinder;
 import android.util.Log;
 
+import org.json.JSONArray;
 
 public class ClipboardSenderService extends Service {
     private static final String TAG = "ClipboardSender";
     private static final String CHANNEL_ID = "clipboard_sender_channel";
     private static final int NOTIFICATION_ID = 9528;
+    static final String ACTION_CANCEL = "com.vcp.vcpmobile.action.CANCEL_CLIPBOARD";
+
+    // 当前进行中的 AI 调用（通知栏“取消”按钮作用于它）
+    private volatile CancellableCall activeCall;
+    private NotificationRenderer notifier;
 
     @Override
     public void onCreate() {
         super.onCreate();
         createNotificationChannel();
+        notifier = new NotificationRenderer(this, NOTIFICATION_ID, CHANNEL_ID, "VCPMobile 剪贴板发送",
+                android.R.drawable.ic_menu_send, ACTION_CANCEL, () -> {
+                    CancellableCall call = activeCall;
+                    return call != null && !call.isCancelled();
+                });
     }
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
-        Notification notification = buildNotification("正在读取剪贴板...");
+        if (intent != null && ACTION_CANCEL.equals(intent.getAction())) {
+            CancellableCall call = activeCall;
+            if (call != null) {
+                call.cancel(VCPApiHelper.getPrefs(this));
+                updateNotification("正在取消...");
+            } else {
+                stopSelf();
+            }
+            return START_NOT_STICKY;
+        }
+
+        Notification notification = notifier.build("正在读取剪贴板...");
         startForeground(NOTIFICATION_ID, notification);
 
         // 从 Intent extra 读取剪贴板内容（由 ClipboardReaderActivity 在前台读取后传入）
         VCPApiHelper.initContext(this);
         String clipText = intent != null ? intent.getStringExtra("clip_text") : null;
-        VCPApiHelper.fileLog("[Clipboard] 服务已启动，剪贴板内容: " + (clipText == null ? "null" : clipText.length() + "字符"));
+        String clipUri = intent != null ? intent.getStringExtra("clip_uri") : null;
+        String clipMime = intent != null ? intent.getStringExtra("clip_mime") : null;
+        VCPApiHelper.fileLog("[Clipboard] 服务已启动，剪贴板内容: " + (clipUri != null ? "URI " + clipMime
+                : clipText == null ? "null" : clipText.length() + "字符"));
+
+        String traceId = VCPTrace.ensure(intent != null ? intent.getStringExtra(VCPTrace.EXTRA_TRACE_ID) : null, "clipboard");
+        VCPTrace.instant(traceId, "service.start");
 
         new Thread(() -> {
+            VCPTrace.setCurrent(traceId);
+            CancellableCall call = new CancellableCall(Thread.currentThread(), traceId);
+            activeCall = call;
+            String status = "error";
             try {
-                if (clipText == null || clipText.trim().isEmpty()) {
+                if (clipUri != null) {
+                    sendClipboardUri(Uri.parse(clipUri), clipMime, call);
+                } else if (clipText == null || clipText.trim().isEmpty()) {
                     updateNotification("剪贴板为空");
                     VCPApiHelper.fileLog("[Clipboard] 剪贴板为空");
                 } else {
-                    sendClipboardContent(clipText.trim());
+                    sendClipboardContent(clipText.trim(), call);
                 }
+                status = "ok";
             } catch (Exception e) {
+                if (call.isCancelled()) {
+                    status = "cancelled";
+                    VCPApiHelper.fileLog("[Clipboard] 已取消");
+                    updateNotification("已取消");
+                    return;
+                }
                 VCPApiHelper.fileLog("[Clipboard] 异常: " + e.getClass().getSimpleName() + ": " + e.getMessage());
                 updateNotification("发送失败: " + e.getMessage());
             } finally {
+                activeCall = null;
+                VCPTrace.finish(traceId, status);
+                VCPTrace.setCurrent(null);
+                notifier.flush();
                 try { Thread.sleep(10000); } catch (InterruptedException ignored) {}
                 stopForeground(true);
                 stopSelf();
@@ -71,7 +116,8 @@ public class ClipboardSenderService extends Service {
         }
     }
 
-    private void sendClipboardContent(String content) throws Exception {
+    /** 发送剪贴板文本：AI 调用、记录上下文、写入话题（VcpLoadTest 直接驱动这条管线） */
+    void sendClipboardContent(String content, CancellableCall call) throws Exception {
         SharedPreferences prefs = VCPApiHelper.getPrefs(this);
         String clipPresetMessage = prefs.getString("clipPresetMessage", "分析以下内容");
 
@@ -83,16 +129,99 @@ public class ClipboardSenderService extends Service {
         String userText = clipPresetMessage + "\n\n" + content;
         VCPApiHelper.fileLog("[Clipboard] 开始调用 AI API");
         updateNotification("正在发送给 AI...");
-        String aiReply = VCPApiHelper.chatText(prefs, userText);
+        ConversationWindow conversation = ConversationWindow.get(this);
+        VCPTrace.Span chatSpan = VCPTrace.span(call.traceId, "api.chat");
+        String aiReply;
+        try {
+            aiReply = VCPApiHelper.chatText(prefs, userText,
+                    conversation.context(HistoryBatcher.SOURCE_CLIPBOARD), call);
+        } finally {
+            chatSpan.end();
+        }
+        activeCall = null; // AI 已回复，通知不再显示取消按钮
         VCPApiHelper.fileLog("[Clipboard] AI 回复长度=" + aiReply.length());
 
         String aiPreview = aiReply.length() > 100 ? aiReply.substring(0, 100) + "..." : aiReply;
         updateNotification("✅ AI 回复: " + aiPreview);
 
+        conversation.record(HistoryBatcher.SOURCE_CLIPBOARD, userText, aiReply);
+
         // 写入 Nova Agent 话题
         String topicName = "📋 " + preview;
-        boolean synced = VCPApiHelper.appendToAgentHistory(prefs, userText, aiReply, topicName);
-        VCPApiHelper.fileLog("[Clipboard] 话题写入结果: " + synced);
+        HistoryBatcher.get(this).enqueue(HistoryBatcher.SOURCE_CLIPBOARD, userText, aiReply, topicName, call.traceId);
+        VCPApiHelper.fileLog("[Clipboard] 已加入话题写入队列");
+    }
+
+    /**
+     * 发送剪贴板中的图片或文件：
+     * - 图片：与截图共用降采样 + JPEG 编码路径
+     * - 文本类文件：按块从 ContentResolver 流式写入请求体，不整体载入内存
+     */
+    private void sendClipboardUri(Uri uri, String mime, CancellableCall call) throws Exception {
+        SharedPreferences prefs = VCPApiHelper.getPrefs(this);
+        String clipPresetMessage = prefs.getString("clipPresetMessage", "分析以下内容");
+        String name = UriContent.displayName(getContentResolver(), uri);
+        if (mime == null) mime = UriContent.mimeType(getContentResolver(), uri, null);
+
+        ConversationWindow conversation = ConversationWindow.get(this);
+        JSONArray context = conversation.context(HistoryBatcher.SOURCE_CLIPBOARD);
+        String aiReply;
+        String userContent;
+        String topicName;
+        if (UriContent.isImage(mime)) {
+            updateNotification("正在处理图片: " + name);
+            VCPTrace.Span encodeSpan = VCPTrace.span(call.traceId, "image.encode");
+            String base64;
+            try {
+                base64 = ImageEncoder.encodeUri(getContentResolver(), uri);
+            } finally {
+                encodeSpan.end();
+            }
+            if (base64 == null) {
+                updateNotification("无法读取剪贴板图片");
+                VCPApiHelper.fileLog("[Clipboard] 图片解码失败: " + name);
+                return;
+            }
+            VCPApiHelper.fileLog("[Clipboard] 图片 base64长度=" + base64.length() + "，开始调用 AI API");
+            updateNotification("正在发送给 AI...");
+            VCPTrace.Span chatSpan = VCPTrace.span(call.traceId, "api.chat");
+            try {
+                aiReply = VCPApiHelper.chatImage(prefs, base64, clipPresetMessage, context, call);
+            } finally {
+                chatSpan.end();
+            }
+            userContent = "[图片] " + clipPresetMessage + "\n\n(文件: " + name + ")";
+            topicName = "📋 " + name;
+        } else if (UriContent.isTextLike(mime)) {
+            long size = UriContent.size(getContentResolver(), uri);
+            VCPApiHelper.fileLog("[Clipboard] 流式发送文件: " + name + " mime=" + mime + " size=" + size);
+            updateNotification("正在发送文件: " + name);
+            VCPTrace.Span chatSpan = VCPTrace.span(call.traceId, "api.chat").arg("streamed", true);
+            try {
+                aiReply = VCPApiHelper.chatTextStream(prefs, clipPresetMessage, "(文件: " + name + ")",
+                        () -> getContentResolver().openInputStream(uri), context, call);
+            } finally {
+                chatSpan.end();
+            }
+            // 文件内容可能很大，话题中只记录文件名
+            userContent = "[文件] " + clipPresetMessage + "\n\n(文件: " + name
+                    + (size >= 0 ? ", " + size + " 字节" : "") + ")";
+            topicName = "📋 " + name;
+        } else {
+            updateNotification("暂不支持的剪贴板类型: " + mime);
+            VCPApiHelper.fileLog("[Clipboard] 不支持的类型: " + mime);
+            return;
+        }
+        activeCall = null; // AI 已回复，通知不再显示取消按钮
+        VCPApiHelper.fileLog("[Clipboard] AI 回复长度=" + aiReply.length());
+
+        String aiPreview = aiReply.length() > 100 ? aiReply.substring(0, 100) + "..." : aiReply;
+        updateNotification("✅ AI 回复: " + aiPreview);
+
+        // 上下文只记录文字描述，图片与文件内容不保留
+        conversation.record(HistoryBatcher.SOURCE_CLIPBOARD, userContent, aiReply);
+        HistoryBatcher.get(this).enqueue(HistoryBatcher.SOURCE_CLIPBOARD, userContent, aiReply, topicName, call.traceId);
+        VCPApiHelper.fileLog("[Clipboard] 已加入话题写入队列");
     }
 
     private void createNotificationChannel() {
@@ -105,31 +234,8 @@ public class ClipboardSenderService extends Service {
         }
     }
 
-    private Notification buildNotification(String text) {
-        Intent intent = new Intent(this, MainActivity.class);
-        PendingIntent pi = PendingIntent.getActivity(this, 0, intent,
-                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
-
-        Notification.Builder builder;
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            builder = new Notification.Builder(this, CHANNEL_ID);
-        } else {
-            builder = new Notification.Builder(this);
-        }
-        return builder
-                .setContentTitle("VCPMobile 剪贴板发送")
-                .setContentText(text)
-                .setSmallIcon(android.R.drawable.ic_menu_send)
-                .setContentIntent(pi)
-                .setOngoing(false)
-                .build();
-    }
-
     private void updateNotification(String text) {
-        NotificationManager nm = getSystemService(NotificationManager.class);
-        if (nm != null) {
-            nm.notify(NOTIFICATION_ID, buildNotification(text));
-        }
+        notifier.update(text);
     }
 
     @Override
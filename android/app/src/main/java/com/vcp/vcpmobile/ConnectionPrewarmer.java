@@ -0,0 +1,148 @@
+package com.vcp.vcpmobile;
+
+import android.content.Context;
+
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.URL;
+
+/**
+ * 连接预热：音量键按下时（手势尚未确认）就在后台解析 DNS 并建立到 baseUrl 的 TCP/TLS 连接。
+ * 预热请求读完响应后连接回到 HttpURLConnection 的 keep-alive 连接池，
+ * 随后 callCompletions 直接复用，省去连接建立耗时。
+ *
+ * 空闲窗口：同一源在 IDLE_TIMEOUT_MS 内最多发送一次预热 HEAD（无论成功与否，刚完成的正式请求也算），
+ * 连按或服务不可达时不会反复唤醒射频。该值只用于这里的判断，不修改系统连接池的 keep-alive
+ * （Android 默认 5 分钟；服务端空闲超时通常更短，30 秒是保守估计）。
+ *
+ * HttpURLConnection 不暴露连接是否复用：正式请求建连后调用 recordConnect，
+ * 建连耗时不到预热时冷建连耗时的一半即计为复用（prewarm.reused），并记录实际节省的耗时（prewarm.savedMs）。
+ */
+public class ConnectionPrewarmer {
+    static final long IDLE_TIMEOUT_MS = 30000;
+
+    private static final Object lock = new Object();
+    private static boolean inFlight = false;
+    // 最近一次预热或正式请求的源与时间（限流用）
+    private static String activeOrigin = null;
+    private static long activeAt = 0;
+    // 可供复用的预热连接
+    private static String warmOrigin = null;
+    private static long warmedAt = 0;
+    private static long warmConnectMs = 0;
+    // consumeWarm 之后等待 recordConnect 核对的预热
+    private static String checkOrigin = null;
+    private static long checkBaselineMs = 0;
+
+    /**
+     * 异步预热到当前配置 baseUrl 的连接；空闲窗口内已预热、已有正式请求或正在预热时直接返回
+     */
+    public static void prewarm(Context ctx) {
+        String baseUrl = VCPApiHelper.getBaseUrl(VCPApiHelper.getPrefs(ctx));
+        if (baseUrl.isEmpty()) return;
+        String origin = originOf(baseUrl);
+        if (origin == null) return;
+
+        synchronized (lock) {
+            long now = System.currentTimeMillis();
+            if (inFlight) return;
+            if (origin.equals(activeOrigin) && now - activeAt < IDLE_TIMEOUT_MS) {
+                VCPMetrics.increment("prewarm.skipped");
+                return;
+            }
+            inFlight = true;
+            activeOrigin = origin;
+            activeAt = now;
+        }
+
+        new Thread(() -> {
+            long start = System.currentTimeMillis();
+            try {
+                URL url = new URL(baseUrl + "/v1/models");
+                InetAddress.getAllByName(url.getHost());
+                long dnsMs = System.currentTimeMillis() - start;
+
+                HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+                conn.setRequestMethod("HEAD");
+                conn.setConnectTimeout(10000);
+                conn.setReadTimeout(10000);
+                long connectStart = System.currentTimeMillis();
+                conn.connect();
+                long connectMs = System.currentTimeMillis() - connectStart;
+                int code = conn.getResponseCode();
+                // 读完（空）响应体而不调用 disconnect()，连接才会回到连接池
+                InputStream in = code < 400 ? conn.getInputStream() : conn.getErrorStream();
+                if (in != null) in.close();
+
+                long costMs = System.currentTimeMillis() - start;
+                synchronized (lock) {
+                    warmOrigin = origin;
+                    warmedAt = System.currentTimeMillis();
+                    warmConnectMs = connectMs;
+                }
+                VCPMetrics.increment("prewarm.count");
+                VCPMetrics.recordTime("prewarm.ms", costMs);
+                VCPApiHelper.fileLog("[Prewarm] 连接已预热 " + origin + " dns=" + dnsMs + "ms 建连=" + connectMs
+                        + "ms 总计=" + costMs + "ms code=" + code);
+            } catch (Exception e) {
+                VCPMetrics.increment("prewarm.failed");
+                VCPApiHelper.fileLog("[Prewarm] 预热失败: " + e.getMessage());
+            } finally {
+                synchronized (lock) {
+                    inFlight = false;
+                }
+            }
+        }).start();
+    }
+
+    /**
+     * 请求发出前调用：若目标源已预热且仍在空闲窗口内，返回预热时的冷建连耗时（用于 recordConnect 核对），否则返回 -1。
+     * 预热连接只能被复用一次，调用后即失效。
+     */
+    static long consumeWarm(String url) {
+        String origin = originOf(url);
+        synchronized (lock) {
+            boolean warm = origin != null && origin.equals(warmOrigin)
+                    && System.currentTimeMillis() - warmedAt < IDLE_TIMEOUT_MS;
+            warmOrigin = null;
+            checkOrigin = warm ? origin : null;
+            checkBaselineMs = warm ? warmConnectMs : 0;
+            VCPMetrics.increment(warm ? "prewarm.hit" : "prewarm.miss");
+            return warm ? warmConnectMs : -1;
+        }
+    }
+
+    /**
+     * 正式请求建连后调用：核对是否复用了预热连接，并把该源记为刚使用过（空闲窗口内不再预热）
+     * @param connectMs 本次 connect() 的耗时
+     */
+    static void recordConnect(String url, long connectMs) {
+        String origin = originOf(url);
+        if (origin == null) return;
+        long baselineMs;
+        synchronized (lock) {
+            activeOrigin = origin;
+            activeAt = System.currentTimeMillis();
+            if (!origin.equals(checkOrigin)) return;
+            baselineMs = checkBaselineMs;
+            checkOrigin = null;
+        }
+        if (connectMs * 2 < baselineMs) {
+            VCPMetrics.increment("prewarm.reused");
+            VCPMetrics.recordTime("prewarm.savedMs", baselineMs - connectMs);
+        } else {
+            VCPMetrics.increment("prewarm.notReused");
+            VCPApiHelper.fileLog("[Prewarm] 预热连接未被复用：建连 " + connectMs + "ms，预热时 " + baselineMs + "ms");
+        }
+    }
+
+    private static String originOf(String url) {
+        try {
+            URL u = new URL(url);
+            return u.getProtocol() + "://" + u.getHost() + ":" + (u.getPort() != -1 ? u.getPort() : u.getDefaultPort());
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
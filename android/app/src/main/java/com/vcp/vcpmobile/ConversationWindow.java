@@ -0,0 +1,302 @@
+package com.vcp.vcpmobile;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 原生捕获的滚动对话上下文（按来源各一份，截图/剪贴板/分享互不混合）：
+ * 1. 每次捕获结束后记录一轮 user/assistant 文本（截图只记录文字描述，不保留图片）
+ * 2. 下次捕获时按 token 预算从新到旧选取近期轮次，连同滚动摘要一起插在 system 与本次消息之间
+ * 3. 累计内容超出预算时，在后台把较早的轮次连同旧摘要压缩为新摘要，压缩完成前超出预算的轮次只是不发送
+ * 4. 超过 IDLE_RESET_MS 没有新捕获时重新开始
+ *
+ * 无论摘要是否完成，上下文都不超过预算，请求体大小与捕获次数无关。
+ * 内存中的状态只是文件的副本，登记在 MemoryGovernor，内存紧张时丢弃，下次使用时重新读取。
+ *
+ * 设置项（prefs）：
+ * - conversationContext：是否启用（默认关闭，保持单轮调用）
+ * - contextTokenBudget：上下文 token 预算（默认 DEFAULT_BUDGET_TOKENS）
+ * - summaryModel：摘要使用的模型，为空时使用当前模型
+ */
+public class ConversationWindow {
+    static final int DEFAULT_BUDGET_TOKENS = 1500;
+    private static final long IDLE_RESET_MS = 12 * 60 * 60 * 1000L;
+    // 单轮内容记录上限（字符），超长的剪贴板内容只保留开头
+    private static final int MAX_TURN_CHARS = 2000;
+    // 摘要占预算的比例上限
+    private static final int SUMMARY_BUDGET_DIVISOR = 3;
+
+    private static ConversationWindow sInstance;
+
+    private final Context context;
+    private final ExecutorService summarizer = Executors.newSingleThreadExecutor();
+    private final Map<String, JSONObject> states = new HashMap<>();
+    private final Map<String, Boolean> summarizing = new HashMap<>();
+
+    public static synchronized ConversationWindow get(Context ctx) {
+        if (sInstance == null) {
+            sInstance = new ConversationWindow(ctx.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    ConversationWindow(Context context) {
+        this.context = context;
+        MemoryGovernor.register("conversation", MemoryGovernor.PRIORITY_REBUILDABLE, new MemoryGovernor.Trimmable() {
+            @Override
+            public long sizeBytes() {
+                return memoryBytes();
+            }
+
+            @Override
+            public long trimTo(long maxBytes) {
+                if (maxBytes > 0) return 0;
+                synchronized (ConversationWindow.this) {
+                    long bytes = memoryBytes();
+                    states.clear();
+                    return bytes;
+                }
+            }
+        });
+    }
+
+    /** 内存中状态的估算占用（UTF-16 字符数 × 2） */
+    private synchronized long memoryBytes() {
+        long chars = 0;
+        for (JSONObject state : states.values()) {
+            chars += state.optString("summary").length();
+            JSONArray turns = state.optJSONArray("turns");
+            if (turns == null) continue;
+            for (int i = 0; i < turns.length(); i++) {
+                JSONObject turn = turns.optJSONObject(i);
+                if (turn != null) chars += turn.optString("user").length() + turn.optString("assistant").length();
+            }
+        }
+        return chars * 2;
+    }
+
+    public static boolean isEnabled(SharedPreferences prefs) {
+        return prefs.getBoolean("conversationContext", false);
+    }
+
+    /**
+     * 本次捕获的上下文消息：摘要（system）+ 预算内的近期轮次
+     * @return 未启用或没有上下文时返回 null
+     */
+    public synchronized JSONArray context(String source) {
+        SharedPreferences prefs = VCPApiHelper.getPrefs(context);
+        if (!isEnabled(prefs)) return null;
+        try {
+            JSONObject state = load(source);
+            JSONArray turns = state.getJSONArray("turns");
+            String summary = state.optString("summary", "");
+            int budget = budget(prefs);
+            int used = VCPProtocol.estimateTokens(summary);
+
+            // 从新到旧选取，直到预算用完
+            int first = turns.length();
+            while (first > 0) {
+                int tokens = turns.getJSONObject(first - 1).optInt("tokens");
+                if (used + tokens > budget) break;
+                used += tokens;
+                first--;
+            }
+
+            JSONArray messages = new JSONArray();
+            if (!summary.isEmpty()) {
+                messages.put(new JSONObject()
+                        .put("role", "system")
+                        .put("content", "此前对话的摘要：\n" + summary));
+            }
+            for (int i = first; i < turns.length(); i++) {
+                JSONObject turn = turns.getJSONObject(i);
+                messages.put(new JSONObject().put("role", "user").put("content", turn.optString("user")));
+                messages.put(new JSONObject().put("role", "assistant").put("content", turn.optString("assistant")));
+            }
+            if (first > 0) VCPMetrics.add("context.turnsWithheld", first);
+            VCPApiHelper.fileLog("[Context] " + source + " 上下文 " + (turns.length() - first) + " 轮 + 摘要 "
+                    + summary.length() + " 字，约 " + used + " tokens");
+            return messages.length() > 0 ? messages : null;
+        } catch (Exception e) {
+            VCPApiHelper.fileLog("[Context] 读取上下文失败: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /** 记录一轮对话；累计内容超出预算时在后台折叠为摘要 */
+    public void record(String source, String userText, String aiReply) {
+        SharedPreferences prefs = VCPApiHelper.getPrefs(context);
+        if (!isEnabled(prefs)) return;
+        synchronized (this) {
+            try {
+                JSONObject state = load(source);
+                String user = truncate(userText);
+                String assistant = truncate(aiReply);
+                state.getJSONArray("turns").put(new JSONObject()
+                        .put("user", user)
+                        .put("assistant", assistant)
+                        .put("tokens", VCPProtocol.estimateTokens(user) + VCPProtocol.estimateTokens(assistant)));
+                state.put("updatedAt", System.currentTimeMillis());
+                save(source, state);
+                maybeSummarize(source, state, prefs);
+            } catch (Exception e) {
+                VCPApiHelper.fileLog("[Context] 记录上下文失败: " + e.getMessage());
+            }
+        }
+        // 收缩会获取本对象的锁，在锁外检查
+        MemoryGovernor.checkBudget();
+    }
+
+    public synchronized void clear(String source) {
+        states.remove(source);
+        file(source).delete();
+    }
+
+    /** 等待进行中的摘要完成（测试用） */
+    boolean awaitIdle(long timeoutMs) throws Exception {
+        return summarizer.submit(() -> { }).get(timeoutMs, TimeUnit.MILLISECONDS) == null;
+    }
+
+    // ========== 摘要 ==========
+
+    private void maybeSummarize(String source, JSONObject state, SharedPreferences prefs) throws Exception {
+        if (Boolean.TRUE.equals(summarizing.get(source))) return;
+        JSONArray turns = state.getJSONArray("turns");
+        int budget = budget(prefs);
+        String summary = state.optString("summary", "");
+        int total = VCPProtocol.estimateTokens(summary);
+        for (int i = 0; i < turns.length(); i++) total += turns.getJSONObject(i).optInt("tokens");
+        if (total <= budget) return;
+
+        // 保留不超过一半预算的最新轮次（至少一轮），其余折叠进摘要
+        int keepTokens = 0;
+        int keepFrom = turns.length();
+        while (keepFrom > 1) {
+            int tokens = turns.getJSONObject(keepFrom - 1).optInt("tokens");
+            if (keepTokens + tokens > budget / 2) break;
+            keepTokens += tokens;
+            keepFrom--;
+        }
+        if (keepFrom == turns.length()) keepFrom--;
+        if (keepFrom <= 0) return;
+
+        StringBuilder transcript = new StringBuilder();
+        for (int i = 0; i < keepFrom; i++) {
+            JSONObject turn = turns.getJSONObject(i);
+            transcript.append("用户：").append(turn.optString("user")).append('\n')
+                    .append("AI：").append(turn.optString("assistant")).append("\n\n");
+        }
+        int foldCount = keepFrom;
+        int summaryChars = budget / SUMMARY_BUDGET_DIVISOR;
+        summarizing.put(source, true);
+        summarizer.execute(() -> summarize(source, summary, transcript.toString(), foldCount, summaryChars, prefs));
+    }
+
+    private void summarize(String source, String oldSummary, String transcript, int foldCount, int summaryChars,
+                           SharedPreferences prefs) {
+        long start = System.currentTimeMillis();
+        String newSummary = null;
+        try {
+            String prompt = "请把下面的对话压缩成一段不超过 " + summaryChars + " 字的摘要，"
+                    + "保留事实、结论、待办和用户关注的话题，省略寒暄和重复内容，只输出摘要本身。\n\n"
+                    + (oldSummary.isEmpty() ? "" : "已有摘要：\n" + oldSummary + "\n\n")
+                    + "新增对话：\n" + transcript;
+            JSONArray messages = new JSONArray().put(new JSONObject().put("role", "user").put("content", prompt));
+            newSummary = VCPApiHelper.chatMessages(prefs, prefs.getString("summaryModel", ""), messages, null).trim();
+            // 模型不一定遵守字数要求，超出摘要预算时截断
+            int tokens = VCPProtocol.estimateTokens(newSummary);
+            if (tokens > summaryChars) {
+                newSummary = newSummary.substring(0, (int) ((long) newSummary.length() * summaryChars / tokens));
+            }
+            VCPMetrics.increment("context.summaries");
+            VCPMetrics.recordTime("context.summarize", System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            VCPMetrics.increment("context.summaryFailures");
+            VCPApiHelper.fileLog("[Context] 摘要失败: " + e.getMessage());
+        }
+
+        synchronized (this) {
+            summarizing.remove(source);
+            try {
+                JSONObject state = load(source);
+                JSONArray turns = state.getJSONArray("turns");
+                // 摘要期间可能被清空或重置，轮次不足时放弃本次结果
+                if (turns.length() < foldCount) return;
+                if (newSummary != null) {
+                    state.put("summary", newSummary);
+                } else if (turns.length() <= foldCount * 2) {
+                    // 摘要失败时先保留原文，待下次记录时重试；积压过多才丢弃最早的轮次
+                    return;
+                }
+                JSONArray remaining = new JSONArray();
+                for (int i = foldCount; i < turns.length(); i++) remaining.put(turns.get(i));
+                state.put("turns", remaining);
+                save(source, state);
+                VCPMetrics.add("context.foldedTurns", foldCount);
+                VCPApiHelper.fileLog("[Context] " + source + " 折叠 " + foldCount + " 轮，摘要 "
+                        + state.optString("summary").length() + " 字，剩余 " + remaining.length() + " 轮");
+                maybeSummarize(source, state, prefs);
+            } catch (Exception e) {
+                VCPApiHelper.fileLog("[Context] 保存摘要失败: " + e.getMessage());
+            }
+        }
+    }
+
+    // ========== 存储 ==========
+
+    private static int budget(SharedPreferences prefs) {
+        return Math.max(200, prefs.getInt("contextTokenBudget", DEFAULT_BUDGET_TOKENS));
+    }
+
+    private static String truncate(String text) {
+        if (text == null) return "";
+        return text.length() > MAX_TURN_CHARS ? text.substring(0, MAX_TURN_CHARS) + "…" : text;
+    }
+
+    private File file(String source) {
+        return new File(context.getFilesDir(), "conversation_" + source + ".json");
+    }
+
+    private JSONObject load(String source) throws Exception {
+        JSONObject state = states.get(source);
+        if (state == null) {
+            File file = file(source);
+            if (file.exists()) {
+                try (FileInputStream fis = new FileInputStream(file)) {
+                    state = new JSONObject(new String(fis.readAllBytes(), StandardCharsets.UTF_8));
+                } catch (Exception e) {
+                    VCPApiHelper.fileLog("[Context] 上下文文件损坏，重新开始: " + e.getMessage());
+                }
+            }
+        }
+        if (state == null || System.currentTimeMillis() - state.optLong("updatedAt") > IDLE_RESET_MS) {
+            state = new JSONObject()
+                    .put("summary", "")
+                    .put("turns", new JSONArray())
+                    .put("updatedAt", System.currentTimeMillis());
+        }
+        states.put(source, state);
+        return state;
+    }
+
+    private void save(String source, JSONObject state) {
+        try (FileOutputStream fos = new FileOutputStream(file(source))) {
+            fos.write(state.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            VCPApiHelper.fileLog("[Context] 保存上下文失败: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.vcp.vcpmobile;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 多网关端点选择（纯 Java，不依赖 Android）：
+ * - 被动测速：每次请求成功后以 EWMA 更新该端点的完成耗时（建连、上传到读完响应）；
+ *   只看建连会把排队、过载的网关当成快端点，生成长度带来的波动由 EWMA 平滑
+ * - 健康评分：连续失败会放大评分，失败达到阈值后按退避时间暂时摘除；
+ *   未测速的端点按已测速端点的中位数（都未测速时为 UNMEASURED_PRIOR_MS）估计，不会排到健康端点之前
+ * - 探测：评分只随被选中的端点更新，未测速或久未选中的端点无从证明自己更快；
+ *   pick 每隔 PROBE_INTERVAL 次成功把最久未测速的健康端点提到首位，让流量能从变慢的端点移走
+ * - 对冲延迟：取近期建连耗时的指定分位数，作为发出对冲请求的等待时间（对冲只发生在建连阶段）
+ */
+public class EndpointSelector {
+    static final double EWMA_ALPHA = 0.3;
+    static final int UNHEALTHY_FAILURES = 3;
+    static final long BASE_EJECT_MS = 30000;
+    static final long MAX_EJECT_MS = 5 * 60 * 1000;
+    // 计算分位数所需的最少样本数，不足时使用默认对冲延迟
+    static final int MIN_SAMPLES = 10;
+    // 所有端点都未测速时的估计耗时（只用于排序，各端点相同，由失败次数区分）
+    static final double UNMEASURED_PRIOR_MS = 1000;
+    // 两次探测之间的成功请求数
+    static final int PROBE_INTERVAL = 16;
+
+    private static final Map<List<String>, EndpointSelector> registry = new HashMap<>();
+
+    static class Endpoint {
+        final String baseUrl;
+        double ewmaMs = -1; // -1 表示尚未测速
+        int consecutiveFailures = 0;
+        long ejectedUntil = 0;
+        // 最近一次测速或探测时的成功序号，0 表示从未选中
+        long lastProbeSeq = 0;
+
+        Endpoint(String baseUrl) {
+            this.baseUrl = baseUrl;
+        }
+
+        /** @param priorMs 未测速时使用的估计耗时 */
+        double score(double priorMs) {
+            double latency = ewmaMs < 0 ? priorMs : ewmaMs;
+            // 至少 1ms，失败次数在耗时接近 0 时仍能拉开差距
+            return Math.max(1, latency) * (1 + consecutiveFailures);
+        }
+    }
+
+    private final List<Endpoint> endpoints = new ArrayList<>();
+    private final long[] samples = new long[128];
+    private int sampleCount = 0;
+    private int sampleIndex = 0;
+    private long successSeq = 0;
+    private final Clock clock;
+
+    /** 可注入时钟，便于测试 */
+    interface Clock {
+        long nowMs();
+    }
+
+    /**
+     * 同一组端点在进程内共享同一个实例，测速数据跨请求累积
+     */
+    public static synchronized EndpointSelector forEndpoints(List<String> baseUrls) {
+        List<String> key = Collections.unmodifiableList(new ArrayList<>(baseUrls));
+        EndpointSelector selector = registry.get(key);
+        if (selector == null) {
+            selector = new EndpointSelector(key, System::currentTimeMillis);
+            registry.put(key, selector);
+        }
+        return selector;
+    }
+
+    EndpointSelector(List<String> baseUrls, Clock clock) {
+        if (baseUrls.isEmpty()) throw new IllegalArgumentException("至少需要一个端点");
+        for (String url : baseUrls) endpoints.add(new Endpoint(url));
+        this.clock = clock;
+    }
+
+    /**
+     * @return 按评分从优到劣排列的端点；被摘除的端点排在最后（全部被摘除时仍可作为兜底）
+     */
+    public synchronized List<String> ranked() {
+        return ranked(Collections.emptySet());
+    }
+
+    /**
+     * @param avoid 本次调用中已失败的端点，排在其余端点之后（重试时换到其他端点）
+     */
+    public synchronized List<String> ranked(Collection<String> avoid) {
+        long now = clock.nowMs();
+        double prior = priorMs();
+        List<Endpoint> sorted = new ArrayList<>(endpoints);
+        Collections.sort(sorted, Comparator
+                .comparing((Endpoint e) -> avoid.contains(e.baseUrl))
+                .thenComparing((Endpoint e) -> e.ejectedUntil > now)
+                .thenComparingDouble(e -> e.score(prior)));
+        List<String> result = new ArrayList<>(sorted.size());
+        for (Endpoint e : sorted) result.add(e.baseUrl);
+        return result;
+    }
+
+    /**
+     * 为一次请求排序：与 ranked(avoid) 相同，但距最久未测速的健康端点上次测速已有 PROBE_INTERVAL 次成功时，
+     * 把它提到首位作为探测（并发请求中只有一个会被选去探测）
+     */
+    public synchronized List<String> pick(Collection<String> avoid) {
+        List<String> result = ranked(avoid);
+        long now = clock.nowMs();
+        Endpoint stale = null;
+        for (Endpoint e : endpoints) {
+            if (avoid.contains(e.baseUrl) || e.ejectedUntil > now || e.consecutiveFailures > 0) continue;
+            if (stale == null || e.lastProbeSeq < stale.lastProbeSeq) stale = e;
+        }
+        if (stale != null && successSeq - stale.lastProbeSeq >= PROBE_INTERVAL && !stale.baseUrl.equals(result.get(0))) {
+            stale.lastProbeSeq = successSeq;
+            result.remove(stale.baseUrl);
+            result.add(0, stale.baseUrl);
+        }
+        return result;
+    }
+
+    /** 已测速端点 EWMA 的中位数，都未测速时为 UNMEASURED_PRIOR_MS */
+    private double priorMs() {
+        List<Double> measured = new ArrayList<>();
+        for (Endpoint e : endpoints) {
+            if (e.ewmaMs >= 0) measured.add(e.ewmaMs);
+        }
+        if (measured.isEmpty()) return UNMEASURED_PRIOR_MS;
+        Collections.sort(measured);
+        int mid = measured.size() / 2;
+        return measured.size() % 2 == 1 ? measured.get(mid) : (measured.get(mid - 1) + measured.get(mid)) / 2;
+    }
+
+    /**
+     * @param connectMs 建连耗时，计入对冲延迟的样本
+     * @param totalMs 完成耗时，计入端点评分
+     */
+    public synchronized void recordSuccess(String baseUrl, long connectMs, long totalMs) {
+        Endpoint e = find(baseUrl);
+        if (e == null) return;
+        e.ewmaMs = e.ewmaMs < 0 ? totalMs : EWMA_ALPHA * totalMs + (1 - EWMA_ALPHA) * e.ewmaMs;
+        e.consecutiveFailures = 0;
+        e.ejectedUntil = 0;
+        e.lastProbeSeq = ++successSeq;
+
+        samples[sampleIndex] = connectMs;
+        sampleIndex = (sampleIndex + 1) % samples.length;
+        if (sampleCount < samples.length) sampleCount++;
+    }
+
+    public synchronized void recordFailure(String baseUrl) {
+        Endpoint e = find(baseUrl);
+        if (e == null) return;
+        e.consecutiveFailures++;
+        if (e.consecutiveFailures >= UNHEALTHY_FAILURES) {
+            long backoff = BASE_EJECT_MS << Math.min(e.consecutiveFailures - UNHEALTHY_FAILURES, 4);
+            e.ejectedUntil = clock.nowMs() + Math.min(backoff, MAX_EJECT_MS);
+        }
+    }
+
+    /**
+     * @param percentile 分位数（0~1），如 0.95
+     * @param defaultMs 样本不足时返回的默认延迟
+     * @return 发出对冲请求前的等待时间
+     */
+    public synchronized long hedgeDelayMs(double percentile, long defaultMs) {
+        if (sampleCount < MIN_SAMPLES) return defaultMs;
+        long[] sorted = Arrays.copyOf(samples, sampleCount);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    public synchronized double ewmaMs(String baseUrl) {
+        Endpoint e = find(baseUrl);
+        return e != null ? e.ewmaMs : -1;
+    }
+
+    public synchronized boolean isHealthy(String baseUrl) {
+        Endpoint e = find(baseUrl);
+        return e != null && e.ejectedUntil <= clock.nowMs();
+    }
+
+    private Endpoint find(String baseUrl) {
+        for (Endpoint e : endpoints) {
+            if (e.baseUrl.equals(baseUrl)) return e;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,145 @@
+package com.vcp.vcpmobile;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * VolumeKeyService 的无障碍事件按需订阅：
+ * 1. 默认不订阅任何事件（eventTypes = 0），按键过滤（onKeyEvent）不受影响，
+ *    系统不再把设备上的每个界面事件都经 IPC 发到本进程
+ * 2. 捕获需要窗口信息（如前台应用包名）时 acquire 一段时间的订阅，到期或 release 后自动收窄；
+ *    多个订阅同时存在时取并集
+ * 3. 统计收到的事件数与每小时事件数（从当前订阅模式开始计），订阅模式切换时重新计数，便于前后对比
+ *
+ * 生效的事件类型由 Applier 写入 AccessibilityServiceInfo，定时由主线程 Handler 执行（测试中注入）。
+ * 所有方法需在主线程调用（stats 除外）。
+ */
+public class EventSubscriptions {
+    /** 把事件类型应用到服务（setServiceInfo） */
+    public interface Applier {
+        void apply(int eventTypes);
+    }
+
+    /** 订阅句柄，提前结束时调用 release()（重复调用无副作用） */
+    public final class Lease {
+        final int mask;
+        private final Runnable onExpire;
+        private final Runnable expiry = this::expire;
+        private boolean released;
+
+        Lease(int mask, Runnable onExpire) {
+            this.mask = mask;
+            this.onExpire = onExpire;
+        }
+
+        public boolean isActive() {
+            return !released;
+        }
+
+        public void release() {
+            if (released) return;
+            released = true;
+            scheduler.cancel(expiry);
+            leases.remove(this);
+            update();
+        }
+
+        private void expire() {
+            if (released) return;
+            release();
+            if (onExpire != null) onExpire.run();
+        }
+    }
+
+    public interface Clock {
+        long now();
+    }
+
+    private final Applier applier;
+    private final VolumeGestureEngine.Scheduler scheduler;
+    private final Clock clock;
+    private final List<Lease> leases = new ArrayList<>();
+    private int baseMask = 0;
+    private int appliedMask = -1;
+
+    // 统计（当前订阅模式开始后）
+    private volatile long events = 0;
+    private volatile long countingSince;
+    private volatile long leaseCount = 0;
+
+    public EventSubscriptions(Applier applier, VolumeGestureEngine.Scheduler scheduler, Clock clock) {
+        this.applier = applier;
+        this.scheduler = scheduler;
+        this.clock = clock;
+        this.countingSince = clock.now();
+    }
+
+    /** 常驻订阅（默认 0；旧行为为全部事件，用于对比） */
+    public void setBaseMask(int mask) {
+        if (mask == baseMask && appliedMask >= 0) return;
+        baseMask = mask;
+        // 模式切换后重新计数
+        events = 0;
+        countingSince = clock.now();
+        update();
+    }
+
+    /**
+     * 临时订阅 mask 中的事件类型，durationMs 后自动结束
+     * @param onExpire 到期（未提前 release）时调用，可为 null
+     */
+    public Lease acquire(int mask, long durationMs, Runnable onExpire) {
+        Lease lease = new Lease(mask, onExpire);
+        leases.add(lease);
+        leaseCount++;
+        scheduler.postDelayed(lease.expiry, durationMs);
+        update();
+        return lease;
+    }
+
+    /** 当前生效的事件类型 */
+    public int currentMask() {
+        return appliedMask < 0 ? 0 : appliedMask;
+    }
+
+    /** 服务收到事件时调用 */
+    public void onEvent() {
+        events++;
+        VCPMetrics.increment("a11y.events");
+    }
+
+    /** 按当前计数窗口折算的每小时事件数 */
+    public long eventsPerHour() {
+        long elapsed = Math.max(1, clock.now() - countingSince);
+        return events * 3600_000L / elapsed;
+    }
+
+    /** {events, perHour, sinceMs, mask, baseMask, leases} */
+    public JSONObject stats() {
+        JSONObject result = new JSONObject();
+        try {
+            result.put("events", events)
+                    .put("perHour", eventsPerHour())
+                    .put("sinceMs", clock.now() - countingSince)
+                    .put("mask", currentMask())
+                    .put("baseMask", baseMask)
+                    .put("leases", leaseCount);
+        } catch (Exception ignored) {}
+        return result;
+    }
+
+    /** 取消所有临时订阅（服务断开时） */
+    public void releaseAll() {
+        for (Lease lease : new ArrayList<>(leases)) lease.release();
+    }
+
+    private void update() {
+        int mask = baseMask;
+        for (Lease lease : leases) mask |= lease.mask;
+        if (mask == appliedMask) return;
+        appliedMask = mask;
+        applier.apply(mask);
+    }
+}
@@ -0,0 +1,224 @@
+package com.vcp.vcpmobile;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 对冲请求（纯 Java，不依赖 Android）：
+ * 先向最优端点发出请求；若在对冲延迟内仍未建立连接，再向次优端点发起连接。
+ * 只对冲建连阶段：先建立连接的请求胜出并发送请求体，另一方通过 AbortHandle 立即断开，
+ * 同一次调用最多只有一个请求到达服务端（非流式 completions 的首字节要等整个生成结束，
+ * 按首字节对冲会多出一次完整的计费生成）。成功（建连耗时与完成耗时）与端点故障（EndpointFailure）会回写 EndpointSelector，
+ * 其他异常（如 4xx：密钥或模型错误）与端点健康无关，不计入。
+ */
+public class HedgedCall {
+    private static final AtomicInteger threadIndex = new AtomicInteger();
+    private static final ExecutorService pool = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "vcp-hedge-" + threadIndex.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+
+    /** 端点本身的故障（连接失败、超时、5xx 等），计入该端点的健康评分 */
+    public static class EndpointFailure extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        public EndpointFailure(String message) {
+            super(message);
+        }
+
+        public EndpointFailure(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    /**
+     * 单次请求：在指定端点上执行，建立连接后、发送请求体前调用 handle.markConnected()，
+     * 之后 isAborted() 为真时说明另一请求已胜出，不应再发送
+     */
+    public interface Attempt<T> {
+        T execute(String baseUrl, AbortHandle handle) throws Exception;
+    }
+
+    /** 同一次调用的各请求之间的建连竞争 */
+    private static class Race {
+        final List<AbortHandle> handles = new ArrayList<>();
+        AbortHandle winner;
+    }
+
+    /** 每个请求的中止句柄：请求方注册中止动作（如断开连接），落败或取消时被调用 */
+    public static class AbortHandle {
+        private final Race race;
+        private volatile boolean aborted = false;
+        private volatile Runnable onAbort;
+        // 以下由 race 保护
+        private long connectedAt = 0;
+        private long finishedAt = 0;
+        private boolean finished = false;
+        private final long startedAt = System.currentTimeMillis();
+
+        AbortHandle(Race race) {
+            this.race = race;
+        }
+
+        public void setOnAbort(Runnable action) {
+            onAbort = action;
+            if (aborted && action != null) action.run();
+        }
+
+        public boolean isAborted() {
+            return aborted;
+        }
+
+        /** 连接已建立：先到者胜出并中止其他请求，后到者中止自身（随后 isAborted() 为真） */
+        public void markConnected() {
+            List<AbortHandle> losers = new ArrayList<>();
+            synchronized (race) {
+                if (connectedAt == 0) connectedAt = System.currentTimeMillis();
+                if (race.winner == null && !aborted) {
+                    race.winner = this;
+                    for (AbortHandle other : race.handles) {
+                        if (other != this) losers.add(other);
+                    }
+                } else if (race.winner != this) {
+                    losers.add(this);
+                }
+                race.notifyAll();
+            }
+            for (AbortHandle loser : losers) loser.abort();
+        }
+
+        /** 建连耗时（未建连时为已等待的时间） */
+        long connectMs() {
+            synchronized (race) {
+                return (connectedAt == 0 ? System.currentTimeMillis() : connectedAt) - startedAt;
+            }
+        }
+
+        /** 完成耗时：从发起到请求结束（未结束时为已用时间） */
+        long totalMs() {
+            synchronized (race) {
+                return (finishedAt == 0 ? System.currentTimeMillis() : finishedAt) - startedAt;
+            }
+        }
+
+        void markFinished() {
+            synchronized (race) {
+                finished = true;
+                finishedAt = System.currentTimeMillis();
+                race.notifyAll();
+            }
+        }
+
+        /** @return 在超时前建立连接（或已结束）时返回 true */
+        boolean awaitConnected(long timeoutMs) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + timeoutMs;
+            synchronized (race) {
+                while (connectedAt == 0 && !finished) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) return false;
+                    race.wait(remaining);
+                }
+                return true;
+            }
+        }
+
+        void abort() {
+            aborted = true;
+            Runnable action = onAbort;
+            if (action != null) action.run();
+        }
+    }
+
+    private static class Outcome<T> {
+        final String baseUrl;
+        final AbortHandle handle;
+        final T value;
+        final Exception error;
+
+        Outcome(String baseUrl, AbortHandle handle, T value, Exception error) {
+            this.baseUrl = baseUrl;
+            this.handle = handle;
+            this.value = value;
+            this.error = error;
+        }
+    }
+
+    /**
+     * @param hedge 是否允许对冲（只有一个端点时自动关闭）
+     * @param hedgeDelayMs 发出对冲请求前等待建连的时间
+     * @return 首个成功请求的结果；全部失败时抛出最优端点的异常
+     */
+    public static <T> T execute(EndpointSelector selector, boolean hedge, long hedgeDelayMs,
+                                Attempt<T> attempt) throws Exception {
+        return execute(selector, selector.ranked(), hedge, hedgeDelayMs, attempt);
+    }
+
+    /**
+     * @param ranked 本次使用的端点顺序（如 selector.ranked(已失败的端点)）
+     */
+    public static <T> T execute(EndpointSelector selector, List<String> ranked, boolean hedge, long hedgeDelayMs,
+                                Attempt<T> attempt) throws Exception {
+        LinkedBlockingQueue<Outcome<T>> outcomes = new LinkedBlockingQueue<>();
+        Race race = new Race();
+
+        AbortHandle primary = start(ranked.get(0), attempt, outcomes, race);
+        AbortHandle secondary = null;
+        int launched = 1;
+        try {
+            // 主请求已建连（请求体已在发送）后不再对冲
+            if (hedge && ranked.size() > 1 && !primary.awaitConnected(hedgeDelayMs) && outcomes.isEmpty()) {
+                VCPMetrics.increment("hedge.fired");
+                secondary = start(ranked.get(1), attempt, outcomes, race);
+                launched = 2;
+            }
+
+            Exception firstError = null;
+            for (int finished = 0; finished < launched; finished++) {
+                Outcome<T> outcome = outcomes.take();
+                if (outcome.handle.isAborted()) continue;
+                if (outcome.error == null) {
+                    selector.recordSuccess(outcome.baseUrl, outcome.handle.connectMs(), outcome.handle.totalMs());
+                    if (outcome.handle == secondary) VCPMetrics.increment("hedge.won");
+                    AbortHandle loser = outcome.handle == primary ? secondary : primary;
+                    if (loser != null) loser.abort();
+                    return outcome.value;
+                }
+                if (outcome.error instanceof EndpointFailure) selector.recordFailure(outcome.baseUrl);
+                if (firstError == null || outcome.handle == primary) firstError = outcome.error;
+            }
+            throw firstError != null ? firstError : new Exception("请求已中止");
+        } catch (InterruptedException e) {
+            // 调用方取消：中止所有进行中的请求
+            primary.abort();
+            if (secondary != null) secondary.abort();
+            throw e;
+        }
+    }
+
+    private static <T> AbortHandle start(String baseUrl, Attempt<T> attempt,
+                                         LinkedBlockingQueue<Outcome<T>> outcomes, Race race) {
+        AbortHandle handle = new AbortHandle(race);
+        synchronized (race) {
+            // 另一请求已建连胜出时不再发起
+            if (race.winner != null) handle.aborted = true;
+            race.handles.add(handle);
+        }
+        pool.execute(() -> {
+            Outcome<T> outcome;
+            try {
+                if (handle.isAborted()) throw new Exception("请求已被对冲请求取代");
+                outcome = new Outcome<>(baseUrl, handle, attempt.execute(baseUrl, handle), null);
+            } catch (Exception e) {
+                outcome = new Outcome<>(baseUrl, handle, null, e);
+            }
+            handle.markFinished(); // 结束即视为不再等待建连
+            outcomes.add(outcome);
+        });
+        return handle;
+    }
+}
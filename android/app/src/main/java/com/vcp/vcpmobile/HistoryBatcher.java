@@ -0,0 +1,277 @@
+package com.vcp.vcpmobile;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 话题写入批处理器（write-behind）：
+ * 1. 滚动话题：按天或按来源复用同一个话题，而不是每次捕获新建 topic_<millis>
+ * 2. 待写入的消息对先落盘，延迟 FLUSH_DELAY_MS 后按话题合并为一次 vcpchat-append-history 请求
+ * 3. 消息 ID 在入队时确定，失败重试时服务端按 ID 去重，重复提交是安全的
+ * 4. 写入与媒体预取是可延后的后台任务，经 BackgroundScheduler 避开捕获请求与计费网络
+ *
+ * 话题模式（prefs: historyTopicMode）：
+ * - daily：每天一个话题（默认）
+ * - source：每种来源（截图/剪贴板/分享）一个话题
+ * - capture：每次捕获一个新话题（旧行为）
+ */
+public class HistoryBatcher {
+    private static final String PENDING_FILE = "history_pending.json";
+    private static final long FLUSH_DELAY_MS = 1500;
+    private static final int MAX_BATCH_PAIRS = 20;
+    private static final long MAX_RETRY_DELAY_MS = 5 * 60 * 1000;
+
+    public static final String SOURCE_SCREENSHOT = "screenshot";
+    public static final String SOURCE_CLIPBOARD = "clipboard";
+    public static final String SOURCE_SHARE = "share";
+    public static final String SOURCE_VOICE = "voice";
+
+    private static HistoryBatcher sInstance;
+
+    private final Context context;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    // 每项：{ topicId, topicName, messages: [user, assistant] }
+    private final List<JSONObject> pending = new ArrayList<>();
+    // 最近一次安排的写入，只在持锁的 scheduleFlush 中读写；已触发的以 isDone 判断
+    private ScheduledFuture<?> scheduledFlush;
+    private long retryDelayMs = 0;
+
+    public static synchronized HistoryBatcher get(Context ctx) {
+        if (sInstance == null) {
+            sInstance = new HistoryBatcher(ctx.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /** 丢弃进程内实例，下次 get() 按新的 Context 重建（Robolectric 每个用例的 Application 不同） */
+    static synchronized void reset() {
+        if (sInstance != null) sInstance.executor.shutdownNow();
+        sInstance = null;
+    }
+
+    private HistoryBatcher(Context context) {
+        this.context = context;
+        loadPending();
+    }
+
+    /**
+     * 将一次捕获的用户消息和 AI 回复加入写入队列
+     * @param source 捕获来源（SOURCE_*），用于按来源滚动话题
+     * @param captureTopicName capture 模式下的话题名
+     */
+    public synchronized void enqueue(String source, String userContent, String aiContent, String captureTopicName) {
+        enqueue(source, userContent, aiContent, captureTopicName, null);
+    }
+
+    /**
+     * @param traceId 所属捕获的 trace id（VCPTrace），写入完成时在该 trace 上记录 history.flush；可为 null
+     */
+    public synchronized void enqueue(String source, String userContent, String aiContent, String captureTopicName,
+                                     String traceId) {
+        enqueue(source, userContent, aiContent, captureTopicName, traceId, null);
+    }
+
+    /**
+     * @param userAttachments 用户消息的附件引用（AttachmentUploader.Attachment.toReference），可为 null
+     */
+    public synchronized void enqueue(String source, String userContent, String aiContent, String captureTopicName,
+                                     String traceId, JSONArray userAttachments) {
+        try {
+            SharedPreferences prefs = VCPApiHelper.getPrefs(context);
+            long now = System.currentTimeMillis();
+            String captureId = now + "_" + Integer.toHexString((int) (Math.random() * 0x10000));
+
+            String mode = prefs.getString("historyTopicMode", "daily");
+            String topicId;
+            String topicName;
+            if ("capture".equals(mode)) {
+                topicId = "topic_" + now;
+                topicName = captureTopicName;
+            } else if ("source".equals(mode)) {
+                topicId = "topic_mobile_" + source;
+                topicName = sourceLabel(source);
+            } else {
+                String day = new SimpleDateFormat("yyyyMMdd", Locale.ROOT).format(new Date(now));
+                topicId = "topic_mobile_" + day;
+                topicName = "📱 手机捕获 " + new SimpleDateFormat("yyyy-MM-dd", Locale.ROOT).format(new Date(now));
+            }
+
+            JSONArray messages = new JSONArray();
+            JSONObject userMessage = new JSONObject()
+                    .put("id", "msg_" + captureId + "_user")
+                    .put("role", "user")
+                    .put("content", userContent)
+                    .put("timestamp", now);
+            if (userAttachments != null && userAttachments.length() > 0) {
+                userMessage.put("attachments", userAttachments);
+            }
+            messages.put(userMessage);
+            messages.put(new JSONObject()
+                    .put("id", "msg_" + captureId + "_ai")
+                    .put("role", "assistant")
+                    .put("content", aiContent)
+                    .put("timestamp", now + 1));
+
+            JSONObject entry = new JSONObject()
+                    .put("topicId", topicId)
+                    .put("topicName", topicName)
+                    .put("messages", messages);
+            if (traceId != null) entry.put("traceId", traceId);
+            pending.add(entry);
+            savePending();
+            VCPTrace.instant(traceId, "history.enqueue", "topicId", topicId);
+            VCPApiHelper.fileLog("[History] 入队: topicId=" + topicId + " 待写入=" + pending.size());
+            // 回复中的图片等媒体提前下载，打开话题时直接从本地缓存显示（弱网下等捕获请求结束后再下载）
+            BackgroundScheduler.get(context).defer(null, () -> MediaPrefetcher.get(context).prefetchText(aiContent));
+
+            // 退避重试期间保持原定的重试时间，新消息随下一次重试一起写入；退避只在写入成功后清零
+            if (retryDelayMs == 0) scheduleFlush(pending.size() >= MAX_BATCH_PAIRS ? 0 : FLUSH_DELAY_MS);
+        } catch (Exception e) {
+            VCPApiHelper.fileLog("[History] 入队失败: " + e.getMessage());
+        }
+    }
+
+    /** 立即写入所有待写入的消息（异步） */
+    public synchronized void flushNow() {
+        scheduleFlush(0);
+    }
+
+    public synchronized int pendingCount() {
+        return pending.size();
+    }
+
+    private static String sourceLabel(String source) {
+        switch (source) {
+            case SOURCE_SCREENSHOT: return "📸 手机截图";
+            case SOURCE_CLIPBOARD: return "📋 手机剪贴板";
+            case SOURCE_SHARE: return "📤 手机分享";
+            case SOURCE_VOICE: return "🎙️ 手机语音";
+            default: return "📱 手机捕获";
+        }
+    }
+
+    private void scheduleFlush(long delayMs) {
+        if (scheduledFlush != null && !scheduledFlush.isDone()) {
+            if (scheduledFlush.getDelay(TimeUnit.MILLISECONDS) <= delayMs) return;
+            scheduledFlush.cancel(false);
+        }
+        // 到期后交给 BackgroundScheduler，捕获请求进行中或按流量计费的网络下暂缓
+        scheduledFlush = executor.schedule(
+                () -> BackgroundScheduler.get(context).defer("history.flush", this::flush),
+                delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void flush() {
+        // 取出快照并按话题分组（保持入队顺序），网络请求在锁外执行
+        Map<String, List<JSONObject>> groups = new LinkedHashMap<>();
+        // 不清空 scheduledFlush：此时它可能已是之后入队安排的新一次写入
+        synchronized (this) {
+            for (JSONObject entry : pending) {
+                String topicId = entry.optString("topicId");
+                List<JSONObject> group = groups.get(topicId);
+                if (group == null) {
+                    group = new ArrayList<>();
+                    groups.put(topicId, group);
+                }
+                if (group.size() < MAX_BATCH_PAIRS) group.add(entry);
+            }
+        }
+        if (groups.isEmpty()) return;
+
+        SharedPreferences prefs = VCPApiHelper.getPrefs(context);
+        List<JSONObject> done = new ArrayList<>();
+        boolean failed = false;
+        for (Map.Entry<String, List<JSONObject>> group : groups.entrySet()) {
+            List<JSONObject> entries = group.getValue();
+            JSONArray messages = new JSONArray();
+            for (JSONObject entry : entries) {
+                JSONArray pair = entry.optJSONArray("messages");
+                if (pair == null) continue;
+                for (int i = 0; i < pair.length(); i++) {
+                    messages.put(pair.opt(i));
+                }
+            }
+            // 同一话题内以最新一项的话题名为准（capture 模式下每项话题不同，不会合并）
+            String topicName = entries.get(entries.size() - 1).optString("topicName");
+            long startUs = VCPTrace.now();
+            boolean ok = VCPApiHelper.appendToAgentHistory(prefs, group.getKey(), topicName, messages);
+            long endUs = VCPTrace.now();
+            // 同一批次内每次捕获的 trace 都记录这次写入
+            for (JSONObject entry : entries) {
+                VCPTrace.complete(entry.optString("traceId", null), "history.flush", startUs, endUs,
+                        "messages", String.valueOf(messages.length()), "ok", String.valueOf(ok));
+            }
+            VCPApiHelper.fileLog("[History] 批量写入 topicId=" + group.getKey() + " 消息=" + messages.length() + " 结果=" + ok);
+            if (ok) {
+                done.addAll(entries);
+            } else {
+                failed = true;
+            }
+        }
+
+        synchronized (this) {
+            pending.removeAll(done);
+            savePending();
+            if (failed) {
+                retryDelayMs = retryDelayMs == 0 ? 5000 : Math.min(retryDelayMs * 2, MAX_RETRY_DELAY_MS);
+                VCPApiHelper.fileLog("[History] 写入失败，" + retryDelayMs + "ms 后重试，待写入=" + pending.size());
+                scheduleFlush(retryDelayMs);
+            } else {
+                retryDelayMs = 0;
+                if (!pending.isEmpty()) scheduleFlush(0);
+            }
+        }
+    }
+
+    private void loadPending() {
+        File file = new File(context.getFilesDir(), PENDING_FILE);
+        if (!file.exists()) return;
+        try (FileInputStream fis = new FileInputStream(file)) {
+            String content = new String(fis.readAllBytes(), StandardCharsets.UTF_8);
+            JSONArray arr = new JSONArray(content);
+            for (int i = 0; i < arr.length(); i++) {
+                pending.add(arr.getJSONObject(i));
+            }
+            if (!pending.isEmpty()) {
+                VCPApiHelper.fileLog("[History] 恢复待写入 " + pending.size() + " 项");
+                scheduleFlush(FLUSH_DELAY_MS);
+            }
+        } catch (Exception e) {
+            VCPApiHelper.fileLog("[History] 读取待写入队列失败: " + e.getMessage());
+        }
+    }
+
+    private void savePending() {
+        File file = new File(context.getFilesDir(), PENDING_FILE);
+        if (pending.isEmpty()) {
+            file.delete();
+            return;
+        }
+        JSONArray arr = new JSONArray();
+        for (JSONObject entry : pending) arr.put(entry);
+        try (FileOutputStream fos = new FileOutputStream(file)) {
+            fos.write(arr.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            VCPApiHelper.fileLog("[History] 保存待写入队列失败: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package com.vcp.vcpmobile;
+
+import android.content.Context;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * GET 请求的磁盘缓存（条件请求）：
+ * 1. 带 ETag / Last-Modified 的 200 响应以 gzip 压缩存盘（<key>.gz + <key>.meta）
+ * 2. 再次请求时携带 If-None-Match / If-Modified-Since，服务端返回 304 时直接使用本地副本，响应体 0 字节
+ * 3. 缓存总大小超过 MAX_CACHE_BYTES 时按最近使用时间淘汰
+ * 4. 网络失败时返回本地副本（stale=true）
+ *
+ * 缓存键包含 Authorization 摘要，不同账号不会读到彼此的缓存。
+ * 发送条件请求前先在锁内把本地副本读入内存，304 时使用这份快照，不受并发写入与淘汰影响；
+ * 副本缺失或损坏时删除该条目并改为普通 GET。
+ */
+public class HttpCache {
+    private static final String CACHE_DIR = "http_cache";
+    private static final long MAX_CACHE_BYTES = 16L * 1024 * 1024;
+
+    /** 请求结果；body 为解压后的文本 */
+    public static class Response {
+        public int status;
+        public String body;
+        public String contentType;
+        // 响应来自本地副本（304 或网络失败）
+        public boolean fromCache;
+        public boolean notModified;
+        public boolean stale;
+        // 本地副本的元数据（仅缓存内部使用）
+        JSONObject meta;
+    }
+
+    private static HttpCache sInstance;
+
+    private final File dir;
+
+    public static synchronized HttpCache get(Context ctx) {
+        if (sInstance == null) {
+            sInstance = new HttpCache(new File(ctx.getCacheDir(), CACHE_DIR));
+        }
+        return sInstance;
+    }
+
+    HttpCache(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * 条件 GET
+     * @param headers 额外请求头（如 Authorization），可为 null
+     */
+    public Response fetch(String url, Map<String, String> headers) throws IOException {
+        String key = cacheKey(url, headers != null ? headers.get("Authorization") : null);
+        File metaFile = new File(dir, key + ".meta");
+        File bodyFile = new File(dir, key + ".gz");
+        Response cached = readCached(metaFile, bodyFile);
+        JSONObject meta = cached != null ? cached.meta : null;
+
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            conn.setRequestMethod("GET");
+            conn.setConnectTimeout(15000);
+            conn.setReadTimeout(30000);
+            if (headers != null) {
+                for (Map.Entry<String, String> h : headers.entrySet()) {
+                    conn.setRequestProperty(h.getKey(), h.getValue());
+                }
+            }
+            if (meta != null) {
+                String etag = meta.optString("etag", "");
+                String lastModified = meta.optString("lastModified", "");
+                if (!etag.isEmpty()) conn.setRequestProperty("If-None-Match", etag);
+                if (!lastModified.isEmpty()) conn.setRequestProperty("If-Modified-Since", lastModified);
+            }
+
+            int code;
+            try {
+                code = conn.getResponseCode();
+            } catch (IOException e) {
+                if (meta == null) throw e;
+                VCPApiHelper.fileLog("[HttpCache] 网络失败，返回本地副本: " + url);
+                VCPMetrics.increment("httpcache.stale");
+                cached.stale = true;
+                return cached;
+            }
+
+            if (code == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                if (cached == null) {
+                    // 未发送校验器却收到 304（代理或服务端异常），没有可用的副本，改为普通 GET
+                    VCPApiHelper.fileLog("[HttpCache] 意外的 304，重新请求: " + url);
+                    conn.disconnect();
+                    return fetchUnconditional(url, headers);
+                }
+                VCPMetrics.increment("httpcache.hit");
+                VCPMetrics.add("httpcache.bytesSaved", meta.optLong("size", 0));
+                touch(bodyFile);
+                cached.notModified = true;
+                return cached;
+            }
+
+            Response response = new Response();
+            response.status = code;
+            response.contentType = conn.getContentType();
+            InputStream in = code >= 400 ? conn.getErrorStream() : conn.getInputStream();
+            byte[] bytes = in != null ? in.readAllBytes() : new byte[0];
+            response.body = new String(bytes, StandardCharsets.UTF_8);
+            VCPMetrics.increment("httpcache.miss");
+
+            String etag = conn.getHeaderField("ETag");
+            String lastModified = conn.getHeaderField("Last-Modified");
+            if (code == 200 && (etag != null || lastModified != null)) {
+                store(metaFile, bodyFile, url, etag, lastModified, response.contentType, bytes);
+            } else if (code == 200 && meta != null) {
+                // 服务端不再提供校验器，旧副本无法再验证
+                remove(metaFile, bodyFile);
+            }
+            return response;
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    /** 不带校验器的 GET，不读写缓存 */
+    private Response fetchUnconditional(String url, Map<String, String> headers) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            conn.setRequestMethod("GET");
+            conn.setConnectTimeout(15000);
+            conn.setReadTimeout(30000);
+            conn.setUseCaches(false);
+            if (headers != null) {
+                for (Map.Entry<String, String> h : headers.entrySet()) {
+                    conn.setRequestProperty(h.getKey(), h.getValue());
+                }
+            }
+            Response response = new Response();
+            response.status = conn.getResponseCode();
+            response.contentType = conn.getContentType();
+            InputStream in = response.status >= 400 ? conn.getErrorStream() : conn.getInputStream();
+            response.body = in != null ? new String(in.readAllBytes(), StandardCharsets.UTF_8) : "";
+            VCPMetrics.increment("httpcache.miss");
+            return response;
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    public synchronized void clear() {
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        for (File f : files) f.delete();
+    }
+
+    /** @return {entries, bytes} */
+    public synchronized long[] stats() {
+        File[] files = dir.listFiles();
+        if (files == null) return new long[]{0, 0};
+        long entries = 0;
+        long bytes = 0;
+        for (File f : files) {
+            if (f.getName().endsWith(".gz")) entries++;
+            bytes += f.length();
+        }
+        return new long[]{entries, bytes};
+    }
+
+    // ========== 存储 ==========
+
+    /**
+     * 在锁内读出元数据与解压后的响应体（与 store / trim 互斥）
+     * @return 没有副本时返回 null；副本不完整或损坏时删除并返回 null
+     */
+    private synchronized Response readCached(File metaFile, File bodyFile) {
+        if (!metaFile.exists() && !bodyFile.exists()) return null;
+        try {
+            if (!metaFile.exists() || !bodyFile.exists()) throw new IOException("副本不完整");
+            JSONObject meta;
+            try (FileInputStream fis = new FileInputStream(metaFile)) {
+                meta = new JSONObject(new String(fis.readAllBytes(), StandardCharsets.UTF_8));
+            }
+            Response response = new Response();
+            response.status = 200;
+            response.fromCache = true;
+            response.contentType = meta.optString("contentType", null);
+            response.meta = meta;
+            try (InputStream in = new GZIPInputStream(new FileInputStream(bodyFile))) {
+                response.body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+            return response;
+        } catch (Exception e) {
+            VCPApiHelper.fileLog("[HttpCache] 丢弃损坏的缓存 " + bodyFile.getName() + ": " + e.getMessage());
+            VCPMetrics.increment("httpcache.corrupt");
+            metaFile.delete();
+            bodyFile.delete();
+            return null;
+        }
+    }
+
+    private synchronized void touch(File bodyFile) {
+        bodyFile.setLastModified(System.currentTimeMillis());
+    }
+
+    private synchronized void remove(File metaFile, File bodyFile) {
+        metaFile.delete();
+        bodyFile.delete();
+    }
+
+    private synchronized void store(File metaFile, File bodyFile, String url, String etag, String lastModified,
+                                    String contentType, byte[] body) {
+        if (!dir.isDirectory() && !dir.mkdirs()) return;
+        // 单个响应超过总上限的 1/4 时不缓存，避免一次写入清空整个缓存
+        if (body.length > MAX_CACHE_BYTES / 4) return;
+        File tmp = new File(dir, bodyFile.getName() + ".tmp");
+        try {
+            try (GZIPOutputStream gz = new GZIPOutputStream(new FileOutputStream(tmp))) {
+                gz.write(body);
+            }
+            if (!tmp.renameTo(bodyFile)) throw new IOException("rename failed");
+            JSONObject meta = new JSONObject()
+                    .put("url", url)
+                    .put("etag", etag != null ? etag : "")
+                    .put("lastModified", lastModified != null ? lastModified : "")
+                    .put("contentType", contentType != null ? contentType : "")
+                    .put("size", body.length)
+                    .put("storedAt", System.currentTimeMillis());
+            try (FileOutputStream fos = new FileOutputStream(metaFile)) {
+                fos.write(meta.toString().getBytes(StandardCharsets.UTF_8));
+            }
+            trim();
+        } catch (Exception e) {
+            tmp.delete();
+            metaFile.delete();
+            bodyFile.delete();
+            VCPApiHelper.fileLog("[HttpCache] 写入缓存失败: " + e.getMessage());
+        }
+    }
+
+    /** 按最近使用时间（.gz 的修改时间）淘汰，直到总大小不超过上限 */
+    private void trim() {
+        File[] bodies = dir.listFiles((d, name) -> name.endsWith(".gz"));
+        if (bodies == null) return;
+        long total = 0;
+        for (File f : bodies) total += f.length();
+        if (total <= MAX_CACHE_BYTES) return;
+
+        Arrays.sort(bodies, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File body : bodies) {
+            if (total <= MAX_CACHE_BYTES) break;
+            total -= body.length();
+            String key = body.getName().substring(0, body.getName().length() - ".gz".length());
+            body.delete();
+            new File(dir, key + ".meta").delete();
+            VCPMetrics.increment("httpcache.evicted");
+        }
+    }
+
+    static String cacheKey(String url, String authorization) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            md.update(url.getBytes(StandardCharsets.UTF_8));
+            if (authorization != null) {
+                md.update((byte) '\n');
+                md.update(authorization.getBytes(StandardCharsets.UTF_8));
+            }
+            StringBuilder sb = new StringBuilder();
+            for (byte b : md.digest()) sb.append(String.format("%02x", b));
+            return sb.toString();
+        } catch (Exception e) {
+            return Integer.toHexString(url.hashCode());
+        }
+    }
+}
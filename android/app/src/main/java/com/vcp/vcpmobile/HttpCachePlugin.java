@@ -0,0 +1,85 @@
+package com.vcp.vcpmobile;
+
+import com.getcapacitor.JSObject;
+import com.getcapacitor.Plugin;
+import com.getcapacitor.PluginCall;
+import com.getcapacitor.PluginMethod;
+import com.getcapacitor.annotation.CapacitorPlugin;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Capacitor 插件：带磁盘缓存的条件 GET（见 HttpCache）
+ * JS 调用: HttpCache.get({ url, headers? }) → { status, body, contentType, fromCache, notModified, stale }
+ *          HttpCache.clear() / HttpCache.stats()
+ */
+@CapacitorPlugin(name = "HttpCache")
+public class HttpCachePlugin extends Plugin {
+    // 同时进行的条件请求数上限，超出的排队等待（避免批量刷新时每次调用各起一个线程）
+    private static final int MAX_CONCURRENT = 4;
+    private static final AtomicInteger threadIndex = new AtomicInteger();
+
+    private final ExecutorService pool = Executors.newFixedThreadPool(MAX_CONCURRENT, r -> {
+        Thread t = new Thread(r, "vcp-httpcache-" + threadIndex.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+
+    @PluginMethod
+    public void get(PluginCall call) {
+        String url = call.getString("url");
+        if (url == null || url.isEmpty()) {
+            call.reject("url 为空");
+            return;
+        }
+        Map<String, String> headers = new HashMap<>();
+        JSObject jsHeaders = call.getObject("headers");
+        if (jsHeaders != null) {
+            Iterator<String> keys = jsHeaders.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                headers.put(key, jsHeaders.optString(key));
+            }
+        }
+
+        // 网络请求不占用插件调用线程
+        pool.execute(() -> {
+            try {
+                HttpCache.Response response = HttpCache.get(getContext()).fetch(url, headers);
+                JSObject ret = new JSObject();
+                ret.put("status", response.status);
+                ret.put("body", response.body);
+                ret.put("contentType", response.contentType);
+                ret.put("fromCache", response.fromCache);
+                ret.put("notModified", response.notModified);
+                ret.put("stale", response.stale);
+                call.resolve(ret);
+            } catch (Exception e) {
+                call.reject("请求失败: " + e.getMessage(), e);
+            }
+        });
+    }
+
+    @PluginMethod
+    public void clear(PluginCall call) {
+        HttpCache.get(getContext()).clear();
+        call.resolve();
+    }
+
+    @PluginMethod
+    public void stats(PluginCall call) {
+        long[] stats = HttpCache.get(getContext()).stats();
+        JSObject ret = new JSObject();
+        ret.put("entries", stats[0]);
+        ret.put("bytes", stats[1]);
+        ret.put("hits", VCPMetrics.get("httpcache.hit"));
+        ret.put("misses", VCPMetrics.get("httpcache.miss"));
+        ret.put("bytesSaved", VCPMetrics.get("httpcache.bytesSaved"));
+        call.resolve(ret);
+    }
+}
@@ -0,0 +1,149 @@
+package com.vcp.vcpmobile;
+
+import android.content.ContentResolver;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.net.Uri;
+import android.os.Build;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 图片缩放与编码（截图、剪贴板图片共用）：
+ * 先只读尺寸，再按 inSampleSize 降采样解码，最后缩放到长边 MAX_DIM 并压缩为 JPEG base64。
+ * 原图不会以全尺寸进入内存，复制超大图片也不会 OOM。
+ */
+public class ImageEncoder {
+    public static final int MAX_DIM = 1024;
+    public static final int JPEG_QUALITY = 60;
+
+    /**
+     * 读取本地图片文件并编码
+     * @return JPEG base64，无法解码时返回 null
+     */
+    public static String encodeFile(String path) {
+        byte[] jpeg = encodeFileJpeg(path);
+        return jpeg != null ? Base64Codec.encode(jpeg) : null;
+    }
+
+    /**
+     * 读取本地图片文件并压缩为 JPEG（附件上传直接使用字节，不经过 base64）
+     * @return JPEG 字节，无法解码时返回 null
+     */
+    public static byte[] encodeFileJpeg(String path) {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, bounds);
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) return null;
+
+        BitmapFactory.Options opts = new BitmapFactory.Options();
+        opts.inSampleSize = calculateInSampleSize(bounds.outWidth, bounds.outHeight, MAX_DIM);
+        return compressBitmap(BitmapFactory.decodeFile(path, opts));
+    }
+
+    /**
+     * 读取 content:// 图片并编码（流需打开两次：一次读尺寸，一次解码）
+     * @return JPEG base64，无法解码时返回 null
+     */
+    public static String encodeUri(ContentResolver resolver, Uri uri) throws IOException {
+        int[] size = readBounds(resolver, uri);
+        if (size == null) return null;
+
+        BitmapFactory.Options opts = new BitmapFactory.Options();
+        opts.inSampleSize = calculateInSampleSize(size[0], size[1], MAX_DIM);
+        try (InputStream in = resolver.openInputStream(uri)) {
+            if (in == null) return null;
+            return encodeBitmap(BitmapFactory.decodeStream(in, null, opts));
+        }
+    }
+
+    /**
+     * 只读取图片尺寸，不解码像素
+     * @return {宽, 高}，无法识别时返回 null
+     */
+    public static int[] readBounds(ContentResolver resolver, Uri uri) throws IOException {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        try (InputStream in = resolver.openInputStream(uri)) {
+            if (in == null) return null;
+            BitmapFactory.decodeStream(in, null, bounds);
+        }
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) return null;
+        return new int[]{bounds.outWidth, bounds.outHeight};
+    }
+
+    /**
+     * 估算 encodeUri 解码一张图片的峰值内存（降采样后的 ARGB_8888 位图 + 缩放后的副本）
+     */
+    public static long estimateDecodeBytes(int width, int height) {
+        int sample = calculateInSampleSize(width, height, MAX_DIM);
+        long decoded = (long) (width / sample) * (height / sample) * 4;
+        long scaled = (long) MAX_DIM * MAX_DIM * 4;
+        return decoded + Math.min(decoded, scaled);
+    }
+
+    /**
+     * 缩放到长边 MAX_DIM 并压缩为 JPEG base64，编码后回收 bitmap
+     */
+    public static String encodeBitmap(Bitmap bitmap) {
+        byte[] jpeg = compressBitmap(bitmap);
+        return jpeg != null ? Base64Codec.encode(jpeg) : null;
+    }
+
+    /**
+     * 缩放到长边 MAX_DIM 并压缩为 JPEG 字节，编码后回收 bitmap
+     */
+    public static byte[] compressBitmap(Bitmap bitmap) {
+        if (bitmap == null) return null;
+
+        int w = bitmap.getWidth();
+        int h = bitmap.getHeight();
+        if (Math.max(w, h) > MAX_DIM) {
+            float scale = (float) MAX_DIM / Math.max(w, h);
+            w = Math.round(w * scale);
+            h = Math.round(h * scale);
+            Bitmap scaled = Bitmap.createScaledBitmap(bitmap, w, h, true);
+            if (scaled != bitmap) bitmap.recycle();
+            bitmap = scaled;
+        }
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, baos);
+        bitmap.recycle();
+        return baos.toByteArray();
+    }
+
+    /**
+     * 取不超过目标尺寸两倍的最大 2 的幂采样率（最终由 createScaledBitmap 精确缩放）
+     */
+    static int calculateInSampleSize(int width, int height, int maxDim) {
+        int sample = 1;
+        int longEdge = Math.max(width, height);
+        while (longEdge / (sample * 2) >= maxDim) {
+            sample *= 2;
+        }
+        return sample;
+    }
+
+    // ========== 区域解码 ==========
+    // Android 12 起 isShareable 参数被忽略并弃用，改用不带该参数的重载
+
+    @SuppressWarnings("deprecation")
+    static BitmapRegionDecoder newRegionDecoder(String path) throws IOException {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+            return BitmapRegionDecoder.newInstance(path);
+        }
+        return BitmapRegionDecoder.newInstance(path, false);
+    }
+
+    @SuppressWarnings("deprecation")
+    static BitmapRegionDecoder newRegionDecoder(byte[] data) throws IOException {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+            return BitmapRegionDecoder.newInstance(data, 0, data.length);
+        }
+        return BitmapRegionDecoder.newInstance(data, 0, data.length, false);
+    }
+}
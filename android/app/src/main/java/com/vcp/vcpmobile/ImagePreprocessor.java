@@ -0,0 +1,255 @@
+package com.vcp.vcpmobile;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 截图发送前的预处理（替代直接缩放到长边 ImageEncoder.MAX_DIM）：
+ * 1. 裁掉状态栏、导航栏（截图宽度与屏幕一致时按系统尺寸裁剪）以及四周的纯色边距
+ *    （在降采样的缩略图上检测，不解码原图）
+ * 2. 长截图（高宽比超过 TALL_ASPECT）按 TILE_ASPECT 切成相互重叠的分块，
+ *    每块单独缩放，文字保持可读；普通截图仍为一张
+ * 3. 所有分块的总像素不超过 PIXEL_BUDGET，超出时整体等比缩小
+ * 4. 分块用 BitmapRegionDecoder 按区域降采样解码，缩放与 JPEG 编码并行执行
+ *    （MemoryGovernor 报告内存紧张时改为逐块执行）
+ *
+ * 1080×8000 的长截图原先缩到 138×1024，现在切成 6 块约 700 宽的图片一起发送。
+ */
+public class ImagePreprocessor {
+    // 高宽比超过此值才分块（20:9 的普通截图约 2.2，不分块）
+    static final float TALL_ASPECT = 2.5f;
+    // 分块的高宽比（与普通截图接近）
+    static final float TILE_ASPECT = 1.5f;
+    // 相邻分块的重叠比例，避免文字行被切断
+    static final float TILE_OVERLAP = 0.1f;
+    static final int MAX_TILES = 8;
+    // 分块缩放后的长边上限（块数达到 MAX_TILES 后每块会变高）
+    static final int TILE_MAX_EDGE = 2048;
+    // 所有分块缩放后的总像素上限
+    static final long PIXEL_BUDGET = 4_000_000L;
+    // 纯色判定：每个通道与该行（列）首个像素的差不超过此值
+    private static final int UNIFORM_TOLERANCE = 12;
+    // 缩略图宽度下限（边距检测用）
+    private static final int THUMB_MIN_WIDTH = 160;
+    private static final int ENCODE_THREADS = 3;
+
+    /** 预处理结果：一张或多张 JPEG */
+    public static class Result {
+        public final List<byte[]> jpegs;
+        // 裁剪后保留的原图区域
+        public final Rect crop;
+
+        Result(List<byte[]> jpegs, Rect crop) {
+            this.jpegs = jpegs;
+            this.crop = crop;
+        }
+
+        public long totalBytes() {
+            long total = 0;
+            for (byte[] jpeg : jpegs) total += jpeg.length;
+            return total;
+        }
+    }
+
+    /** 分块方案：原图坐标中的区域与统一的输出缩放比例 */
+    static class Plan {
+        final List<int[]> tiles;  // {left, top, right, bottom}
+        final float scale;
+
+        Plan(List<int[]> tiles, float scale) {
+            this.tiles = tiles;
+            this.scale = scale;
+        }
+    }
+
+    /**
+     * 读取截图文件，裁剪并按需分块后编码为 JPEG
+     * @return 无法解码时返回 null
+     */
+    public static Result process(String path) throws Exception {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, bounds);
+        int width = bounds.outWidth;
+        int height = bounds.outHeight;
+        if (width <= 0 || height <= 0) return null;
+
+        Rect crop = detectContent(path, width, height);
+        Plan plan = plan(crop.width(), crop.height());
+        VCPApiHelper.fileLog("[Image] " + width + "x" + height + " 裁剪为 " + crop.toShortString()
+                + "，分块=" + plan.tiles.size() + " 缩放=" + String.format("%.2f", plan.scale));
+
+        BitmapRegionDecoder decoder = ImageEncoder.newRegionDecoder(path);
+        if (decoder == null) return null;
+        // 内存紧张时逐块处理，同一时间只有一块的位图在内存中
+        int threads = MemoryGovernor.underPressure() ? 1 : ENCODE_THREADS;
+        if (threads == 1 && plan.tiles.size() > 1) VCPMetrics.increment("image.serialUnderPressure");
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(plan.tiles.size(), threads));
+        try {
+            List<Future<byte[]>> futures = new ArrayList<>();
+            for (int[] tile : plan.tiles) {
+                Rect region = new Rect(crop.left + tile[0], crop.top + tile[1], crop.left + tile[2], crop.top + tile[3]);
+                futures.add(pool.submit(() -> encodeRegion(decoder, region, plan.scale)));
+            }
+            List<byte[]> jpegs = new ArrayList<>();
+            for (Future<byte[]> future : futures) {
+                byte[] jpeg = future.get();
+                if (jpeg == null) return null;
+                jpegs.add(jpeg);
+            }
+            VCPMetrics.add("image.tiles", jpegs.size());
+            VCPMetrics.add("image.croppedPixels", (long) width * height - (long) crop.width() * crop.height());
+            return new Result(jpegs, crop);
+        } finally {
+            pool.shutdownNow();
+            decoder.recycle();
+        }
+    }
+
+    /** 按区域降采样解码（解码器内部串行），再精确缩放并编码（各分块并行） */
+    private static byte[] encodeRegion(BitmapRegionDecoder decoder, Rect region, float scale) {
+        BitmapFactory.Options opts = new BitmapFactory.Options();
+        int sample = 1;
+        while (sample * 2 * scale <= 1f) sample *= 2;
+        opts.inSampleSize = sample;
+        Bitmap bitmap = decoder.decodeRegion(region, opts);
+        if (bitmap == null) return null;
+
+        int w = Math.max(1, Math.round(region.width() * scale));
+        int h = Math.max(1, Math.round(region.height() * scale));
+        if (bitmap.getWidth() != w || bitmap.getHeight() != h) {
+            Bitmap scaled = Bitmap.createScaledBitmap(bitmap, w, h, true);
+            if (scaled != bitmap) bitmap.recycle();
+            bitmap = scaled;
+        }
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.JPEG, ImageEncoder.JPEG_QUALITY, baos);
+        bitmap.recycle();
+        return baos.toByteArray();
+    }
+
+    // ========== 裁剪 ==========
+
+    /** 检测需要保留的内容区域：先去掉系统栏，再去掉四周纯色边距 */
+    private static Rect detectContent(String path, int width, int height) {
+        Rect crop = new Rect(0, 0, width, height);
+        Resources system = Resources.getSystem();
+        if (width == system.getDisplayMetrics().widthPixels) {
+            int statusBar = dimen(system, "status_bar_height");
+            int navigationBar = dimen(system, "navigation_bar_height");
+            // 导航栏只在截图覆盖整个屏幕高度时出现在底部
+            if (height < system.getDisplayMetrics().heightPixels) navigationBar = 0;
+            if (statusBar + navigationBar < height / 2) {
+                crop.top += statusBar;
+                crop.bottom -= navigationBar;
+            }
+        }
+
+        BitmapFactory.Options opts = new BitmapFactory.Options();
+        opts.inSampleSize = 1;
+        while (width / (opts.inSampleSize * 2) >= THUMB_MIN_WIDTH) opts.inSampleSize *= 2;
+        Bitmap thumb = BitmapFactory.decodeFile(path, opts);
+        if (thumb == null) return crop;
+        int sample = opts.inSampleSize;
+        int tw = thumb.getWidth();
+        int th = thumb.getHeight();
+        int[] pixels = new int[tw * th];
+        thumb.getPixels(pixels, 0, tw, 0, 0, tw, th);
+        thumb.recycle();
+
+        // 缩略图的一个像素对应原图 sample 个像素，换算时取外侧边界，内容不会被裁掉
+        int[] margins = uniformMargins(pixels, tw, th,
+                ceilDiv(crop.top, sample), crop.bottom / sample);
+        if (margins == null) return crop;
+        Rect content = new Rect(
+                margins[0] * sample,
+                Math.max(crop.top, margins[1] * sample),
+                Math.min(width, margins[2] * sample),
+                Math.min(crop.bottom, margins[3] * sample));
+        // 裁剪后至少保留一半宽高，否则视为整张是纯色（如空白页），不裁边距
+        if (content.width() < width / 2 || content.height() < crop.height() / 2) return crop;
+        return content;
+    }
+
+    private static int dimen(Resources resources, String name) {
+        int id = resources.getIdentifier(name, "dimen", "android");
+        return id > 0 ? resources.getDimensionPixelSize(id) : 0;
+    }
+
+    /**
+     * 在 [top, bottom) 行范围内检测四周的纯色边距
+     * @return 内容区域 {left, top, right, bottom}（不含边距）；整个区域都是纯色时返回 null
+     */
+    static int[] uniformMargins(int[] pixels, int width, int height, int top, int bottom) {
+        bottom = Math.min(bottom, height);
+        if (top >= bottom) return null;
+        while (top < bottom && uniform(pixels, top * width, 1, width)) top++;
+        while (bottom > top && uniform(pixels, (bottom - 1) * width, 1, width)) bottom--;
+        if (top >= bottom) return null;
+        int left = 0;
+        int right = width;
+        int rows = bottom - top;
+        while (left < right && uniform(pixels, top * width + left, width, rows)) left++;
+        while (right > left && uniform(pixels, top * width + right - 1, width, rows)) right--;
+        if (left >= right) return null;
+        return new int[]{left, top, right, bottom};
+    }
+
+    /** 从 start 开始按 stride 取 count 个像素，是否都与第一个像素相近 */
+    private static boolean uniform(int[] pixels, int start, int stride, int count) {
+        int first = pixels[start];
+        for (int i = 1, p = start + stride; i < count; i++, p += stride) {
+            int pixel = pixels[p];
+            if (Math.abs(((pixel >> 16) & 0xff) - ((first >> 16) & 0xff)) > UNIFORM_TOLERANCE
+                    || Math.abs(((pixel >> 8) & 0xff) - ((first >> 8) & 0xff)) > UNIFORM_TOLERANCE
+                    || Math.abs((pixel & 0xff) - (first & 0xff)) > UNIFORM_TOLERANCE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int ceilDiv(int a, int b) {
+        return (a + b - 1) / b;
+    }
+
+    // ========== 分块 ==========
+
+    /**
+     * 分块方案（裁剪后区域的坐标）：普通图片为一块，长边缩放到 ImageEncoder.MAX_DIM；
+     * 长截图切成高宽比约 TILE_ASPECT、相互重叠 TILE_OVERLAP 的分块，宽度不超过 MAX_DIM，总像素不超过 PIXEL_BUDGET
+     */
+    static Plan plan(int width, int height) {
+        List<int[]> tiles = new ArrayList<>();
+        if (height <= width * TALL_ASPECT) {
+            tiles.add(new int[]{0, 0, width, height});
+            return new Plan(tiles, Math.min(1f, (float) ImageEncoder.MAX_DIM / Math.max(width, height)));
+        }
+
+        // 块数：按目标块高估算，超过 MAX_TILES 时加高每块
+        int targetHeight = Math.round(width * TILE_ASPECT);
+        int targetStep = Math.round(targetHeight * (1 - TILE_OVERLAP));
+        int count = Math.min(MAX_TILES, Math.max(2, ceilDiv(height - targetHeight, targetStep) + 1));
+        int tileHeight = (int) Math.ceil(height / (count - (count - 1) * TILE_OVERLAP));
+        int step = (height - tileHeight) / (count - 1);
+        for (int i = 0; i < count; i++) {
+            int top = i == count - 1 ? height - tileHeight : i * step;
+            tiles.add(new int[]{0, top, width, top + tileHeight});
+        }
+
+        float scale = Math.min(1f, Math.min((float) ImageEncoder.MAX_DIM / width, (float) TILE_MAX_EDGE / tileHeight));
+        double pixels = (double) count * width * tileHeight * scale * scale;
+        if (pixels > PIXEL_BUDGET) scale *= (float) Math.sqrt(PIXEL_BUDGET / pixels);
+        return new Plan(tiles, scale);
+    }
+}
@@ -3,6 +3,8 @@ package com.vcp.vcpmobile;
 import android.content.ContentValues;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Environment;
@@ -15,14 +17,110 @@ import com.getcapacitor.PluginCall;
 import com.getcapacitor.PluginMethod;
 import com.getcapacitor.annotation.CapacitorPlugin;
 
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Capacitor 插件：保存 base64 图片到设备相册
  * JS 调用: ImageSaver.saveImage({ base64: "...", filename: "xxx.png" })
+ *
+ * 话题长图分段拼接（整张长图不在 WebView 或原生内存中同时存在）：
+ * - ImageSaver.beginImage({ filename, width }) → { sessionId }
+ * - ImageSaver.appendSegment({ sessionId, base64 }) → { height }：按 SEGMENT_BAND_ROWS 行分条解码，逐行写入 PngStreamEncoder
+ * - ImageSaver.finishImage({ sessionId }) → { uri, filename, width, height, bytes }
+ * - ImageSaver.cancelImage({ sessionId })：放弃并删除临时文件
  */
 @CapacitorPlugin(name = "ImageSaver")
 public class ImageSaverPlugin extends Plugin {
+    // 分段解码的条带高度：内存占用约 width × SEGMENT_BAND_ROWS × 4 字节，与话题长度无关
+    private static final int SEGMENT_BAND_ROWS = 256;
+    // 分段宽度不足时的右侧填充色（与 bubbleCapture.js 的背景色一致）
+    private static final int FILL_COLOR = 0xff1a1a2e;
+
+    /** 进行中的长图：压缩后的 IDAT 块先写入临时文件，finish 时补上文件头 */
+    private static class Session {
+        final String filename;
+        final File idatFile;
+        final OutputStream idatOut;
+        final PngStreamEncoder encoder;
+        final long startedAt = System.currentTimeMillis();
+        int segments = 0;
+        // 条带像素缓冲，同一会话的各分段复用；内存紧张时由 MemoryGovernor 释放，下一段重新分配
+        volatile int[] pixels;
+
+        Session(String filename, File idatFile, int width) throws IOException {
+            this.filename = filename;
+            this.idatFile = idatFile;
+            this.idatOut = new BufferedOutputStream(new FileOutputStream(idatFile), 64 * 1024);
+            this.encoder = new PngStreamEncoder(width, idatOut);
+        }
+
+        void discard() {
+            encoder.abort();
+            try {
+                idatOut.close();
+            } catch (IOException ignored) {
+            }
+            idatFile.delete();
+        }
+    }
+
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final AtomicBoolean orphansSwept = new AtomicBoolean();
+
+    @Override
+    public void load() {
+        MemoryGovernor.register("imageSaver.pixels", MemoryGovernor.PRIORITY_ACTIVE, new MemoryGovernor.Trimmable() {
+            @Override
+            public long sizeBytes() {
+                long bytes = 0;
+                for (Session session : sessions.values()) {
+                    int[] pixels = session.pixels;
+                    if (pixels != null) bytes += pixels.length * 4L;
+                }
+                return bytes;
+            }
+
+            @Override
+            public long trimTo(long maxBytes) {
+                long bytes = sizeBytes();
+                long freed = 0;
+                for (Session session : sessions.values()) {
+                    if (bytes - freed <= maxBytes) break;
+                    int[] pixels = session.pixels;
+                    if (pixels == null) continue;
+                    session.pixels = null;
+                    freed += pixels.length * 4L;
+                }
+                return freed;
+            }
+        });
+    }
+
+    /**
+     * 会话只存在于内存中：进程在 finish/cancel 之前被杀时留下的临时文件在本进程第一次开始长图时清理
+     * （在插件线程上执行，不占用 load() 所在的主线程；进行中的会话的文件不动）
+     */
+    private void sweepOrphanedSessions() {
+        if (!orphansSwept.compareAndSet(false, true)) return;
+        File[] orphans = getContext().getCacheDir().listFiles(
+                (dir, name) -> name.startsWith("long_image_") && name.endsWith(".idat")
+                        && !sessions.containsKey(name.substring("long_image_".length(), name.length() - ".idat".length())));
+        if (orphans == null) return;
+        for (File orphan : orphans) {
+            VCPApiHelper.fileLog("[ImageSaver] 清理残留长图临时文件: " + orphan.getName() + " " + orphan.length() + " 字节");
+            orphan.delete();
+        }
+    }
 
     @PluginMethod
     public void saveImage(PluginCall call) {
@@ -48,29 +146,205 @@ public class ImageSaverPlugin extends Plugin {
                 return;
             }
 
-            // 使用 MediaStore 保存到相册（兼容 Android 10+）
-            ContentValues values = new ContentValues();
-            values.put(MediaStore.Images.Media.DISPLAY_NAME, filename);
-            values.put(MediaStore.Images.Media.MIME_TYPE, "image/png");
+            Uri uri = publish(filename, outputStream -> bitmap.compress(Bitmap.CompressFormat.PNG, 100, outputStream));
+            bitmap.recycle();
+            if (uri == null) {
+                call.reject("无法创建媒体文件");
+                return;
+            }
 
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-                values.put(MediaStore.Images.Media.RELATIVE_PATH, Environment.DIRECTORY_PICTURES + "/VCPMobile");
-                values.put(MediaStore.Images.Media.IS_PENDING, 1);
+            JSObject result = new JSObject();
+            result.put("uri", uri.toString());
+            result.put("filename", filename);
+            call.resolve(result);
+
+        } catch (Exception e) {
+            call.reject("保存图片失败: " + e.getMessage(), e);
+        }
+    }
+
+    // ========== 分段长图 ==========
+
+    @PluginMethod
+    public void beginImage(PluginCall call) {
+        int width = call.getInt("width", 0);
+        String filename = call.getString("filename", "vcp_image_" + System.currentTimeMillis() + ".png");
+        if (width <= 0) {
+            call.reject("宽度无效");
+            return;
+        }
+        sweepOrphanedSessions();
+        try {
+            String sessionId = UUID.randomUUID().toString();
+            File idatFile = new File(getContext().getCacheDir(), "long_image_" + sessionId + ".idat");
+            sessions.put(sessionId, new Session(filename, idatFile, width));
+            VCPApiHelper.fileLog("[ImageSaver] 开始长图 " + filename + " 宽=" + width);
+
+            JSObject result = new JSObject();
+            result.put("sessionId", sessionId);
+            call.resolve(result);
+        } catch (Exception e) {
+            call.reject("创建长图失败: " + e.getMessage(), e);
+        }
+    }
+
+    @PluginMethod
+    public void appendSegment(PluginCall call) {
+        Session session = sessions.get(call.getString("sessionId", ""));
+        String base64Data = call.getString("base64");
+        if (session == null) {
+            call.reject("长图会话不存在");
+            return;
+        }
+        if (base64Data == null || base64Data.isEmpty()) {
+            call.reject("base64 数据为空");
+            return;
+        }
+        if (base64Data.contains(",")) {
+            base64Data = base64Data.substring(base64Data.indexOf(",") + 1);
+        }
+
+        long start = System.currentTimeMillis();
+        BitmapRegionDecoder decoder = null;
+        try {
+            byte[] imageBytes = Base64.decode(base64Data, Base64.DEFAULT);
+            base64Data = null;
+            decoder = ImageEncoder.newRegionDecoder(imageBytes);
+            if (decoder == null) {
+                throw new IOException("无法解码分段图片");
+            }
+            int segWidth = decoder.getWidth();
+            int segHeight = decoder.getHeight();
+            int width = Math.min(segWidth, session.encoder.width());
+            if (segWidth != session.encoder.width()) {
+                VCPApiHelper.fileLog("[ImageSaver] 分段宽度 " + segWidth + " 与长图宽度 " + session.encoder.width() + " 不一致");
             }
 
-            Uri uri = getContext().getContentResolver().insert(
-                    MediaStore.Images.Media.EXTERNAL_CONTENT_URI, values);
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+            int[] pixels = session.pixels;
+            if (pixels == null || pixels.length < width * SEGMENT_BAND_ROWS) {
+                pixels = new int[width * SEGMENT_BAND_ROWS];
+                session.pixels = pixels;
+                MemoryGovernor.checkBudget();
+            }
+            for (int top = 0; top < segHeight; top += SEGMENT_BAND_ROWS) {
+                int rows = Math.min(SEGMENT_BAND_ROWS, segHeight - top);
+                Bitmap band = decoder.decodeRegion(new Rect(0, top, width, top + rows), options);
+                if (band == null) throw new IOException("分段解码失败 y=" + top);
+                band.getPixels(pixels, 0, width, 0, 0, width, rows);
+                band.recycle();
+                for (int y = 0; y < rows; y++) {
+                    session.encoder.writeRow(pixels, y * width, width, FILL_COLOR);
+                }
+            }
+            session.segments++;
+            VCPMetrics.recordTime("imageSaver.segment", System.currentTimeMillis() - start);
 
+            JSObject result = new JSObject();
+            result.put("height", session.encoder.height());
+            call.resolve(result);
+        } catch (Exception e) {
+            sessions.remove(call.getString("sessionId", ""));
+            session.discard();
+            call.reject("写入分段失败: " + e.getMessage(), e);
+        } finally {
+            if (decoder != null) decoder.recycle();
+        }
+    }
+
+    @PluginMethod
+    public void finishImage(PluginCall call) {
+        Session session = sessions.remove(call.getString("sessionId", ""));
+        if (session == null) {
+            call.reject("长图会话不存在");
+            return;
+        }
+        try {
+            if (session.encoder.height() == 0) {
+                session.discard();
+                call.reject("长图没有任何内容");
+                return;
+            }
+            session.encoder.finish();
+            session.idatOut.close();
+
+            int width = session.encoder.width();
+            int height = session.encoder.height();
+            Uri uri = publish(session.filename, outputStream -> {
+                PngStreamEncoder.writeHeader(outputStream, width, height);
+                try (InputStream in = new FileInputStream(session.idatFile)) {
+                    byte[] buffer = new byte[64 * 1024];
+                    int n;
+                    while ((n = in.read(buffer)) != -1) outputStream.write(buffer, 0, n);
+                }
+                PngStreamEncoder.writeEnd(outputStream);
+            });
+            long bytes = session.idatFile.length();
+            session.idatFile.delete();
             if (uri == null) {
                 call.reject("无法创建媒体文件");
                 return;
             }
 
+            long elapsed = System.currentTimeMillis() - session.startedAt;
+            VCPMetrics.recordTime("imageSaver.longImage", elapsed);
+            VCPApiHelper.fileLog("[ImageSaver] 长图完成 " + width + "x" + height + " 分段=" + session.segments
+                    + " 大小=" + bytes + " 耗时=" + elapsed + "ms");
+
+            JSObject result = new JSObject();
+            result.put("uri", uri.toString());
+            result.put("filename", session.filename);
+            result.put("width", width);
+            result.put("height", height);
+            result.put("bytes", bytes);
+            call.resolve(result);
+        } catch (Exception e) {
+            session.discard();
+            call.reject("保存长图失败: " + e.getMessage(), e);
+        }
+    }
+
+    @PluginMethod
+    public void cancelImage(PluginCall call) {
+        Session session = sessions.remove(call.getString("sessionId", ""));
+        if (session != null) session.discard();
+        call.resolve();
+    }
+
+    // ========== 相册 ==========
+
+    private interface ImageWriter {
+        void write(OutputStream outputStream) throws IOException;
+    }
+
+    /**
+     * 使用 MediaStore 保存 PNG 到相册（兼容 Android 10+）
+     * 写入失败时删除已插入的媒体记录，不在相册中留下 IS_PENDING 的空条目
+     * @return 媒体 Uri；无法创建媒体文件时返回 null
+     */
+    private Uri publish(String filename, ImageWriter writer) throws IOException {
+        ContentValues values = new ContentValues();
+        values.put(MediaStore.Images.Media.DISPLAY_NAME, filename);
+        values.put(MediaStore.Images.Media.MIME_TYPE, "image/png");
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            values.put(MediaStore.Images.Media.RELATIVE_PATH, Environment.DIRECTORY_PICTURES + "/VCPMobile");
+            values.put(MediaStore.Images.Media.IS_PENDING, 1);
+        }
+
+        Uri uri = getContext().getContentResolver().insert(
+                MediaStore.Images.Media.EXTERNAL_CONTENT_URI, values);
+        if (uri == null) return null;
+
+        try {
             OutputStream outputStream = getContext().getContentResolver().openOutputStream(uri);
-            if (outputStream != null) {
-                bitmap.compress(Bitmap.CompressFormat.PNG, 100, outputStream);
-                outputStream.flush();
-                outputStream.close();
+            if (outputStream == null) {
+                getContext().getContentResolver().delete(uri, null, null);
+                return null;
+            }
+            try (OutputStream out = new BufferedOutputStream(outputStream, 64 * 1024)) {
+                writer.write(out);
             }
 
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
@@ -78,16 +352,14 @@ public class ImageSaverPlugin extends Plugin {
                 values.put(MediaStore.Images.Media.IS_PENDING, 0);
                 getContext().getContentResolver().update(uri, values, null, null);
             }
-
-            bitmap.recycle();
-
-            JSObject result = new JSObject();
-            result.put("uri", uri.toString());
-            result.put("filename", filename);
-            call.resolve(result);
-
-        } catch (Exception e) {
-            call.reject("保存图片失败: " + e.getMessage(), e);
+            return uri;
+        } catch (IOException | RuntimeException e) {
+            try {
+                getContext().getContentResolver().delete(uri, null, null);
+            } catch (RuntimeException deleteError) {
+                VCPApiHelper.fileLog("[ImageSaver] 删除未完成的媒体记录失败: " + deleteError.getMessage());
+            }
+            throw e;
         }
     }
 }
@@ -1,16 +1,67 @@
 package com.vcp.vcpmobile;
 
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
 import android.os.Bundle;
+import android.os.SystemClock;
+import android.webkit.WebSettings;
 import android.webkit.WebView;
 import com.getcapacitor.BridgeActivity;
+import com.getcapacitor.Plugin;
+import com.getcapacitor.WebViewListener;
 
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 冷启动路径（各阶段耗时见 StartupMetrics）：
+ * 1. 后台线程先行加载 WebView 实现（getDefaultUserAgent 会初始化 WebView provider），
+ *    与插件注册、Bridge 初始化并行，创建 WebView 时不再同步加载 Chromium
+ * 2. 同一线程预热到已配置 baseUrl 的连接（CapacitorHttp 与原生请求共用连接池），
+ *    启动画面结束后的首个请求直接复用
+ * 3. 插件一次性注册：Capacitor 在 Bridge 初始化时就要生成全部插件的 JS 代理，无法延后注册，
+ *    因此各插件不在构造与 load() 中做任何工作，耗时都推迟到首次调用
+ * 4. WebView 远程调试只在可调试（debug）构建中开启
+ */
 public class MainActivity extends BridgeActivity {
+    private static final List<Class<? extends Plugin>> PLUGINS = Arrays.asList(
+            ScreenshotSenderPlugin.class,
+            VolumeKeyPlugin.class,
+            ImageSaverPlugin.class,
+            MetricsPlugin.class,
+            HttpCachePlugin.class,
+            MediaCachePlugin.class,
+            WallpaperPlugin.class);
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
-        registerPlugin(ScreenshotSenderPlugin.class);
-        registerPlugin(VolumeKeyPlugin.class);
-        registerPlugin(ImageSaverPlugin.class);
+        StartupMetrics.mark("activityCreate");
+        VCPApiHelper.initContext(this);
+        warmUp(getApplicationContext());
+        registerPlugins(PLUGINS);
+        StartupMetrics.mark("pluginsRegistered");
         super.onCreate(savedInstanceState);
-        WebView.setWebContentsDebuggingEnabled(true);
+        StartupMetrics.mark("bridgeCreated");
+        WebView.setWebContentsDebuggingEnabled((getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0);
+        bridge.addWebViewListener(new WebViewListener() {
+            @Override
+            public void onPageLoaded(WebView webView) {
+                StartupMetrics.mark("pageLoaded");
+            }
+        });
+    }
+
+    private static void warmUp(Context ctx) {
+        new Thread(() -> {
+            ConnectionPrewarmer.prewarm(ctx);
+            long start = SystemClock.uptimeMillis();
+            try {
+                WebSettings.getDefaultUserAgent(ctx);
+                StartupMetrics.duration("webViewProviderMs", SystemClock.uptimeMillis() - start);
+                StartupMetrics.mark("webViewProvider");
+            } catch (Exception e) {
+                VCPApiHelper.fileLog("[Startup] WebView 预加载失败: " + e.getMessage());
+            }
+        }, "vcp-startup").start();
     }
 }
@@ -0,0 +1,93 @@
+package com.vcp.vcpmobile;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import com.getcapacitor.Plugin;
+import com.getcapacitor.PluginCall;
+import com.getcapacitor.PluginMethod;
+import com.getcapacitor.annotation.CapacitorPlugin;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Capacitor 插件：回复媒体的预取与本地缓存（见 MediaPrefetcher）
+ * JS 调用: MediaCache.prefetch({ urls?, text?, wait? }) → { files: { url: 本地路径 }, evicted: [url] }
+ *          本地路径经 Capacitor.convertFileSrc 转换后交给 WebView；
+ *          evicted 为此前交出、现已被淘汰的地址，JS 端应改回远程地址
+ *          MediaCache.clear() / MediaCache.stats()
+ */
+@CapacitorPlugin(name = "MediaCache")
+public class MediaCachePlugin extends Plugin {
+    // wait=true 时最多等待的时间，超时的下载继续在后台进行
+    private static final long WAIT_TIMEOUT_MS = 15000;
+    // 同时等待下载的调用数上限（下载本身由 MediaPrefetcher 限制并发），超出的排队
+    private static final int MAX_WAITERS = MediaPrefetcher.CONCURRENCY;
+    private static final AtomicInteger threadIndex = new AtomicInteger();
+
+    private final ExecutorService waiters = Executors.newFixedThreadPool(MAX_WAITERS, r -> {
+        Thread t = new Thread(r, "vcp-media-wait-" + threadIndex.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+
+    @PluginMethod
+    public void prefetch(PluginCall call) {
+        List<String> urls = new ArrayList<>();
+        JSArray jsUrls = call.getArray("urls");
+        if (jsUrls != null) {
+            for (int i = 0; i < jsUrls.length(); i++) {
+                String url = jsUrls.optString(i, "");
+                if (url.startsWith("http://") || url.startsWith("https://")) urls.add(url);
+            }
+        }
+        String text = call.getString("text");
+        if (text != null) urls.addAll(MediaPrefetcher.extractUrls(text));
+        boolean wait = call.getBoolean("wait", true);
+
+        MediaPrefetcher prefetcher = MediaPrefetcher.get(getContext());
+        if (!wait) {
+            // 只返回已缓存的部分，其余在后台下载
+            call.resolve(result(prefetcher, urls, 0));
+            return;
+        }
+        // 等待下载不占用插件调用线程
+        waiters.execute(() -> call.resolve(result(prefetcher, urls, WAIT_TIMEOUT_MS)));
+    }
+
+    private static JSObject result(MediaPrefetcher prefetcher, List<String> urls, long timeoutMs) {
+        JSObject files = new JSObject();
+        for (Map.Entry<String, File> entry : prefetcher.prefetchAndWait(urls, timeoutMs).entrySet()) {
+            files.put(entry.getKey(), entry.getValue().getAbsolutePath());
+        }
+        JSArray evicted = new JSArray();
+        for (String url : prefetcher.drainEvicted()) evicted.put(url);
+        JSObject ret = new JSObject();
+        ret.put("files", files);
+        ret.put("evicted", evicted);
+        return ret;
+    }
+
+    @PluginMethod
+    public void clear(PluginCall call) {
+        MediaPrefetcher.get(getContext()).clear();
+        call.resolve();
+    }
+
+    @PluginMethod
+    public void stats(PluginCall call) {
+        long[] stats = MediaPrefetcher.get(getContext()).stats();
+        JSObject ret = new JSObject();
+        ret.put("entries", stats[0]);
+        ret.put("bytes", stats[1]);
+        ret.put("hits", VCPMetrics.get("media.hit"));
+        ret.put("downloaded", VCPMetrics.get("media.downloaded"));
+        ret.put("evicted", VCPMetrics.get("media.evicted"));
+        call.resolve(ret);
+    }
+}
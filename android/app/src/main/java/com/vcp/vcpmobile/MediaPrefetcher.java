@@ -0,0 +1,329 @@
+package com.vcp.vcpmobile;
+
+import android.content.Context;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * AI 回复中媒体（图片、音视频、文档）的预取与磁盘缓存：
+ * 1. 回复完成后提取其中的媒体地址（Markdown 图片、HTML src、以媒体扩展名结尾的链接）
+ * 2. 后台以 CONCURRENCY 个线程下载，同一地址并发请求只下载一次
+ * 3. 文件存入 cacheDir/media_cache（<url 的 SHA-1>.<扩展名>），总大小超过上限时按最近使用时间淘汰
+ * 4. WebView 通过 Capacitor 的本地文件路径（convertFileSrc）读取缓存，消息滚动到可见时不再从网络加载
+ *
+ * 只缓存 Content-Type 为媒体类型的响应，HTML 页面等链接不会进入缓存。
+ * 已交给 WebView 的文件被淘汰后，其地址记入 drainEvicted()，由 JS 端撤销本地地址映射。
+ */
+public class MediaPrefetcher {
+    private static final String CACHE_DIR = "media_cache";
+    static final long MAX_CACHE_BYTES = 64L * 1024 * 1024;
+    // 单个文件上限，超出的不缓存（交给 WebView 按需加载）
+    static final long MAX_FILE_BYTES = 10L * 1024 * 1024;
+    static final int CONCURRENCY = 3;
+    // 单条回复最多预取的地址数
+    private static final int MAX_URLS_PER_TEXT = 16;
+
+    private static final Pattern MARKDOWN_IMAGE = Pattern.compile("!\\[[^\\]]*\\]\\((https?://[^\\s)]+)");
+    private static final Pattern HTML_SRC = Pattern.compile("\\b(?:src|poster)\\s*=\\s*[\"'](https?://[^\"'\\s]+)[\"']",
+            Pattern.CASE_INSENSITIVE);
+    private static final Pattern BARE_URL = Pattern.compile("https?://[^\\s\"'<>()\\[\\]]+");
+    private static final Pattern MEDIA_EXTENSION = Pattern.compile(
+            "\\.(png|jpe?g|gif|webp|bmp|svg|mp3|m4a|wav|ogg|mp4|webm|mov|pdf)$", Pattern.CASE_INSENSITIVE);
+
+    private static MediaPrefetcher sInstance;
+
+    private final File dir;
+    private final long maxBytes;
+    private final ExecutorService pool = Executors.newFixedThreadPool(CONCURRENCY);
+    private final Map<String, Future<File>> inFlight = new ConcurrentHashMap<>();
+    // 非媒体或超过大小上限的地址（本次进程内不再尝试）
+    private final Set<String> rejected = ConcurrentHashMap.newKeySet();
+    // 缓存键 -> 文件（首次使用时从目录加载）
+    private final Map<String, File> index = new ConcurrentHashMap<>();
+    private volatile boolean indexLoaded = false;
+    // 已通过 prefetchAndWait 交出的文件：缓存键 -> 地址（淘汰时据此通知 JS 端）
+    private final Map<String, String> handedOut = new ConcurrentHashMap<>();
+    private final Set<String> evicted = ConcurrentHashMap.newKeySet();
+
+    public static synchronized MediaPrefetcher get(Context ctx) {
+        if (sInstance == null) {
+            sInstance = new MediaPrefetcher(new File(ctx.getCacheDir(), CACHE_DIR), MAX_CACHE_BYTES);
+        }
+        return sInstance;
+    }
+
+    MediaPrefetcher(File dir, long maxBytes) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+    }
+
+    /** 从回复文本中提取媒体地址（去重，保持出现顺序） */
+    public static List<String> extractUrls(String text) {
+        Set<String> urls = new LinkedHashSet<>();
+        if (text == null || text.isEmpty()) return new ArrayList<>();
+        Matcher m = MARKDOWN_IMAGE.matcher(text);
+        while (m.find()) urls.add(m.group(1));
+        m = HTML_SRC.matcher(text);
+        while (m.find()) urls.add(m.group(1).replace("&amp;", "&"));
+        m = BARE_URL.matcher(text);
+        while (m.find()) {
+            String url = m.group();
+            if (MEDIA_EXTENSION.matcher(stripQuery(url)).find()) urls.add(url);
+        }
+        List<String> result = new ArrayList<>(urls);
+        return result.size() > MAX_URLS_PER_TEXT ? result.subList(0, MAX_URLS_PER_TEXT) : result;
+    }
+
+    /** 提取并在后台预取回复中的媒体，立即返回 */
+    public void prefetchText(String text) {
+        List<String> urls = extractUrls(text);
+        if (!urls.isEmpty()) prefetch(urls);
+    }
+
+    /** 后台预取（已缓存或正在下载的地址跳过） */
+    public List<Future<File>> prefetch(Collection<String> urls) {
+        List<Future<File>> futures = new ArrayList<>();
+        for (String url : urls) {
+            if (rejected.contains(url)) continue;
+            if (cached(url) != null) {
+                VCPMetrics.increment("media.hit");
+                continue;
+            }
+            FutureTask<File> task = new FutureTask<>(() -> {
+                try {
+                    return download(url);
+                } finally {
+                    inFlight.remove(url);
+                }
+            });
+            Future<File> existing = inFlight.putIfAbsent(url, task);
+            if (existing != null) {
+                futures.add(existing);
+                continue;
+            }
+            pool.execute(task);
+            futures.add(task);
+        }
+        return futures;
+    }
+
+    /**
+     * 预取并等待（最多 timeoutMs）
+     * @return 已缓存的地址 -> 本地文件（下载失败、超时或非媒体的地址不在结果中）
+     */
+    public Map<String, File> prefetchAndWait(Collection<String> urls, long timeoutMs) {
+        prefetch(urls);
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        Map<String, File> files = new LinkedHashMap<>();
+        for (String url : urls) {
+            Future<File> pending = inFlight.get(url);
+            if (pending != null) {
+                try {
+                    pending.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                } catch (Exception ignored) {
+                    // 超时的下载继续在后台进行，下次请求时命中
+                }
+            }
+            File file = cached(url);
+            if (file != null) {
+                files.put(url, file);
+                handedOut.put(HttpCache.cacheKey(url, null), url);
+                evicted.remove(url);
+            }
+        }
+        return files;
+    }
+
+    /** 取出并清空自上次调用以来被淘汰（或已不存在）的、曾交出过的地址 */
+    public List<String> drainEvicted() {
+        List<String> urls = new ArrayList<>();
+        for (String url : evicted) {
+            if (evicted.remove(url)) urls.add(url);
+        }
+        return urls;
+    }
+
+    /** 已缓存的文件（命中时刷新最近使用时间），未缓存返回 null */
+    public File cached(String url) {
+        loadIndex();
+        String key = HttpCache.cacheKey(url, null);
+        File file = index.get(key);
+        if (file == null) return null;
+        if (!file.exists()) {
+            index.remove(key);
+            onEvicted(key);
+            return null;
+        }
+        file.setLastModified(System.currentTimeMillis());
+        return file;
+    }
+
+    public synchronized void clear() {
+        index.clear();
+        handedOut.clear();
+        evicted.clear();
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        for (File f : files) f.delete();
+    }
+
+    /** @return {entries, bytes} */
+    public synchronized long[] stats() {
+        File[] files = dir.listFiles();
+        if (files == null) return new long[]{0, 0};
+        long bytes = 0;
+        for (File f : files) bytes += f.length();
+        return new long[]{files.length, bytes};
+    }
+
+    // ========== 下载 ==========
+
+    private File download(String url) {
+        long start = System.currentTimeMillis();
+        HttpURLConnection conn = null;
+        File tmp = null;
+        try {
+            conn = (HttpURLConnection) new URL(url).openConnection();
+            conn.setConnectTimeout(15000);
+            conn.setReadTimeout(30000);
+            int code = conn.getResponseCode();
+            String type = conn.getContentType();
+            if (code != 200) throw new IOException("HTTP " + code);
+            long length = conn.getContentLengthLong();
+            if (!isMediaType(type) || length > MAX_FILE_BYTES) {
+                rejected.add(url);
+                VCPMetrics.increment("media.skipped");
+                return null;
+            }
+
+            if (!dir.isDirectory() && !dir.mkdirs()) return null;
+            String key = HttpCache.cacheKey(url, null);
+            File file = new File(dir, key + "." + extension(type, url));
+            tmp = new File(dir, key + ".tmp");
+            long total = 0;
+            try (InputStream in = conn.getInputStream(); FileOutputStream out = new FileOutputStream(tmp)) {
+                byte[] buf = new byte[16 * 1024];
+                int n;
+                while ((n = in.read(buf)) > 0) {
+                    total += n;
+                    if (total > MAX_FILE_BYTES) throw new IOException("文件超过缓存上限");
+                    out.write(buf, 0, n);
+                }
+            }
+            if (!tmp.renameTo(file)) throw new IOException("rename failed");
+            index.put(key, file);
+            VCPMetrics.increment("media.downloaded");
+            VCPMetrics.add("media.bytes", total);
+            VCPMetrics.recordTime("media.download", System.currentTimeMillis() - start);
+            trim();
+            return file;
+        } catch (Exception e) {
+            if (tmp != null) tmp.delete();
+            VCPMetrics.increment("media.errors");
+            VCPApiHelper.fileLog("[Media] 预取失败 " + url + ": " + e.getMessage());
+            return null;
+        } finally {
+            if (conn != null) conn.disconnect();
+        }
+    }
+
+    private void loadIndex() {
+        if (indexLoaded) return;
+        synchronized (this) {
+            if (indexLoaded) return;
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File f : files) {
+                    String name = f.getName();
+                    int dot = name.indexOf('.');
+                    if (dot <= 0 || name.endsWith(".tmp")) continue;
+                    index.put(name.substring(0, dot), f);
+                }
+            }
+            indexLoaded = true;
+        }
+    }
+
+    /** 按最近使用时间淘汰，直到总大小不超过上限 */
+    private synchronized void trim() {
+        File[] files = dir.listFiles((d, name) -> !name.endsWith(".tmp"));
+        if (files == null) return;
+        long total = 0;
+        for (File f : files) total += f.length();
+        if (total <= maxBytes) return;
+
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File f : files) {
+            if (total <= maxBytes) break;
+            total -= f.length();
+            String key = f.getName().substring(0, f.getName().indexOf('.'));
+            index.remove(key);
+            f.delete();
+            onEvicted(key);
+            VCPMetrics.increment("media.evicted");
+        }
+    }
+
+    private void onEvicted(String key) {
+        String url = handedOut.remove(key);
+        if (url != null) evicted.add(url);
+    }
+
+    static boolean isMediaType(String contentType) {
+        if (contentType == null) return false;
+        String type = contentType.toLowerCase(Locale.ROOT);
+        return type.startsWith("image/") || type.startsWith("audio/") || type.startsWith("video/")
+                || type.startsWith("application/pdf");
+    }
+
+    /** 文件扩展名（WebView 本地服务按扩展名推断 MIME 类型），优先取 Content-Type */
+    private static String extension(String contentType, String url) {
+        String type = contentType.toLowerCase(Locale.ROOT);
+        int semicolon = type.indexOf(';');
+        if (semicolon >= 0) type = type.substring(0, semicolon).trim();
+        switch (type) {
+            case "image/jpeg": return "jpg";
+            case "image/png": return "png";
+            case "image/gif": return "gif";
+            case "image/webp": return "webp";
+            case "image/svg+xml": return "svg";
+            case "audio/mpeg": return "mp3";
+            case "video/mp4": return "mp4";
+            case "application/pdf": return "pdf";
+            default:
+                Matcher m = MEDIA_EXTENSION.matcher(stripQuery(url));
+                return m.find() ? m.group(1).toLowerCase(Locale.ROOT) : "bin";
+        }
+    }
+
+    private static String stripQuery(String url) {
+        int cut = url.length();
+        int q = url.indexOf('?');
+        if (q >= 0) cut = q;
+        int hash = url.indexOf('#');
+        if (hash >= 0 && hash < cut) cut = hash;
+        return url.substring(0, cut);
+    }
+}
@@ -0,0 +1,251 @@
+package com.vcp.vcpmobile;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 原生内存缓存的统一管理：各组件的内存缓存与缓冲区在此登记，按全局预算和系统的内存回调统一收缩
+ * 1. 登记项实现 Trimmable（估算占用、收缩到指定大小），并带一个优先级，
+ *    收缩时从优先级低的开始（诊断数据 → 可重建的缓存 → 正在使用的缓冲区），够了就停
+ * 2. 全局预算为堆上限的 1/BUDGET_HEAP_DIVISOR，缓存增长后调用 checkBudget()，超出时按同样顺序收缩
+ * 3. onTrimMemory 按级别把目标降到预算的一部分（见 targetFraction），CRITICAL / COMPLETE / onLowMemory 清空
+ * 4. 最近收到内存紧张回调时 underPressure() 为真，图片处理等据此减少并行度，避免与 WebView 同时占用大量内存
+ *
+ * 回收统计（次数、字节、各项明细、最近一次的时间与级别）通过 MetricsPlugin.getMetrics 的 memory 字段暴露。
+ *
+ * 锁顺序：登记表的锁只保护登记表与统计，调用 sizeBytes / trimTo 前先取快照并释放，
+ * 因此缓存可以在持有自身锁时调用 register / unregister，两把锁不会交叉等待。
+ */
+public final class MemoryGovernor {
+    public static final int PRIORITY_DIAGNOSTIC = 0;
+    public static final int PRIORITY_REBUILDABLE = 1;
+    public static final int PRIORITY_ACTIVE = 2;
+
+    static final int BUDGET_HEAP_DIVISOR = 8;
+    // 收到 RUNNING_LOW 及以上级别后视为内存紧张的时长
+    static final long PRESSURE_WINDOW_MS = 60000;
+
+    /** 可收缩的内存缓存（实现需线程安全；调用时不持有 MemoryGovernor 的任何锁） */
+    public interface Trimmable {
+        /** 当前估算占用（字节） */
+        long sizeBytes();
+
+        /**
+         * 收缩到不超过 maxBytes
+         * @return 释放的字节数
+         */
+        long trimTo(long maxBytes);
+    }
+
+    private static class Entry {
+        final String name;
+        final int priority;
+        final Trimmable cache;
+        // 由 entries 的锁保护
+        long evictedBytes;
+
+        Entry(String name, int priority, Trimmable cache) {
+            this.name = name;
+            this.priority = priority;
+            this.cache = cache;
+        }
+    }
+
+    private static final List<Entry> entries = new ArrayList<>();
+    private static long budgetBytes = Runtime.getRuntime().maxMemory() / BUDGET_HEAP_DIVISOR;
+    private static boolean attached = false;
+    private static long trims = 0;
+    private static long evictedBytes = 0;
+    private static long lastTrimAt = 0;
+    private static int lastTrimLevel = -1;
+    private static volatile long pressureUntil = 0;
+
+    private MemoryGovernor() {}
+
+    /** 接收系统内存回调（进程内只登记一次，重复调用无副作用） */
+    public static void attach(Context ctx) {
+        synchronized (entries) {
+            if (attached) return;
+            attached = true;
+        }
+        ctx.getApplicationContext().registerComponentCallbacks(new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(int level) {
+                MemoryGovernor.onTrimMemory(level);
+            }
+
+            @Override
+            public void onLowMemory() {
+                MemoryGovernor.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+            }
+
+            @Override
+            public void onConfigurationChanged(Configuration newConfig) {
+            }
+        });
+    }
+
+    /** 登记缓存（同名重复登记时替换） */
+    public static void register(String name, int priority, Trimmable cache) {
+        synchronized (entries) {
+            for (int i = 0; i < entries.size(); i++) {
+                if (entries.get(i).name.equals(name)) {
+                    entries.remove(i);
+                    break;
+                }
+            }
+            entries.add(new Entry(name, priority, cache));
+            // 稳定排序：同优先级按登记顺序
+            Collections.sort(entries, (a, b) -> Integer.compare(a.priority, b.priority));
+        }
+    }
+
+    public static void unregister(String name) {
+        synchronized (entries) {
+            for (int i = 0; i < entries.size(); i++) {
+                if (entries.get(i).name.equals(name)) {
+                    entries.remove(i);
+                    return;
+                }
+            }
+        }
+    }
+
+    static void setBudgetBytes(long bytes) {
+        synchronized (entries) {
+            budgetBytes = bytes;
+        }
+    }
+
+    public static long budgetBytes() {
+        synchronized (entries) {
+            return budgetBytes;
+        }
+    }
+
+    /** 所有登记项的估算占用 */
+    public static long totalBytes() {
+        long total = 0;
+        for (Entry e : snapshot()) total += e.cache.sizeBytes();
+        return total;
+    }
+
+    /** 缓存增长后调用：总占用超出预算时收缩（不要在持有缓存自身锁时调用，收缩会反过来获取该锁） */
+    public static void checkBudget() {
+        long budget = budgetBytes();
+        if (totalBytes() <= budget) return;
+        trimTo(budget, "budget");
+    }
+
+    /** 登记表快照（按优先级排序），在锁外调用各缓存 */
+    private static List<Entry> snapshot() {
+        synchronized (entries) {
+            return new ArrayList<>(entries);
+        }
+    }
+
+    /** 最近是否收到内存紧张回调 */
+    public static boolean underPressure() {
+        return System.currentTimeMillis() < pressureUntil;
+    }
+
+    static void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW
+                && level != ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            pressureUntil = System.currentTimeMillis() + PRESSURE_WINDOW_MS;
+        }
+        long target;
+        synchronized (entries) {
+            lastTrimLevel = level;
+            target = (long) (budgetBytes * targetFraction(level));
+        }
+        trimTo(target, "level " + level);
+    }
+
+    /** 各级别回调后保留的预算比例 */
+    static double targetFraction(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_COMPLETE) return 0;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) return 0.1;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) return 0.25;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) return 0.5;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) return 0;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) return 0.25;
+        return 0.5;
+    }
+
+    /** 按优先级从低到高收缩，直到总占用不超过 target */
+    private static void trimTo(long target, String reason) {
+        long start = System.currentTimeMillis();
+        List<Entry> snapshot = snapshot();
+        long total = 0;
+        for (Entry e : snapshot) total += e.cache.sizeBytes();
+        long excess = total - target;
+        if (excess <= 0) return;
+
+        long freed = 0;
+        long[] released = new long[snapshot.size()];
+        StringBuilder detail = new StringBuilder();
+        for (int i = 0; i < snapshot.size() && excess > 0; i++) {
+            Entry e = snapshot.get(i);
+            long size = e.cache.sizeBytes();
+            if (size <= 0) continue;
+            released[i] = e.cache.trimTo(Math.max(0, size - excess));
+            if (released[i] <= 0) continue;
+            excess -= released[i];
+            freed += released[i];
+            detail.append(' ').append(e.name).append('=').append(released[i] / 1024).append("KB");
+        }
+        long end = System.currentTimeMillis();
+        synchronized (entries) {
+            for (int i = 0; i < snapshot.size(); i++) {
+                if (released[i] > 0) snapshot.get(i).evictedBytes += released[i];
+            }
+            trims++;
+            evictedBytes += freed;
+            lastTrimAt = end;
+        }
+        VCPMetrics.increment("memory.trims");
+        VCPMetrics.add("memory.evictedBytes", freed);
+        VCPMetrics.recordTime("memory.trim", end - start);
+        VCPApiHelper.fileLog("[Memory] 收缩（" + reason + "）" + total / 1024 + "KB → " + (total - freed) / 1024
+                + "KB，目标 " + target / 1024 + "KB：" + detail);
+    }
+
+    /** {budgetBytes, totalBytes, trims, evictedBytes, lastTrimAt, lastTrimLevel, underPressure, caches: {name: {bytes, evictedBytes}}} */
+    public static JSONObject stats() {
+        JSONObject result = new JSONObject();
+        List<Entry> snapshot = snapshot();
+        long[] sizes = new long[snapshot.size()];
+        for (int i = 0; i < sizes.length; i++) sizes[i] = snapshot.get(i).cache.sizeBytes();
+        synchronized (entries) {
+            try {
+                JSONObject caches = new JSONObject();
+                long total = 0;
+                for (int i = 0; i < sizes.length; i++) {
+                    Entry e = snapshot.get(i);
+                    total += sizes[i];
+                    caches.put(e.name, new JSONObject()
+                            .put("priority", e.priority)
+                            .put("bytes", sizes[i])
+                            .put("evictedBytes", e.evictedBytes));
+                }
+                result.put("budgetBytes", budgetBytes)
+                        .put("totalBytes", total)
+                        .put("trims", trims)
+                        .put("evictedBytes", evictedBytes)
+                        .put("lastTrimAt", lastTrimAt)
+                        .put("lastTrimLevel", lastTrimLevel)
+                        .put("underPressure", underPressure())
+                        .put("caches", caches);
+            } catch (Exception ignored) {}
+        }
+        return result;
+    }
+}
@@ -0,0 +1,96 @@
+package com.vcp.vcpmobile;
+
+import com.getcapacitor.JSObject;
+import com.getcapacitor.Plugin;
+import com.getcapacitor.PluginCall;
+import com.getcapacitor.PluginMethod;
+import com.getcapacitor.annotation.CapacitorPlugin;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Capacitor 插件：读取原生层性能指标与捕获链路追踪
+ * JS 调用: Metrics.getMetrics() / Metrics.reset() / Metrics.exportTrace({ inline? }) / Metrics.clearTrace()
+ *          Metrics.markStartup({ phase }) 记录前端的启动阶段（见 StartupMetrics）
+ */
+@CapacitorPlugin(name = "Metrics")
+public class MetricsPlugin extends Plugin {
+
+    @PluginMethod
+    public void getMetrics(PluginCall call) {
+        try {
+            JSONObject snapshot = VCPMetrics.snapshot();
+            snapshot.put("startup", StartupMetrics.snapshot());
+            snapshot.put("memory", MemoryGovernor.stats());
+            snapshot.put("accessibility", VolumeKeyService.eventStats());
+            call.resolve(JSObject.fromJSONObject(snapshot));
+        } catch (Exception e) {
+            call.reject("读取指标失败: " + e.getMessage(), e);
+        }
+    }
+
+    @PluginMethod
+    public void markStartup(PluginCall call) {
+        String phase = call.getString("phase", "");
+        if (phase.isEmpty()) {
+            call.reject("缺少 phase");
+            return;
+        }
+        StartupMetrics.mark(phase);
+        JSObject ret = new JSObject();
+        ret.put("ms", StartupMetrics.sinceProcessStart());
+        call.resolve(ret);
+    }
+
+    @PluginMethod
+    public void reset(PluginCall call) {
+        VCPMetrics.reset();
+        call.resolve();
+    }
+
+    /**
+     * 将最近的捕获追踪导出为 Chrome trace JSON 文件（可在 ui.perfetto.dev 或 chrome://tracing 打开）
+     * 文件写入应用外部文件目录 traces/，可通过 adb pull 取出；inline=true 时同时返回 JSON 内容
+     */
+    @PluginMethod
+    public void exportTrace(PluginCall call) {
+        try {
+            JSONObject trace = VCPTrace.exportChromeTrace();
+            File dir = getContext().getExternalFilesDir("traces");
+            if (dir == null) dir = new File(getContext().getFilesDir(), "traces");
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                call.reject("无法创建目录: " + dir);
+                return;
+            }
+            String name = "vcp_trace_" + new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.ROOT).format(new Date()) + ".json";
+            File file = new File(dir, name);
+            try (FileOutputStream fos = new FileOutputStream(file)) {
+                fos.write(trace.toString().getBytes(StandardCharsets.UTF_8));
+            }
+
+            JSObject ret = new JSObject();
+            ret.put("path", file.getAbsolutePath());
+            ret.put("traces", VCPTrace.traceCount());
+            ret.put("events", trace.getJSONArray("traceEvents").length());
+            if (call.getBoolean("inline", false)) {
+                ret.put("trace", JSObject.fromJSONObject(trace));
+            }
+            call.resolve(ret);
+        } catch (Exception e) {
+            call.reject("导出追踪失败: " + e.getMessage(), e);
+        }
+    }
+
+    @PluginMethod
+    public void clearTrace(PluginCall call) {
+        VCPTrace.clear();
+        call.resolve();
+    }
+}
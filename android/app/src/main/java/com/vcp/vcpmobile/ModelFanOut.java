@@ -0,0 +1,177 @@
+package com.vcp.vcpmobile;
+
+import android.content.SharedPreferences;
+
+import org.json.JSONArray;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * 多模型并发：同一份捕获内容同时发给多个模型
+ * 1. messages（含图片 base64）只序列化、压缩一次，各模型共享，只有请求体开头的 model/requestId 不同
+ * 2. 每个模型使用 fork 出的子请求（独立 requestId），沿用 executeCompletions 的重试与端点对冲
+ * 3. first 模式：首个成功的回复胜出，其余请求立即断开并通过 /v1/interrupt 停止后端生成
+ *    all 模式：等待全部模型，按配置顺序合并为一条回复（每段以模型名开头）写入话题
+ * 4. 每个模型单独统计耗时、胜出次数与失败次数（fanout.<model>），token 用量见 usage.<model>.*
+ *
+ * 设置项（prefs）：
+ * - fanOutModels：并发的模型列表（逗号或换行分隔），少于两个时不启用
+ * - fanOutMode：first（默认）/ all
+ *
+ * 流式发送的剪贴板文件（chatTextStream）内容只能读取一次，不参与并发，仍使用单个模型。
+ */
+public class ModelFanOut {
+    public static final String MODE_FIRST = "first";
+    public static final String MODE_ALL = "all";
+
+    /** 单个模型的结果 */
+    static class Reply {
+        final String model;
+        final String content;
+        final Exception error;
+        final long latencyMs;
+
+        Reply(String model, String content, Exception error, long latencyMs) {
+            this.model = model;
+            this.content = content;
+            this.error = error;
+            this.latencyMs = latencyMs;
+        }
+    }
+
+    public static boolean isEnabled(SharedPreferences prefs) {
+        return models(prefs).size() > 1;
+    }
+
+    static List<String> models(SharedPreferences prefs) {
+        Set<String> models = new LinkedHashSet<>();
+        for (String model : prefs.getString("fanOutModels", "").split("[,\\n]")) {
+            model = model.trim();
+            if (!model.isEmpty()) models.add(model);
+        }
+        return new ArrayList<>(models);
+    }
+
+    /**
+     * 并发调用所有模型（阻塞，可被 call 取消）
+     * @return first 模式为胜出模型的回复；all 模式为合并后的回复
+     * @throws Exception 全部模型失败时抛出第一个模型的异常
+     */
+    static String run(SharedPreferences prefs, JSONArray messages, CancellableCall call) throws Exception {
+        List<String> models = models(prefs);
+        boolean collectAll = MODE_ALL.equals(prefs.getString("fanOutMode", MODE_FIRST));
+
+        byte[] messagesJson = messages.toString().getBytes(StandardCharsets.UTF_8);
+        // 多模型请求体按 gzip 成员拼接，deflate 流无法拼接，开启压缩时统一使用 gzip
+        byte[] messagesGzip = BodyEncoding.shouldCompress(prefs.getString("compressCompletions", ""), messagesJson.length)
+                ? BodyEncoding.compress(messagesJson, BodyEncoding.GZIP) : null;
+        String traceId = call != null ? call.traceId : null;
+        VCPApiHelper.fileLog("[FanOut] 并发 " + models.size() + " 个模型 " + models + " 模式="
+                + (collectAll ? MODE_ALL : MODE_FIRST) + " 请求体=" + messagesJson.length + " 字节");
+        VCPMetrics.increment("fanout.calls");
+
+        LinkedBlockingQueue<Reply> replies = new LinkedBlockingQueue<>();
+        List<CancellableCall> children = new ArrayList<>();
+        for (String model : models) {
+            // 子请求需要绑定工作线程（取消时中断），线程启动前赋值
+            CancellableCall[] child = new CancellableCall[1];
+            Thread worker = new Thread(() -> {
+                VCPTrace.setCurrent(traceId);
+                VCPTrace.Span span = VCPTrace.span(traceId, "api.fanout").arg("model", model);
+                long start = System.currentTimeMillis();
+                Reply reply;
+                try {
+                    String content = VCPApiHelper.callCompletionsShared(prefs, model, messagesJson, messagesGzip, child[0]);
+                    reply = new Reply(model, content, null, System.currentTimeMillis() - start);
+                } catch (Exception e) {
+                    reply = new Reply(model, null, e, System.currentTimeMillis() - start);
+                } finally {
+                    span.end();
+                    VCPTrace.setCurrent(null);
+                }
+                replies.add(reply);
+            }, "vcp-fanout-" + model);
+            worker.setDaemon(true);
+            child[0] = call != null ? call.fork(worker) : new CancellableCall(worker);
+            children.add(child[0]);
+            worker.start();
+        }
+
+        List<Reply> finished = new ArrayList<>();
+        try {
+            while (finished.size() < models.size()) {
+                Reply reply = replies.take();
+                finished.add(reply);
+                record(reply);
+                if (!collectAll && reply.error == null) {
+                    // 首个成功即返回，落败的请求断开连接并中断后端生成
+                    VCPMetrics.increment("fanout." + reply.model + ".wins");
+                    for (int i = 0; i < models.size(); i++) {
+                        if (!models.get(i).equals(reply.model)) children.get(i).cancel(prefs);
+                    }
+                    logSummary(finished, reply.model);
+                    return reply.content;
+                }
+            }
+        } catch (InterruptedException e) {
+            for (CancellableCall child : children) child.cancel(prefs);
+            if (call != null) call.throwIfCancelled();
+            throw e;
+        }
+        // 取消后子请求以 CancellationException 结束，不应把已完成的部分回复当作结果
+        if (call != null) call.throwIfCancelled();
+        logSummary(finished, null);
+        return collectAll ? merge(models, finished) : rethrowFirst(models, finished);
+    }
+
+    private static void record(Reply reply) {
+        if (reply.error == null) {
+            VCPMetrics.recordTime("fanout." + reply.model, reply.latencyMs);
+        } else if (!(reply.error instanceof CancellationException)) {
+            VCPMetrics.increment("fanout." + reply.model + ".errors");
+            VCPApiHelper.fileLog("[FanOut] " + reply.model + " 失败: " + reply.error.getMessage());
+        }
+    }
+
+    /** all 模式：按配置顺序合并成功的回复；全部失败时抛出第一个模型的异常 */
+    private static String merge(List<String> models, List<Reply> finished) throws Exception {
+        StringBuilder merged = new StringBuilder();
+        for (String model : models) {
+            Reply reply = find(finished, model);
+            if (reply == null || reply.error != null) continue;
+            if (merged.length() > 0) merged.append("\n\n---\n\n");
+            merged.append("【").append(model).append("】\n").append(reply.content);
+        }
+        if (merged.length() == 0) return rethrowFirst(models, finished);
+        return merged.toString();
+    }
+
+    private static String rethrowFirst(List<String> models, List<Reply> finished) throws Exception {
+        throw find(finished, models.get(0)).error;
+    }
+
+    private static Reply find(List<Reply> finished, String model) {
+        for (Reply reply : finished) {
+            if (reply.model.equals(model)) return reply;
+        }
+        return null;
+    }
+
+    /** 每个模型的耗时与结果，写入文件日志 */
+    private static void logSummary(List<Reply> finished, String winner) {
+        StringBuilder sb = new StringBuilder("[FanOut] ");
+        for (Reply reply : finished) {
+            sb.append(reply.model).append('=').append(reply.latencyMs).append("ms")
+                    .append(reply.error == null ? (reply.model.equals(winner) ? "(胜出)" : "") : "(失败)")
+                    .append(' ');
+        }
+        if (winner != null) sb.append("其余请求已取消");
+        VCPApiHelper.fileLog(sb.toString().trim());
+    }
+}
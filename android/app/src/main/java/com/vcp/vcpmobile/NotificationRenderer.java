@@ -0,0 +1,126 @@
+package com.vcp.vcpmobile;
+
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.graphics.drawable.Icon;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * 发送管线的进度通知渲染器（截图/剪贴板/分享服务共用）：
+ * 1. 两次 notify 之间至少间隔 MIN_INTERVAL_MS，间隔内的更新只保留最新文本，到期后补发一次
+ * 2. Notification.Builder、点击 PendingIntent 和“取消”动作只创建一次，每次只改文本和动作
+ * 3. flush() 立即发出尚未显示的最新状态，服务结束前调用，保证最终状态一定可见
+ *
+ * 系统对单个应用的通知更新有频率限制（约每秒 5 次），超出的更新会被丢弃，
+ * 逐字输出或上传进度之类的高频更新必须经过这里合并。
+ */
+public class NotificationRenderer {
+    static final long MIN_INTERVAL_MS = 250;
+
+    private final NotificationManager nm;
+    private final int notificationId;
+    private final Notification.Builder builder;
+    private final Notification.Action cancelAction;
+    private final BooleanSupplier cancellable;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable flushRunnable = this::flush;
+
+    private String pendingText;
+    private boolean dirty = false;
+    private boolean scheduled = false;
+    private boolean showingCancel = false;
+    private long lastRenderMs = 0;
+
+    /**
+     * @param service 通知所属的服务（“取消”动作发回该服务）
+     * @param cancelAction 取消动作的 Intent action
+     * @param cancellable 渲染时判断是否显示“取消”按钮
+     */
+    public NotificationRenderer(Context service, int notificationId, String channelId, String title,
+                                int smallIcon, String cancelAction, BooleanSupplier cancellable) {
+        this.nm = service.getSystemService(NotificationManager.class);
+        this.notificationId = notificationId;
+        this.cancellable = cancellable;
+
+        PendingIntent contentPi = PendingIntent.getActivity(service, 0, new Intent(service, MainActivity.class),
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+        PendingIntent cancelPi = PendingIntent.getService(service, 1,
+                new Intent(service, service.getClass()).setAction(cancelAction),
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+        this.cancelAction = new Notification.Action.Builder(
+                Icon.createWithResource(service, android.R.drawable.ic_menu_close_clear_cancel),
+                "取消", cancelPi).build();
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            builder = new Notification.Builder(service, channelId);
+        } else {
+            builder = new Notification.Builder(service);
+        }
+        builder.setContentTitle(title)
+                .setSmallIcon(smallIcon)
+                .setContentIntent(contentPi)
+                .setOngoing(false)
+                .setOnlyAlertOnce(true);
+    }
+
+    /** 构建首个通知（用于 startForeground），并计入发送间隔 */
+    public synchronized Notification build(String text) {
+        pendingText = text;
+        dirty = false;
+        lastRenderMs = SystemClock.uptimeMillis();
+        return buildLocked();
+    }
+
+    /** 更新通知文本：间隔未到时只记录最新文本，由定时任务补发 */
+    public synchronized void update(String text) {
+        if (dirty) VCPMetrics.increment("notification.coalesced");
+        pendingText = text;
+        dirty = true;
+        long wait = lastRenderMs + MIN_INTERVAL_MS - SystemClock.uptimeMillis();
+        if (wait <= 0 && !scheduled) {
+            renderLocked();
+        } else if (!scheduled) {
+            scheduled = true;
+            handler.postDelayed(flushRunnable, wait);
+        }
+    }
+
+    /** 立即发出尚未显示的最新状态 */
+    public synchronized void flush() {
+        if (scheduled) {
+            handler.removeCallbacks(flushRunnable);
+            scheduled = false;
+        }
+        if (dirty) renderLocked();
+    }
+
+    private void renderLocked() {
+        dirty = false;
+        lastRenderMs = SystemClock.uptimeMillis();
+        if (nm != null) {
+            nm.notify(notificationId, buildLocked());
+            VCPMetrics.increment("notification.posted");
+        }
+    }
+
+    private Notification buildLocked() {
+        boolean showCancel = cancellable.getAsBoolean();
+        if (showCancel != showingCancel) {
+            if (showCancel) {
+                builder.setActions(cancelAction);
+            } else {
+                builder.setActions();
+            }
+            showingCancel = showCancel;
+        }
+        return builder.setContentText(pendingText).build();
+    }
+}
@@ -14,31 +14,61 @@ import com.getcapacitor.annotation.CapacitorPlugin;
 @CapacitorPlugin(name = "ScreenshotSender")
 public class ScreenshotSenderPlugin extends Plugin {
 
+    /**
+     * 同步到原生层的设置：{键, 默认值}。默认值的类型决定读写方式（String / Boolean / Integer），
+     * 新增设置只需在此加一行，并在 App.vue 的 config 中给出同名默认值
+     */
+    static final Object[][] SETTINGS = {
+            {"baseUrl", ""},
+            {"apiKey", ""},
+            {"model", ""},
+            {"presetMessage", "识别截图内容并记录日记"},
+            {"clipPresetMessage", "分析以下内容"},
+            {"systemPrompt", ""},
+            {"adminUsername", ""},
+            {"adminPassword", ""},
+            {"agentDirId", ""},
+            {"historyTopicMode", "daily"},
+            // 多网关：备用地址（逗号或换行分隔），hedgeEnabled 时对建连阶段做对冲
+            {"baseUrls", ""},
+            {"hedgeEnabled", false},
+            // 请求体压缩（gzip / deflate / 空串关闭），需服务端支持 Content-Encoding
+            {"compressCompletions", ""},
+            {"compressHistory", ""},
+            // 截图上传为话题附件；aiImageByUrl 时 AI 请求改用服务端附件地址（需服务端配置公开地址）
+            {"uploadAttachments", true},
+            {"aiImageByUrl", false},
+            // 截图预处理（ImagePreprocessor）：裁剪系统栏与边距，长截图分块
+            {"screenshotPreprocess", true},
+            // 原生捕获的多轮上下文（ConversationWindow），默认关闭
+            {"conversationContext", false},
+            {"contextTokenBudget", ConversationWindow.DEFAULT_BUDGET_TOKENS},
+            {"summaryModel", ""},
+            // 多模型并发（ModelFanOut）：模型列表逗号分隔，fanOutMode 为 first / all
+            {"fanOutModels", ""},
+            {"fanOutMode", ModelFanOut.MODE_FIRST},
+            // 按住说话（VoiceCaptureService）：转写模型，以及转写后是否发给 AI
+            {"transcriptionModel", ""},
+            {"voiceChat", true},
+    };
+
     @PluginMethod
     public void configure(PluginCall call) {
-        String baseUrl = call.getString("baseUrl", "");
-        String apiKey = call.getString("apiKey", "");
-        String model = call.getString("model", "");
-        String presetMessage = call.getString("presetMessage", "识别截图内容并记录日记");
-        String clipPresetMessage = call.getString("clipPresetMessage", "分析以下内容");
-        String systemPrompt = call.getString("systemPrompt", "");
-        String adminUsername = call.getString("adminUsername", "");
-        String adminPassword = call.getString("adminPassword", "");
-        String agentDirId = call.getString("agentDirId", "");
-
         SharedPreferences prefs = getContext().getSharedPreferences(
                 VCPApiHelper.PREFS_NAME, Context.MODE_PRIVATE);
-        prefs.edit()
-                .putString("baseUrl", baseUrl)
-                .putString("apiKey", apiKey)
-                .putString("model", model)
-                .putString("presetMessage", presetMessage)
-                .putString("clipPresetMessage", clipPresetMessage)
-                .putString("systemPrompt", systemPrompt)
-                .putString("adminUsername", adminUsername)
-                .putString("adminPassword", adminPassword)
-                .putString("agentDirId", agentDirId)
-                .apply();
+        SharedPreferences.Editor editor = prefs.edit();
+        for (Object[] setting : SETTINGS) {
+            String key = (String) setting[0];
+            Object def = setting[1];
+            if (def instanceof Boolean) {
+                editor.putBoolean(key, call.getBoolean(key, (Boolean) def));
+            } else if (def instanceof Integer) {
+                editor.putInt(key, call.getInt(key, (Integer) def));
+            } else {
+                editor.putString(key, call.getString(key, (String) def));
+            }
+        }
+        editor.apply();
 
         JSObject ret = new JSObject();
         ret.put("success", true);
@@ -51,15 +81,17 @@ public class ScreenshotSenderPlugin extends Plugin {
                 VCPApiHelper.PREFS_NAME, Context.MODE_PRIVATE);
 
         JSObject ret = new JSObject();
-        ret.put("baseUrl", prefs.getString("baseUrl", ""));
-        ret.put("apiKey", prefs.getString("apiKey", ""));
-        ret.put("model", prefs.getString("model", ""));
-        ret.put("presetMessage", prefs.getString("presetMessage", "识别截图内容并记录日记"));
-        ret.put("clipPresetMessage", prefs.getString("clipPresetMessage", "分析以下内容"));
-        ret.put("systemPrompt", prefs.getString("systemPrompt", ""));
-        ret.put("adminUsername", prefs.getString("adminUsername", ""));
-        ret.put("adminPassword", prefs.getString("adminPassword", ""));
-        ret.put("agentDirId", prefs.getString("agentDirId", ""));
+        for (Object[] setting : SETTINGS) {
+            String key = (String) setting[0];
+            Object def = setting[1];
+            if (def instanceof Boolean) {
+                ret.put(key, prefs.getBoolean(key, (Boolean) def));
+            } else if (def instanceof Integer) {
+                ret.put(key, prefs.getInt(key, (Integer) def));
+            } else {
+                ret.put(key, prefs.getString(key, (String) def));
+            }
+        }
         call.resolve(ret);
     }
 
@@ -3,51 +3,92 @@ package com.vcp.vcpmobile;
 import android.app.Notification;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
-import android.app.PendingIntent;
 import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.Build;
 import android.os.Environment;
 import android.os.IBinder;
-import android.util.Base64;
 import android.util.Log;
 
-import java.io.ByteArrayOutputStream;
+import org.json.JSONArray;
+
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 public class ScreenshotSenderService extends Service {
     private static final String TAG = "ScreenshotSender";
     private static final String CHANNEL_ID = "screenshot_sender_channel";
     private static final int NOTIFICATION_ID = 9527;
+    static final String ACTION_CANCEL = "com.vcp.vcpmobile.action.CANCEL_SCREENSHOT";
+
+    // 当前进行中的 AI 调用（通知栏“取消”按钮作用于它）
+    private volatile CancellableCall activeCall;
+    private NotificationRenderer notifier;
     public static final String PREFS_NAME = VCPApiHelper.PREFS_NAME;
 
     @Override
     public void onCreate() {
         super.onCreate();
         createNotificationChannel();
+        notifier = new NotificationRenderer(this, NOTIFICATION_ID, CHANNEL_ID, "VCPMobile 截图发送",
+                android.R.drawable.ic_menu_camera, ACTION_CANCEL, () -> {
+                    CancellableCall call = activeCall;
+                    return call != null && !call.isCancelled();
+                });
     }
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
+        if (intent != null && ACTION_CANCEL.equals(intent.getAction())) {
+            CancellableCall call = activeCall;
+            if (call != null) {
+                call.cancel(VCPApiHelper.getPrefs(this));
+                updateNotification("正在取消...");
+            } else {
+                stopSelf();
+            }
+            return START_NOT_STICKY;
+        }
+
         // 启动前台通知
-        Notification notification = buildNotification("正在发送截图...");
+        Notification notification = notifier.build("正在发送截图...");
         startForeground(NOTIFICATION_ID, notification);
 
         // 在后台线程执行
         VCPApiHelper.initContext(this);
+        String traceId = VCPTrace.ensure(intent != null ? intent.getStringExtra(VCPTrace.EXTRA_TRACE_ID) : null, "screenshot");
+        VCPTrace.instant(traceId, "service.start");
+
         new Thread(() -> {
+            VCPTrace.setCurrent(traceId);
+            CancellableCall call = new CancellableCall(Thread.currentThread(), traceId);
+            activeCall = call;
+            String status = "error";
             try {
                 VCPApiHelper.fileLog("[Screenshot] 服务已启动，开始发送截图");
-                sendLatestScreenshot();
+                sendLatestScreenshot(call);
+                status = "ok";
             } catch (Exception e) {
+                if (call.isCancelled()) {
+                    status = "cancelled";
+                    VCPApiHelper.fileLog("[Screenshot] 已取消");
+                    updateNotification("已取消");
+                    return;
+                }
                 VCPApiHelper.fileLog("[Screenshot] 异常: " + e.getClass().getSimpleName() + ": " + e.getMessage());
                 updateNotification("截图发送失败: " + e.getMessage());
             } finally {
+                activeCall = null;
+                VCPTrace.finish(traceId, status);
+                VCPTrace.setCurrent(null);
+                notifier.flush();
                 try { Thread.sleep(10000); } catch (InterruptedException ignored) {}
                 stopForeground(true);
                 stopSelf();
@@ -57,106 +98,215 @@ public class ScreenshotSenderService extends Service {
         return START_NOT_STICKY;
     }
 
-    private void sendLatestScreenshot() throws Exception {
-        SharedPreferences prefs = VCPApiHelper.getPrefs(this);
-        String presetMessage = prefs.getString("presetMessage", "识别截图内容并记录日记");
-
-        // 查找最新截图（带重试：系统截图可能有几秒延迟才写入磁盘）
-        File screenshotDir = new File(Environment.getExternalStoragePublicDirectory(
-                Environment.DIRECTORY_PICTURES), "Screenshots");
-        if (!screenshotDir.exists() || !screenshotDir.isDirectory()) {
-            screenshotDir = new File(Environment.getExternalStoragePublicDirectory(
-                    Environment.DIRECTORY_DCIM), "Screenshots");
-        }
-        VCPApiHelper.fileLog("[Screenshot] 截图目录: " + screenshotDir.getAbsolutePath() + " exists=" + screenshotDir.exists());
-        if (!screenshotDir.exists() || !screenshotDir.isDirectory()) {
-            updateNotification("未找到截图目录");
-            VCPApiHelper.fileLog("[Screenshot] 未找到截图目录");
-            return;
-        }
-
+    private void sendLatestScreenshot(CancellableCall call) throws Exception {
+        VCPTrace.Span scanSpan = VCPTrace.span(call.traceId, "screenshot.scan");
         File latestScreenshot = null;
         long ageMs = Long.MAX_VALUE;
-        int maxScanRetries = 5;
-        for (int scan = 0; scan < maxScanRetries; scan++) {
-            if (scan > 0) {
-                VCPApiHelper.fileLog("[Screenshot] 等待截图写入... 第" + (scan + 1) + "次扫描");
-                updateNotification("等待截图写入... (" + scan + "/" + maxScanRetries + ")");
-                Thread.sleep(2000);
+        try {
+            // 查找最新截图（带重试：系统截图可能有几秒延迟才写入磁盘）
+            File screenshotDir = new File(Environment.getExternalStoragePublicDirectory(
+                    Environment.DIRECTORY_PICTURES), "Screenshots");
+            if (!screenshotDir.exists() || !screenshotDir.isDirectory()) {
+                screenshotDir = new File(Environment.getExternalStoragePublicDirectory(
+                        Environment.DIRECTORY_DCIM), "Screenshots");
+            }
+            VCPApiHelper.fileLog("[Screenshot] 截图目录: " + screenshotDir.getAbsolutePath() + " exists=" + screenshotDir.exists());
+            if (!screenshotDir.exists() || !screenshotDir.isDirectory()) {
+                updateNotification("未找到截图目录");
+                VCPApiHelper.fileLog("[Screenshot] 未找到截图目录");
+                return;
             }
 
-            File[] files = screenshotDir.listFiles((dir, name) -> {
-                String lower = name.toLowerCase();
-                return lower.endsWith(".png") || lower.endsWith(".jpg") || lower.endsWith(".jpeg") || lower.endsWith(".webp");
-            });
+            int maxScanRetries = 5;
+            for (int scan = 0; scan < maxScanRetries; scan++) {
+                if (scan > 0) {
+                    VCPApiHelper.fileLog("[Screenshot] 等待截图写入... 第" + (scan + 1) + "次扫描");
+                    updateNotification("等待截图写入... (" + scan + "/" + maxScanRetries + ")");
+                    Thread.sleep(2000);
+                }
 
-            if (files == null || files.length == 0) {
-                VCPApiHelper.fileLog("[Screenshot] 截图文件数: " + (files == null ? "null" : "0"));
-                continue;
-            }
+                File[] files = screenshotDir.listFiles((dir, name) -> {
+                    String lower = name.toLowerCase();
+                    return lower.endsWith(".png") || lower.endsWith(".jpg") || lower.endsWith(".jpeg") || lower.endsWith(".webp");
+                });
 
-            Arrays.sort(files, (a, b) -> Long.compare(b.lastModified(), a.lastModified()));
-            latestScreenshot = files[0];
-            ageMs = System.currentTimeMillis() - latestScreenshot.lastModified();
-            VCPApiHelper.fileLog("[Screenshot] 扫描" + (scan + 1) + " 最新: " + latestScreenshot.getName() + " age=" + ageMs + "ms 文件数=" + files.length);
+                if (files == null || files.length == 0) {
+                    VCPApiHelper.fileLog("[Screenshot] 截图文件数: " + (files == null ? "null" : "0"));
+                    continue;
+                }
 
-            if (ageMs < 10000) {
-                break; // 10秒内的截图，立即使用
+                Arrays.sort(files, (a, b) -> Long.compare(b.lastModified(), a.lastModified()));
+                latestScreenshot = files[0];
+                ageMs = System.currentTimeMillis() - latestScreenshot.lastModified();
+                VCPApiHelper.fileLog("[Screenshot] 扫描" + (scan + 1) + " 最新: " + latestScreenshot.getName() + " age=" + ageMs + "ms 文件数=" + files.length);
+
+                if (ageMs < 10000) {
+                    break; // 10秒内的截图，立即使用
+                }
             }
-        }
 
-        if (latestScreenshot == null) {
-            updateNotification("截图目录为空");
-            VCPApiHelper.fileLog("[Screenshot] 截图目录为空");
-            return;
-        }
+            if (latestScreenshot == null) {
+                updateNotification("截图目录为空");
+                VCPApiHelper.fileLog("[Screenshot] 截图目录为空");
+                return;
+            }
 
-        if (ageMs > 600000) {
-            updateNotification("未检测到最近截图（最近截图已超过10分钟）");
-            VCPApiHelper.fileLog("[Screenshot] 截图超过10分钟，跳过");
-            return;
+            if (ageMs > 600000) {
+                updateNotification("未检测到最近截图（最近截图已超过10分钟）");
+                VCPApiHelper.fileLog("[Screenshot] 截图超过10分钟，跳过");
+                return;
+            }
+            scanSpan.arg("ageMs", ageMs);
+        } finally {
+            scanSpan.end();
         }
-
         VCPApiHelper.fileLog("[Screenshot] 找到截图: " + latestScreenshot.getName() + " age=" + ageMs + "ms");
+        sendScreenshot(latestScreenshot, call);
+    }
+
+    /**
+     * 发送一张截图：预处理与编码、附件上传、AI 调用、写入话题（VcpLoadTest 直接驱动这条管线）
+     */
+    void sendScreenshot(File latestScreenshot, CancellableCall call) throws Exception {
+        SharedPreferences prefs = VCPApiHelper.getPrefs(this);
+        String presetMessage = prefs.getString("presetMessage", "识别截图内容并记录日记");
         updateNotification("正在处理截图: " + latestScreenshot.getName());
 
-        // 读取并压缩图片
-        Bitmap bitmap = BitmapFactory.decodeFile(latestScreenshot.getAbsolutePath());
-        if (bitmap == null) {
+        // 读取并压缩图片（降采样解码，原图不进入内存）；预处理裁掉系统栏与边距，长截图分块
+        VCPTrace.Span encodeSpan = VCPTrace.span(call.traceId, "image.encode");
+        List<byte[]> jpegs = null;
+        long jpegBytes = 0;
+        try {
+            if (prefs.getBoolean("screenshotPreprocess", true)) {
+                ImagePreprocessor.Result processed = ImagePreprocessor.process(latestScreenshot.getAbsolutePath());
+                jpegs = processed != null ? processed.jpegs : null;
+            } else {
+                byte[] jpeg = ImageEncoder.encodeFileJpeg(latestScreenshot.getAbsolutePath());
+                jpegs = jpeg != null ? Collections.singletonList(jpeg) : null;
+            }
+            if (jpegs != null) for (byte[] jpeg : jpegs) jpegBytes += jpeg.length;
+        } finally {
+            encodeSpan.arg("jpegBytes", jpegBytes).arg("tiles", jpegs != null ? jpegs.size() : 0).end();
+        }
+        if (jpegs == null) {
             updateNotification("无法读取截图文件");
             return;
         }
 
-        int maxDim = 1024;
-        int w = bitmap.getWidth();
-        int h = bitmap.getHeight();
-        if (Math.max(w, h) > maxDim) {
-            float scale = (float) maxDim / Math.max(w, h);
-            w = Math.round(w * scale);
-            h = Math.round(h * scale);
-            bitmap = Bitmap.createScaledBitmap(bitmap, w, h, true);
+        // aiImageByUrl 开启时先上传（每个分块一个附件），用服务端地址代替 base64 发给 AI；
+        // 否则 AI 调用先独占链路，附件上传作为可延后的后台任务在回复之后进行
+        boolean upload = prefs.getBoolean("uploadAttachments", true);
+        boolean byUrl = upload && prefs.getBoolean("aiImageByUrl", false);
+        String baseName = latestScreenshot.getName().replaceAll("\\.[^.]*$", "");
+        List<FutureTask<AttachmentUploader.Attachment>> uploads = new ArrayList<>();
+        if (byUrl) {
+            updateNotification("正在上传截图...");
+            for (int i = 0; i < jpegs.size(); i++) {
+                byte[] jpeg = jpegs.get(i);
+                String attachmentName = attachmentName(baseName, i, jpegs.size());
+                FutureTask<AttachmentUploader.Attachment> task = new FutureTask<>(() -> {
+                    VCPTrace.setCurrent(call.traceId);
+                    try {
+                        return AttachmentUploader.upload(prefs, jpeg, attachmentName, "image/jpeg", call);
+                    } finally {
+                        VCPTrace.setCurrent(null);
+                    }
+                });
+                uploads.add(task);
+                new Thread(task).start();
+            }
+        }
+        List<String> images = new ArrayList<>();
+        for (int i = 0; i < jpegs.size(); i++) {
+            AttachmentUploader.Attachment uploaded = byUrl ? awaitUpload(uploads.get(i)) : null;
+            images.add(uploaded != null && uploaded.url != null ? uploaded.url : Base64Codec.encode(jpegs.get(i)));
         }
-
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        bitmap.compress(Bitmap.CompressFormat.JPEG, 60, baos);
-        String base64 = Base64.encodeToString(baos.toByteArray(), Base64.NO_WRAP);
-        bitmap.recycle();
 
         // 调用 AI API
-        VCPApiHelper.fileLog("[Screenshot] base64长度=" + base64.length() + "，开始调用 AI API");
+        VCPApiHelper.fileLog("[Screenshot] 图片 " + images.size() + " 张，" + (images.get(0).startsWith("http")
+                ? "地址=" + images.get(0) : "JPEG " + jpegBytes + " 字节") + "，开始调用 AI API");
         updateNotification("正在发送给 AI...");
-        String aiReply = VCPApiHelper.chatImage(prefs, base64, presetMessage);
+        ConversationWindow conversation = ConversationWindow.get(this);
+        VCPTrace.Span chatSpan = VCPTrace.span(call.traceId, "api.chat");
+        String aiReply;
+        try {
+            aiReply = VCPApiHelper.chatImages(prefs, images, presetMessage,
+                    conversation.context(HistoryBatcher.SOURCE_SCREENSHOT), call);
+        } finally {
+            chatSpan.end();
+        }
+        activeCall = null; // AI 已回复，通知不再显示取消按钮
         VCPApiHelper.fileLog("[Screenshot] AI 回复长度=" + aiReply.length());
 
         String preview = aiReply.length() > 100 ? aiReply.substring(0, 100) + "..." : aiReply;
         updateNotification("✅ AI 回复: " + preview);
+        // 上下文只记录文字描述，截图本身不保留
+        conversation.record(HistoryBatcher.SOURCE_SCREENSHOT, "[截图] " + presetMessage, aiReply);
 
         // 写入 Nova Agent 话题（用户打开 App 后可见）
         String topicName = "📸 " + latestScreenshot.getName();
-        // 用户消息用纯文本描述（base64 太大不写入话题）
-        String userContent = "[截图] " + presetMessage + "\n\n(文件: " + latestScreenshot.getName() + ")";
-        boolean synced = VCPApiHelper.appendToAgentHistory(prefs, userContent, aiReply, topicName);
-        VCPApiHelper.fileLog("[Screenshot] 话题写入结果: " + synced);
+        String fileName = latestScreenshot.getName();
+        if (byUrl) {
+            List<AttachmentUploader.Attachment> attachments = new ArrayList<>();
+            for (FutureTask<AttachmentUploader.Attachment> task : uploads) attachments.add(awaitUpload(task));
+            enqueueHistory(presetMessage, aiReply, topicName, fileName, call.traceId, attachments);
+        } else if (upload) {
+            List<byte[]> pending = jpegs;
+            BackgroundScheduler.get(this).defer(null, () -> {
+                List<AttachmentUploader.Attachment> attachments = new ArrayList<>();
+                for (int i = 0; i < pending.size(); i++) {
+                    try {
+                        attachments.add(AttachmentUploader.upload(prefs, pending.get(i),
+                                attachmentName(baseName, i, pending.size()), "image/jpeg", null));
+                    } catch (Exception e) {
+                        VCPApiHelper.fileLog("[Screenshot] 附件上传失败: " + e);
+                    }
+                }
+                enqueueHistory(presetMessage, aiReply, topicName, fileName, call.traceId, attachments);
+            });
+            VCPApiHelper.fileLog("[Screenshot] 附件上传已延后，完成后写入话题");
+        } else {
+            enqueueHistory(presetMessage, aiReply, topicName, fileName, call.traceId, Collections.emptyList());
+        }
+    }
+
+    private static String attachmentName(String baseName, int index, int count) {
+        return baseName + (count > 1 ? "_" + (index + 1) : "") + ".jpg";
+    }
+
+    /** 上传成功时用户消息按附件 ID 引用截图；否则用纯文本描述（base64 太大不写入话题） */
+    private void enqueueHistory(String presetMessage, String aiReply, String topicName, String fileName,
+                                String traceId, List<AttachmentUploader.Attachment> uploaded) {
+        JSONArray attachments = null;
+        for (AttachmentUploader.Attachment attachment : uploaded) {
+            if (attachment == null) continue;
+            if (attachments == null) attachments = new JSONArray();
+            try {
+                attachments.put(attachment.toReference());
+            } catch (Exception e) {
+                VCPApiHelper.fileLog("[Screenshot] 附件引用无效: " + e.getMessage());
+            }
+        }
+        String userContent;
+        if (attachments != null) {
+            userContent = "[截图] " + presetMessage;
+        } else {
+            userContent = "[截图] " + presetMessage + "\n\n(文件: " + fileName + ")";
+        }
+        HistoryBatcher.get(this).enqueue(HistoryBatcher.SOURCE_SCREENSHOT, userContent, aiReply, topicName,
+                traceId, attachments);
+        VCPApiHelper.fileLog("[Screenshot] 已加入话题写入队列");
+    }
+
+    /** 等待附件上传完成；失败（含服务端不支持）时返回 null，不影响截图发送 */
+    private static AttachmentUploader.Attachment awaitUpload(FutureTask<AttachmentUploader.Attachment> upload)
+            throws InterruptedException {
+        try {
+            return upload.get();
+        } catch (ExecutionException e) {
+            VCPApiHelper.fileLog("[Screenshot] 附件上传失败: " + e.getCause());
+            return null;
+        }
     }
 
     private void createNotificationChannel() {
@@ -169,31 +319,8 @@ public class ScreenshotSenderService extends Service {
         }
     }
 
-    private Notification buildNotification(String text) {
-        Intent intent = new Intent(this, MainActivity.class);
-        PendingIntent pi = PendingIntent.getActivity(this, 0, intent,
-                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
-
-        Notification.Builder builder;
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            builder = new Notification.Builder(this, CHANNEL_ID);
-        } else {
-            builder = new Notification.Builder(this);
-        }
-        return builder
-                .setContentTitle("VCPMobile 截图发送")
-                .setContentText(text)
-                .setSmallIcon(android.R.drawable.ic_menu_camera)
-                .setContentIntent(pi)
-                .setOngoing(false)
-                .build();
-    }
-
     private void updateNotification(String text) {
-        NotificationManager nm = getSystemService(NotificationManager.class);
-        if (nm != null) {
-            nm.notify(NOTIFICATION_ID, buildNotification(text));
-        }
+        notifier.update(text);
     }
 
     @Override
@@ -0,0 +1,148 @@
+package com.vcp.vcpmobile;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 分享内容并行预处理：
+ * 多张图片在线程池中同时解码、降采样、编码，总耗时接近最慢的一项而非总和。
+ * 解码前按图片尺寸估算峰值内存，从全局内存预算中申请额度，超出预算的任务排队等待。
+ */
+public class SharePreprocessor {
+    // 内存预算：堆上限的 1/4，且不超过 64MB
+    private static final long MEMORY_BUDGET_BYTES = Math.min(Runtime.getRuntime().maxMemory() / 4, 64L * 1024 * 1024);
+    // 单个文本文件读取上限（字符）
+    private static final int MAX_TEXT_CHARS = 64 * 1024;
+
+    /** 一个待处理的分享项：uri 与 text 二选一 */
+    public static class Item {
+        final Uri uri;
+        final String mime;
+        final String text;
+
+        public Item(Uri uri, String mime) {
+            this.uri = uri;
+            this.mime = mime;
+            this.text = null;
+        }
+
+        public Item(String text) {
+            this.uri = null;
+            this.mime = "text/plain";
+            this.text = text;
+        }
+    }
+
+    /** 预处理结果，图片与文本均保持分享时的顺序 */
+    public static class Result {
+        public final List<String> images = new ArrayList<>();
+        public final List<String> texts = new ArrayList<>();
+        public final List<String> fileNames = new ArrayList<>();
+        public final List<String> skipped = new ArrayList<>();
+    }
+
+    private final ContentResolver resolver;
+    // 以 KB 为单位的许可，避免 int 溢出
+    private final Semaphore budget;
+    private final int budgetKb;
+
+    public SharePreprocessor(ContentResolver resolver) {
+        this.resolver = resolver;
+        this.budgetKb = (int) (MEMORY_BUDGET_BYTES / 1024);
+        this.budget = new Semaphore(budgetKb, true);
+    }
+
+    public Result process(List<Item> items) throws InterruptedException {
+        int threads = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, items.size())));
+        List<Future<Object>> futures = new ArrayList<>();
+        try {
+            for (Item item : items) {
+                futures.add(pool.submit(() -> processItem(item)));
+            }
+
+            Result result = new Result();
+            for (int i = 0; i < items.size(); i++) {
+                Item item = items.get(i);
+                Object value;
+                try {
+                    value = futures.get(i).get();
+                } catch (ExecutionException e) {
+                    VCPApiHelper.fileLog("[Share] 预处理失败: " + e.getCause());
+                    value = null;
+                }
+                String name = item.uri != null ? UriContent.displayName(resolver, item.uri) : null;
+                if (value == null) {
+                    if (name != null) result.skipped.add(name);
+                } else if (value instanceof ImagePart) {
+                    result.images.add(((ImagePart) value).base64);
+                    if (name != null) result.fileNames.add(name);
+                } else {
+                    result.texts.add((String) value);
+                    if (name != null) result.fileNames.add(name);
+                }
+            }
+            return result;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static class ImagePart {
+        final String base64;
+
+        ImagePart(String base64) {
+            this.base64 = base64;
+        }
+    }
+
+    private Object processItem(Item item) throws Exception {
+        if (item.text != null) return item.text;
+
+        String mime = item.mime != null ? item.mime : UriContent.mimeType(resolver, item.uri, null);
+        if (UriContent.isImage(mime)) {
+            int[] size = ImageEncoder.readBounds(resolver, item.uri);
+            if (size == null) return null;
+            // 单张图片超过总预算时只申请全部额度（独占运行），避免永久阻塞
+            int permits = (int) Math.min(budgetKb, ImageEncoder.estimateDecodeBytes(size[0], size[1]) / 1024 + 1);
+            budget.acquire(permits);
+            try {
+                String base64 = ImageEncoder.encodeUri(resolver, item.uri);
+                return base64 != null ? new ImagePart(base64) : null;
+            } finally {
+                budget.release(permits);
+            }
+        }
+        if (UriContent.isTextLike(mime)) {
+            return readText(item.uri);
+        }
+        return null;
+    }
+
+    private String readText(Uri uri) throws Exception {
+        try (InputStream in = resolver.openInputStream(uri)) {
+            if (in == null) return null;
+            Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+            StringBuilder sb = new StringBuilder();
+            char[] buf = new char[8192];
+            int n;
+            while (sb.length() < MAX_TEXT_CHARS && (n = reader.read(buf, 0, Math.min(buf.length, MAX_TEXT_CHARS - sb.length()))) != -1) {
+                sb.append(buf, 0, n);
+            }
+            if (sb.length() >= MAX_TEXT_CHARS) sb.append("\n\n[内容过长，已截断]");
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.vcp.vcpmobile;
+
+import android.app.Activity;
+import android.content.ClipData;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+
+import java.util.ArrayList;
+
+/**
+ * 无 UI Activity，作为系统分享目标（ACTION_SEND / ACTION_SEND_MULTIPLE）。
+ * 收集分享的图片、文本、文件 URI，连同读取权限一起转交 ShareSenderService，然后自行关闭。
+ */
+public class ShareSendActivity extends Activity {
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        VCPApiHelper.initContext(this);
+
+        Intent intent = getIntent();
+        String action = intent != null ? intent.getAction() : null;
+        ArrayList<Uri> uris = new ArrayList<>();
+        String sharedText = null;
+
+        if (Intent.ACTION_SEND.equals(action)) {
+            Uri uri = getStreamExtra(intent);
+            if (uri != null) uris.add(uri);
+            sharedText = intent.getStringExtra(Intent.EXTRA_TEXT);
+        } else if (Intent.ACTION_SEND_MULTIPLE.equals(action)) {
+            ArrayList<Uri> list = getStreamListExtra(intent);
+            if (list != null) uris.addAll(list);
+            sharedText = intent.getStringExtra(Intent.EXTRA_TEXT);
+        }
+
+        VCPApiHelper.fileLog("[Share] 收到分享: " + uris.size() + " 个 URI, 文本="
+                + (sharedText == null ? "null" : sharedText.length() + "字符"));
+
+        if (!uris.isEmpty() || (sharedText != null && !sharedText.trim().isEmpty())) {
+            Intent serviceIntent = new Intent(this, ShareSenderService.class);
+            serviceIntent.putExtra(VCPTrace.EXTRA_TRACE_ID, VCPTrace.begin("share"));
+            serviceIntent.putParcelableArrayListExtra("share_uris", uris);
+            if (sharedText != null) serviceIntent.putExtra("share_text", sharedText.trim());
+            if (intent.getType() != null) serviceIntent.putExtra("share_mime", intent.getType());
+
+            // 将分享授予的读取权限转交给 Service
+            if (!uris.isEmpty()) {
+                ClipData clip = ClipData.newRawUri("share", uris.get(0));
+                for (int i = 1; i < uris.size(); i++) {
+                    clip.addItem(new ClipData.Item(uris.get(i)));
+                }
+                serviceIntent.setClipData(clip);
+                serviceIntent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+            }
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                startForegroundService(serviceIntent);
+            } else {
+                startService(serviceIntent);
+            }
+        }
+
+        finish();
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Uri getStreamExtra(Intent intent) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+            return intent.getParcelableExtra(Intent.EXTRA_STREAM, Uri.class);
+        }
+        return intent.getParcelableExtra(Intent.EXTRA_STREAM);
+    }
+
+    @SuppressWarnings("deprecation")
+    private static ArrayList<Uri> getStreamListExtra(Intent intent) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+            return intent.getParcelableArrayListExtra(Intent.EXTRA_STREAM, Uri.class);
+        }
+        return intent.getParcelableArrayListExtra(Intent.EXTRA_STREAM);
+    }
+}
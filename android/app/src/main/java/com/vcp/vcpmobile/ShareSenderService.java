@@ -0,0 +1,195 @@
+package com.vcp.vcpmobile;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.Service;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.os.Build;
+import android.os.IBinder;
+
+import org.json.JSONArray;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 分享发送前台服务：
+ * 接收 ShareSendActivity 转交的多项内容 → 并行预处理（SharePreprocessor）→ 一次多模态请求发送给 AI。
+ */
+public class ShareSenderService extends Service {
+    private static final String TAG = "ShareSender";
+    private static final String CHANNEL_ID = "share_sender_channel";
+    private static final int NOTIFICATION_ID = 9529;
+    static final String ACTION_CANCEL = "com.vcp.vcpmobile.action.CANCEL_SHARE";
+
+    // 当前进行中的 AI 调用（通知栏“取消”按钮作用于它）
+    private volatile CancellableCall activeCall;
+    private NotificationRenderer notifier;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        createNotificationChannel();
+        notifier = new NotificationRenderer(this, NOTIFICATION_ID, CHANNEL_ID, "VCPMobile 分享发送",
+                android.R.drawable.ic_menu_share, ACTION_CANCEL, () -> {
+                    CancellableCall call = activeCall;
+                    return call != null && !call.isCancelled();
+                });
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        if (intent != null && ACTION_CANCEL.equals(intent.getAction())) {
+            CancellableCall call = activeCall;
+            if (call != null) {
+                call.cancel(VCPApiHelper.getPrefs(this));
+                updateNotification("正在取消...");
+            } else {
+                stopSelf();
+            }
+            return START_NOT_STICKY;
+        }
+
+        Notification notification = notifier.build("正在处理分享内容...");
+        startForeground(NOTIFICATION_ID, notification);
+
+        VCPApiHelper.initContext(this);
+        ArrayList<Uri> uris = intent != null ? getUris(intent) : null;
+        String sharedText = intent != null ? intent.getStringExtra("share_text") : null;
+        String sharedMime = intent != null ? intent.getStringExtra("share_mime") : null;
+
+        String traceId = VCPTrace.ensure(intent != null ? intent.getStringExtra(VCPTrace.EXTRA_TRACE_ID) : null, "share");
+        VCPTrace.instant(traceId, "service.start");
+
+        new Thread(() -> {
+            VCPTrace.setCurrent(traceId);
+            CancellableCall call = new CancellableCall(Thread.currentThread(), traceId);
+            activeCall = call;
+            String status = "error";
+            try {
+                sendShared(uris != null ? uris : new ArrayList<>(), sharedText, sharedMime, call);
+                status = "ok";
+            } catch (Exception e) {
+                if (call.isCancelled()) {
+                    status = "cancelled";
+                    VCPApiHelper.fileLog("[Share] 已取消");
+                    updateNotification("已取消");
+                    return;
+                }
+                VCPApiHelper.fileLog("[Share] 异常: " + e.getClass().getSimpleName() + ": " + e.getMessage());
+                updateNotification("发送失败: " + e.getMessage());
+            } finally {
+                activeCall = null;
+                VCPTrace.finish(traceId, status);
+                VCPTrace.setCurrent(null);
+                notifier.flush();
+                try { Thread.sleep(10000); } catch (InterruptedException ignored) {}
+                stopForeground(true);
+                stopSelf();
+            }
+        }).start();
+
+        return START_NOT_STICKY;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static ArrayList<Uri> getUris(Intent intent) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+            return intent.getParcelableArrayListExtra("share_uris", Uri.class);
+        }
+        return intent.getParcelableArrayListExtra("share_uris");
+    }
+
+    private void sendShared(List<Uri> uris, String sharedText, String sharedMime,
+                            CancellableCall call) throws Exception {
+        SharedPreferences prefs = VCPApiHelper.getPrefs(this);
+
+        List<SharePreprocessor.Item> items = new ArrayList<>();
+        // 单项分享时 Intent 类型即为该项 MIME；多项分享时逐个查询
+        String singleMime = uris.size() == 1 ? sharedMime : null;
+        for (Uri uri : uris) {
+            items.add(new SharePreprocessor.Item(uri, UriContent.mimeType(getContentResolver(), uri, singleMime)));
+        }
+
+        long start = System.currentTimeMillis();
+        updateNotification("正在预处理 " + items.size() + " 项...");
+        VCPTrace.Span preprocessSpan = VCPTrace.span(call.traceId, "share.preprocess").arg("items", items.size());
+        SharePreprocessor.Result result;
+        try {
+            result = new SharePreprocessor(getContentResolver()).process(items);
+        } finally {
+            preprocessSpan.end();
+        }
+        VCPApiHelper.fileLog("[Share] 预处理完成: 图片=" + result.images.size() + " 文本=" + result.texts.size()
+                + " 跳过=" + result.skipped.size() + " 耗时=" + (System.currentTimeMillis() - start) + "ms");
+
+        StringBuilder body = new StringBuilder();
+        if (sharedText != null && !sharedText.isEmpty()) body.append(sharedText);
+        for (String text : result.texts) {
+            if (body.length() > 0) body.append("\n\n");
+            body.append(text);
+        }
+
+        if (result.images.isEmpty() && body.length() == 0) {
+            updateNotification("没有可发送的内容");
+            VCPApiHelper.fileLog("[Share] 没有可发送的内容，跳过=" + result.skipped);
+            return;
+        }
+
+        String aiReply;
+        String preset;
+        updateNotification("正在发送给 AI...");
+        ConversationWindow conversation = ConversationWindow.get(this);
+        JSONArray context = conversation.context(HistoryBatcher.SOURCE_SHARE);
+        VCPTrace.Span chatSpan = VCPTrace.span(call.traceId, "api.chat").arg("images", result.images.size());
+        try {
+            if (!result.images.isEmpty()) {
+                preset = prefs.getString("presetMessage", "识别截图内容并记录日记");
+                String userText = body.length() > 0 ? preset + "\n\n" + body : preset;
+                aiReply = VCPApiHelper.chatImages(prefs, result.images, userText, context, call);
+            } else {
+                preset = prefs.getString("clipPresetMessage", "分析以下内容");
+                aiReply = VCPApiHelper.chatText(prefs, preset + "\n\n" + body, context, call);
+            }
+        } finally {
+            chatSpan.end();
+        }
+        activeCall = null; // AI 已回复，通知不再显示取消按钮
+        VCPApiHelper.fileLog("[Share] AI 回复长度=" + aiReply.length() + " 总耗时=" + (System.currentTimeMillis() - start) + "ms");
+
+        String aiPreview = aiReply.length() > 100 ? aiReply.substring(0, 100) + "..." : aiReply;
+        updateNotification("✅ AI 回复: " + aiPreview);
+
+        // 话题中只记录文本和文件名（图片 base64 太大不写入）
+        StringBuilder userContent = new StringBuilder("[分享] ").append(preset);
+        if (sharedText != null && !sharedText.isEmpty()) userContent.append("\n\n").append(sharedText);
+        if (!result.images.isEmpty()) userContent.append("\n\n(图片 ×").append(result.images.size()).append(")");
+        if (!result.fileNames.isEmpty()) userContent.append("\n(文件: ").append(String.join(", ", result.fileNames)).append(")");
+        conversation.record(HistoryBatcher.SOURCE_SHARE, userContent.toString(), aiReply);
+        String topicName = "📤 分享 " + (result.images.size() + result.texts.size()) + " 项";
+        HistoryBatcher.get(this).enqueue(HistoryBatcher.SOURCE_SHARE, userContent.toString(), aiReply, topicName, call.traceId);
+        VCPApiHelper.fileLog("[Share] 已加入话题写入队列");
+    }
+
+    private void createNotificationChannel() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationChannel channel = new NotificationChannel(
+                    CHANNEL_ID, "分享发送服务", NotificationManager.IMPORTANCE_LOW);
+            channel.setDescription("后台发送分享内容给 AI Agent");
+            NotificationManager nm = getSystemService(NotificationManager.class);
+            if (nm != null) nm.createNotificationChannel(channel);
+        }
+    }
+
+    private void updateNotification(String text) {
+        notifier.update(text);
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+}
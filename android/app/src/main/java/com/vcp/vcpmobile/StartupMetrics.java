@@ -0,0 +1,56 @@
+package com.vcp.vcpmobile;
+
+import android.os.Process;
+import android.os.SystemClock;
+
+import org.json.JSONObject;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 冷启动各阶段的时间点（相对进程启动，ms），通过 MetricsPlugin.getMetrics 的 startup 字段暴露：
+ * - activityCreate：MainActivity.onCreate 开始
+ * - pluginsRegistered / bridgeCreated：插件注册、Bridge 与 WebView 创建完成
+ * - webViewProvider：后台线程加载完 WebView 实现（与插件注册、Bridge 初始化并行）
+ * - pageLoaded：首个页面加载完成
+ * - appMounted：前端挂载完成（JS 调用 Metrics.markStartup）
+ *
+ * 每个阶段只记录进程内的第一次（Activity 重建、页面重新加载不覆盖冷启动数据），
+ * 同时以 startup.<阶段> 记入 VCPMetrics 的耗时统计。VCPMetrics.reset() 不清除这里的记录。
+ */
+public final class StartupMetrics {
+    private static final Map<String, Long> phases = new LinkedHashMap<>();
+
+    private StartupMetrics() {}
+
+    /** 当前距进程启动的时间 */
+    public static long sinceProcessStart() {
+        return SystemClock.uptimeMillis() - Process.getStartUptimeMillis();
+    }
+
+    /** 记录阶段时间点（已记录过的阶段忽略） */
+    public static void mark(String phase) {
+        long ms = sinceProcessStart();
+        synchronized (phases) {
+            if (phases.containsKey(phase)) return;
+            phases.put(phase, ms);
+        }
+        VCPMetrics.recordTime("startup." + phase, ms);
+    }
+
+    /** 记录一段耗时（不相对进程启动），如后台线程的 WebView 加载用时 */
+    public static void duration(String name, long ms) {
+        VCPMetrics.recordTime("startup." + name, ms);
+    }
+
+    public static JSONObject snapshot() {
+        JSONObject result = new JSONObject();
+        synchronized (phases) {
+            try {
+                for (Map.Entry<String, Long> e : phases.entrySet()) result.put(e.getKey(), e.getValue());
+            } catch (Exception ignored) {}
+        }
+        return result;
+    }
+}
@@ -0,0 +1,200 @@
+package com.vcp.vcpmobile;
+
+import android.content.SharedPreferences;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 边录边传的语音转写（OpenAI 兼容 /v1/audio/transcriptions）：
+ * 1. 开始录音时立即建立连接，以 chunked 传输发送 multipart 请求体，表单字段与文件头先发出
+ * 2. 录音数据按帧交给 write()，由独立的上传线程写入连接，网络抖动不会阻塞录音线程
+ * 3. 松开按键时 finish() 只需发送最后一帧与结束分隔符，服务端随即返回转写结果，
+ *    不再有“录完再整体上传”的等待
+ *
+ * 音频为 16 位单声道 PCM 的 WAV（转写模型内部即以 16kHz 处理），总长度事先未知，
+ * WAV 头中的长度字段填最大值，与常见的流式 WAV 写法一致。
+ *
+ * 设置项（prefs）：
+ * - transcriptionModel：转写模型（默认 DEFAULT_MODEL）
+ */
+public class StreamingTranscriber {
+    static final String DEFAULT_MODEL = "whisper-1";
+    // HttpURLConnection 的 chunk 大小：约 250ms 的 16kHz 音频
+    private static final int CHUNK_BYTES = 8 * 1024;
+    private static final long FINISH_TIMEOUT_MS = 60000;
+    private static final byte[] END = new byte[0];
+
+    private final SharedPreferences prefs;
+    private final int sampleRate;
+    private final CancellableCall call;
+    private final String boundary = "----vcp" + UUID.randomUUID().toString().replace("-", "");
+    private final LinkedBlockingQueue<byte[]> frames = new LinkedBlockingQueue<>();
+    private final LinkedBlockingQueue<Object> result = new LinkedBlockingQueue<>(1);
+    private final Thread uploader;
+    private volatile long bytesQueued = 0;
+    private volatile long bytesSent = 0;
+
+    /**
+     * 建立连接并开始上传（连接在后台线程建立，不阻塞调用方）
+     * @param call 可取消句柄，取消时断开连接
+     */
+    public StreamingTranscriber(SharedPreferences prefs, int sampleRate, CancellableCall call) {
+        this.prefs = prefs;
+        this.sampleRate = sampleRate;
+        this.call = call;
+        this.uploader = new Thread(this::upload, "vcp-transcribe");
+        uploader.setDaemon(true);
+        uploader.start();
+    }
+
+    /** 追加一段 PCM（复制后入队，立即返回） */
+    public void write(byte[] pcm, int offset, int length) {
+        if (length <= 0) return;
+        byte[] frame = new byte[length];
+        System.arraycopy(pcm, offset, frame, 0, length);
+        bytesQueued += length;
+        frames.add(frame);
+    }
+
+    /** 已写入连接的音频字节数 */
+    public long bytesSent() {
+        return bytesSent;
+    }
+
+    public long bytesQueued() {
+        return bytesQueued;
+    }
+
+    /**
+     * 录音结束：发送剩余数据并等待转写结果
+     * @return 转写文本
+     */
+    public String finish() throws Exception {
+        frames.add(END);
+        Object outcome = result.poll(FINISH_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        if (outcome == null) {
+            abort();
+            throw new IOException("转写超时");
+        }
+        if (outcome instanceof Exception) throw (Exception) outcome;
+        return (String) outcome;
+    }
+
+    /** 放弃本次录音（断开连接，不等待结果） */
+    public void abort() {
+        uploader.interrupt();
+    }
+
+    // ========== 上传线程 ==========
+
+    private void upload() {
+        String traceId = call != null ? call.traceId : null;
+        VCPTrace.Span span = VCPTrace.span(traceId, "voice.upload");
+        Object outcome;
+        HttpURLConnection conn = null;
+        String baseUrl = VCPApiHelper.getBaseUrl(prefs);
+        try {
+            conn = (HttpURLConnection) new URL(baseUrl + "/v1/audio/transcriptions").openConnection();
+            if (call != null) call.attach(conn, baseUrl);
+            conn.setRequestMethod("POST");
+            conn.setRequestProperty("Authorization", VCPProtocol.bearerAuthorization(prefs.getString("apiKey", "")));
+            conn.setRequestProperty("Content-Type", "multipart/form-data; boundary=" + boundary);
+            conn.setDoOutput(true);
+            conn.setConnectTimeout(15000);
+            conn.setReadTimeout(60000);
+            conn.setChunkedStreamingMode(CHUNK_BYTES);
+
+            String model = prefs.getString("transcriptionModel", "");
+            try (OutputStream os = conn.getOutputStream()) {
+                os.write(ascii(field("model", model.isEmpty() ? DEFAULT_MODEL : model)
+                        + field("response_format", "json")
+                        + "--" + boundary + "\r\n"
+                        + "Content-Disposition: form-data; name=\"file\"; filename=\"voice.wav\"\r\n"
+                        + "Content-Type: audio/wav\r\n\r\n"));
+                os.write(wavHeader(sampleRate));
+                os.flush();
+                while (true) {
+                    byte[] frame = frames.take();
+                    if (frame == END) break;
+                    os.write(frame);
+                    // 每帧都推送出去，服务端在录音过程中即可开始接收
+                    os.flush();
+                    bytesSent += frame.length;
+                }
+                os.write(ascii("\r\n--" + boundary + "--\r\n"));
+            }
+
+            int code = conn.getResponseCode();
+            InputStream in = code >= 400 ? conn.getErrorStream() : conn.getInputStream();
+            String body = in != null ? new String(in.readAllBytes(), StandardCharsets.UTF_8) : "";
+            if (code != 200) {
+                throw new IOException("转写失败 " + code + ": " + body.substring(0, Math.min(body.length(), 200)));
+            }
+            outcome = new JSONObject(body).optString("text", "").trim();
+            VCPMetrics.add("voice.bytes", bytesSent);
+            span.arg("bytes", bytesSent);
+        } catch (InterruptedException e) {
+            outcome = new CancellationException("录音已取消");
+        } catch (Exception e) {
+            outcome = call != null && call.isCancelled() ? new CancellationException("录音已取消") : e;
+        } finally {
+            if (conn != null) {
+                if (call != null) call.detach(conn);
+                conn.disconnect();
+            }
+            span.end();
+        }
+        result.offer(outcome);
+    }
+
+    private String field(String name, String value) {
+        return "--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"" + name + "\"\r\n\r\n"
+                + value + "\r\n";
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** 16 位单声道 PCM 的 WAV 头，长度未知时 RIFF 与 data 长度填 0xFFFFFFFF */
+    static byte[] wavHeader(int sampleRate) {
+        byte[] h = new byte[44];
+        putAscii(h, 0, "RIFF");
+        putIntLE(h, 4, 0xFFFFFFFF);
+        putAscii(h, 8, "WAVE");
+        putAscii(h, 12, "fmt ");
+        putIntLE(h, 16, 16);
+        h[20] = 1;  // PCM
+        h[22] = 1;  // 单声道
+        putIntLE(h, 24, sampleRate);
+        putIntLE(h, 28, sampleRate * 2);
+        h[32] = 2;  // 每帧字节数
+        h[34] = 16; // 位深
+        putAscii(h, 36, "data");
+        putIntLE(h, 40, 0xFFFFFFFF);
+        return h;
+    }
+
+    private static void putAscii(byte[] buf, int off, String s) {
+        for (int i = 0; i < s.length(); i++) buf[off + i] = (byte) s.charAt(i);
+    }
+
+    private static void putIntLE(byte[] buf, int off, int value) {
+        buf[off] = (byte) value;
+        buf[off + 1] = (byte) (value >>> 8);
+        buf[off + 2] = (byte) (value >>> 16);
+        buf[off + 3] = (byte) (value >>> 24);
+    }
+}
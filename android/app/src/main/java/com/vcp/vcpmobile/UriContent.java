@@ -0,0 +1,66 @@
+package com.vcp.vcpmobile;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.OpenableColumns;
+
+/**
+ * content:// URI 辅助方法：查询文件名、大小、MIME 类型，并判断内容种类
+ */
+public class UriContent {
+
+    public static String mimeType(ContentResolver resolver, Uri uri, String fallback) {
+        String type = null;
+        try {
+            type = resolver.getType(uri);
+        } catch (Exception ignored) {}
+        if (type == null || type.isEmpty()) type = fallback;
+        return type != null ? type : "application/octet-stream";
+    }
+
+    public static String displayName(ContentResolver resolver, Uri uri) {
+        try (Cursor c = resolver.query(uri, new String[]{OpenableColumns.DISPLAY_NAME}, null, null, null)) {
+            if (c != null && c.moveToFirst() && !c.isNull(0)) {
+                return c.getString(0);
+            }
+        } catch (Exception ignored) {}
+        String last = uri.getLastPathSegment();
+        return last != null ? last : "未命名文件";
+    }
+
+    /**
+     * @return 文件字节数，未知时返回 -1
+     */
+    public static long size(ContentResolver resolver, Uri uri) {
+        try (Cursor c = resolver.query(uri, new String[]{OpenableColumns.SIZE}, null, null, null)) {
+            if (c != null && c.moveToFirst() && !c.isNull(0)) {
+                return c.getLong(0);
+            }
+        } catch (Exception ignored) {}
+        return -1;
+    }
+
+    public static boolean isImage(String mime) {
+        return mime != null && mime.startsWith("image/");
+    }
+
+    public static boolean isTextLike(String mime) {
+        if (mime == null) return false;
+        if (mime.startsWith("text/")) return true;
+        switch (mime) {
+            case "application/json":
+            case "application/xml":
+            case "application/javascript":
+            case "application/x-javascript":
+            case "application/x-sh":
+            case "application/x-yaml":
+            case "application/yaml":
+            case "application/sql":
+            case "application/csv":
+                return true;
+            default:
+                return mime.endsWith("+json") || mime.endsWith("+xml");
+        }
+    }
+}
@@ -2,21 +2,29 @@ package com.vcp.vcpmobile;
 
 import android.content.Context;
 import android.content.SharedPreferences;
-import android.util.Base64;
 import android.util.Log;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Locale;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DeflaterOutputStream;
 
 /**
  * 公共 API 辅助类：
@@ -33,16 +41,19 @@ public class VCPApiHelper {
 
     public static void initContext(Context ctx) {
         sContext = ctx.getApplicationContext();
+        MemoryGovernor.attach(sContext);
     }
 
     public static void fileLog(String msg) {
+        // 绑定了 trace 的线程带上 trace id，便于把同一次捕获的日志串起来
+        String traceId = VCPTrace.current();
+        if (traceId != null) msg = "[" + traceId + "] " + msg;
         Log.e(TAG, msg);
         if (sContext == null) return;
         try {
             File logFile = new File(sContext.getFilesDir(), "vcp_debug.log");
-            String time = new SimpleDateFormat("HH:mm:ss", Locale.getDefault()).format(new Date());
             FileWriter fw = new FileWriter(logFile, true);
-            fw.write(time + " " + msg + "\n");
+            fw.write(VCPProtocol.formatLogLine(System.currentTimeMillis(), msg));
             fw.close();
         } catch (Exception ignored) {}
     }
@@ -57,164 +68,505 @@ public class VCPApiHelper {
         return prefs.getString("baseUrl", "").replaceAll("/+$", "");
     }
 
+    /**
+     * AI 请求可用的全部网关：baseUrl 在前，其后是 baseUrls（换行或逗号分隔）中的额外端点
+     */
+    public static List<String> getBaseUrls(SharedPreferences prefs) {
+        List<String> urls = new ArrayList<>();
+        String primary = getBaseUrl(prefs);
+        if (!primary.isEmpty()) urls.add(primary);
+        for (String url : prefs.getString("baseUrls", "").split("[,\\s]+")) {
+            url = url.trim().replaceAll("/+$", "");
+            if (!url.isEmpty() && !urls.contains(url)) urls.add(url);
+        }
+        return urls;
+    }
+
     // ========== 1. 调用 AI API（非流式） ==========
 
     /**
      * 发送纯文本消息给 AI
+     * @param call 取消句柄，可为 null
      * @return AI 回复内容
      */
-    public static String chatText(SharedPreferences prefs, String userText) throws Exception {
-        JSONArray messages = new JSONArray();
-
-        String systemPrompt = prefs.getString("systemPrompt", "");
-        if (systemPrompt != null && !systemPrompt.isEmpty()) {
-            messages.put(new JSONObject()
-                    .put("role", "system")
-                    .put("content", systemPrompt));
-        }
-
-        messages.put(new JSONObject()
-                .put("role", "user")
-                .put("content", userText));
+    public static String chatText(SharedPreferences prefs, String userText, CancellableCall call) throws Exception {
+        return chatText(prefs, userText, null, call);
+    }
 
-        return callCompletions(prefs, messages);
+    /**
+     * @param history 上下文消息（ConversationWindow.context），可为 null
+     */
+    public static String chatText(SharedPreferences prefs, String userText, JSONArray history,
+                                  CancellableCall call) throws Exception {
+        JSONArray messages = VCPProtocol.buildMessages(prefs.getString("systemPrompt", ""), history, userText, null);
+        return callCompletions(prefs, messages, call);
     }
 
     /**
      * 发送图片+文本消息给 AI
      * @param base64Jpeg JPEG 图片的 base64 编码
      * @param userText 用户文本
+     * @param call 取消句柄，可为 null
+     * @return AI 回复内容
+     */
+    public static String chatImage(SharedPreferences prefs, String base64Jpeg, String userText,
+                                   CancellableCall call) throws Exception {
+        return chatImages(prefs, Collections.singletonList(base64Jpeg), userText, null, call);
+    }
+
+    /**
+     * @param history 上下文消息（ConversationWindow.context），可为 null
+     */
+    public static String chatImage(SharedPreferences prefs, String base64Jpeg, String userText, JSONArray history,
+                                   CancellableCall call) throws Exception {
+        return chatImages(prefs, Collections.singletonList(base64Jpeg), userText, history, call);
+    }
+
+    /**
+     * 发送多张图片+文本消息给 AI（一次请求，多个 image_url 部分）
+     * @param base64Jpegs JPEG 图片的 base64 编码列表
+     * @param userText 用户文本
+     * @param call 取消句柄，可为 null
+     * @return AI 回复内容
+     */
+    public static String chatImages(SharedPreferences prefs, List<String> base64Jpegs, String userText,
+                                    CancellableCall call) throws Exception {
+        return chatImages(prefs, base64Jpegs, userText, null, call);
+    }
+
+    /**
+     * @param history 上下文消息（ConversationWindow.context），可为 null
+     */
+    public static String chatImages(SharedPreferences prefs, List<String> base64Jpegs, String userText,
+                                    JSONArray history, CancellableCall call) throws Exception {
+        JSONArray messages = VCPProtocol.buildMessages(prefs.getString("systemPrompt", ""), history, userText, base64Jpegs);
+        return callCompletions(prefs, messages, call);
+    }
+
+    /**
+     * 直接发送完整的 messages（不附加 systemPrompt），用于上下文摘要等内部调用
+     * @param model 为空时使用设置中的模型
+     */
+    static String chatMessages(SharedPreferences prefs, String model, JSONArray messages,
+                               CancellableCall call) throws Exception {
+        return callCompletions(prefs, model, messages, call);
+    }
+
+    /**
+     * 流式发送文本文件内容给 AI：文件按块从输入流读取、转义后直接写入请求体，不整体载入内存
+     * @param opener 每次尝试重新打开数据源（重试时需要从头读取）
+     * @param fileLabel 文件说明（如文件名），写在内容之前
+     * @param call 取消句柄，可为 null
      * @return AI 回复内容
      */
-    public static String chatImage(SharedPreferences prefs, String base64Jpeg, String userText) throws Exception {
-        JSONArray messages = new JSONArray();
+    public static String chatTextStream(SharedPreferences prefs, String userText, String fileLabel,
+                                        StreamOpener opener, CancellableCall call) throws Exception {
+        return chatTextStream(prefs, userText, fileLabel, opener, null, call);
+    }
+
+    /**
+     * @param history 上下文消息（ConversationWindow.context），可为 null
+     */
+    public static String chatTextStream(SharedPreferences prefs, String userText, String fileLabel,
+                                        StreamOpener opener, JSONArray history, CancellableCall call) throws Exception {
+        String model = prefs.getString("model", "");
 
+        StringBuilder prefix = new StringBuilder();
+        prefix.append("{\"model\":").append(JSONObject.quote(model))
+                .append(",\"stream\":false,");
+        if (call != null) {
+            prefix.append("\"requestId\":").append(JSONObject.quote(call.requestId)).append(',');
+        }
+        prefix.append("\"messages\":[");
         String systemPrompt = prefs.getString("systemPrompt", "");
         if (systemPrompt != null && !systemPrompt.isEmpty()) {
-            messages.put(new JSONObject()
+            prefix.append(new JSONObject()
                     .put("role", "system")
-                    .put("content", systemPrompt));
+                    .put("content", systemPrompt)).append(',');
+        }
+        if (history != null) {
+            for (int i = 0; i < history.length(); i++) {
+                prefix.append(history.get(i)).append(',');
+            }
+        }
+        String quotedText = JSONObject.quote(userText + "\n\n" + fileLabel + "\n\n");
+        prefix.append("{\"role\":\"user\",\"content\":")
+                .append(quotedText, 0, quotedText.length() - 1); // 去掉结尾引号，后续接文件内容
+        byte[] prefixBytes = prefix.toString().getBytes(StandardCharsets.UTF_8);
+        byte[] suffixBytes = "\"}]}".getBytes(StandardCharsets.UTF_8);
+
+        // 长度未知，开启压缩时总是压缩
+        String encoding = BodyEncoding.normalize(prefs.getString("compressCompletions", ""));
+        BackgroundScheduler.Urgent urgent = BackgroundScheduler.urgent();
+        try {
+            return executeCompletions(prefs, model, -1, encoding, call, wire -> {
+                DeflaterOutputStream compressor = encoding != null ? BodyEncoding.compressor(wire, encoding) : null;
+                try {
+                    BodyEncoding.CountingOutputStream os = new BodyEncoding.CountingOutputStream(
+                            compressor != null ? compressor : wire);
+                    os.write(prefixBytes);
+                    // 数据源打不开与端点无关，不作为 IOException 抛出（否则会计入端点故障）
+                    InputStream source;
+                    try {
+                        source = opener.open();
+                    } catch (IOException e) {
+                        throw new Exception("无法打开文件: " + e.getMessage(), e);
+                    }
+                    if (source == null) throw new Exception("无法打开文件");
+                    try (InputStream in = source) {
+                        Writer writer = new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8), STREAM_CHUNK_SIZE);
+                        long written = VCPProtocol.writeJsonEscaped(new InputStreamReader(in, StandardCharsets.UTF_8), writer, MAX_STREAM_CHARS);
+                        if (written >= MAX_STREAM_CHARS) {
+                            writer.write("\\n\\n[内容过长，已截断]");
+                        }
+                        writer.flush();
+                        fileLog("[API] 流式写入文件内容 " + written + " 字符");
+                    }
+                    os.write(suffixBytes);
+                    if (compressor != null) compressor.finish();
+                    return os.count();
+                } finally {
+                    // finish 已释放时无操作；中途失败时释放 Deflater
+                    if (compressor != null) BodyEncoding.release(compressor);
+                }
+            });
+        } finally {
+            urgent.end();
         }
+    }
+
+    /** 重试时重新打开数据源 */
+    public interface StreamOpener {
+        InputStream open() throws IOException;
+    }
+
+    /** 请求体写入器：每次尝试都会被重新调用，返回压缩前的字节数 */
+    interface BodyWriter {
+        long writeTo(OutputStream os) throws Exception;
+    }
 
-        // 多模态用户消息
-        JSONArray contentParts = new JSONArray();
-        contentParts.put(new JSONObject()
-                .put("type", "text")
-                .put("text", userText));
-        contentParts.put(new JSONObject()
-                .put("type", "image_url")
-                .put("image_url", new JSONObject()
-                        .put("url", "data:image/jpeg;base64," + base64Jpeg)));
-
-        messages.put(new JSONObject()
-                .put("role", "user")
-                .put("content", contentParts));
-
-        return callCompletions(prefs, messages);
+    /** 重试前的等待（测试中替换为不等待的实现） */
+    interface Sleeper {
+        void sleep(long ms) throws InterruptedException;
     }
 
     private static final int MAX_RETRIES = 2;
+    private static final long RETRY_DELAY_MS = 3000;
+    private static volatile Sleeper retrySleeper = Thread::sleep;
+    // 流式请求体的分块大小与最大字符数（超出部分截断，防止上传无限增长）
+    private static final int STREAM_CHUNK_SIZE = VCPProtocol.STREAM_CHUNK_SIZE;
+    private static final long MAX_STREAM_CHARS = 1_000_000;
+
+    /** 替换重试等待，返回原来的实现以便恢复；null 恢复为 Thread.sleep */
+    static Sleeper setRetrySleeper(Sleeper sleeper) {
+        Sleeper previous = retrySleeper;
+        retrySleeper = sleeper != null ? sleeper : Thread::sleep;
+        return previous;
+    }
+
+    /** 捕获请求：配置了多个并发模型时走 ModelFanOut，否则使用设置中的模型 */
+    private static String callCompletions(SharedPreferences prefs, JSONArray messages,
+                                          CancellableCall call) throws Exception {
+        // 捕获请求期间暂缓话题写入、媒体预取等后台任务
+        BackgroundScheduler.Urgent urgent = BackgroundScheduler.urgent();
+        try {
+            if (ModelFanOut.isEnabled(prefs)) return ModelFanOut.run(prefs, messages, call);
+            return callCompletions(prefs, null, messages, call);
+        } finally {
+            urgent.end();
+        }
+    }
+
+    private static String callCompletions(SharedPreferences prefs, String model, JSONArray messages,
+                                          CancellableCall call) throws Exception {
+        if (model == null || model.isEmpty()) model = prefs.getString("model", "");
+
+        byte[] bodyBytes = VCPProtocol.buildCompletionBody(model, messages, call != null ? call.requestId : null);
+        String encoding = prefs.getString("compressCompletions", "");
+        if (BodyEncoding.shouldCompress(encoding, bodyBytes.length)) {
+            // 只压缩一次，重试和对冲请求复用压缩结果
+            byte[] compressed = BodyEncoding.compress(bodyBytes, encoding);
+            return executeCompletions(prefs, model, compressed.length, BodyEncoding.normalize(encoding), call, os -> {
+                os.write(compressed);
+                return bodyBytes.length;
+            });
+        }
+        return executeCompletions(prefs, model, bodyBytes.length, null, call, os -> {
+            os.write(bodyBytes);
+            return bodyBytes.length;
+        });
+    }
+
+    /**
+     * ModelFanOut 中单个模型的请求：messages 的序列化结果（及其 gzip 压缩结果）在各模型之间共享，
+     * 每个模型只单独构建请求体开头（model、requestId）
+     * @param messagesGzip messagesJson 压缩后的 gzip 成员，null 表示不压缩
+     */
+    static String callCompletionsShared(SharedPreferences prefs, String model, byte[] messagesJson,
+                                        byte[] messagesGzip, CancellableCall call) throws Exception {
+        byte[] head = VCPProtocol.buildCompletionBodyHead(model, call != null ? call.requestId : null);
+        byte[] tail = "}".getBytes(StandardCharsets.UTF_8);
+        long rawLength = head.length + messagesJson.length + tail.length;
+        if (messagesGzip == null) {
+            return executeCompletions(prefs, model, rawLength, null, call, os -> {
+                os.write(head);
+                os.write(messagesJson);
+                os.write(tail);
+                return rawLength;
+            });
+        }
+        // 多个 gzip 成员首尾相接仍是合法的 gzip 流：开头和结尾单独压缩，中间复用共享的压缩结果
+        byte[] headGzip = BodyEncoding.compress(head, BodyEncoding.GZIP);
+        byte[] tailGzip = BodyEncoding.compress(tail, BodyEncoding.GZIP);
+        long wireLength = headGzip.length + messagesGzip.length + tailGzip.length;
+        return executeCompletions(prefs, model, wireLength, BodyEncoding.GZIP, call, os -> {
+            os.write(headGzip);
+            os.write(messagesGzip);
+            os.write(tailGzip);
+            return rawLength;
+        });
+    }
 
-    private static String callCompletions(SharedPreferences prefs, JSONArray messages) throws Exception {
-        String baseUrl = getBaseUrl(prefs);
+    /**
+     * @param contentLength 线上请求体字节数，-1 表示未知（使用分块传输）
+     * @param contentEncoding 请求体的 Content-Encoding（gzip / deflate），null 表示未压缩
+     * @param call 取消句柄，可为 null；取消后抛出 CancellationException，不再重试
+     */
+    private static String executeCompletions(SharedPreferences prefs, String model, long contentLength,
+                                             String contentEncoding, CancellableCall call,
+                                             BodyWriter writer) throws Exception {
+        List<String> baseUrls = getBaseUrls(prefs);
         String apiKey = prefs.getString("apiKey", "");
-        String model = prefs.getString("model", "");
 
-        if (baseUrl.isEmpty() || apiKey.isEmpty()) {
+        if (baseUrls.isEmpty() || apiKey.isEmpty()) {
             throw new Exception("请先在 VCPMobile 设置中配置 API");
         }
 
-        JSONObject body = new JSONObject();
-        body.put("model", model);
-        body.put("messages", messages);
-        body.put("stream", false);
-
-        String apiUrl = baseUrl + "/v1/chat/completions";
-        byte[] bodyBytes = body.toString().getBytes(StandardCharsets.UTF_8);
+        EndpointSelector selector = EndpointSelector.forEndpoints(baseUrls);
+        boolean hedge = prefs.getBoolean("hedgeEnabled", false) && baseUrls.size() > 1;
+        long warmConnectMs = ConnectionPrewarmer.consumeWarm(selector.ranked().get(0));
+        if (warmConnectMs >= 0) fileLog("[API] 存在预热连接（预热时建连 " + warmConnectMs + "ms）");
 
+        // 本次调用中已失败的端点：重试时优先换到其他端点
+        Set<String> failed = ConcurrentHashMap.newKeySet();
         Exception lastException = null;
         for (int attempt = 0; attempt <= MAX_RETRIES; attempt++) {
+            if (call != null) call.throwIfCancelled();
+            List<String> ranked = selector.pick(failed);
             if (attempt > 0) {
-                fileLog("[API] 第 " + (attempt + 1) + " 次重试...");
-                Thread.sleep(3000);
+                fileLog("[API] 第 " + (attempt + 1) + " 次重试: " + ranked.get(0));
+                VCPMetrics.increment("api.retries");
+                // 换到尚未失败的端点时立即重试，所有端点都已失败时才等待
+                if (failed.contains(ranked.get(0))) {
+                    try {
+                        retrySleeper.sleep(RETRY_DELAY_MS);
+                    } catch (InterruptedException e) {
+                        if (call != null) call.throwIfCancelled();
+                        throw e;
+                    }
+                } else {
+                    VCPMetrics.increment("api.failovers");
+                }
             }
-            fileLog("[API] 请求: " + apiUrl + " model=" + model);
 
             try {
-                HttpURLConnection conn = (HttpURLConnection) new URL(apiUrl).openConnection();
-                conn.setInstanceFollowRedirects(false);
-                conn.setRequestMethod("POST");
-                conn.setRequestProperty("Content-Type", "application/json");
-                conn.setRequestProperty("Authorization", "Bearer " + apiKey);
-                conn.setDoOutput(true);
-                conn.setConnectTimeout(30000);
-                conn.setReadTimeout(120000);
-
-                conn.setFixedLengthStreamingMode(bodyBytes.length);
-                try (OutputStream os = conn.getOutputStream()) {
-                    os.write(bodyBytes);
-                }
-
-                int code = conn.getResponseCode();
-                fileLog("[API] 响应码: " + code);
-
-                if (code == 200) {
-                    byte[] respBytes = conn.getInputStream().readAllBytes();
-                    String resp = new String(respBytes, StandardCharsets.UTF_8);
-                    conn.disconnect();
-                    fileLog("[API] 响应前200字符: " + resp.substring(0, Math.min(resp.length(), 200)));
-
-                    // 检测 HTML 响应（CDN/代理拦截）
-                    String trimmed = resp.trim();
-                    if (trimmed.startsWith("<!") || trimmed.startsWith("<html")) {
-                        lastException = new Exception("API 返回了 HTML 而非 JSON（CDN/代理拦截）");
-                        fileLog("[API] CDN 返回 HTML，准备重试");
-                        continue;
+                long hedgeDelay = Math.max(MIN_HEDGE_DELAY_MS,
+                        selector.hedgeDelayMs(HEDGE_PERCENTILE, DEFAULT_HEDGE_DELAY_MS));
+                String traceId = call != null ? call.traceId : null;
+                return HedgedCall.execute(selector, ranked, hedge, hedgeDelay, (baseUrl, handle) -> {
+                    // 对冲请求在线程池中执行，需重新绑定 trace
+                    VCPTrace.setCurrent(traceId);
+                    try {
+                        return postCompletionOnce(baseUrl, apiKey, model, contentLength, contentEncoding,
+                                call, writer, handle);
+                    } catch (HedgedCall.EndpointFailure e) {
+                        if (!handle.isAborted()) failed.add(baseUrl);
+                        throw e;
+                    } finally {
+                        VCPTrace.setCurrent(null);
                     }
+                });
+            } catch (RetryableException e) {
+                if (call != null) call.throwIfCancelled();
+                lastException = e;
+            } catch (InterruptedException e) {
+                if (call != null) call.throwIfCancelled();
+                throw e;
+            }
+        }
+        throw lastException != null ? lastException : new Exception("API 调用失败（已重试 " + MAX_RETRIES + " 次）");
+    }
 
-                    JSONObject json = new JSONObject(resp);
-                    String content = json.getJSONArray("choices")
-                            .getJSONObject(0)
-                            .getJSONObject("message")
-                            .getString("content");
-                    fileLog("[API] AI 回复长度=" + content.length());
-                    return content;
-                } else if (code >= 500) {
-                    byte[] errBytes = conn.getErrorStream() != null ?
-                            conn.getErrorStream().readAllBytes() : new byte[0];
-                    String error = new String(errBytes, StandardCharsets.UTF_8);
-                    conn.disconnect();
-                    fileLog("[API] 服务端错误 " + code + "，准备重试");
-                    lastException = new Exception("API 错误 " + code + ": " + error.substring(0, Math.min(error.length(), 500)));
-                    continue;
-                } else {
-                    byte[] errBytes = conn.getErrorStream() != null ?
-                            conn.getErrorStream().readAllBytes() : new byte[0];
-                    String error = new String(errBytes, StandardCharsets.UTF_8);
-                    conn.disconnect();
-                    fileLog("[API] 错误 " + code + ": " + error.substring(0, Math.min(error.length(), 200)));
-                    throw new Exception("API 错误 " + code + ": " + error.substring(0, Math.min(error.length(), 500)));
+    // 对冲只发生在建连阶段：延迟取近期建连耗时的 P95（不低于 MIN_HEDGE_DELAY_MS，
+    // 复用连接的样本接近 0），样本不足时使用默认值
+    private static final double HEDGE_PERCENTILE = 0.95;
+    private static final long DEFAULT_HEDGE_DELAY_MS = 3000;
+    private static final long MIN_HEDGE_DELAY_MS = 300;
+
+    /** 可重试的端点故障（连接/DNS 失败、HTML 拦截、5xx、超时），由外层重试循环处理 */
+    private static class RetryableException extends HedgedCall.EndpointFailure {
+        private static final long serialVersionUID = 1L;
+
+        RetryableException(String message) {
+            super(message);
+        }
+
+        RetryableException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    /**
+     * 向单个端点发送一次 completions 请求
+     */
+    private static String postCompletionOnce(String baseUrl, String apiKey, String model, long contentLength,
+                                             String contentEncoding, CancellableCall call, BodyWriter writer,
+                                             HedgedCall.AbortHandle handle) throws Exception {
+        String apiUrl = baseUrl + "/v1/chat/completions";
+        fileLog("[API] 请求: " + apiUrl + " model=" + model);
+
+        String traceId = call != null ? call.traceId : null;
+        VCPTrace.Span attemptSpan = VCPTrace.span(traceId, "api.attempt").arg("endpoint", baseUrl);
+        URL url = new URL(apiUrl);
+        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        if (call != null) call.attach(conn, baseUrl);
+        handle.setOnAbort(conn::disconnect);
+        // 建连前失败（DNS、拒绝连接、TLS）时请求体尚未发出，可以换端点重试
+        boolean connected = false;
+        try {
+            conn.setInstanceFollowRedirects(false);
+            conn.setRequestMethod("POST");
+            conn.setRequestProperty("Content-Type", "application/json");
+            conn.setRequestProperty("Authorization", VCPProtocol.bearerAuthorization(apiKey));
+            // 显式声明后由 readBody 自行解压，以便统计线上字节数
+            conn.setRequestProperty("Accept-Encoding", BodyEncoding.GZIP);
+            if (contentEncoding != null) conn.setRequestProperty("Content-Encoding", contentEncoding);
+            conn.setDoOutput(true);
+            conn.setConnectTimeout(30000);
+            conn.setReadTimeout(120000);
+
+            if (contentLength >= 0) {
+                conn.setFixedLengthStreamingMode(contentLength);
+            } else {
+                conn.setChunkedStreamingMode(STREAM_CHUNK_SIZE);
+            }
+            // HttpURLConnection 不单独暴露 TLS 握手，连接与握手合并为一个 span（复用连接时接近 0）
+            VCPTrace.Span connect = VCPTrace.span(traceId, "connect_tls");
+            long connectStart = System.currentTimeMillis();
+            conn.connect();
+            connected = true;
+            connect.end();
+            ConnectionPrewarmer.recordConnect(baseUrl, System.currentTimeMillis() - connectStart);
+            // 先建连的请求胜出；对冲的另一方已建连时不再发送请求体
+            handle.markConnected();
+            if (handle.isAborted()) throw new RetryableException("请求已被对冲请求取代");
+
+            VCPTrace.Span upload = VCPTrace.span(traceId, "upload");
+            long rawBytes;
+            BodyEncoding.CountingOutputStream wire;
+            try (OutputStream os = conn.getOutputStream()) {
+                wire = new BodyEncoding.CountingOutputStream(os);
+                rawBytes = writer.writeTo(wire);
+            }
+            recordTransfer("completions.up", rawBytes, wire.count());
+            upload.arg("bytes", wire.count()).arg("raw", rawBytes).end();
+
+            VCPTrace.Span ttfb = VCPTrace.span(traceId, "ttfb");
+            int code = conn.getResponseCode();
+            ttfb.arg("code", code).end();
+            attemptSpan.arg("code", code);
+            fileLog("[API] 响应码: " + code + " (" + baseUrl + ")");
+
+            if (code == 200) {
+                VCPTrace.Span body = VCPTrace.span(traceId, "body");
+                byte[] respBytes = readBody(conn, conn.getInputStream(), "completions.down");
+                body.arg("bytes", respBytes.length).end();
+                String resp = new String(respBytes, StandardCharsets.UTF_8);
+                conn.disconnect();
+                fileLog("[API] 响应前200字符: " + resp.substring(0, Math.min(resp.length(), 200)));
+
+                // 检测 HTML 响应（CDN/代理拦截）
+                if (VCPProtocol.isHtmlResponse(resp)) {
+                    fileLog("[API] CDN 返回 HTML，准备重试");
+                    throw new RetryableException("API 返回了 HTML 而非 JSON（CDN/代理拦截）");
                 }
-            } catch (java.net.SocketTimeoutException e) {
-                fileLog("[API] 请求超时，准备重试");
-                lastException = new Exception("API 请求超时");
-                continue;
+
+                String content = VCPProtocol.parseCompletionContent(resp);
+                fileLog("[API] AI 回复长度=" + content.length());
+                recordUsage(model, resp);
+                return content;
+            } else if (code >= 500) {
+                byte[] errBytes = readBody(conn, conn.getErrorStream(), null);
+                String error = new String(errBytes, StandardCharsets.UTF_8);
+                conn.disconnect();
+                fileLog("[API] 服务端错误 " + code + "，准备重试");
+                throw new RetryableException("API 错误 " + code + ": " + error.substring(0, Math.min(error.length(), 500)));
+            } else {
+                byte[] errBytes = readBody(conn, conn.getErrorStream(), null);
+                String error = new String(errBytes, StandardCharsets.UTF_8);
+                conn.disconnect();
+                fileLog("[API] 错误 " + code + ": " + error.substring(0, Math.min(error.length(), 200)));
+                throw new Exception("API 错误 " + code + ": " + error.substring(0, Math.min(error.length(), 500)));
+            }
+        } catch (java.net.SocketTimeoutException e) {
+            fileLog("[API] 请求超时，准备重试");
+            throw new RetryableException("API 请求超时");
+        } catch (IOException e) {
+            // 取消或对冲落败时连接被断开，读写会抛出 IOException
+            if (call != null) call.throwIfCancelled();
+            if (handle.isAborted()) throw new RetryableException("请求已被对冲请求取代");
+            if (!connected) {
+                fileLog("[API] 无法连接 " + baseUrl + ": " + e + "，准备换端点重试");
+                throw new RetryableException("无法连接 " + url.getHost() + ": " + e.getMessage(), e);
             }
+            // 请求体已发出：服务端可能已在处理，不重试，只计入端点故障
+            throw new HedgedCall.EndpointFailure(String.valueOf(e.getMessage()), e);
+        } finally {
+            if (call != null) call.detach(conn);
+            attemptSpan.end();
         }
-        throw lastException != null ? lastException : new Exception("API 调用失败（已重试 " + MAX_RETRIES + " 次）");
+    }
+
+    /**
+     * 读取响应体并按 Content-Encoding 解压
+     * @param metric 传输统计名（如 completions.down），null 时不统计
+     */
+    private static byte[] readBody(HttpURLConnection conn, InputStream in, String metric) throws IOException {
+        if (in == null) return new byte[0];
+        BodyEncoding.CountingInputStream wire = new BodyEncoding.CountingInputStream(in);
+        byte[] bytes;
+        try (InputStream decoded = BodyEncoding.decode(wire, conn.getContentEncoding())) {
+            bytes = decoded.readAllBytes();
+        }
+        if (metric != null) recordTransfer(metric, bytes.length, wire.count());
+        return bytes;
+    }
+
+    /** 按模型统计 token 用量：usage.<model>.prompt / usage.<model>.completion（响应不含 usage 时不统计） */
+    private static void recordUsage(String model, String resp) {
+        long[] usage = VCPProtocol.parseUsage(resp);
+        if (usage == null) return;
+        VCPMetrics.add("usage." + model + ".prompt", usage[0]);
+        VCPMetrics.add("usage." + model + ".completion", usage[1]);
+    }
+
+    /** 传输字节统计：net.<name>.raw 为压缩前字节数，net.<name>.wire 为线上字节数 */
+    private static void recordTransfer(String name, long rawBytes, long wireBytes) {
+        VCPMetrics.add("net." + name + ".raw", rawBytes);
+        VCPMetrics.add("net." + name + ".wire", wireBytes);
     }
 
     // ========== 2. 写入 VCPChat Agent 话题 ==========
 
     /**
-     * 将用户消息和 AI 回复追加到 VCPChat 桌面端的 Agent 话题
-     * @param userContent 用户消息内容（纯文本，截图场景传 "[图片] + presetMessage"）
-     * @param aiContent AI 回复内容
+     * 将一批消息追加到 VCPChat 桌面端 Agent 的指定话题（话题不存在时由服务端创建）
+     * 由 HistoryBatcher 合并多次捕获后调用；消息 ID 固定，重试时服务端按 ID 去重
+     * @param topicId 话题 ID
      * @param topicName 话题名称（用于新建话题时显示）
+     * @param messages 消息数组（每项含 id/role/content/timestamp）
      */
-    public static boolean appendToAgentHistory(SharedPreferences prefs,
-                                                String userContent, String aiContent,
-                                                String topicName) {
+    public static boolean appendToAgentHistory(SharedPreferences prefs, String topicId,
+                                                String topicName, JSONArray messages) {
         try {
             String baseUrl = getBaseUrl(prefs);
             String adminUsername = prefs.getString("adminUsername", "");
@@ -226,29 +578,6 @@ public class VCPApiHelper {
                 return false;
             }
 
-            // 生成话题 ID
-            String topicId = "topic_" + System.currentTimeMillis();
-            long now = System.currentTimeMillis();
-
-            // 构建消息数组
-            JSONArray messages = new JSONArray();
-
-            // 用户消息
-            JSONObject userMsg = new JSONObject();
-            userMsg.put("id", "msg_" + now + "_user");
-            userMsg.put("role", "user");
-            userMsg.put("content", userContent);
-            userMsg.put("timestamp", now);
-            messages.put(userMsg);
-
-            // AI 回复
-            JSONObject aiMsg = new JSONObject();
-            aiMsg.put("id", "msg_" + now + "_ai");
-            aiMsg.put("role", "assistant");
-            aiMsg.put("content", aiContent);
-            aiMsg.put("timestamp", now + 1);
-            messages.put(aiMsg);
-
             // 构建请求体
             JSONObject body = new JSONObject();
             body.put("agentDirId", agentDirId);
@@ -262,26 +591,31 @@ public class VCPApiHelper {
             HttpURLConnection conn = (HttpURLConnection) new URL(apiUrl).openConnection();
             conn.setRequestMethod("POST");
             conn.setRequestProperty("Content-Type", "application/json");
+            conn.setRequestProperty("Accept-Encoding", BodyEncoding.GZIP);
 
             // Basic Auth
-            String credentials = Base64.encodeToString(
-                    (adminUsername + ":" + adminPassword).getBytes(StandardCharsets.UTF_8),
-                    Base64.NO_WRAP);
-            conn.setRequestProperty("Authorization", "Basic " + credentials);
+            conn.setRequestProperty("Authorization", VCPProtocol.basicAuthorization(adminUsername, adminPassword));
 
             conn.setDoOutput(true);
             conn.setConnectTimeout(15000);
             conn.setReadTimeout(30000);
 
             byte[] bodyBytes = body.toString().getBytes(StandardCharsets.UTF_8);
-            conn.setFixedLengthStreamingMode(bodyBytes.length);
+            byte[] wireBytes = bodyBytes;
+            String encoding = prefs.getString("compressHistory", "");
+            if (BodyEncoding.shouldCompress(encoding, bodyBytes.length)) {
+                wireBytes = BodyEncoding.compress(bodyBytes, encoding);
+                conn.setRequestProperty("Content-Encoding", BodyEncoding.normalize(encoding));
+            }
+            conn.setFixedLengthStreamingMode(wireBytes.length);
             try (OutputStream os = conn.getOutputStream()) {
-                os.write(bodyBytes);
+                os.write(wireBytes);
             }
+            recordTransfer("history.up", bodyBytes.length, wireBytes.length);
 
             int code = conn.getResponseCode();
             if (code == 200) {
-                byte[] respBytes = conn.getInputStream().readAllBytes();
+                byte[] respBytes = readBody(conn, conn.getInputStream(), "history.down");
                 String resp = new String(respBytes, StandardCharsets.UTF_8);
                 conn.disconnect();
                 JSONObject json = new JSONObject(resp);
@@ -290,8 +624,7 @@ public class VCPApiHelper {
                 Log.e(TAG, "话题写入成功: appended=" + appended);
                 return success;
             } else {
-                byte[] errBytes = conn.getErrorStream() != null ?
-                        conn.getErrorStream().readAllBytes() : new byte[0];
+                byte[] errBytes = readBody(conn, conn.getErrorStream(), null);
                 String error = new String(errBytes, StandardCharsets.UTF_8);
                 conn.disconnect();
                 Log.e(TAG, "话题写入失败 " + code + ": " + error);
@@ -0,0 +1,77 @@
+package com.vcp.vcpmobile;
+
+import org.json.JSONObject;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 进程内性能指标：计数器 + 耗时统计（次数/总和/最大/最近一次），通过 MetricsPlugin 暴露给 JS
+ */
+public class VCPMetrics {
+    private static final Map<String, AtomicLong> counters = new ConcurrentHashMap<>();
+    private static final Map<String, Timing> timings = new ConcurrentHashMap<>();
+
+    private static class Timing {
+        long count;
+        long totalMs;
+        long maxMs;
+        long lastMs;
+
+        synchronized void record(long ms) {
+            count++;
+            totalMs += ms;
+            if (ms > maxMs) maxMs = ms;
+            lastMs = ms;
+        }
+
+        synchronized JSONObject toJson() throws Exception {
+            return new JSONObject()
+                    .put("count", count)
+                    .put("totalMs", totalMs)
+                    .put("avgMs", count > 0 ? totalMs / count : 0)
+                    .put("maxMs", maxMs)
+                    .put("lastMs", lastMs);
+        }
+    }
+
+    public static void increment(String name) {
+        add(name, 1);
+    }
+
+    public static void add(String name, long delta) {
+        counters.computeIfAbsent(name, k -> new AtomicLong()).addAndGet(delta);
+    }
+
+    public static void recordTime(String name, long ms) {
+        timings.computeIfAbsent(name, k -> new Timing()).record(ms);
+    }
+
+    public static long get(String name) {
+        AtomicLong counter = counters.get(name);
+        return counter != null ? counter.get() : 0;
+    }
+
+    public static JSONObject snapshot() {
+        JSONObject result = new JSONObject();
+        try {
+            JSONObject c = new JSONObject();
+            for (Map.Entry<String, AtomicLong> e : counters.entrySet()) {
+                c.put(e.getKey(), e.getValue().get());
+            }
+            JSONObject t = new JSONObject();
+            for (Map.Entry<String, Timing> e : timings.entrySet()) {
+                t.put(e.getKey(), e.getValue().toJson());
+            }
+            result.put("counters", c);
+            result.put("timings", t);
+        } catch (Exception ignored) {}
+        return result;
+    }
+
+    public static void reset() {
+        counters.clear();
+        timings.clear();
+    }
+}
@@ -0,0 +1,266 @@
+package com.vcp.vcpmobile;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 单次捕获的链路追踪：
+ * 音量键手势时分配 trace id，经 Intent extra（EXTRA_TRACE_ID）传给 Activity / Service，
+ * 再经 CancellableCall 传入 VCPApiHelper 和 HistoryBatcher，各阶段及网络阶段（DNS、连接+TLS、上传、首字节、响应体）记录为 span。
+ *
+ * 最近 MAX_TRACES 次捕获保存在内存环形缓冲中，可导出为 Chrome trace JSON（chrome://tracing、ui.perfetto.dev 可直接打开），
+ * 每次捕获占一行（tid）。工作线程通过 setCurrent 绑定 trace 后，fileLog 会带上 trace id 前缀。
+ * 环形缓冲登记在 MemoryGovernor（诊断数据，内存紧张时最先淘汰已结束的旧追踪）。
+ */
+public class VCPTrace {
+    public static final String EXTRA_TRACE_ID = "trace_id";
+
+    private static final int MAX_TRACES = 32;
+    private static final int MAX_EVENTS_PER_TRACE = 256;
+    // 内存估算：每个事件（含名称与参数）与每个 trace 的大致占用
+    private static final long EVENT_BYTES = 160;
+    private static final long TRACE_BYTES = 256;
+    private static final long ORIGIN_NS = System.nanoTime();
+
+    private static final AtomicInteger sequence = new AtomicInteger();
+    private static final ThreadLocal<String> current = new ThreadLocal<>();
+    private static final Map<String, Trace> traces = new LinkedHashMap<String, Trace>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Trace> eldest) {
+            return size() > MAX_TRACES;
+        }
+    };
+
+    static {
+        MemoryGovernor.register("trace", MemoryGovernor.PRIORITY_DIAGNOSTIC, new MemoryGovernor.Trimmable() {
+            @Override
+            public long sizeBytes() {
+                synchronized (traces) {
+                    long bytes = 0;
+                    for (Trace trace : traces.values()) bytes += TRACE_BYTES + trace.events.size() * EVENT_BYTES;
+                    return bytes;
+                }
+            }
+
+            @Override
+            public long trimTo(long maxBytes) {
+                long before = sizeBytes();
+                synchronized (traces) {
+                    long bytes = before;
+                    Iterator<Trace> it = traces.values().iterator();
+                    while (bytes > maxBytes && it.hasNext()) {
+                        Trace trace = it.next();
+                        // 进行中的捕获还会继续写入，保留
+                        if (!trace.finished) continue;
+                        bytes -= TRACE_BYTES + trace.events.size() * EVENT_BYTES;
+                        it.remove();
+                    }
+                    return before - bytes;
+                }
+            }
+        });
+    }
+
+    private static class Trace {
+        final String id;
+        final String name;
+        final int lane;
+        final long startUs;
+        final List<Event> events = new ArrayList<>();
+        boolean finished;
+
+        Trace(String id, String name, int lane, long startUs) {
+            this.id = id;
+            this.name = name;
+            this.lane = lane;
+            this.startUs = startUs;
+        }
+    }
+
+    private static class Event {
+        final String name;
+        final long tsUs;
+        // -1 表示瞬时事件
+        final long durUs;
+        final String[] args;
+
+        Event(String name, long tsUs, long durUs, String[] args) {
+            this.name = name;
+            this.tsUs = tsUs;
+            this.durUs = durUs;
+            this.args = args;
+        }
+    }
+
+    /** 进行中的 span，end() 时写入所属 trace；traceId 为 null 时不记录 */
+    public static class Span {
+        private final String traceId;
+        private final String name;
+        private final long startUs;
+        private final List<String> args = new ArrayList<>();
+        private boolean ended;
+
+        Span(String traceId, String name) {
+            this.traceId = traceId;
+            this.name = name;
+            this.startUs = now();
+        }
+
+        public Span arg(String key, Object value) {
+            args.add(key);
+            args.add(String.valueOf(value));
+            return this;
+        }
+
+        public void end() {
+            if (ended) return;
+            ended = true;
+            complete(traceId, name, startUs, now(), args.toArray(new String[0]));
+        }
+    }
+
+    // ========== 创建与传递 ==========
+
+    /**
+     * 开始一次新的捕获追踪
+     * @param name 捕获类型（如 screenshot / clipboard / share）
+     * @return trace id
+     */
+    public static String begin(String name) {
+        int lane = sequence.incrementAndGet();
+        String id = "trace_" + Long.toString(System.currentTimeMillis(), 36) + "_" + lane;
+        synchronized (traces) {
+            traces.put(id, new Trace(id, name, lane, now()));
+        }
+        return id;
+    }
+
+    /** 沿用上游传入的 trace id；缺失或已被淘汰时新开一个 */
+    public static String ensure(String traceId, String name) {
+        if (traceId != null) {
+            synchronized (traces) {
+                if (traces.containsKey(traceId)) return traceId;
+            }
+        }
+        return begin(name);
+    }
+
+    /** 将当前线程绑定到 trace（fileLog 前缀用），传 null 解除绑定 */
+    public static void setCurrent(String traceId) {
+        if (traceId == null) {
+            current.remove();
+        } else {
+            current.set(traceId);
+        }
+    }
+
+    public static String current() {
+        return current.get();
+    }
+
+    // ========== 记录 ==========
+
+    /** 相对进程内时间原点的微秒数 */
+    public static long now() {
+        return (System.nanoTime() - ORIGIN_NS) / 1000;
+    }
+
+    public static Span span(String traceId, String name) {
+        return new Span(traceId, name);
+    }
+
+    public static void instant(String traceId, String name, String... args) {
+        add(traceId, new Event(name, now(), -1, args));
+    }
+
+    public static void complete(String traceId, String name, long startUs, long endUs, String... args) {
+        add(traceId, new Event(name, startUs, Math.max(0, endUs - startUs), args));
+    }
+
+    /** 结束捕获：记录从手势到现在的总 span，重复调用只记录第一次 */
+    public static void finish(String traceId, String status) {
+        if (traceId == null) return;
+        Trace trace;
+        synchronized (traces) {
+            trace = traces.get(traceId);
+            if (trace == null || trace.finished) return;
+            trace.finished = true;
+        }
+        complete(traceId, trace.name, trace.startUs, now(), "status", status);
+        VCPMetrics.recordTime("trace." + trace.name, (now() - trace.startUs) / 1000);
+    }
+
+    private static void add(String traceId, Event event) {
+        if (traceId == null) return;
+        synchronized (traces) {
+            Trace trace = traces.get(traceId);
+            if (trace == null || trace.events.size() >= MAX_EVENTS_PER_TRACE) return;
+            trace.events.add(event);
+        }
+        // 收缩会获取 traces 的锁，在锁外检查
+        MemoryGovernor.checkBudget();
+    }
+
+    // ========== 导出 ==========
+
+    public static int traceCount() {
+        synchronized (traces) {
+            return traces.size();
+        }
+    }
+
+    public static void clear() {
+        synchronized (traces) {
+            traces.clear();
+        }
+    }
+
+    /**
+     * 导出 Chrome trace 格式（JSON Object Format）：
+     * 完整 span 为 ph=X，瞬时事件为 ph=i，每个 trace 一个 tid，并以 thread_name 元数据标注捕获类型与 trace id
+     */
+    public static JSONObject exportChromeTrace() throws Exception {
+        JSONArray events = new JSONArray();
+        events.put(new JSONObject()
+                .put("name", "process_name").put("ph", "M").put("pid", 1).put("tid", 0)
+                .put("args", new JSONObject().put("name", "VCPMobile")));
+
+        synchronized (traces) {
+            for (Trace trace : traces.values()) {
+                events.put(new JSONObject()
+                        .put("name", "thread_name").put("ph", "M").put("pid", 1).put("tid", trace.lane)
+                        .put("args", new JSONObject().put("name", trace.name + " " + trace.id)));
+                for (Event e : trace.events) {
+                    JSONObject json = new JSONObject()
+                            .put("name", e.name)
+                            .put("cat", trace.name)
+                            .put("pid", 1)
+                            .put("tid", trace.lane)
+                            .put("ts", e.tsUs);
+                    if (e.durUs >= 0) {
+                        json.put("ph", "X").put("dur", e.durUs);
+                    } else {
+                        json.put("ph", "i").put("s", "t");
+                    }
+                    JSONObject args = new JSONObject().put("traceId", trace.id);
+                    for (int i = 0; i + 1 < e.args.length; i += 2) {
+                        args.put(e.args[i], e.args[i + 1]);
+                    }
+                    json.put("args", args);
+                    events.put(json);
+                }
+            }
+        }
+
+        return new JSONObject()
+                .put("traceEvents", events)
+                .put("displayTimeUnit", "ms");
+    }
+}
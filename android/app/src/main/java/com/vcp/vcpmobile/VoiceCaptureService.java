@@ -0,0 +1,302 @@
+package com.vcp.vcpmobile;
+
+import android.Manifest;
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaRecorder;
+import android.os.Build;
+import android.os.IBinder;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * 按住说话：VolumeKeyService 在按住手势触发时发送 ACTION_START，松开时发送 ACTION_STOP
+ * 1. 录音（AudioRecord，16kHz 单声道）与上传同时进行，见 StreamingTranscriber
+ * 2. 松开后只剩最后一帧与服务端转写的时间，转写文本随即发给 AI（voiceChat 关闭时只显示转写）
+ * 3. 回复写入话题并记入对话上下文，与剪贴板发送相同
+ *
+ * 前台服务与通知沿用 ClipboardSenderService 的写法（NotificationRenderer + 取消按钮）。
+ * 需要已授予录音权限；录音超过 MAX_RECORD_MS 自动结束。
+ *
+ * 设置项（prefs）：
+ * - transcriptionModel：转写模型，见 StreamingTranscriber
+ * - voiceChat：转写后是否发给 AI（默认开启）
+ */
+public class VoiceCaptureService extends Service {
+    private static final String CHANNEL_ID = "voice_capture_channel";
+    private static final int NOTIFICATION_ID = 9530;
+    static final String ACTION_START = "com.vcp.vcpmobile.action.START_VOICE";
+    static final String ACTION_STOP = "com.vcp.vcpmobile.action.STOP_VOICE";
+    static final String ACTION_CANCEL = "com.vcp.vcpmobile.action.CANCEL_VOICE";
+    static final int SAMPLE_RATE = 16000;
+    // 每次读取约 100ms
+    private static final int FRAME_BYTES = SAMPLE_RATE / 10 * 2;
+    private static final long MAX_RECORD_MS = 60000;
+
+    private static volatile boolean recording = false;
+
+    private volatile CancellableCall activeCall;
+    // 捕获进行中（录音、识别与发送）：期间拒绝新的 START，recording / activeCall 只属于这一次捕获
+    private volatile boolean busy = false;
+    // 持有服务与通知的捕获（含结束后的通知停留），0 表示空闲；停留期间开始的新捕获接管，旧线程不再停止服务
+    private int owner = 0;
+    private int captureSeq = 0;
+    private volatile long stopRequestedAt = 0;
+    private NotificationRenderer notifier;
+
+    /** 是否正在录音（点击类手势用于切换开始 / 结束） */
+    public static boolean isRecording() {
+        return recording;
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        createNotificationChannel();
+        notifier = new NotificationRenderer(this, NOTIFICATION_ID, CHANNEL_ID, "VCPMobile 语音输入",
+                android.R.drawable.ic_btn_speak_now, ACTION_CANCEL, () -> {
+                    CancellableCall call = activeCall;
+                    return call != null && !call.isCancelled();
+                });
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        String action = intent != null ? intent.getAction() : null;
+        if (ACTION_CANCEL.equals(action)) {
+            CancellableCall call = activeCall;
+            if (call != null) {
+                call.cancel(VCPApiHelper.getPrefs(this));
+                updateNotification("正在取消...");
+            } else {
+                stopSelf();
+            }
+            return START_NOT_STICKY;
+        }
+        if (ACTION_STOP.equals(action)) {
+            if (!recording) {
+                // 没有进行中的录音（如开始被拒绝后松开按键）：不保留空闲的服务
+                if (!isOwned()) stopSelf(startId);
+                return START_NOT_STICKY;
+            }
+            // 松开按键：录音线程读完当前帧后结束
+            stopRequestedAt = System.currentTimeMillis();
+            recording = false;
+            return START_NOT_STICKY;
+        }
+        String traceId = VCPTrace.ensure(intent != null ? intent.getStringExtra(VCPTrace.EXTRA_TRACE_ID) : null, "voice");
+        if (busy) {
+            // 上一次捕获仍在录音、识别或发送：不开始新的录音，也不打断上一次的状态
+            // （startForegroundService 之后仍需调用 startForeground，服务此时已在前台）
+            VCPApiHelper.fileLog("[Voice] 上一条语音仍在处理，忽略新的录音");
+            startForeground(NOTIFICATION_ID, notifier.build("上一条语音仍在处理，请稍后再试"));
+            VCPTrace.finish(traceId, "busy");
+            return START_NOT_STICKY;
+        }
+
+        VCPApiHelper.initContext(this);
+        // 麦克风类型的前台服务在 Android 14 起要求先有录音权限，否则 startForeground 抛出 SecurityException；
+        // send 已在启动前检查，这里只处理启动后权限被撤销的情况
+        if (!hasRecordPermission(this)) {
+            VCPApiHelper.fileLog("[Voice] 未授予录音权限");
+            VCPTrace.finish(traceId, "error");
+            if (!isOwned()) stopSelf(startId);
+            return START_NOT_STICKY;
+        }
+
+        int captureId;
+        synchronized (this) {
+            // 与 release 同一把锁：旧捕获的停留结束时不会在这之后把服务移出前台
+            Notification notification = notifier.build("正在录音，松开结束...");
+            startForeground(NOTIFICATION_ID, notification);
+            captureId = ++captureSeq;
+            owner = captureId;
+        }
+
+        VCPTrace.instant(traceId, "service.start");
+        recording = true;
+        busy = true;
+        stopRequestedAt = 0;
+
+        new Thread(() -> {
+            VCPTrace.setCurrent(traceId);
+            CancellableCall call = new CancellableCall(Thread.currentThread(), traceId);
+            activeCall = call;
+            String status = "error";
+            try {
+                captureAndSend(call);
+                status = "ok";
+            } catch (Exception e) {
+                if (call.isCancelled() || e instanceof CancellationException) {
+                    status = "cancelled";
+                    VCPApiHelper.fileLog("[Voice] 已取消");
+                    updateNotification("已取消");
+                    return;
+                }
+                VCPApiHelper.fileLog("[Voice] 异常: " + e.getClass().getSimpleName() + ": " + e.getMessage());
+                updateNotification("语音发送失败: " + e.getMessage());
+            } finally {
+                recording = false;
+                activeCall = null;
+                busy = false;
+                VCPTrace.finish(traceId, status);
+                VCPTrace.setCurrent(null);
+                notifier.flush();
+                try { Thread.sleep(10000); } catch (InterruptedException ignored) {}
+                release(captureId, startId);
+            }
+        }, "vcp-voice").start();
+
+        return START_NOT_STICKY;
+    }
+
+    private synchronized boolean isOwned() {
+        return owner != 0;
+    }
+
+    /** 通知停留结束：服务仍属于这次捕获时才退出前台并停止（停留期间开始的新捕获已接管） */
+    private void release(int captureId, int startId) {
+        synchronized (this) {
+            if (owner != captureId) return;
+            owner = 0;
+            stopForeground(true);
+        }
+        // 之后又收到启动命令时 stopSelf(startId) 不会停止服务
+        stopSelf(startId);
+    }
+
+    private void captureAndSend(CancellableCall call) throws Exception {
+        SharedPreferences prefs = VCPApiHelper.getPrefs(this);
+        int minBuffer = AudioRecord.getMinBufferSize(SAMPLE_RATE, AudioFormat.CHANNEL_IN_MONO,
+                AudioFormat.ENCODING_PCM_16BIT);
+        // 至少缓冲 1 秒，上传线程偶尔卡顿时录音不丢帧
+        AudioRecord recorder = new AudioRecord(MediaRecorder.AudioSource.VOICE_RECOGNITION, SAMPLE_RATE,
+                AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT, Math.max(minBuffer, SAMPLE_RATE * 2));
+        if (recorder.getState() != AudioRecord.STATE_INITIALIZED) {
+            recorder.release();
+            throw new IllegalStateException("麦克风不可用");
+        }
+
+        StreamingTranscriber transcriber = new StreamingTranscriber(prefs, SAMPLE_RATE, call);
+        String transcript;
+        long start = System.currentTimeMillis();
+        VCPTrace.Span recordSpan = VCPTrace.span(call.traceId, "voice.record");
+        VCPTrace.Span transcribeSpan = null;
+        try {
+            recorder.startRecording();
+            byte[] frame = new byte[FRAME_BYTES];
+            while (recording && !call.isCancelled()) {
+                if (System.currentTimeMillis() - start > MAX_RECORD_MS) {
+                    VCPApiHelper.fileLog("[Voice] 录音达到上限，自动结束");
+                    break;
+                }
+                int n = recorder.read(frame, 0, frame.length);
+                if (n < 0) throw new IllegalStateException("录音读取失败: " + n);
+                transcriber.write(frame, 0, n);
+            }
+            recorder.stop();
+            long recordMs = System.currentTimeMillis() - start;
+            recordSpan.arg("ms", recordMs).end();
+            call.throwIfCancelled();
+            VCPMetrics.recordTime("voice.record", recordMs);
+            VCPApiHelper.fileLog("[Voice] 录音 " + recordMs + "ms，已上传 " + transcriber.bytesSent()
+                    + "/" + transcriber.bytesQueued() + " 字节");
+            updateNotification("正在识别...");
+
+            long released = stopRequestedAt > 0 ? stopRequestedAt : System.currentTimeMillis();
+            transcribeSpan = VCPTrace.span(call.traceId, "voice.transcribe");
+            transcript = transcriber.finish();
+            transcribeSpan.end();
+            // 松开按键到拿到转写的时间，边录边传时只剩最后一帧与服务端处理
+            VCPMetrics.recordTime("voice.releaseToTranscript", System.currentTimeMillis() - released);
+        } catch (Exception e) {
+            transcriber.abort();
+            throw e;
+        } finally {
+            recordSpan.end();
+            if (transcribeSpan != null) transcribeSpan.end();
+            recorder.release();
+        }
+
+        if (transcript.isEmpty()) {
+            updateNotification("没有识别到语音");
+            VCPApiHelper.fileLog("[Voice] 转写为空");
+            return;
+        }
+        String preview = transcript.length() > 50 ? transcript.substring(0, 50) + "..." : transcript;
+        VCPApiHelper.fileLog("[Voice] 转写 " + transcript.length() + " 字");
+        if (!prefs.getBoolean("voiceChat", true)) {
+            activeCall = null;
+            updateNotification("🎙️ " + transcript);
+            return;
+        }
+
+        updateNotification("正在发送: " + preview);
+        ConversationWindow conversation = ConversationWindow.get(this);
+        VCPTrace.Span chatSpan = VCPTrace.span(call.traceId, "api.chat");
+        String aiReply;
+        try {
+            aiReply = VCPApiHelper.chatText(prefs, transcript,
+                    conversation.context(HistoryBatcher.SOURCE_VOICE), call);
+        } finally {
+            chatSpan.end();
+        }
+        activeCall = null; // AI 已回复，通知不再显示取消按钮
+
+        String aiPreview = aiReply.length() > 100 ? aiReply.substring(0, 100) + "..." : aiReply;
+        updateNotification("✅ AI 回复: " + aiPreview);
+        conversation.record(HistoryBatcher.SOURCE_VOICE, transcript, aiReply);
+        HistoryBatcher.get(this).enqueue(HistoryBatcher.SOURCE_VOICE, transcript, aiReply, "🎙️ " + preview, call.traceId);
+        VCPApiHelper.fileLog("[Voice] 已加入话题写入队列");
+    }
+
+    private void createNotificationChannel() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationChannel channel = new NotificationChannel(
+                    CHANNEL_ID, "语音输入服务", NotificationManager.IMPORTANCE_LOW);
+            channel.setDescription("按住音量键录音并发送给 AI Agent");
+            NotificationManager nm = getSystemService(NotificationManager.class);
+            if (nm != null) nm.createNotificationChannel(channel);
+        }
+    }
+
+    private void updateNotification(String text) {
+        notifier.update(text);
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+
+    static boolean hasRecordPermission(Context ctx) {
+        return ctx.checkSelfPermission(Manifest.permission.RECORD_AUDIO) == PackageManager.PERMISSION_GRANTED;
+    }
+
+    /**
+     * 启动或结束录音（由 VolumeKeyService 调用）
+     * @return 未授予录音权限时不启动服务，返回 false
+     */
+    static boolean send(Context ctx, String action, String traceId) {
+        if (ACTION_START.equals(action) && !hasRecordPermission(ctx)) {
+            VCPApiHelper.fileLog("[Voice] 未授予录音权限，不启动录音");
+            return false;
+        }
+        Intent intent = new Intent(ctx, VoiceCaptureService.class).setAction(action);
+        if (traceId != null) intent.putExtra(VCPTrace.EXTRA_TRACE_ID, traceId);
+        if (ACTION_START.equals(action) && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            ctx.startForegroundService(intent);
+        } else {
+            ctx.startService(intent);
+        }
+        return true;
+    }
+}
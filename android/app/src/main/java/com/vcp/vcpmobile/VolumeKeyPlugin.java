@@ -20,11 +20,15 @@ import java.util.List;
  * - checkAccessibility: 检查辅助功能是否已开启
  * - openAccessibilitySettings: 打开系统辅助功能设置页
  * - setEnabled / isEnabled: 控制音量键监听开关
+ * - setGestures / getGestures: 配置各手势对应的动作（screenshot / clipboard / voice / none）
+ * - setAllEvents: 恢复订阅全部无障碍事件（旧行为），用于对比 Metrics.getMetrics().accessibility.perHour
  */
 @CapacitorPlugin(name = "VolumeKey")
 public class VolumeKeyPlugin extends Plugin {
     private static final String PREFS_NAME = "volume_key_prefs";
     private static final String KEY_ENABLED = "enabled";
+    // 按 VolumeGestureEngine.GESTURE_* 索引
+    private static final String[] GESTURE_PARAMS = {"doubleClick", "tripleClick", "longPress", "chord"};
 
     @PluginMethod
     public void checkAccessibility(PluginCall call) {
@@ -67,6 +71,57 @@ public class VolumeKeyPlugin extends Plugin {
         call.resolve(ret);
     }
 
+    /**
+     * 手势 → 动作，参数名为 doubleClick / tripleClick / longPress / chord，未传的保持不变；
+     * 服务监听 prefs 变化，立即生效
+     */
+    @PluginMethod
+    public void setGestures(PluginCall call) {
+        SharedPreferences prefs = getContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        SharedPreferences.Editor editor = prefs.edit();
+        for (int i = 0; i < GESTURE_PARAMS.length; i++) {
+            String action = call.getString(GESTURE_PARAMS[i]);
+            if (action == null) continue;
+            if (!isKnownAction(action)) {
+                call.reject("未知的手势动作: " + action);
+                return;
+            }
+            editor.putString(VolumeKeyService.GESTURE_KEYS[i], action);
+        }
+        editor.apply();
+        getGestures(call);
+    }
+
+    @PluginMethod
+    public void getGestures(PluginCall call) {
+        SharedPreferences prefs = getContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        JSObject ret = new JSObject();
+        for (int i = 0; i < GESTURE_PARAMS.length; i++) {
+            ret.put(GESTURE_PARAMS[i], prefs.getString(VolumeKeyService.GESTURE_KEYS[i], VolumeKeyService.GESTURE_DEFAULTS[i]));
+        }
+        call.resolve(ret);
+    }
+
+    /** { enabled }：切换后服务重新开始计数，返回当前的事件统计 */
+    @PluginMethod
+    public void setAllEvents(PluginCall call) {
+        boolean enabled = call.getBoolean("enabled", false);
+        SharedPreferences prefs = getContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        prefs.edit().putBoolean(VolumeKeyService.KEY_ALL_EVENTS, enabled).commit();
+        try {
+            call.resolve(JSObject.fromJSONObject(VolumeKeyService.eventStats()));
+        } catch (Exception e) {
+            call.reject("读取事件统计失败: " + e.getMessage(), e);
+        }
+    }
+
+    private static boolean isKnownAction(String action) {
+        return VolumeKeyService.ACTION_SCREENSHOT.equals(action)
+                || VolumeKeyService.ACTION_CLIPBOARD.equals(action)
+                || VolumeKeyService.ACTION_VOICE.equals(action)
+                || VolumeKeyService.ACTION_NONE.equals(action);
+    }
+
     private boolean isAccessibilityServiceEnabled() {
         AccessibilityManager am = (AccessibilityManager) getContext().getSystemService(Context.ACCESSIBILITY_SERVICE);
         if (am == null) return false;
@@ -14,35 +14,82 @@ import android.view.KeyEvent;
 import android.view.accessibility.AccessibilityEvent;
 import android.widget.Toast;
 
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
 /**
- * AccessibilityService 监听音量上键的双击和长按手势：
- * - 双击音量上键 → 启动 ScreenshotSenderService（截图发送给 AI）
- * - 长按音量上键 → 启动 ClipboardSenderService（剪贴板发送给 AI）
+ * AccessibilityService 监听音量键手势（识别逻辑见 VolumeGestureEngine）：
+ * - 单击音量上键 → 立即调高音量（不等待双击窗口，构成多击时再撤销）
+ * - 双击音量上键 → 默认启动 ScreenshotSenderService（截图发送给 AI）
+ * - 长按音量上键 → 默认启动 ClipboardSenderService（剪贴板发送给 AI）
+ * - 三击、按住音量上键再按音量下键（组合键）→ 默认不启用
+ *
+ * 各手势对应的动作由 VolumeKeyPlugin.setGestures 配置（screenshot / clipboard / voice / none）：
+ * voice 用于长按或组合键时按住说话、松开发送（VoiceCaptureService），用于点击类手势时第一次开始、再次结束。
+ * 双击窗口按用户的双击间隔自适应并持久化。
+ * 音量下键只在组合键中拦截，其余情况保持系统默认行为。
  *
- * 音量下键不拦截，保持系统默认行为。
+ * 无障碍事件默认不订阅（按键过滤不依赖事件订阅），捕获时短暂订阅窗口事件，
+ * 取得前台应用包名后记录到该次捕获的 trace 并立即退订（见 EventSubscriptions）。
  */
-public class VolumeKeyService extends AccessibilityService {
+public class VolumeKeyService extends AccessibilityService
+        implements VolumeGestureEngine.Listener, SharedPreferences.OnSharedPreferenceChangeListener {
     private static final String TAG = "VolumeKeyService";
-    private static final String PREFS_NAME = "volume_key_prefs";
+    static final String PREFS_NAME = "volume_key_prefs";
     private static final String KEY_ENABLED = "enabled";
+    private static final String KEY_GAP_AVERAGE = "gapAverageMs";
+    // 恢复订阅全部事件（旧行为），用于对比每小时事件数
+    static final String KEY_ALL_EVENTS = "subscribeAllEvents";
+
+    // 手势对应的动作
+    static final String ACTION_SCREENSHOT = "screenshot";
+    static final String ACTION_CLIPBOARD = "clipboard";
+    static final String ACTION_VOICE = "voice";
+    static final String ACTION_NONE = "none";
+    // 按 VolumeGestureEngine.GESTURE_* 索引：设置项名、默认动作、指标名
+    static final String[] GESTURE_KEYS = {"gestureDoubleClick", "gestureTripleClick", "gestureLongPress", "gestureChord"};
+    static final String[] GESTURE_DEFAULTS = {ACTION_SCREENSHOT, ACTION_NONE, ACTION_CLIPBOARD, ACTION_NONE};
+    private static final String[] GESTURE_METRICS = {"gesture.doubleClick", "gesture.tripleClick", "gesture.longPress", "gesture.chord"};
+    private static final String[] GESTURE_TRACES = {"gesture.double_click", "gesture.triple_click", "gesture.long_press", "gesture.chord"};
 
-    // 双击检测参数
-    private static final long DOUBLE_CLICK_INTERVAL = 400; // ms
     // 长按检测参数
     private static final long LONG_PRESS_DURATION = 600; // ms
+    // 捕获时为取得前台应用临时订阅的事件与时长
+    private static final int FOREGROUND_EVENT_TYPES =
+            AccessibilityEvent.TYPE_WINDOW_STATE_CHANGED | AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED;
+    private static final long FOREGROUND_WINDOW_MS = 1500;
+    private static final String SYSTEM_UI_PACKAGE = "com.android.systemui";
 
     private final Handler handler = new Handler(Looper.getMainLooper());
+    private final VolumeGestureEngine.Scheduler mainScheduler = new VolumeGestureEngine.Scheduler() {
+        @Override
+        public void postDelayed(Runnable task, long delayMs) {
+            handler.postDelayed(task, delayMs);
+        }
 
-    // 双击状态
-    private long lastVolumeUpTime = 0;
-    private int clickCount = 0;
-    private Runnable singleClickRunnable = null;
+        @Override
+        public void cancel(Runnable task) {
+            handler.removeCallbacks(task);
+        }
+    };
+    private final VolumeGestureEngine engine = new VolumeGestureEngine(this, mainScheduler, LONG_PRESS_DURATION);
+    private final String[] gestureActions = GESTURE_DEFAULTS.clone();
+    private final EventSubscriptions subscriptions = new EventSubscriptions(this::applyEventTypes, mainScheduler,
+            System::currentTimeMillis);
+    // 等待前台应用包名的捕获 trace 与对应的临时订阅
+    private final List<String> foregroundPending = new ArrayList<>();
+    private EventSubscriptions.Lease foregroundLease;
 
-    // 长按状态
-    private boolean volumeUpDown = false;
-    private long volumeUpDownTime = 0;
-    private boolean longPressTriggered = false;
-    private Runnable longPressRunnable = null;
+    // 供 MetricsPlugin 读取事件统计（服务未连接时为 null）
+    private static volatile EventSubscriptions sSubscriptions;
+    private static volatile String sLastForegroundPackage;
+
+    private SharedPreferences keyPrefs;
+    private AudioManager audioManager;
+    // 调高前的音量，撤销时精确恢复（已是最大音量时调高无效，撤销也不会降低）
+    private int volumeBeforeRaise = -1;
 
     // 全局开关（可通过 Capacitor 插件控制）
     private static volatile boolean serviceEnabled = true;
@@ -61,104 +108,174 @@ public class VolumeKeyService extends AccessibilityService {
         Log.i(TAG, "VolumeKeyService 已连接");
         showToast("VCP 音量键服务已启动");
 
-        // 读取持久化的开关状态
-        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
-        serviceEnabled = prefs.getBoolean(KEY_ENABLED, true);
+        // 读取持久化的开关状态与手势配置
+        keyPrefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
+        serviceEnabled = keyPrefs.getBoolean(KEY_ENABLED, true);
+        loadGestures();
+        engine.restoreGapAverage(keyPrefs.getFloat(KEY_GAP_AVERAGE, 0f));
+        keyPrefs.registerOnSharedPreferenceChangeListener(this);
+        audioManager = (AudioManager) getSystemService(Context.AUDIO_SERVICE);
+
+        sSubscriptions = subscriptions;
+        subscriptions.setBaseMask(baseEventTypes());
+    }
+
+    @Override
+    public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
+        if (key != null && key.startsWith("gesture")) loadGestures();
+        if (KEY_ALL_EVENTS.equals(key)) subscriptions.setBaseMask(baseEventTypes());
+    }
+
+    private int baseEventTypes() {
+        return keyPrefs.getBoolean(KEY_ALL_EVENTS, false) ? AccessibilityEvent.TYPES_ALL_MASK : 0;
+    }
 
+    /** 写入订阅的事件类型（按键过滤标志保持不变） */
+    private void applyEventTypes(int eventTypes) {
         AccessibilityServiceInfo info = getServiceInfo();
-        if (info != null) {
-            info.flags |= AccessibilityServiceInfo.FLAG_REQUEST_FILTER_KEY_EVENTS;
-            setServiceInfo(info);
+        if (info == null) return;
+        info.eventTypes = eventTypes;
+        info.flags |= AccessibilityServiceInfo.FLAG_REQUEST_FILTER_KEY_EVENTS;
+        setServiceInfo(info);
+    }
+
+    /** {events, perHour, sinceMs, mask, baseMask, leases, lastForegroundPackage}，服务未连接时为空对象 */
+    public static JSONObject eventStats() {
+        EventSubscriptions subs = sSubscriptions;
+        JSONObject stats = subs != null ? subs.stats() : new JSONObject();
+        try {
+            stats.put("connected", subs != null);
+            if (sLastForegroundPackage != null) stats.put("lastForegroundPackage", sLastForegroundPackage);
+        } catch (Exception ignored) {}
+        return stats;
+    }
+
+    /** 读取手势配置（不在按键路径上读取 prefs） */
+    private void loadGestures() {
+        for (int i = 0; i < VolumeGestureEngine.GESTURE_COUNT; i++) {
+            gestureActions[i] = keyPrefs.getString(GESTURE_KEYS[i], GESTURE_DEFAULTS[i]);
+            engine.setGestureEnabled(i, !ACTION_NONE.equals(gestureActions[i]));
         }
     }
 
     @Override
     public void onAccessibilityEvent(AccessibilityEvent event) {
-        // 不需要处理无障碍事件
+        subscriptions.onEvent();
+        if (foregroundPending.isEmpty() || event.getPackageName() == null) return;
+        String pkg = event.getPackageName().toString();
+        // 音量面板、截图通知（SystemUI）和本应用的剪贴板界面不是用户捕获的对象
+        if (pkg.equals(getPackageName()) || pkg.equals(SYSTEM_UI_PACKAGE)) return;
+        sLastForegroundPackage = pkg;
+        for (String traceId : foregroundPending) VCPTrace.instant(traceId, "foreground", "package", pkg);
+        foregroundPending.clear();
+        foregroundLease.release();
+        foregroundLease = null;
+    }
+
+    /** 为本次捕获短暂订阅窗口事件，取得前台应用包名后记录到 trace */
+    private void watchForeground(String traceId) {
+        foregroundPending.add(traceId);
+        if (foregroundLease != null && foregroundLease.isActive()) return;
+        foregroundLease = subscriptions.acquire(FOREGROUND_EVENT_TYPES, FOREGROUND_WINDOW_MS, () -> {
+            // 窗口期内前台应用没有产生事件：不阻塞捕获，只记录未取得
+            VCPMetrics.increment("a11y.foregroundMissed");
+            foregroundPending.clear();
+            foregroundLease = null;
+        });
     }
 
     @Override
     public void onInterrupt() {
         Log.w(TAG, "VolumeKeyService 被中断");
+        engine.cancelPending();
     }
 
     @Override
     protected boolean onKeyEvent(KeyEvent event) {
         if (!serviceEnabled) return false;
-        if (event.getKeyCode() != KeyEvent.KEYCODE_VOLUME_UP) return false;
-
+        int keyCode = event.getKeyCode();
         int action = event.getAction();
+        long time = event.getEventTime();
+
+        if (keyCode == KeyEvent.KEYCODE_VOLUME_DOWN) {
+            if (action == KeyEvent.ACTION_DOWN) return engine.volumeDownDown(time);
+            if (action == KeyEvent.ACTION_UP) return engine.volumeDownUp(time);
+            return false;
+        }
+        if (keyCode != KeyEvent.KEYCODE_VOLUME_UP) return false;
 
         if (action == KeyEvent.ACTION_DOWN) {
-            if (!volumeUpDown) {
-                // 按键按下
-                volumeUpDown = true;
-                volumeUpDownTime = System.currentTimeMillis();
-                longPressTriggered = false;
-
-                // 安排长按检测
-                if (longPressRunnable != null) handler.removeCallbacks(longPressRunnable);
-                longPressRunnable = () -> {
-                    if (volumeUpDown) {
-                        longPressTriggered = true;
-                        onVolumeLongPress();
-                    }
-                };
-                handler.postDelayed(longPressRunnable, LONG_PRESS_DURATION);
+            // 按住时系统重复发送的按下事件直接消费
+            if (event.getRepeatCount() == 0) {
+                // 按键按下：手势可能即将触发，提前预热到 baseUrl 的连接
+                ConnectionPrewarmer.prewarm(this);
+                engine.volumeUpDown(time);
             }
-            return true; // 消费按键，阻止系统音量调节
-
+            return true; // 消费按键，音量由 onVolumeRaise 调节
         } else if (action == KeyEvent.ACTION_UP) {
-            volumeUpDown = false;
+            engine.volumeUpUp(time);
+            return true;
+        }
+        return false;
+    }
 
-            // 取消长按检测
-            if (longPressRunnable != null) {
-                handler.removeCallbacks(longPressRunnable);
-            }
+    // ========== VolumeGestureEngine.Listener ==========
 
-            if (longPressTriggered) {
-                // 长按已触发，忽略抬起
-                longPressTriggered = false;
-                return true;
-            }
+    @Override
+    public void onVolumeRaise() {
+        if (audioManager == null) return;
+        volumeBeforeRaise = audioManager.getStreamVolume(AudioManager.STREAM_MUSIC);
+        audioManager.adjustStreamVolume(AudioManager.STREAM_MUSIC, AudioManager.ADJUST_RAISE, AudioManager.FLAG_SHOW_UI);
+    }
+
+    @Override
+    public void onVolumeRevert() {
+        if (audioManager == null || volumeBeforeRaise < 0) return;
+        if (audioManager.getStreamVolume(AudioManager.STREAM_MUSIC) > volumeBeforeRaise) {
+            audioManager.adjustStreamVolume(AudioManager.STREAM_MUSIC, AudioManager.ADJUST_LOWER, 0);
+            VCPMetrics.increment("gesture.reverts");
+        }
+        volumeBeforeRaise = -1;
+    }
 
-            // 短按：双击检测
-            long now = System.currentTimeMillis();
-            if (now - lastVolumeUpTime < DOUBLE_CLICK_INTERVAL) {
-                // 双击确认
-                clickCount = 0;
-                lastVolumeUpTime = 0;
-                if (singleClickRunnable != null) {
-                    handler.removeCallbacks(singleClickRunnable);
-                    singleClickRunnable = null;
-                }
-                onVolumeDoubleClick();
+    @Override
+    public void onVolumeGesture(int gesture) {
+        VCPMetrics.increment(GESTURE_METRICS[gesture]);
+        if (gesture == VolumeGestureEngine.GESTURE_DOUBLE_CLICK) saveGapAverage();
+        String action = gestureActions[gesture];
+        Log.i(TAG, GESTURE_METRICS[gesture] + " → " + action + "（双击窗口 " + engine.windowMs() + "ms）");
+        if (ACTION_SCREENSHOT.equals(action)) {
+            sendScreenshot(GESTURE_TRACES[gesture]);
+        } else if (ACTION_CLIPBOARD.equals(action)) {
+            sendClipboard(GESTURE_TRACES[gesture]);
+        } else if (ACTION_VOICE.equals(action)) {
+            boolean hold = gesture == VolumeGestureEngine.GESTURE_LONG_PRESS || gesture == VolumeGestureEngine.GESTURE_CHORD;
+            if (!hold && VoiceCaptureService.isRecording()) {
+                VoiceCaptureService.send(this, VoiceCaptureService.ACTION_STOP, null);
             } else {
-                // 第一次点击，等待可能的第二次
-                clickCount = 1;
-                lastVolumeUpTime = now;
-                if (singleClickRunnable != null) {
-                    handler.removeCallbacks(singleClickRunnable);
-                }
-                singleClickRunnable = () -> {
-                    // 超时未双击 → 单击，通过 AudioManager 手动调高音量
-                    clickCount = 0;
-                    lastVolumeUpTime = 0;
-                    singleClickRunnable = null;
-                    adjustVolume(AudioManager.ADJUST_RAISE);
-                };
-                handler.postDelayed(singleClickRunnable, DOUBLE_CLICK_INTERVAL);
+                startVoice(GESTURE_TRACES[gesture]);
             }
-            return true;
         }
+    }
 
-        return false;
+    @Override
+    public void onVolumeGestureRelease(int gesture) {
+        if (ACTION_VOICE.equals(gestureActions[gesture])) {
+            VoiceCaptureService.send(this, VoiceCaptureService.ACTION_STOP, null);
+        }
+    }
+
+    private void saveGapAverage() {
+        if (keyPrefs != null) keyPrefs.edit().putFloat(KEY_GAP_AVERAGE, engine.gapAverageMs()).apply();
     }
 
-    private void onVolumeDoubleClick() {
-        Log.i(TAG, "双击音量上键 → 发送截图");
+    private void sendScreenshot(String gestureTrace) {
         showToast("VCP: 正在发送截图...");
+        String traceId = VCPTrace.begin("screenshot");
+        VCPTrace.instant(traceId, gestureTrace);
+        watchForeground(traceId);
         Intent intent = new Intent(this, ScreenshotSenderService.class);
+        intent.putExtra(VCPTrace.EXTRA_TRACE_ID, traceId);
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
             startForegroundService(intent);
         } else {
@@ -166,20 +283,28 @@ public class VolumeKeyService extends AccessibilityService {
         }
     }
 
-    private void onVolumeLongPress() {
-        Log.i(TAG, "长按音量上键 → 发送剪贴板");
+    private void sendClipboard(String gestureTrace) {
         showToast("VCP: 正在发送剪贴板...");
         // 启动透明 Activity 在前台读取剪贴板（Android 10+ 后台 Service 无法读取）
+        String traceId = VCPTrace.begin("clipboard");
+        VCPTrace.instant(traceId, gestureTrace);
+        watchForeground(traceId);
         Intent intent = new Intent(this, ClipboardReaderActivity.class);
+        intent.putExtra(VCPTrace.EXTRA_TRACE_ID, traceId);
         intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
         startActivity(intent);
     }
 
-    private void adjustVolume(int direction) {
-        AudioManager am = (AudioManager) getSystemService(Context.AUDIO_SERVICE);
-        if (am != null) {
-            am.adjustStreamVolume(AudioManager.STREAM_MUSIC, direction, AudioManager.FLAG_SHOW_UI);
+    private void startVoice(String gestureTrace) {
+        // 麦克风前台服务需要先有录音权限，未授权时不启动服务
+        if (!VoiceCaptureService.hasRecordPermission(this)) {
+            showToast("VCP: 需要麦克风权限，请在应用内授权后重试");
+            return;
         }
+        String traceId = VCPTrace.begin("voice");
+        VCPTrace.instant(traceId, gestureTrace);
+        watchForeground(traceId);
+        VoiceCaptureService.send(this, VoiceCaptureService.ACTION_START, traceId);
     }
 
     private void showToast(String msg) {
@@ -189,6 +314,12 @@ public class VolumeKeyService extends AccessibilityService {
     @Override
     public void onDestroy() {
         super.onDestroy();
+        engine.cancelPending();
+        subscriptions.releaseAll();
+        foregroundPending.clear();
+        foregroundLease = null;
+        if (sSubscriptions == subscriptions) sSubscriptions = null;
+        if (keyPrefs != null) keyPrefs.unregisterOnSharedPreferenceChangeListener(this);
         Log.i(TAG, "VolumeKeyService 已销毁");
     }
 }
@@ -0,0 +1,306 @@
+package com.vcp.vcpmobile;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.util.DisplayMetrics;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * 聊天背景壁纸的降采样缓存（替代 WebView 直接解码 public/wallpapers 下的原图）：
+ * 1. 原图（多为数 MB 的 PNG/JPEG）只解码一次：先读尺寸，按目标尺寸计算 inSampleSize 降采样解码，
+ *    再精确缩放到刚好覆盖目标区域（与 CSS background-size: cover 一致）
+ * 2. 编码为 WebP 写入 cacheDir/wallpapers，文件名为 <原图 SHA-1>_<宽>x<高>.webp，
+ *    换壁纸、启动时命中缓存只需几毫秒，WebView 解码的也只是屏幕大小的图片
+ * 3. 原图的 SHA-1 按 “大小 + 应用更新时间” 记录在 <名称 SHA-1>.src 中，命中时不必重新读取原图
+ * 4. 变体文件超过 MAX_VARIANTS 个时按最近使用时间淘汰
+ *
+ * 目标尺寸默认取屏幕的竖屏尺寸（短边 × 长边）；壁纸选择器的缩略图传入更小的尺寸。
+ */
+public class WallpaperCache {
+    private static final String CACHE_DIR = "wallpapers";
+    private static final String ASSET_DIR = "public/wallpapers/";
+    static final int MAX_VARIANTS = 48;
+    static final int WEBP_QUALITY = 85;
+
+    /** 原图来源（应用内为 assets，测试中为文件） */
+    interface Source {
+        InputStream open(String name) throws IOException;
+
+        /** 原图内容变化时随之变化的标记（不读取内容） */
+        String stamp(String name) throws IOException;
+    }
+
+    /** 缓存结果 */
+    public static class Variant {
+        public final File file;
+        public final int width;
+        public final int height;
+        // 是否直接命中缓存（未解码原图）
+        public final boolean cached;
+
+        Variant(File file, int width, int height, boolean cached) {
+            this.file = file;
+            this.width = width;
+            this.height = height;
+            this.cached = cached;
+        }
+    }
+
+    private static WallpaperCache sInstance;
+
+    private final File dir;
+    private final Source source;
+    // 同一时间只读取（计算哈希）或解码一张原图；命中缓存不需要这把锁
+    private final Object decodeLock = new Object();
+
+    public static synchronized WallpaperCache get(Context ctx) {
+        if (sInstance == null) {
+            sInstance = new WallpaperCache(new File(ctx.getCacheDir(), CACHE_DIR), assetSource(ctx.getApplicationContext()));
+        }
+        return sInstance;
+    }
+
+    WallpaperCache(File dir, Source source) {
+        this.dir = dir;
+        this.source = source;
+    }
+
+    /** 屏幕的竖屏尺寸 {短边, 长边} */
+    public static int[] screenSize() {
+        DisplayMetrics metrics = Resources.getSystem().getDisplayMetrics();
+        int a = metrics.widthPixels;
+        int b = metrics.heightPixels;
+        return new int[]{Math.min(a, b), Math.max(a, b)};
+    }
+
+    /**
+     * 取得覆盖 width × height 的壁纸变体，没有缓存时解码原图生成（耗时，需在后台线程调用）
+     * 同一时间只生成一张，避免多张原图同时解码占用内存
+     */
+    public Variant variant(String name, int width, int height) throws IOException {
+        File file = new File(dir, sourceHash(name) + "_" + width + "x" + height + ".webp");
+        Variant hit = cached(file);
+        if (hit != null) return hit;
+        synchronized (decodeLock) {
+            // 等锁期间可能已由其他调用生成
+            hit = cached(file);
+            if (hit != null) return hit;
+            return generate(name, file, width, height);
+        }
+    }
+
+    private static Variant cached(File file) {
+        if (!file.exists()) return null;
+        file.setLastModified(System.currentTimeMillis());
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getAbsolutePath(), bounds);
+        if (bounds.outWidth <= 0) return null;
+        VCPMetrics.increment("wallpaper.hit");
+        return new Variant(file, bounds.outWidth, bounds.outHeight, true);
+    }
+
+    private Variant generate(String name, File file, int width, int height) throws IOException {
+        long start = System.currentTimeMillis();
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        try (InputStream in = source.open(name)) {
+            BitmapFactory.decodeStream(in, null, bounds);
+        }
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) throw new IOException("无法解码壁纸: " + name);
+
+        float scale = coverScale(bounds.outWidth, bounds.outHeight, width, height);
+        BitmapFactory.Options opts = new BitmapFactory.Options();
+        opts.inSampleSize = sampleSize(scale);
+        Bitmap bitmap;
+        try (InputStream in = source.open(name)) {
+            bitmap = BitmapFactory.decodeStream(in, null, opts);
+        }
+        if (bitmap == null) throw new IOException("无法解码壁纸: " + name);
+
+        int w = Math.max(1, Math.round(bounds.outWidth * scale));
+        int h = Math.max(1, Math.round(bounds.outHeight * scale));
+        if (bitmap.getWidth() != w || bitmap.getHeight() != h) {
+            Bitmap scaled = Bitmap.createScaledBitmap(bitmap, w, h, true);
+            if (scaled != bitmap) bitmap.recycle();
+            bitmap = scaled;
+        }
+
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("无法创建缓存目录");
+        File tmp = new File(dir, file.getName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            bitmap.compress(webpFormat(), WEBP_QUALITY, out);
+        } finally {
+            bitmap.recycle();
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("rename failed");
+        }
+        trim();
+
+        long elapsed = System.currentTimeMillis() - start;
+        VCPMetrics.increment("wallpaper.decoded");
+        VCPMetrics.recordTime("wallpaper.decode", elapsed);
+        VCPApiHelper.fileLog("[Wallpaper] " + name + " " + bounds.outWidth + "x" + bounds.outHeight
+                + " → " + w + "x" + h + "（inSampleSize=" + opts.inSampleSize + "，" + file.length() / 1024 + "KB，"
+                + elapsed + "ms）");
+        return new Variant(file, w, h, false);
+    }
+
+    public void clear() {
+        synchronized (decodeLock) {
+            File[] files = dir.listFiles();
+            if (files == null) return;
+            for (File f : files) f.delete();
+        }
+    }
+
+    // ========== 尺寸 ==========
+
+    /** 等比缩放到刚好覆盖目标区域的比例（不放大） */
+    static float coverScale(int srcWidth, int srcHeight, int dstWidth, int dstHeight) {
+        return Math.min(1f, Math.max((float) dstWidth / srcWidth, (float) dstHeight / srcHeight));
+    }
+
+    /** 不低于目标比例的最大 2 的幂降采样 */
+    static int sampleSize(float scale) {
+        int sample = 1;
+        while (sample * 2 * scale <= 1f) sample *= 2;
+        return sample;
+    }
+
+    // ========== 原图标识 ==========
+
+    /**
+     * 原图内容的 SHA-1，按 stamp 记录在 .src 文件中，stamp 不变时直接读取
+     * 未命中时在 decodeLock 内流式计算，原图不整体读入内存，多个请求也不会同时读取原图
+     */
+    private String sourceHash(String name) throws IOException {
+        String stamp = source.stamp(name);
+        File record = new File(dir, sha1(name.getBytes(StandardCharsets.UTF_8)) + ".src");
+        String hash = recordedHash(record, stamp);
+        if (hash != null) return hash;
+
+        synchronized (decodeLock) {
+            // 等锁期间可能已由其他调用记录
+            hash = recordedHash(record, stamp);
+            if (hash != null) return hash;
+            try (InputStream in = source.open(name)) {
+                hash = sha1(in);
+            }
+            if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("无法创建缓存目录");
+            File tmp = new File(dir, record.getName() + ".tmp");
+            try (FileOutputStream out = new FileOutputStream(tmp)) {
+                out.write((stamp + "\n" + hash).getBytes(StandardCharsets.UTF_8));
+            }
+            if (!tmp.renameTo(record)) tmp.delete();
+            return hash;
+        }
+    }
+
+    /** .src 中记录的哈希；没有记录或 stamp 已变化时返回 null */
+    private static String recordedHash(File record, String stamp) throws IOException {
+        if (!record.exists()) return null;
+        try (FileInputStream in = new FileInputStream(record)) {
+            String[] lines = new String(readAll(in), StandardCharsets.UTF_8).split("\n");
+            return lines.length == 2 && lines[0].equals(stamp) ? lines[1] : null;
+        }
+    }
+
+    /** 按最近使用时间淘汰多余的变体 */
+    private void trim() {
+        File[] files = dir.listFiles((d, n) -> n.endsWith(".webp"));
+        if (files == null || files.length <= MAX_VARIANTS) return;
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (int i = 0; i < files.length - MAX_VARIANTS; i++) {
+            files[i].delete();
+            VCPMetrics.increment("wallpaper.evicted");
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Bitmap.CompressFormat webpFormat() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+                ? Bitmap.CompressFormat.WEBP_LOSSY : Bitmap.CompressFormat.WEBP;
+    }
+
+    private static Source assetSource(Context ctx) {
+        return new Source() {
+            @Override
+            public InputStream open(String name) throws IOException {
+                return ctx.getAssets().open(ASSET_DIR + name);
+            }
+
+            @Override
+            public String stamp(String name) throws IOException {
+                // assets 只随安装包更新；图片在 APK 中不压缩，可直接取长度
+                long length = -1;
+                try (AssetFileDescriptor fd = ctx.getAssets().openFd(ASSET_DIR + name)) {
+                    length = fd.getLength();
+                } catch (IOException ignored) {
+                }
+                long updated = 0;
+                try {
+                    updated = ctx.getPackageManager().getPackageInfo(ctx.getPackageName(), 0).lastUpdateTime;
+                } catch (Exception ignored) {
+                }
+                return length + "@" + updated;
+            }
+        };
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buf = new byte[64 * 1024];
+        int n;
+        while ((n = in.read(buf)) > 0) baos.write(buf, 0, n);
+        return baos.toByteArray();
+    }
+
+    private static String sha1(byte[] data) {
+        try {
+            return hex(MessageDigest.getInstance("SHA-1").digest(data));
+        } catch (Exception e) {
+            return Integer.toHexString(Arrays.hashCode(data));
+        }
+    }
+
+    /** 按块读取并计算 SHA-1，内存占用与原图大小无关 */
+    private static String sha1(InputStream in) throws IOException {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        try (DigestInputStream digest = new DigestInputStream(in, md)) {
+            byte[] buf = new byte[64 * 1024];
+            while (digest.read(buf) > 0) {
+                // 读取即计入摘要
+            }
+        }
+        return hex(md.digest());
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) sb.append(String.format("%02x", b));
+        return sb.toString();
+    }
+}
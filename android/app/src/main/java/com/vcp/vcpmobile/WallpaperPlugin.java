@@ -0,0 +1,68 @@
+package com.vcp.vcpmobile;
+
+import com.getcapacitor.JSObject;
+import com.getcapacitor.Plugin;
+import com.getcapacitor.PluginCall;
+import com.getcapacitor.PluginMethod;
+import com.getcapacitor.annotation.CapacitorPlugin;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Capacitor 插件：屏幕尺寸的壁纸缓存（见 WallpaperCache）
+ * JS 调用: Wallpaper.get({ name, width?, height? }) → { path, width, height, cached }
+ *          path 经 Capacitor.convertFileSrc 转换后作为背景图；不传宽高时取屏幕尺寸
+ *          Wallpaper.clear()
+ */
+@CapacitorPlugin(name = "Wallpaper")
+public class WallpaperPlugin extends Plugin {
+    // 壁纸选择器一次请求全部缩略图，超出的排队等待而不是每次调用各起一个线程；
+    // 解码由 WallpaperCache 串行化，其余线程处理命中缓存的请求
+    private static final int MAX_CONCURRENT = 3;
+    private static final AtomicInteger threadIndex = new AtomicInteger();
+
+    private final ExecutorService pool = Executors.newFixedThreadPool(MAX_CONCURRENT, r -> {
+        Thread t = new Thread(r, "vcp-wallpaper-" + threadIndex.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+
+    @PluginMethod
+    public void get(PluginCall call) {
+        String name = call.getString("name", "");
+        if (name.isEmpty() || name.contains("/") || name.contains("..")) {
+            call.reject("无效的壁纸名称");
+            return;
+        }
+        int[] screen = WallpaperCache.screenSize();
+        int width = call.getInt("width", screen[0]);
+        int height = call.getInt("height", screen[1]);
+        if (width <= 0 || height <= 0) {
+            call.reject("无效的尺寸");
+            return;
+        }
+        WallpaperCache cache = WallpaperCache.get(getContext());
+        pool.execute(() -> {
+            try {
+                WallpaperCache.Variant variant = cache.variant(name, width, height);
+                JSObject ret = new JSObject();
+                ret.put("path", variant.file.getAbsolutePath());
+                ret.put("width", variant.width);
+                ret.put("height", variant.height);
+                ret.put("cached", variant.cached);
+                call.resolve(ret);
+            } catch (Exception e) {
+                VCPApiHelper.fileLog("[Wallpaper] 生成失败 " + name + ": " + e.getMessage());
+                call.reject("壁纸加载失败: " + e.getMessage());
+            }
+        });
+    }
+
+    @PluginMethod
+    public void clear(PluginCall call) {
+        WallpaperCache.get(getContext()).clear();
+        call.resolve();
+    }
+}
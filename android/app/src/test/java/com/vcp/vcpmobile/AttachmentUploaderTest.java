@@ -0,0 +1,85 @@
+package com.vcp.vcpmobile;
+
+import static org.junit.Assert.*;
+
+import android.content.SharedPreferences;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * AttachmentUploader 的分块续传：中断后只补发未到达的分块，相同内容不重复上传
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class AttachmentUploaderTest {
+    private MockVcpServer server;
+    private SharedPreferences prefs;
+    private final List<Long> sleeps = Collections.synchronizedList(new ArrayList<>());
+    private VCPApiHelper.Sleeper savedSleeper;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockVcpServer();
+        prefs = VCPApiHelper.getPrefs(RuntimeEnvironment.getApplication());
+        prefs.edit()
+                .putString("baseUrl", server.url())
+                .putString("apiKey", "test-key")
+                .putString("model", "mock-model")
+                .putString("adminUsername", "admin")
+                .putString("adminPassword", "secret")
+                .putString("agentDirId", "Nova")
+                .commit();
+        // 记录续传前的退避而不实际等待
+        savedSleeper = AttachmentUploader.setRetrySleeper(sleeps::add);
+    }
+
+    @After
+    public void tearDown() {
+        AttachmentUploader.setRetrySleeper(savedSleeper);
+        prefs.edit().clear().commit();
+        server.close();
+    }
+
+    @Test
+    public void attachmentUploadResumesAfterDroppedChunks() throws Exception {
+        server.uploadDropRate = 0.2;
+        byte[] template = new byte[AttachmentUploader.CHUNK_BYTES * 5 + 1234];
+        new Random(7).nextBytes(template);
+
+        LoadHarness.Report report = LoadHarness.run("attachment_upload", server, 4, 20, index -> {
+            byte[] jpeg = template.clone();
+            jpeg[0] = (byte) index;
+            CancellableCall call = new CancellableCall(Thread.currentThread());
+            AttachmentUploader.Attachment attachment =
+                    AttachmentUploader.upload(prefs, jpeg, "shot_" + index + ".jpg", "image/jpeg", call);
+            assertNotNull(attachment);
+            assertArrayEquals(jpeg, server.attachment(attachment.id));
+        });
+
+        assertEquals(report.errors.toString(), 20, report.ok);
+        assertTrue(server.uploadDrops.get() > 0);
+        // 每次中断都先退避再续传
+        assertEquals(server.uploadDrops.get(), sleeps.size());
+        // 续传只补发中断的分块：总上传量远小于每次中断都从头开始
+        long payload = 20L * template.length;
+        assertTrue("up=" + report.bytesIn, report.bytesIn < payload + server.uploadDrops.get() * AttachmentUploader.CHUNK_BYTES + payload / 10);
+
+        // 相同内容再次上传直接返回已有附件，不再发送分块
+        long chunksBefore = server.uploadChunks.get();
+        byte[] again = template.clone();
+        again[0] = 3;
+        assertNotNull(AttachmentUploader.upload(prefs, again, "again.jpg", "image/jpeg", null));
+        assertEquals(chunksBefore, server.uploadChunks.get());
+    }
+}
@@ -0,0 +1,84 @@
+package com.vcp.vcpmobile;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * BackgroundScheduler：AI 请求期间与弱网下暂缓后台任务，时钟与网络状态由测试注入
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class BackgroundSchedulerTest {
+    @Test
+    public void deferredWorkWaitsForUrgentCallsAndGoodNetwork() {
+        long[] now = {0};
+        boolean[] net = {true, false, false}; // connected, metered, poor
+        StringBuilder ran = new StringBuilder();
+        BackgroundScheduler scheduler = new BackgroundScheduler(new BackgroundScheduler.NetworkMonitor() {
+            @Override public boolean isConnected() { return net[0]; }
+            @Override public boolean isMetered() { return net[1]; }
+            @Override public boolean isPoor() { return net[2]; }
+        }, () -> now[0], Runnable::run, null);
+
+        // AI 请求进行中：写入与预取暂缓，同 key 的写入只保留一个
+        BackgroundScheduler.Urgent urgent = scheduler.beginUrgent();
+        scheduler.defer("history.flush", () -> ran.append('h'));
+        scheduler.defer("history.flush", () -> ran.append('x'));
+        scheduler.defer(null, () -> ran.append('m'));
+        assertEquals(2, scheduler.queued());
+        assertEquals("urgent", scheduler.holdReason());
+        urgent.end();
+        urgent.end();
+        assertEquals("settle", scheduler.holdReason());
+        now[0] = BackgroundScheduler.SETTLE_MS;
+        scheduler.tick();
+        assertEquals("hm", ran.toString());
+
+        // 按流量计费：最多暂缓 MAX_HOLD_MS
+        net[1] = true;
+        now[0] = 10000;
+        scheduler.defer(null, () -> ran.append('1'));
+        assertEquals("metered", scheduler.holdReason());
+        now[0] += BackgroundScheduler.MAX_HOLD_MS - 1;
+        scheduler.tick();
+        assertEquals("hm", ran.toString());
+        now[0] += 1;
+        scheduler.tick();
+        assertEquals("hm1", ran.toString());
+
+        // 离线暂缓，恢复后立即执行
+        net[0] = false;
+        net[1] = false;
+        scheduler.defer(null, () -> ran.append('2'));
+        assertEquals("offline", scheduler.holdReason());
+        net[0] = true;
+        scheduler.tick();
+        assertEquals("hm12", ran.toString());
+
+        // 批量执行中有新的紧急请求：剩余任务放回队首，请求结束后按原顺序继续
+        ran.setLength(0);
+        BackgroundScheduler.Urgent[] midDrain = new BackgroundScheduler.Urgent[1];
+        urgent = scheduler.beginUrgent();
+        for (int i = 0; i < 10; i++) {
+            int n = i;
+            scheduler.defer(null, () -> {
+                ran.append((char) ('a' + n));
+                if (n == 2) midDrain[0] = scheduler.beginUrgent();
+            });
+        }
+        urgent.end();
+        now[0] += BackgroundScheduler.SETTLE_MS;
+        scheduler.tick();
+        assertEquals("abc", ran.toString());
+        assertEquals(7, scheduler.queued());
+        midDrain[0].end();
+        now[0] += BackgroundScheduler.SETTLE_MS;
+        scheduler.tick();
+        assertEquals("abcdefghij", ran.toString());
+        assertEquals(0, scheduler.queued());
+    }
+}
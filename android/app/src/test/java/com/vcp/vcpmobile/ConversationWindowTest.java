@@ -0,0 +1,73 @@
+package com.vcp.vcpmobile;
+
+import static org.junit.Assert.*;
+
+import android.content.SharedPreferences;
+
+import org.json.JSONArray;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+/**
+ * ConversationWindow：多轮上下文按 token 预算截断，超出部分折叠为摘要
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class ConversationWindowTest {
+    private MockVcpServer server;
+    private SharedPreferences prefs;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockVcpServer();
+        prefs = VCPApiHelper.getPrefs(RuntimeEnvironment.getApplication());
+        prefs.edit()
+                .putString("baseUrl", server.url())
+                .putString("apiKey", "test-key")
+                .putString("model", "mock-model")
+                .commit();
+    }
+
+    @After
+    public void tearDown() {
+        prefs.edit().clear().commit();
+        server.close();
+    }
+
+    @Test
+    public void conversationContextStaysWithinBudget() throws Exception {
+        int budget = 400;
+        prefs.edit().putBoolean("conversationContext", true).putInt("contextTokenBudget", budget).commit();
+        ConversationWindow window = new ConversationWindow(RuntimeEnvironment.getApplication());
+        window.clear(HistoryBatcher.SOURCE_CLIPBOARD);
+        long summariesBefore = VCPMetrics.get("context.summaries");
+        try {
+            // 顺序执行：每轮都依赖上一轮记录的上下文
+            LoadHarness.Report report = LoadHarness.run("conversation_context", server, 1, 60, index -> {
+                String userText = "分析以下内容\n\n剪贴板内容 #" + index + " " + "lorem ipsum ".repeat(50);
+                CancellableCall call = new CancellableCall(Thread.currentThread());
+                String reply = VCPApiHelper.chatText(prefs, userText,
+                        window.context(HistoryBatcher.SOURCE_CLIPBOARD), call);
+                window.record(HistoryBatcher.SOURCE_CLIPBOARD, userText, reply);
+            });
+            assertTrue(window.awaitIdle(10_000));
+
+            assertEquals(report.errors.toString(), 60, report.ok);
+            assertTrue(VCPMetrics.get("context.summaries") > summariesBefore);
+            // 上下文按预算截断：请求体上限与轮数无关（约 4 字节/token，另加本轮内容与 JSON 开销）
+            long max = server.maxCompletionBytes.get();
+            assertTrue("max=" + max, max < budget * 4 + 4096);
+            JSONArray context = window.context(HistoryBatcher.SOURCE_CLIPBOARD);
+            assertNotNull(context);
+            assertEquals("system", context.getJSONObject(0).getString("role"));
+        } finally {
+            window.clear(HistoryBatcher.SOURCE_CLIPBOARD);
+            prefs.edit().remove("conversationContext").remove("contextTokenBudget").commit();
+        }
+    }
+}
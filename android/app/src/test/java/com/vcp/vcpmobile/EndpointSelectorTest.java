@@ -0,0 +1,86 @@
+package com.vcp.vcpmobile;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class EndpointSelectorTest {
+
+    @Test
+    public void selectorPrefersFasterEndpointAndEjectsFailing() {
+        long[] now = {0};
+        EndpointSelector selector = new EndpointSelector(Arrays.asList("a", "b"), () -> now[0]);
+        selector.recordSuccess("a", 30, 300);
+        selector.recordSuccess("b", 10, 100);
+        assertEquals("b", selector.ranked().get(0));
+
+        for (int i = 0; i < EndpointSelector.UNHEALTHY_FAILURES; i++) selector.recordFailure("b");
+        assertFalse(selector.isHealthy("b"));
+        assertEquals("a", selector.ranked().get(0));
+
+        now[0] += EndpointSelector.BASE_EJECT_MS + 1;
+        assertTrue(selector.isHealthy("b"));
+    }
+
+    @Test
+    public void hedgeDelayUsesPercentileOfSamples() {
+        EndpointSelector selector = new EndpointSelector(Collections.singletonList("a"), () -> 0);
+        assertEquals(1234, selector.hedgeDelayMs(0.95, 1234));
+        for (int i = 1; i <= 100; i++) selector.recordSuccess("a", i, 5000);
+        assertEquals(95, selector.hedgeDelayMs(0.95, 1234));
+    }
+
+    @Test
+    public void scoreUsesCompletionTimeWhileHedgeDelayUsesConnectTime() {
+        EndpointSelector selector = new EndpointSelector(Arrays.asList("a", "b"), () -> 0);
+        // a 建连快但响应慢（网关排队），b 建连稍慢但完成得快
+        for (int i = 0; i < EndpointSelector.MIN_SAMPLES; i++) {
+            selector.recordSuccess("a", 5, 4000);
+            selector.recordSuccess("b", 50, 800);
+        }
+        assertEquals("b", selector.ranked().get(0));
+        assertEquals(50, selector.hedgeDelayMs(0.95, 1234));
+    }
+
+    @Test
+    public void pickProbesStaleEndpointOncePerInterval() {
+        EndpointSelector selector = new EndpointSelector(Arrays.asList("a", "b"), () -> 0);
+        // 只有 a 被选中过：b 的估计等于 a 的中位数，单靠评分永远轮不到 b
+        for (int i = 0; i < EndpointSelector.PROBE_INTERVAL - 1; i++) {
+            assertEquals("a", selector.pick(Collections.emptySet()).get(0));
+            selector.recordSuccess("a", 10, 2000);
+        }
+        selector.recordSuccess("a", 10, 2000);
+        // 本次调用中已失败的端点不作为探测目标
+        assertEquals("a", selector.pick(Collections.singleton("b")).get(0));
+        assertEquals("b", selector.pick(Collections.emptySet()).get(0));
+        // 探测已发出，并发的其他请求不再被派去探测
+        assertEquals("a", selector.pick(Collections.emptySet()).get(0));
+
+        selector.recordSuccess("b", 10, 300);
+        assertEquals("b", selector.ranked().get(0));
+    }
+
+    @Test
+    public void unmeasuredEndpointRanksByPriorAndFailures() {
+        long[] now = {0};
+        EndpointSelector selector = new EndpointSelector(Arrays.asList("a", "b", "c"), () -> now[0]);
+        // 都未测速：失败一次的端点排到最后
+        selector.recordFailure("a");
+        assertEquals("a", selector.ranked().get(2));
+
+        // 未测速的 c 按已测速端点的中位数估计，不会排到更快的健康端点之前
+        selector.recordSuccess("b", 10, 100);
+        selector.recordSuccess("a", 30, 300);
+        assertEquals(Arrays.asList("b", "c", "a"), selector.ranked());
+
+        // c 被摘除后恢复：失败次数仍使其排在健康端点之后
+        for (int i = 0; i < EndpointSelector.UNHEALTHY_FAILURES; i++) selector.recordFailure("c");
+        now[0] += EndpointSelector.BASE_EJECT_MS + 1;
+        assertTrue(selector.isHealthy("c"));
+        assertEquals("c", selector.ranked().get(2));
+    }
+}
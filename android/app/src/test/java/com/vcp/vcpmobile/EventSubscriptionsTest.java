@@ -0,0 +1,78 @@
+package com.vcp.vcpmobile;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongConsumer;
+
+/**
+ * EventSubscriptions：默认不订阅无障碍事件，捕获期间按需订阅并在到期后收窄
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class EventSubscriptionsTest {
+    @Test
+    public void eventsAreSubscribedOnlyWhileCaptureNeedsThem() throws Exception {
+        long[] now = {0};
+        List<Integer> applied = new ArrayList<>();
+        Map<Runnable, Long> pending = new HashMap<>();
+        EventSubscriptions subs = new EventSubscriptions(applied::add, new VolumeGestureEngine.Scheduler() {
+            @Override public void postDelayed(Runnable task, long delayMs) { pending.put(task, now[0] + delayMs); }
+            @Override public void cancel(Runnable task) { pending.remove(task); }
+        }, () -> now[0]);
+        LongConsumer advance = to -> {
+            now[0] = to;
+            for (Runnable task : new ArrayList<>(pending.keySet())) {
+                if (pending.get(task) <= to) {
+                    pending.remove(task);
+                    task.run();
+                }
+            }
+        };
+        int all = 0xFFFFFF;
+
+        // 旧行为：全部事件，每秒 5 个 → 每小时 18000 个
+        subs.setBaseMask(all);
+        assertEquals(Collections.singletonList(all), applied);
+        for (int i = 0; i < 5 * 60; i++) subs.onEvent();
+        advance.accept(60000);
+        assertEquals(18000, subs.eventsPerHour());
+
+        // 默认：不订阅，切换后重新计数
+        subs.setBaseMask(0);
+        assertEquals(0, subs.currentMask());
+        assertEquals(0, subs.stats().getLong("events"));
+
+        // 两次重叠的捕获：取并集，各自到期后收窄
+        int[] expired = {0};
+        EventSubscriptions.Lease first = subs.acquire(1, 1500, () -> expired[0]++);
+        advance.accept(60500);
+        EventSubscriptions.Lease second = subs.acquire(2, 1500, () -> expired[0]++);
+        assertEquals(3, subs.currentMask());
+        subs.onEvent();
+        subs.onEvent();
+        // 取得前台应用后提前退订：不算到期
+        first.release();
+        assertEquals(2, subs.currentMask());
+        advance.accept(62000);
+        assertFalse(second.isActive());
+        assertEquals(1, expired[0]);
+        assertEquals(0, subs.currentMask());
+        assertEquals(Arrays.asList(all, 0, 1, 3, 2, 0), applied);
+
+        // 一小时内只有捕获窗口中的事件
+        advance.accept(60000 + 3600_000);
+        assertEquals(2, subs.eventsPerHour());
+        assertEquals(2, subs.stats().getLong("leases"));
+    }
+}
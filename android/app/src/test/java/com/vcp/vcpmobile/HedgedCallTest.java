@@ -0,0 +1,74 @@
+package com.vcp.vcpmobile;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 对冲只发生在建连阶段：未建连的主请求被对冲，先建连者胜出，同一次调用最多发送一次请求体。
+ * 请求用替身模拟（不走网络），对冲延迟为 0，不依赖实际耗时。
+ */
+public class HedgedCallTest {
+    private static final List<String> ENDPOINTS = Arrays.asList("a", "b");
+
+    /** 替身请求：connects 为假时一直不建连，直到被中止；建连且未落败时计一次发送 */
+    private static HedgedCall.Attempt<String> attempt(boolean primaryConnects, AtomicInteger sends) {
+        return (baseUrl, handle) -> {
+            if (baseUrl.equals("a") && !primaryConnects) {
+                CountDownLatch aborted = new CountDownLatch(1);
+                handle.setOnAbort(aborted::countDown);
+                assertTrue(aborted.await(10, TimeUnit.SECONDS));
+                throw new IOException("连接已断开");
+            }
+            handle.markConnected();
+            if (handle.isAborted()) throw new IOException("连接已断开");
+            sends.incrementAndGet();
+            return baseUrl;
+        };
+    }
+
+    @Test
+    public void unconnectedPrimaryIsHedgedAndAborted() throws Exception {
+        EndpointSelector selector = new EndpointSelector(ENDPOINTS, () -> 0);
+        AtomicInteger sends = new AtomicInteger();
+        long firedBefore = VCPMetrics.get("hedge.fired");
+        long wonBefore = VCPMetrics.get("hedge.won");
+
+        assertEquals("b", HedgedCall.execute(selector, ENDPOINTS, true, 0, attempt(false, sends)));
+
+        assertEquals(1, sends.get());
+        assertEquals(firedBefore + 1, VCPMetrics.get("hedge.fired"));
+        assertEquals(wonBefore + 1, VCPMetrics.get("hedge.won"));
+        // 被中止的主请求不计入端点故障
+        assertTrue(selector.isHealthy("a"));
+        assertTrue(selector.ewmaMs("b") >= 0);
+    }
+
+    @Test
+    public void onlyOneAttemptSendsTheBody() throws Exception {
+        EndpointSelector selector = new EndpointSelector(ENDPOINTS, () -> 0);
+        // 主请求很快建连时，对冲是否发出取决于线程调度；无论哪种顺序，请求体都只发送一次
+        for (int i = 0; i < 50; i++) {
+            AtomicInteger sends = new AtomicInteger();
+            String winner = HedgedCall.execute(selector, ENDPOINTS, true, 0, attempt(true, sends));
+            assertTrue(winner, ENDPOINTS.contains(winner));
+            assertEquals(1, sends.get());
+        }
+    }
+
+    @Test
+    public void noHedgeWithoutSecondEndpointOrWhenDisabled() throws Exception {
+        EndpointSelector selector = new EndpointSelector(ENDPOINTS, () -> 0);
+        AtomicInteger sends = new AtomicInteger();
+        assertEquals("a", HedgedCall.execute(selector, ENDPOINTS, false, 0, attempt(true, sends)));
+        assertEquals("a", HedgedCall.execute(selector, ENDPOINTS.subList(0, 1), true, 0, attempt(true, sends)));
+        assertEquals(2, sends.get());
+    }
+}
@@ -0,0 +1,101 @@
+package com.vcp.vcpmobile;
+
+import static org.junit.Assert.*;
+
+import android.content.SharedPreferences;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * HttpCache 的条件请求：304 时返回缓存的响应体，不再下载；副本缺失或损坏时改为普通 GET
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class HttpCacheTest {
+    private MockVcpServer server;
+    private SharedPreferences prefs;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockVcpServer();
+        prefs = VCPApiHelper.getPrefs(RuntimeEnvironment.getApplication());
+        prefs.edit()
+                .putString("baseUrl", server.url())
+                .putString("apiKey", "test-key")
+                .putString("model", "mock-model")
+                .commit();
+    }
+
+    @After
+    public void tearDown() {
+        prefs.edit().clear().commit();
+        server.close();
+    }
+
+    @Test
+    public void conditionalGetServesCachedBodyOn304() throws Exception {
+        HttpCache cache = new HttpCache(new File(RuntimeEnvironment.getApplication().getCacheDir(), "http_cache_test"));
+        cache.clear();
+        Map<String, String> headers = Collections.singletonMap("Authorization", "Bearer test-key");
+
+        HttpCache.Response first = cache.fetch(server.url() + "/v1/models", headers);
+        assertEquals(200, first.status);
+        assertFalse(first.fromCache);
+
+        long outBefore = server.bytesOut.get();
+        LoadHarness.Report report = LoadHarness.run("http_cache", server, 4, 100, index -> {
+            HttpCache.Response r = cache.fetch(server.url() + "/v1/models", headers);
+            if (!r.notModified || !first.body.equals(r.body)) throw new Exception("未命中缓存");
+        });
+
+        assertEquals(report.errors.toString(), 100, report.ok);
+        assertEquals(100, server.notModifiedResponses.get());
+        assertEquals(outBefore, server.bytesOut.get());
+        assertEquals(1, cache.stats()[0]);
+    }
+
+    @Test
+    public void missingOrCorruptCopyFallsBackToFullGet() throws Exception {
+        File dir = new File(RuntimeEnvironment.getApplication().getCacheDir(), "http_cache_corrupt_test");
+        HttpCache cache = new HttpCache(dir);
+        cache.clear();
+        Map<String, String> headers = Collections.singletonMap("Authorization", "Bearer test-key");
+        String url = server.url() + "/v1/models";
+        HttpCache.Response first = cache.fetch(url, headers);
+        File body = new File(dir, HttpCache.cacheKey(url, "Bearer test-key") + ".gz");
+        assertTrue(body.exists());
+
+        // 响应体被淘汰（只剩元数据）
+        assertTrue(body.delete());
+        HttpCache.Response evicted = cache.fetch(url, headers);
+        assertEquals(200, evicted.status);
+        assertFalse(evicted.fromCache);
+        assertEquals(first.body, evicted.body);
+
+        // 响应体损坏
+        try (FileOutputStream fos = new FileOutputStream(body)) {
+            fos.write("not gzip".getBytes(StandardCharsets.UTF_8));
+        }
+        HttpCache.Response corrupt = cache.fetch(url, headers);
+        assertEquals(200, corrupt.status);
+        assertFalse(corrupt.fromCache);
+        assertEquals(first.body, corrupt.body);
+        assertEquals(0, server.notModifiedResponses.get());
+
+        // 重新存盘后恢复条件请求
+        assertTrue(cache.fetch(url, headers).notModified);
+        assertEquals(1, server.notModifiedResponses.get());
+    }
+}
@@ -0,0 +1,58 @@
+package com.vcp.vcpmobile;
+
+import static org.junit.Assert.*;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+
+/**
+ * ImagePreprocessor：裁掉长截图的纯色边距，按像素预算分块且保持可读宽度
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class ImagePreprocessorTest {
+    @Test
+    public void longScreenshotIsCroppedAndTiled() throws Exception {
+        // 1080×8000 长截图：上下各 200px 纯色边距，中间是文字行
+        Bitmap bitmap = Bitmap.createBitmap(1080, 8000, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        canvas.drawColor(Color.WHITE);
+        Paint paint = new Paint();
+        paint.setTextSize(40);
+        paint.setColor(Color.BLACK);
+        for (int y = 240; y < 7800; y += 60) canvas.drawText("长截图第 " + y + " 行 The quick brown fox", 40, y, paint);
+        File file = new File(RuntimeEnvironment.getApplication().getCacheDir(), "long_screenshot.png");
+        try (OutputStream os = new FileOutputStream(file)) {
+            bitmap.compress(Bitmap.CompressFormat.PNG, 100, os);
+        }
+        bitmap.recycle();
+
+        ImagePreprocessor.Result result = ImagePreprocessor.process(file.getAbsolutePath());
+        assertNotNull(result);
+        assertTrue("crop=" + result.crop, result.crop.top >= 150 && result.crop.bottom <= 7850);
+        assertTrue("tiles=" + result.jpegs.size(), result.jpegs.size() > 1);
+        long pixels = 0;
+        for (byte[] jpeg : result.jpegs) {
+            Bitmap tile = BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length);
+            // 分块宽度保持可读（原先整张缩到长边 1024 时只有 138px 宽）
+            assertTrue("width=" + tile.getWidth(), tile.getWidth() >= 400);
+            pixels += (long) tile.getWidth() * tile.getHeight();
+        }
+        assertTrue("pixels=" + pixels, pixels <= ImagePreprocessor.PIXEL_BUDGET * 1.01);
+    }
+}
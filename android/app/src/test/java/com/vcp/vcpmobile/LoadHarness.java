@@ -0,0 +1,139 @@
+package com.vcp.vcpmobile;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 负载驱动：以固定并发执行一批原生管线调用，统计成功/失败数、重试次数和线上字节数，由测试对报告断言。
+ * 延迟与吞吐量不作为断言条件：每次运行（无论成败）都写入 build/reports/vcp-load/<name>.json，便于与历史结果对比。
+ */
+public class LoadHarness {
+
+    /** 一次管线调用（截图发送、剪贴板发送等），抛出异常视为失败 */
+    public interface Task {
+        void run(int index) throws Exception;
+    }
+
+    public static class Report {
+        public final String name;
+        public int concurrency;
+        public int total;
+        public int ok;
+        public int failed;
+        public long wallMs;
+        public long p50Ms;
+        public long p99Ms;
+        public long maxMs;
+        public long retries;
+        public long bytesIn;
+        public long bytesOut;
+        public final List<String> errors = new ArrayList<>();
+
+        Report(String name) {
+            this.name = name;
+        }
+
+        public double throughput() {
+            return wallMs > 0 ? ok * 1000.0 / wallMs : 0;
+        }
+
+        JSONObject toJson() throws Exception {
+            return new JSONObject()
+                    .put("name", name)
+                    .put("concurrency", concurrency)
+                    .put("total", total)
+                    .put("ok", ok)
+                    .put("failed", failed)
+                    .put("wallMs", wallMs)
+                    .put("throughputRps", Math.round(throughput() * 10) / 10.0)
+                    .put("p50Ms", p50Ms)
+                    .put("p99Ms", p99Ms)
+                    .put("maxMs", maxMs)
+                    .put("retries", retries)
+                    .put("bytesIn", bytesIn)
+                    .put("bytesOut", bytesOut);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "[%s] c=%d n=%d ok=%d failed=%d %.1f req/s p50=%dms p99=%dms max=%dms retries=%d up=%dB down=%dB",
+                    name, concurrency, total, ok, failed, throughput(), p50Ms, p99Ms, maxMs, retries, bytesIn, bytesOut);
+        }
+    }
+
+    public static Report run(String name, MockVcpServer server, int concurrency, int total, Task task) throws Exception {
+        long retriesBefore = VCPMetrics.get("api.retries");
+        long inBefore = server.bytesIn.get();
+        long outBefore = server.bytesOut.get();
+
+        long[] latencies = new long[total];
+        AtomicLong ok = new AtomicLong();
+        Report report = new Report(name);
+        ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+        List<Future<?>> futures = new ArrayList<>();
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < total; i++) {
+                final int index = i;
+                futures.add(pool.submit(() -> {
+                    long t0 = System.nanoTime();
+                    try {
+                        task.run(index);
+                        ok.incrementAndGet();
+                    } catch (Exception e) {
+                        synchronized (report.errors) {
+                            report.errors.add(e.getClass().getSimpleName() + ": " + e.getMessage());
+                        }
+                    } finally {
+                        latencies[index] = (System.nanoTime() - t0) / 1_000_000;
+                    }
+                }));
+            }
+            for (Future<?> f : futures) f.get();
+        } finally {
+            pool.shutdownNow();
+        }
+
+        report.wallMs = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        Arrays.sort(latencies);
+        report.concurrency = concurrency;
+        report.total = total;
+        report.ok = (int) ok.get();
+        report.failed = total - report.ok;
+        report.p50Ms = percentile(latencies, 0.50);
+        report.p99Ms = percentile(latencies, 0.99);
+        report.maxMs = latencies[total - 1];
+        report.retries = VCPMetrics.get("api.retries") - retriesBefore;
+        report.bytesIn = server.bytesIn.get() - inBefore;
+        report.bytesOut = server.bytesOut.get() - outBefore;
+        writeReport(report);
+        return report;
+    }
+
+    static long percentile(long[] sorted, double p) {
+        return sorted[Math.max(0, (int) Math.ceil(p * sorted.length) - 1)];
+    }
+
+    /** 报告写入失败不影响测试结果 */
+    private static void writeReport(Report report) {
+        File dir = new File("build/reports/vcp-load");
+        if (!dir.isDirectory() && !dir.mkdirs()) return;
+        try (FileOutputStream fos = new FileOutputStream(new File(dir, report.name + ".json"))) {
+            fos.write(report.toJson().toString(2).getBytes(StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            VCPApiHelper.fileLog("[Load] 写入负载报告失败: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.vcp.vcpmobile;
+
+import static org.junit.Assert.*;
+
+import android.content.SharedPreferences;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * MediaPrefetcher：预取回复中的图片与文档，限制并发，缓存按 LRU 控制在上限内
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class MediaPrefetcherTest {
+    private MockVcpServer server;
+    private SharedPreferences prefs;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockVcpServer();
+        prefs = VCPApiHelper.getPrefs(RuntimeEnvironment.getApplication());
+        prefs.edit()
+                .putString("baseUrl", server.url())
+                .putString("apiKey", "test-key")
+                .putString("model", "mock-model")
+                .commit();
+    }
+
+    @After
+    public void tearDown() {
+        prefs.edit().clear().commit();
+        server.close();
+    }
+
+    @Test
+    public void replyMediaIsPrefetchedIntoBoundedLruCache() throws Exception {
+        server.latencyMs = 30;
+        File dir = new File(RuntimeEnvironment.getApplication().getCacheDir(), "media_cache_test");
+        MediaPrefetcher prefetcher = new MediaPrefetcher(dir, 40 * 1024);
+        prefetcher.clear();
+
+        String base = server.url() + "/media/";
+        StringBuilder reply = new StringBuilder("这是生成的图片：\n");
+        for (int i = 0; i < 6; i++) reply.append("![图").append(i).append("](").append(base).append("a").append(i).append(".png?size=10240)\n");
+        reply.append("<img src=\"").append(base).append("b.png?size=2048\">\n");
+        reply.append("网页链接 ").append(base).append("page.html 与文档 ").append(base).append("doc.pdf\n");
+        List<String> urls = MediaPrefetcher.extractUrls(reply.toString());
+        // 6 张 Markdown 图片 + 1 个 img + 1 个 pdf 链接；普通网页链接不预取
+        assertEquals(urls.toString(), 8, urls.size());
+
+        Map<String, File> files = prefetcher.prefetchAndWait(urls, 5000);
+        assertTrue("maxConcurrent=" + server.maxConcurrentMedia.get(),
+                server.maxConcurrentMedia.get() <= MediaPrefetcher.CONCURRENCY);
+        assertEquals(8, server.mediaRequests.get());
+        assertFalse(files.isEmpty());
+
+        // 缓存总大小不超过上限，超出的按最近使用时间淘汰
+        assertTrue("bytes=" + prefetcher.stats()[1], prefetcher.stats()[1] <= 40 * 1024);
+        int cachedCount = 0;
+        for (String url : urls) if (prefetcher.cached(url) != null) cachedCount++;
+        assertTrue("cached=" + cachedCount, cachedCount > 0 && cachedCount < urls.size());
+
+        // 已缓存的地址不再请求
+        List<String> small = Arrays.asList(base + "doc.pdf", base + "b.png?size=2048");
+        prefetcher.prefetchAndWait(small, 5000);
+        long before = server.mediaRequests.get();
+        assertEquals(2, prefetcher.prefetchAndWait(small, 5000).size());
+        assertEquals(before, server.mediaRequests.get());
+        assertTrue(prefetcher.cached(base + "b.png?size=2048").getName().endsWith(".png"));
+    }
+
+    @Test
+    public void evictedHandedOutFilesAreReported() throws Exception {
+        File dir = new File(RuntimeEnvironment.getApplication().getCacheDir(), "media_cache_evict_test");
+        MediaPrefetcher prefetcher = new MediaPrefetcher(dir, 12 * 1024);
+        prefetcher.clear();
+        String first = server.url() + "/media/first.png?size=10240";
+        String second = server.url() + "/media/second.png?size=10240";
+
+        assertEquals(1, prefetcher.prefetchAndWait(Collections.singletonList(first), 5000).size());
+        assertTrue(prefetcher.drainEvicted().isEmpty());
+
+        // 第二个文件写入后超出上限，已交给 WebView 的第一个文件被淘汰
+        assertEquals(1, prefetcher.prefetchAndWait(Collections.singletonList(second), 5000).size());
+        assertNull(prefetcher.cached(first));
+        assertEquals(Collections.singletonList(first), prefetcher.drainEvicted());
+        assertTrue(prefetcher.drainEvicted().isEmpty());
+    }
+}
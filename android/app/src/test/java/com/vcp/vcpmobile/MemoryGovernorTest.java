@@ -0,0 +1,94 @@
+package com.vcp.vcpmobile;
+
+import static org.junit.Assert.*;
+
+import android.content.ComponentCallbacks2;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * MemoryGovernor：超出预算时先收缩低优先级缓存，系统内存紧张时全部清空；缓存回调不持有登记表的锁
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class MemoryGovernorTest {
+    @Test
+    public void trimsLowPriorityCachesFirst() {
+        long[] low = {300 * 1024};
+        long[] high = {300 * 1024};
+        MemoryGovernor.register("test.low", MemoryGovernor.PRIORITY_DIAGNOSTIC, fakeCache(low));
+        MemoryGovernor.register("test.high", MemoryGovernor.PRIORITY_ACTIVE, fakeCache(high));
+        long savedBudget = MemoryGovernor.budgetBytes();
+        try {
+            // 超出预算 200KB：只收缩低优先级的缓存
+            long others = MemoryGovernor.totalBytes() - low[0] - high[0];
+            MemoryGovernor.setBudgetBytes(others + 400 * 1024);
+            MemoryGovernor.checkBudget();
+            assertEquals(300 * 1024, high[0]);
+            assertTrue("low=" + low[0], low[0] <= 100 * 1024);
+            assertTrue(MemoryGovernor.totalBytes() <= MemoryGovernor.budgetBytes());
+            assertFalse(MemoryGovernor.underPressure());
+
+            // 系统内存紧张：全部清空并进入紧张状态
+            MemoryGovernor.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL);
+            assertEquals(0, low[0]);
+            assertEquals(0, high[0]);
+            assertTrue(MemoryGovernor.underPressure());
+
+            JSONObject stats = MemoryGovernor.stats();
+            assertTrue(stats.optLong("trims") >= 2);
+            assertEquals(300 * 1024, stats.optJSONObject("caches").optJSONObject("test.high").optLong("evictedBytes"));
+            assertEquals(ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL, stats.optInt("lastTrimLevel"));
+        } finally {
+            MemoryGovernor.unregister("test.low");
+            MemoryGovernor.unregister("test.high");
+            MemoryGovernor.setBudgetBytes(savedBudget);
+        }
+    }
+
+    @Test
+    public void cachesAreCalledOutsideTheRegistryLock() throws Exception {
+        // 收缩回调中另一个线程登记缓存（如插件加载）：回调在登记表的锁外执行，不会互相等待
+        long[] size = {300 * 1024};
+        boolean[] registered = {false};
+        MemoryGovernor.register("test.callback", MemoryGovernor.PRIORITY_DIAGNOSTIC, new MemoryGovernor.Trimmable() {
+            @Override public long sizeBytes() { return size[0]; }
+            @Override public long trimTo(long maxBytes) {
+                Thread other = new Thread(() -> MemoryGovernor.register("test.late", MemoryGovernor.PRIORITY_ACTIVE,
+                        fakeCache(new long[] {0})));
+                other.start();
+                try {
+                    other.join(5000);
+                } catch (InterruptedException ignored) {
+                }
+                registered[0] = !other.isAlive();
+                long freed = size[0];
+                size[0] = 0;
+                return freed;
+            }
+        });
+        try {
+            MemoryGovernor.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+            assertTrue(registered[0]);
+            assertEquals(0, size[0]);
+        } finally {
+            MemoryGovernor.unregister("test.callback");
+            MemoryGovernor.unregister("test.late");
+        }
+    }
+
+    private static MemoryGovernor.Trimmable fakeCache(long[] size) {
+        return new MemoryGovernor.Trimmable() {
+            @Override public long sizeBytes() { return size[0]; }
+            @Override public long trimTo(long maxBytes) {
+                long freed = Math.max(0, size[0] - maxBytes);
+                size[0] -= freed;
+                return freed;
+            }
+        };
+    }
+}
@@ -0,0 +1,521 @@
+package com.vcp.vcpmobile;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 进程内的 VCP / OpenAI 兼容服务端替身（JDK HttpServer），供负载与延迟测试使用：
+ * - POST /v1/chat/completions：可配置延迟、抖动、慢速响应体、stream=true 时返回 SSE
+ * - POST /admin_api/agents/vcpchat-append-history：按消息 ID 去重，与真实路由一致
+ * - POST /v1/interrupt：记录被中断的 requestId
+ * - /admin_api/agents/vcpchat-upload：附件分块上传（GET 进度 / POST 创建 / PUT ?offset= 追加），与真实路由一致，
+ *   uploadDropRate 按概率在分块到达后断开连接（一半已写入、一半未写入），用于验证续传
+ * - GET /media/<name>?size=N：返回 N 字节的媒体（.html 结尾返回网页），记录请求数与最大并发数
+ * - POST /v1/audio/transcriptions：接收 chunked 的 multipart 音频，边读边统计已到达字节（transcriptionBytesIn），
+ *   结束后返回含音频字节数的转写文本
+ * 故障按概率注入（5xx / HTML 拦截页 / 429），随机数种子固定，结果可复现。
+ * 请求体按 Content-Encoding（gzip / deflate）解压；gzipResponses 开启时按 Accept-Encoding 压缩响应。
+ */
+public class MockVcpServer implements Closeable {
+    // ========== 行为配置（测试中可随时修改） ==========
+
+    public volatile long latencyMs = 0;
+    public volatile long jitterMs = 0;
+    public volatile double error5xxRate = 0;
+    public volatile double htmlRate = 0;
+    public volatile double tooManyRequestsRate = 0;
+    // AI 回复长度（字符）
+    public volatile int replyChars = 200;
+    // 慢速响应体：每写 slowBodyChunkBytes 字节暂停 slowBodyChunkDelayMs
+    public volatile int slowBodyChunkBytes = 0;
+    public volatile long slowBodyChunkDelayMs = 0;
+    // 客户端声明 Accept-Encoding: gzip 时压缩 200 响应
+    public volatile boolean gzipResponses = false;
+    public volatile double uploadDropRate = 0;
+    // 按模型附加的延迟（模拟快慢不同的模型）
+    public final Map<String, Long> modelLatencyMs = new ConcurrentHashMap<>();
+
+    // ========== 统计 ==========
+
+    public final AtomicLong completionRequests = new AtomicLong();
+    public final AtomicLong historyRequests = new AtomicLong();
+    public final AtomicLong injected5xx = new AtomicLong();
+    public final AtomicLong injectedHtml = new AtomicLong();
+    public final AtomicLong injected429 = new AtomicLong();
+    // 同一 requestId 再次到达的次数（即客户端重试次数）
+    public final AtomicLong repeatedRequests = new AtomicLong();
+    public final AtomicLong bytesIn = new AtomicLong();
+    public final AtomicLong bytesOut = new AtomicLong();
+    public final AtomicLong notModifiedResponses = new AtomicLong();
+    // 带 Content-Encoding 的请求数，及其解压后的字节数（bytesIn 为线上字节数）
+    public final AtomicLong compressedRequests = new AtomicLong();
+    public final AtomicLong decodedBytesIn = new AtomicLong();
+    public final AtomicLong uploadChunks = new AtomicLong();
+    public final AtomicLong uploadDrops = new AtomicLong();
+    // 单个 chat/completions 请求体的最大字节数（解压后）
+    public final AtomicLong maxCompletionBytes = new AtomicLong();
+    public final Set<String> interrupted = ConcurrentHashMap.newKeySet();
+    public final AtomicLong transcriptionRequests = new AtomicLong();
+    public final AtomicLong mediaRequests = new AtomicLong();
+    public final AtomicLong maxConcurrentMedia = new AtomicLong();
+    private final AtomicLong concurrentMedia = new AtomicLong();
+    // 转写请求体已到达的字节数（请求进行中即持续增长）
+    public final AtomicLong transcriptionBytesIn = new AtomicLong();
+
+    private final Set<String> seenRequestIds = ConcurrentHashMap.newKeySet();
+    // topicId -> (messageId -> message)
+    private final Map<String, Map<String, JSONObject>> topics = new ConcurrentHashMap<>();
+    // uploadId -> 上传
+    private final Map<String, Upload> uploads = new ConcurrentHashMap<>();
+    private final Random random = new Random(42);
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    public MockVcpServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/v1/chat/completions", this::handleCompletions);
+        server.createContext("/admin_api/agents/vcpchat-append-history", this::handleAppendHistory);
+        server.createContext("/v1/interrupt", this::handleInterrupt);
+        server.createContext("/v1/models", this::handleModels);
+        server.createContext("/admin_api/agents/vcpchat-upload", this::handleUpload);
+        server.createContext("/v1/audio/transcriptions", this::handleTranscription);
+        server.createContext("/media/", this::handleMedia);
+        server.start();
+    }
+
+    public String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /** 已写入的消息数（去重后） */
+    public int historyMessageCount() {
+        int count = 0;
+        for (Map<String, JSONObject> topic : topics.values()) count += topic.size();
+        return count;
+    }
+
+    /** 已完成上传的附件内容，未完成时返回 null */
+    public byte[] attachment(String attachmentId) {
+        Upload upload = uploads.get(attachmentId);
+        if (upload == null) return null;
+        synchronized (upload) {
+            return upload.received() == upload.size ? upload.data.toByteArray() : null;
+        }
+    }
+
+    /** 话题中的全部消息（按写入顺序） */
+    public List<JSONObject> topicMessages(String topicId) {
+        Map<String, JSONObject> topic = topics.get(topicId);
+        if (topic == null) return new ArrayList<>();
+        synchronized (topic) {
+            return new ArrayList<>(topic.values());
+        }
+    }
+
+    public int topicCount() {
+        return topics.size();
+    }
+
+    public void resetStats() {
+        for (AtomicLong counter : new AtomicLong[]{completionRequests, historyRequests, injected5xx,
+                injectedHtml, injected429, repeatedRequests, bytesIn, bytesOut, notModifiedResponses, compressedRequests, decodedBytesIn,
+                uploadChunks, uploadDrops, maxCompletionBytes, transcriptionRequests, transcriptionBytesIn, mediaRequests, maxConcurrentMedia}) {
+            counter.set(0);
+        }
+        seenRequestIds.clear();
+        interrupted.clear();
+        topics.clear();
+        uploads.clear();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    // ========== 路由 ==========
+
+    private void handleCompletions(HttpExchange exchange) throws IOException {
+        completionRequests.incrementAndGet();
+        JSONObject body;
+        try {
+            String raw = readBody(exchange);
+            maxCompletionBytes.accumulateAndGet(raw.getBytes(StandardCharsets.UTF_8).length, Math::max);
+            body = new JSONObject(raw);
+        } catch (Exception e) {
+            send(exchange, 400, "application/json", "{\"error\":\"invalid json\"}".getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        String requestId = body.optString("requestId", null);
+        if (requestId != null && !seenRequestIds.add(requestId)) repeatedRequests.incrementAndGet();
+
+        double roll;
+        long delay;
+        synchronized (random) {
+            roll = random.nextDouble();
+            delay = latencyMs + (jitterMs > 0 ? (long) (random.nextDouble() * jitterMs) : 0);
+        }
+        delay += modelLatencyMs.getOrDefault(body.optString("model"), 0L);
+        sleep(delay);
+
+        if (roll < error5xxRate) {
+            injected5xx.incrementAndGet();
+            send(exchange, 502, "text/plain", "Bad Gateway".getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        roll -= error5xxRate;
+        if (roll < htmlRate) {
+            injectedHtml.incrementAndGet();
+            send(exchange, 200, "text/html",
+                    "<!DOCTYPE html><html><body>Checking your browser...</body></html>".getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        roll -= htmlRate;
+        if (roll < tooManyRequestsRate) {
+            injected429.incrementAndGet();
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            send(exchange, 429, "application/json",
+                    "{\"error\":{\"message\":\"rate limited\"}}".getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+
+        String reply = buildReply(body);
+        if (body.optBoolean("stream", false)) {
+            sendStream(exchange, reply);
+            return;
+        }
+        try {
+            JSONObject resp = new JSONObject()
+                    .put("id", "chatcmpl-mock")
+                    .put("object", "chat.completion")
+                    .put("choices", new JSONArray().put(new JSONObject()
+                            .put("index", 0)
+                            .put("finish_reason", "stop")
+                            .put("message", new JSONObject()
+                                    .put("role", "assistant")
+                                    .put("content", reply))))
+                    .put("usage", new JSONObject()
+                            .put("prompt_tokens", body.toString().length() / 4)
+                            .put("completion_tokens", reply.length()));
+            send(exchange, 200, "application/json", resp.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            send(exchange, 500, "text/plain", e.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private void handleAppendHistory(HttpExchange exchange) throws IOException {
+        historyRequests.incrementAndGet();
+        try {
+            JSONObject body = new JSONObject(readBody(exchange));
+            String topicId = body.getString("topicId");
+            JSONArray messages = body.getJSONArray("messages");
+            Map<String, JSONObject> topic = topics.computeIfAbsent(topicId, k -> new LinkedHashMap<>());
+            int appended = 0;
+            synchronized (topic) {
+                for (int i = 0; i < messages.length(); i++) {
+                    JSONObject msg = messages.getJSONObject(i);
+                    String id = msg.optString("id", "auto_" + topic.size());
+                    if (!topic.containsKey(id)) {
+                        topic.put(id, msg);
+                        appended++;
+                    }
+                }
+            }
+            JSONObject resp = new JSONObject().put("success", true).put("appended", appended);
+            send(exchange, 200, "application/json", resp.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            send(exchange, 400, "application/json", "{\"success\":false}".getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static class Upload {
+        final String id;
+        final String name;
+        final String type;
+        final long size;
+        final ByteArrayOutputStream data = new ByteArrayOutputStream();
+
+        Upload(String id, String name, String type, long size) {
+            this.id = id;
+            this.name = name;
+            this.type = type;
+            this.size = size;
+        }
+
+        long received() {
+            return data.size();
+        }
+
+        JSONObject status() throws Exception {
+            JSONObject json = new JSONObject().put("success", true).put("received", received()).put("size", size)
+                    .put("complete", received() == size);
+            if (received() == size) {
+                json.put("attachmentId", id).put("name", name).put("type", type);
+            }
+            return json;
+        }
+    }
+
+    private void handleUpload(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        String prefix = "/admin_api/agents/vcpchat-upload";
+        String uploadId = path.length() > prefix.length() + 1 ? path.substring(prefix.length() + 1) : null;
+        String method = exchange.getRequestMethod();
+        try {
+            if ("POST".equals(method) && uploadId == null) {
+                JSONObject body = new JSONObject(readBody(exchange));
+                Upload upload = uploads.computeIfAbsent(body.getString("uploadId"), id -> new Upload(id,
+                        body.optString("name"), body.optString("type"), body.optLong("size")));
+                synchronized (upload) {
+                    sendJson(exchange, 200, upload.status());
+                }
+                return;
+            }
+            Upload upload = uploadId != null ? uploads.get(uploadId) : null;
+            if (upload == null) {
+                sendJson(exchange, 404, new JSONObject().put("success", false));
+                return;
+            }
+            if ("GET".equals(method)) {
+                synchronized (upload) {
+                    sendJson(exchange, 200, upload.status());
+                }
+                return;
+            }
+            if ("PUT".equals(method)) {
+                uploadChunks.incrementAndGet();
+                String query = exchange.getRequestURI().getQuery();
+                long offset = Long.parseLong(query.substring(query.indexOf("offset=") + "offset=".length()));
+                byte[] chunk;
+                try (InputStream in = exchange.getRequestBody()) {
+                    chunk = in.readAllBytes();
+                }
+                bytesIn.addAndGet(chunk.length);
+                double roll;
+                synchronized (random) {
+                    roll = random.nextDouble();
+                }
+                JSONObject status;
+                synchronized (upload) {
+                    if (offset != upload.received()) {
+                        sendJson(exchange, 409, upload.status());
+                        return;
+                    }
+                    // 模拟断网：一半情况下分块已写入但响应丢失（客户端需按 409 / 查询结果对齐偏移）
+                    boolean drop = roll < uploadDropRate;
+                    if (!drop || roll < uploadDropRate / 2) upload.data.write(chunk);
+                    status = upload.status();
+                    if (drop) {
+                        uploadDrops.incrementAndGet();
+                        exchange.close();
+                        return;
+                    }
+                }
+                sendJson(exchange, 200, status);
+                return;
+            }
+            sendJson(exchange, 405, new JSONObject().put("success", false));
+        } catch (Exception e) {
+            send(exchange, 400, "application/json", "{\"success\":false}".getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private void handleMedia(HttpExchange exchange) throws IOException {
+        mediaRequests.incrementAndGet();
+        long concurrent = concurrentMedia.incrementAndGet();
+        maxConcurrentMedia.accumulateAndGet(concurrent, Math::max);
+        try {
+            sleep(latencyMs);
+            String path = exchange.getRequestURI().getPath();
+            String query = exchange.getRequestURI().getQuery();
+            int size = query != null && query.startsWith("size=") ? Integer.parseInt(query.substring(5)) : 1024;
+            byte[] body = new byte[size];
+            for (int i = 0; i < size; i++) body[i] = (byte) (i * 31 + path.length());
+            send(exchange, 200, path.endsWith(".html") ? "text/html" : "image/png", body);
+        } finally {
+            concurrentMedia.decrementAndGet();
+        }
+    }
+
+    /** 流式转写：逐块读取请求体，结束后按 multipart 取出文件部分 */
+    private void handleTranscription(HttpExchange exchange) throws IOException {
+        transcriptionRequests.incrementAndGet();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] buf = new byte[4096];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                body.write(buf, 0, n);
+                bytesIn.addAndGet(n);
+                transcriptionBytesIn.addAndGet(n);
+            }
+        }
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        String text = new String(body.toByteArray(), StandardCharsets.ISO_8859_1);
+        int fileStart = text.indexOf("name=\"file\"");
+        int dataStart = fileStart < 0 ? -1 : text.indexOf("\r\n\r\n", fileStart) + 4;
+        String boundary = contentType != null && contentType.contains("boundary=")
+                ? contentType.substring(contentType.indexOf("boundary=") + "boundary=".length()) : null;
+        int dataEnd = boundary == null ? -1 : text.indexOf("\r\n--" + boundary + "--", dataStart);
+        if (dataStart < 4 || dataEnd < dataStart || !text.startsWith("RIFF", dataStart)) {
+            send(exchange, 400, "application/json", "{\"error\":\"bad multipart\"}".getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        // 去掉 44 字节的 WAV 头
+        int audioBytes = dataEnd - dataStart - 44;
+        sleep(latencyMs);
+        send(exchange, 200, "application/json", ("{\"text\":\"mock transcript of " + audioBytes + " bytes\"}")
+                .getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void sendJson(HttpExchange exchange, int code, JSONObject json) throws IOException {
+        send(exchange, code, "application/json", json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void handleInterrupt(HttpExchange exchange) throws IOException {
+        try {
+            interrupted.add(new JSONObject(readBody(exchange)).optString("requestId"));
+        } catch (Exception ignored) {}
+        send(exchange, 200, "application/json", "{\"success\":true}".getBytes(StandardCharsets.UTF_8));
+    }
+
+    // ========== 工具 ==========
+
+    private String buildReply(JSONObject body) {
+        StringBuilder sb = new StringBuilder("mock reply to ").append(body.optString("model"));
+        while (sb.length() < replyChars) sb.append(" 这是模拟的回复内容。");
+        return sb.substring(0, Math.max(replyChars, 1));
+    }
+
+    private String readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] bytes = in.readAllBytes();
+            bytesIn.addAndGet(bytes.length);
+            String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+            if ("gzip".equals(encoding)) {
+                compressedRequests.incrementAndGet();
+                bytes = new GZIPInputStream(new ByteArrayInputStream(bytes)).readAllBytes();
+            } else if ("deflate".equals(encoding)) {
+                compressedRequests.incrementAndGet();
+                bytes = new InflaterInputStream(new ByteArrayInputStream(bytes)).readAllBytes();
+            }
+            decodedBytesIn.addAndGet(bytes.length);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    /** 模型列表：带 ETag，If-None-Match 命中时返回 304 */
+    private void handleModels(HttpExchange exchange) throws IOException {
+        String etag = "W/\"models-1\"";
+        exchange.getResponseHeaders().set("ETag", etag);
+        if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            notModifiedResponses.incrementAndGet();
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        send(exchange, 200, "application/json",
+                "{\"data\":[{\"id\":\"mock-model\"}]}".getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void send(HttpExchange exchange, int code, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        String accept = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (gzipResponses && code == 200 && accept != null && accept.contains("gzip")) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            try (GZIPOutputStream gz = new GZIPOutputStream(bos)) {
+                gz.write(body);
+            }
+            body = bos.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        try {
+            exchange.sendResponseHeaders(code, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                writeMaybeSlow(os, body);
+            }
+        } catch (IOException e) {
+            // 客户端已断开（取消或对冲落败）
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /** stream=true：按 OpenAI SSE 格式分片返回，每片一个 delta */
+    private void sendStream(HttpExchange exchange, String reply) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        try {
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream os = exchange.getResponseBody()) {
+                List<String> pieces = new ArrayList<>();
+                for (int i = 0; i < reply.length(); i += 16) {
+                    pieces.add(reply.substring(i, Math.min(reply.length(), i + 16)));
+                }
+                for (String piece : pieces) {
+                    JSONObject chunk = new JSONObject().put("choices", new JSONArray().put(new JSONObject()
+                            .put("index", 0)
+                            .put("delta", new JSONObject().put("content", piece))));
+                    writeMaybeSlow(os, ("data: " + chunk + "\n\n").getBytes(StandardCharsets.UTF_8));
+                    os.flush();
+                }
+                writeMaybeSlow(os, "data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (Exception e) {
+            // 客户端已断开
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void writeMaybeSlow(OutputStream os, byte[] body) throws IOException {
+        int chunk = slowBodyChunkBytes;
+        if (chunk <= 0) {
+            os.write(body);
+            bytesOut.addAndGet(body.length);
+            return;
+        }
+        for (int off = 0; off < body.length; off += chunk) {
+            int n = Math.min(chunk, body.length - off);
+            os.write(body, off, n);
+            os.flush();
+            bytesOut.addAndGet(n);
+            sleep(slowBodyChunkDelayMs);
+        }
+    }
+
+    private static void sleep(long ms) {
+        if (ms <= 0) return;
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.vcp.vcpmobile;
+
+import static org.junit.Assert.*;
+
+import android.content.SharedPreferences;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+/**
+ * ModelFanOut：first 模式取最先返回的回复并中断其余模型，all 模式合并全部回复
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class ModelFanOutTest {
+    private MockVcpServer server;
+    private SharedPreferences prefs;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockVcpServer();
+        prefs = VCPApiHelper.getPrefs(RuntimeEnvironment.getApplication());
+        prefs.edit()
+                .putString("baseUrl", server.url())
+                .putString("apiKey", "test-key")
+                .putString("model", "mock-model")
+                .commit();
+    }
+
+    @After
+    public void tearDown() {
+        prefs.edit().clear().commit();
+        server.close();
+    }
+
+    @Test
+    public void fanOutFirstWinsAndCollectAll() throws Exception {
+        server.modelLatencyMs.put("mock-slow", 1000L);
+        prefs.edit().putString("fanOutModels", "mock-fast, mock-slow").putString("fanOutMode", "first").commit();
+        try {
+            LoadHarness.Report first = LoadHarness.run("fanout_first", server, 4, 20, index -> {
+                String reply = VCPApiHelper.chatText(prefs, "分析以下内容 #" + index,
+                        new CancellableCall(Thread.currentThread()));
+                if (!reply.startsWith("mock reply to mock-fast")) throw new Exception("胜出模型错误: " + reply);
+            });
+            // 胜出的都是快模型（回复前缀已在任务中校验），不等待慢模型
+            assertEquals(first.errors.toString(), 20, first.ok);
+            // 落败的慢模型请求被中断（/v1/interrupt 异步发送）
+            long deadline = System.currentTimeMillis() + 5000;
+            while (server.interrupted.size() < 20 && System.currentTimeMillis() < deadline) Thread.sleep(20);
+            assertEquals(20, server.interrupted.size());
+
+            prefs.edit().putString("fanOutMode", "all").commit();
+            server.resetStats();
+            LoadHarness.Report all = LoadHarness.run("fanout_all", server, 4, 8, index -> {
+                String reply = VCPApiHelper.chatText(prefs, "分析以下内容 #" + index,
+                        new CancellableCall(Thread.currentThread()));
+                if (!reply.contains("【mock-fast】") || !reply.contains("【mock-slow】")) {
+                    throw new Exception("未合并全部回复: " + reply);
+                }
+            });
+            assertEquals(all.errors.toString(), 8, all.ok);
+            assertEquals(16, server.completionRequests.get());
+            assertTrue(VCPMetrics.get("usage.mock-slow.completion") > 0);
+        } finally {
+            server.modelLatencyMs.clear();
+            prefs.edit().remove("fanOutModels").remove("fanOutMode").commit();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.vcp.vcpmobile;
+
+import static org.junit.Assert.*;
+
+import android.content.SharedPreferences;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+/**
+ * StreamingTranscriber：录音过程中即上传音频，松开后只发送结束分隔符
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class StreamingTranscriberTest {
+    private MockVcpServer server;
+    private SharedPreferences prefs;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockVcpServer();
+        prefs = VCPApiHelper.getPrefs(RuntimeEnvironment.getApplication());
+        prefs.edit()
+                .putString("baseUrl", server.url())
+                .putString("apiKey", "test-key")
+                .putString("model", "mock-model")
+                .commit();
+    }
+
+    @After
+    public void tearDown() {
+        prefs.edit().clear().commit();
+        server.close();
+    }
+
+    @Test
+    public void voiceIsUploadedWhileRecording() throws Exception {
+        int frameBytes = VoiceCaptureService.SAMPLE_RATE / 10 * 2;
+        byte[] frame = new byte[frameBytes];
+        for (int i = 0; i < frame.length; i++) frame[i] = (byte) (i * 7);
+        CancellableCall call = new CancellableCall(Thread.currentThread());
+        StreamingTranscriber transcriber = new StreamingTranscriber(prefs, VoiceCaptureService.SAMPLE_RATE, call);
+
+        // 模拟 2 秒录音（20 帧，每帧 100ms）
+        for (int i = 0; i < 20; i++) transcriber.write(frame, 0, frame.length);
+        // 录音尚未结束，服务端已收到全部音频
+        long audioBytes = frameBytes * 20L;
+        long deadline = System.currentTimeMillis() + 5000;
+        while (transcriber.bytesSent() < audioBytes && System.currentTimeMillis() < deadline) Thread.sleep(5);
+        while (server.transcriptionBytesIn.get() < audioBytes && System.currentTimeMillis() < deadline) Thread.sleep(5);
+        long receivedBeforeRelease = server.transcriptionBytesIn.get();
+        assertTrue("received=" + receivedBeforeRelease, receivedBeforeRelease >= audioBytes);
+
+        String transcript = transcriber.finish();
+        assertEquals("mock transcript of " + audioBytes + " bytes", transcript);
+        // 松开后只剩 multipart 结束分隔符
+        long afterRelease = server.transcriptionBytesIn.get() - receivedBeforeRelease;
+        assertTrue("afterRelease=" + afterRelease, afterRelease < 128);
+        assertEquals(1, server.transcriptionRequests.get());
+    }
+}
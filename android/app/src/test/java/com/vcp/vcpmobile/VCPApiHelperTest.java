@@ -0,0 +1,156 @@
+package com.vcp.vcpmobile;
+
+import static org.junit.Assert.*;
+
+import android.content.SharedPreferences;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * VCPApiHelper：多网关故障处理（连接失败换端点重试，4xx 不影响端点健康）与请求体压缩
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class VCPApiHelperTest {
+    private MockVcpServer server;
+    private SharedPreferences prefs;
+    private final List<Long> sleeps = Collections.synchronizedList(new ArrayList<>());
+    private VCPApiHelper.Sleeper savedSleeper;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockVcpServer();
+        prefs = VCPApiHelper.getPrefs(RuntimeEnvironment.getApplication());
+        prefs.edit()
+                .putString("baseUrl", server.url())
+                .putString("apiKey", "test-key")
+                .putString("model", "mock-model")
+                .putString("adminUsername", "admin")
+                .putString("adminPassword", "secret")
+                .putString("agentDirId", "Nova")
+                .commit();
+        // 记录重试等待而不实际等待
+        savedSleeper = VCPApiHelper.setRetrySleeper(sleeps::add);
+    }
+
+    @After
+    public void tearDown() {
+        VCPApiHelper.setRetrySleeper(savedSleeper);
+        prefs.edit().clear().commit();
+        server.close();
+    }
+
+    /** 剪贴板文本：chatText + 写入话题 */
+    private void clipboardText(int index) throws Exception {
+        String userText = "分析以下内容\n\n剪贴板内容 #" + index + " " + "lorem ipsum ".repeat(50);
+        String reply = VCPApiHelper.chatText(prefs, userText, new CancellableCall(Thread.currentThread()));
+        JSONArray messages = new JSONArray()
+                .put(new JSONObject().put("id", "msg_" + index + "_user").put("role", "user").put("content", userText))
+                .put(new JSONObject().put("id", "msg_" + index + "_ai").put("role", "assistant").put("content", reply));
+        if (!VCPApiHelper.appendToAgentHistory(prefs, "topic_compressed", "压缩测试", messages)) {
+            throw new Exception("话题写入失败");
+        }
+    }
+
+    /** 本机上没有服务监听的地址（连接被拒绝） */
+    private static String deadUrl() throws Exception {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return "http://127.0.0.1:" + socket.getLocalPort();
+        }
+    }
+
+    @Test
+    public void connectFailureFailsOverToNextGateway() throws Exception {
+        String dead = deadUrl();
+        prefs.edit().putString("baseUrl", dead).putString("baseUrls", server.url()).commit();
+        long failoversBefore = VCPMetrics.get("api.failovers");
+
+        String reply = VCPApiHelper.chatText(prefs, "你好", new CancellableCall(Thread.currentThread()));
+
+        assertTrue(reply, reply.startsWith("mock reply"));
+        assertEquals(1, server.completionRequests.get());
+        assertEquals(failoversBefore + 1, VCPMetrics.get("api.failovers"));
+        // 换到尚未失败的端点时立即重试
+        assertTrue(sleeps.toString(), sleeps.isEmpty());
+        // 失败计入死端点，之后的请求直接选择可用的端点
+        List<String> urls = VCPApiHelper.getBaseUrls(prefs);
+        assertEquals(server.url(), EndpointSelector.forEndpoints(urls).ranked().get(0));
+    }
+
+    @Test
+    public void clientErrorsDoNotEjectEndpoint() throws Exception {
+        server.tooManyRequestsRate = 1;
+        for (int i = 0; i <= EndpointSelector.UNHEALTHY_FAILURES; i++) {
+            try {
+                VCPApiHelper.chatText(prefs, "你好", new CancellableCall(Thread.currentThread()));
+                fail("429 应直接失败");
+            } catch (Exception e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("429"));
+            }
+        }
+        // 4xx（密钥、模型、限流）与端点健康无关，不重试也不摘除
+        assertEquals(EndpointSelector.UNHEALTHY_FAILURES + 1, server.completionRequests.get());
+        assertTrue(EndpointSelector.forEndpoints(VCPApiHelper.getBaseUrls(prefs)).isHealthy(server.url()));
+    }
+
+    @Test
+    public void compressedRequestsAndResponses() throws Exception {
+        prefs.edit().putString("compressCompletions", "gzip").putString("compressHistory", "deflate").commit();
+        server.gzipResponses = true;
+        server.replyChars = 4000;
+        long downRawBefore = VCPMetrics.get("net.completions.down.raw");
+        long downWireBefore = VCPMetrics.get("net.completions.down.wire");
+        try {
+            LoadHarness.Report report = LoadHarness.run("compressed_text", server, 8, 100, this::clipboardText);
+
+            assertEquals(report.errors.toString(), 100, report.ok);
+            assertEquals(200, server.historyMessageCount());
+            // 剪贴板文本约 600 字节，低于阈值不压缩；话题写入含 AI 回复，超过阈值
+            assertEquals(100, server.compressedRequests.get());
+            assertTrue(server.bytesIn.get() < server.decodedBytesIn.get());
+            long downRaw = VCPMetrics.get("net.completions.down.raw") - downRawBefore;
+            long downWire = VCPMetrics.get("net.completions.down.wire") - downWireBefore;
+            assertTrue("raw=" + downRaw + " wire=" + downWire, downWire * 2 < downRaw);
+        } finally {
+            prefs.edit().remove("compressCompletions").remove("compressHistory").commit();
+        }
+    }
+
+    @Test
+    public void streamedFileUploadCompressed() throws Exception {
+        prefs.edit().putString("compressCompletions", "gzip").commit();
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 200_000) sb.append("{\"line\": \"内容\\t\\\"quoted\\\"\"}\n");
+        byte[] content = sb.toString().getBytes(StandardCharsets.UTF_8);
+        try {
+            LoadHarness.Report report = LoadHarness.run("clipboard_file_gzip", server, 4, 20,
+                    index -> {
+                        String reply = VCPApiHelper.chatTextStream(prefs, "分析以下内容", "(文件: load_" + index + ".json)",
+                                () -> new ByteArrayInputStream(content), new CancellableCall(Thread.currentThread()));
+                        assertFalse(reply.isEmpty());
+                    });
+
+            assertEquals(report.errors.toString(), 20, report.ok);
+            assertEquals(20, server.compressedRequests.get());
+            // 重复的 JSON 行压缩率应远高于 5 倍
+            assertTrue("wire=" + report.bytesIn, report.bytesIn * 5 < server.decodedBytesIn.get());
+        } finally {
+            prefs.edit().remove("compressCompletions").commit();
+        }
+    }
+}
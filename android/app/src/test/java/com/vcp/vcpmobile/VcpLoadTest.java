@@ -0,0 +1,283 @@
+package com.vcp.vcpmobile;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.app.Application;
+import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.net.ConnectivityManager;
+import android.net.NetworkCapabilities;
+import android.net.NetworkInfo;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+import org.robolectric.shadows.ShadowNetworkCapabilities;
+import org.robolectric.shadows.ShadowNetworkInfo;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * 原生发送管线的端到端负载测试：截图与剪贴板服务的发送管线（ImagePreprocessor、AttachmentUploader、
+ * BackgroundScheduler、HistoryBatcher）直连进程内 MockVcpServer，按请求数、重试次数、写入的消息与线上字节数断言，
+ * 作为网络改动的回归检查（不对实际耗时断言；耗时只写入 build/reports/vcp-load 的报告）。
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class VcpLoadTest {
+    private static final long SERVER_LATENCY_MS = 20;
+
+    // 等待后台话题写入的上限，只防止挂起，不作为断言条件
+    private static final long HISTORY_TIMEOUT_MS = 60000;
+    private static final String CLIPBOARD_TOPIC = "topic_mobile_" + HistoryBatcher.SOURCE_CLIPBOARD;
+    private static final String SCREENSHOT_TOPIC = "topic_mobile_" + HistoryBatcher.SOURCE_SCREENSHOT;
+
+    private MockVcpServer server;
+    private Application app;
+    private SharedPreferences prefs;
+    private VCPApiHelper.Sleeper savedSleeper;
+    private ScreenshotSenderService screenshotService;
+    private ClipboardSenderService clipboardService;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockVcpServer();
+        server.latencyMs = SERVER_LATENCY_MS;
+        app = RuntimeEnvironment.getApplication();
+        prefs = VCPApiHelper.getPrefs(app);
+        prefs.edit()
+                .putString("baseUrl", server.url())
+                .putString("apiKey", "test-key")
+                .putString("model", "mock-model")
+                .putString("adminUsername", "admin")
+                .putString("adminPassword", "secret")
+                .putString("agentDirId", "Nova")
+                .putString("historyTopicMode", "source")
+                .commit();
+        // 重试不等待：重试次数按计数断言
+        savedSleeper = VCPApiHelper.setRetrySleeper(ms -> {});
+
+        // Robolectric 默认是没有 INTERNET 能力的移动网络，BackgroundScheduler 会按离线/计费暂缓话题写入
+        ConnectivityManager cm = app.getSystemService(ConnectivityManager.class);
+        shadowOf(cm).setActiveNetworkInfo(ShadowNetworkInfo.newInstance(NetworkInfo.DetailedState.CONNECTED,
+                ConnectivityManager.TYPE_WIFI, 0, true, NetworkInfo.State.CONNECTED));
+        NetworkCapabilities caps = ShadowNetworkCapabilities.newInstance();
+        shadowOf(caps).addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET);
+        shadowOf(cm).setNetworkCapabilities(cm.getActiveNetwork(), caps);
+        // 单例按本用例的 Application 重建
+        HistoryBatcher.reset();
+        BackgroundScheduler.reset();
+
+        screenshotService = Robolectric.buildService(ScreenshotSenderService.class).create().get();
+        clipboardService = Robolectric.buildService(ClipboardSenderService.class).create().get();
+    }
+
+    @After
+    public void tearDown() {
+        HistoryBatcher.reset();
+        BackgroundScheduler.reset();
+        VCPApiHelper.setRetrySleeper(savedSleeper);
+        prefs.edit().clear().commit();
+        server.close();
+    }
+
+    // ========== 管线 ==========
+
+    /** 剪贴板文本：ClipboardSenderService 的发送管线（chatText + HistoryBatcher 写入话题） */
+    private void clipboardText(int index) throws Exception {
+        String content = "剪贴板内容 #" + index + " " + "lorem ipsum ".repeat(50);
+        clipboardService.sendClipboardContent(content, new CancellableCall(Thread.currentThread()));
+    }
+
+    /** 截图：绘制一张屏幕尺寸的截图文件，交给 ScreenshotSenderService 的发送管线（预处理、AI 调用、延后的附件上传与话题写入） */
+    private void screenshot(int index) throws Exception {
+        Bitmap bitmap = Bitmap.createBitmap(1080, 2400, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        canvas.drawColor(Color.WHITE);
+        Paint paint = new Paint();
+        paint.setTextSize(48);
+        for (int y = 100; y < 2400; y += 80) {
+            paint.setColor(Color.rgb((y * 7 + index) % 256, (y * 3) % 256, 128));
+            canvas.drawText("截图第 " + index + " 张 第 " + y + " 行", 40, y, paint);
+        }
+        File file = new File(app.getCacheDir(), "Screenshot_load_" + index + ".png");
+        try (OutputStream os = new FileOutputStream(file)) {
+            bitmap.compress(Bitmap.CompressFormat.PNG, 100, os);
+        }
+        bitmap.recycle();
+        screenshotService.sendScreenshot(file, new CancellableCall(Thread.currentThread()));
+    }
+
+    /** 剪贴板文件：chatTextStream 以分块传输上传 */
+    private void clipboardFile(int index, byte[] content) throws Exception {
+        CancellableCall call = new CancellableCall(Thread.currentThread());
+        String reply = VCPApiHelper.chatTextStream(prefs, "分析以下内容", "(文件: load_" + index + ".json)",
+                () -> new ByteArrayInputStream(content), call);
+        assertFalse(reply.isEmpty());
+    }
+
+    /** 等待延后的附件上传与话题写入完成（BackgroundScheduler 在捕获请求结束后才执行） */
+    private List<JSONObject> awaitTopic(String topicId, int messages) throws Exception {
+        long deadline = System.currentTimeMillis() + HISTORY_TIMEOUT_MS;
+        while (server.topicMessages(topicId).size() < messages || HistoryBatcher.get(app).pendingCount() > 0) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("话题写入未完成: " + server.topicMessages(topicId).size() + "/" + messages
+                        + " 待写入=" + HistoryBatcher.get(app).pendingCount()
+                        + " 暂缓=" + BackgroundScheduler.get(app).holdReason());
+            }
+            HistoryBatcher.get(app).flushNow();
+            Thread.sleep(50);
+        }
+        return server.topicMessages(topicId);
+    }
+
+    /** 话题中的每条 AI 回复都完整写入 */
+    private void assertRepliesComplete(List<JSONObject> messages) {
+        for (JSONObject message : messages) {
+            if (!"assistant".equals(message.optString("role"))) continue;
+            assertEquals(message.optString("id"), server.replyChars, message.optString("content").length());
+        }
+    }
+
+    // ========== 测试 ==========
+
+    @Test
+    public void clipboardTextUnderLoad() throws Exception {
+        LoadHarness.Report report = LoadHarness.run("clipboard_text", server, 8, 200, this::clipboardText);
+
+        assertEquals(report.errors.toString(), 200, report.ok);
+        assertEquals(0, report.retries);
+        assertTrue(report.bytesIn > 0 && report.bytesOut > 0);
+        List<JSONObject> messages = awaitTopic(CLIPBOARD_TOPIC, 400);
+        assertEquals(400, messages.size());
+        assertRepliesComplete(messages);
+        // 写入合并成批：请求数远少于捕获次数
+        assertTrue("history requests=" + server.historyRequests.get(), server.historyRequests.get() < 200);
+    }
+
+    @Test
+    public void screenshotPipelineUnderLoad() throws Exception {
+        LoadHarness.Report report = LoadHarness.run("screenshot", server, 4, 40, this::screenshot);
+
+        assertEquals(report.errors.toString(), 40, report.ok);
+        // 预处理后的 JPEG 经 base64 仍应是 KB 级而非原图 MB 级
+        long maxCompletion = server.maxCompletionBytes.get();
+        assertTrue("completion body=" + maxCompletion, maxCompletion > 1024 && maxCompletion < 1024 * 1024);
+
+        // 附件在 AI 回复之后上传，上传完成后才写入话题：每条用户消息都引用已完整接收的附件
+        List<JSONObject> messages = awaitTopic(SCREENSHOT_TOPIC, 80);
+        assertEquals(80, messages.size());
+        for (JSONObject message : messages) {
+            if (!"user".equals(message.optString("role"))) continue;
+            assertNotNull(message.toString(), message.optJSONArray("attachments"));
+            String attachmentId = message.optJSONArray("attachments").optJSONObject(0).optString("attachmentId");
+            assertNotNull(attachmentId, server.attachment(attachmentId));
+        }
+    }
+
+    @Test
+    public void streamedFileUpload() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 200_000) sb.append("{\"line\": \"内容\\t\\\"quoted\\\"\"}\n");
+        byte[] content = sb.toString().getBytes(StandardCharsets.UTF_8);
+
+        LoadHarness.Report report = LoadHarness.run("clipboard_file", server, 4, 40,
+                index -> clipboardFile(index, content));
+
+        assertEquals(report.errors.toString(), 40, report.ok);
+        assertTrue(report.bytesIn / report.total > 200_000);
+    }
+
+    @Test
+    public void injectedFaultsAreRetriedAndCounted() throws Exception {
+        server.error5xxRate = 0.05;
+        server.htmlRate = 0.05;
+        server.tooManyRequestsRate = 0.02;
+
+        LoadHarness.Report report = LoadHarness.run("faults", server, 8, 200, this::clipboardText);
+
+        // 5xx 与 HTML 拦截会重试；429 不重试，直接失败
+        assertTrue(report.retries > 0);
+        assertEquals(server.repeatedRequests.get(), report.retries);
+        assertTrue(report.failed >= server.injected429.get());
+        assertTrue(report.failed <= server.injected429.get() + 2);
+        for (String error : report.errors) {
+            assertTrue(error, error.contains("429") || error.contains("HTML") || error.contains("502"));
+        }
+    }
+
+    @Test
+    public void trafficMovesOffSlowGateway() throws Exception {
+        // 主网关（baseUrl）建连正常但生成排队，备用网关快：评分按完成耗时，探测让流量移到快网关
+        server.latencyMs = 200;
+        try (MockVcpServer fast = new MockVcpServer()) {
+            fast.latencyMs = SERVER_LATENCY_MS;
+            prefs.edit().putString("baseUrls", fast.url()).commit();
+
+            LoadHarness.Report warmup = LoadHarness.run("two_gateways_warmup", server, 4, 100, this::clipboardText);
+            long slowWarmup = server.completionRequests.get();
+            long fastWarmup = fast.completionRequests.get();
+            LoadHarness.Report steady = LoadHarness.run("two_gateways_steady", server, 4, 100, this::clipboardText);
+            long slowSteady = server.completionRequests.get() - slowWarmup;
+            long fastSteady = fast.completionRequests.get() - fastWarmup;
+
+            assertEquals(warmup.errors.toString(), 100, warmup.ok);
+            assertEquals(steady.errors.toString(), 100, steady.ok);
+            assertEquals(200, slowWarmup + fastWarmup + slowSteady + fastSteady);
+            // 稳定阶段慢网关只剩探测请求（约每 PROBE_INTERVAL 次成功一次），且少于预热阶段
+            assertTrue("slow warmup=" + slowWarmup + " steady=" + slowSteady, slowSteady < slowWarmup);
+            assertTrue("slow steady=" + slowSteady, slowSteady <= 100 / EndpointSelector.PROBE_INTERVAL + 4);
+            assertTrue("fast steady=" + fastSteady, fastSteady > slowSteady * 4);
+        }
+    }
+
+    @Test
+    public void slowResponseBodyIsReadCompletely() throws Exception {
+        server.replyChars = 2000;
+        server.slowBodyChunkBytes = 256;
+        server.slowBodyChunkDelayMs = 10;
+
+        LoadHarness.Report report = LoadHarness.run("slow_body", server, 4, 20, this::clipboardText);
+
+        // 约 6KB 响应体分块慢速到达，写入话题的每个回复都完整读取
+        assertEquals(report.errors.toString(), 20, report.ok);
+        assertRepliesComplete(awaitTopic(CLIPBOARD_TOPIC, 40));
+    }
+
+    @Test
+    public void streamingResponseUsesSse() throws Exception {
+        HttpURLConnection conn = (HttpURLConnection) new URL(server.url() + "/v1/chat/completions").openConnection();
+        conn.setRequestMethod("POST");
+        conn.setDoOutput(true);
+        try (OutputStream os = conn.getOutputStream()) {
+            os.write("{\"model\":\"mock-model\",\"stream\":true,\"messages\":[]}".getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals(200, conn.getResponseCode());
+        assertEquals("text/event-stream", conn.getContentType());
+        try (InputStream in = conn.getInputStream()) {
+            String body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            assertTrue(body.startsWith("data: {"));
+            assertTrue(body.endsWith("data: [DONE]\n\n"));
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.vcp.vcpmobile;
+
+import static org.junit.Assert.*;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * WallpaperCache：原图只解码一次，按屏幕尺寸缩放为 WebP 并缓存到磁盘
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class WallpaperCacheTest {
+    @Test
+    public void wallpaperIsDecodedOnceToScreenSizedWebp() throws Exception {
+        // 3000×5000 的原图，目标 1080×2400：降采样解码后缩放到刚好覆盖
+        Bitmap bitmap = Bitmap.createBitmap(3000, 5000, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        Paint paint = new Paint();
+        for (int y = 0; y < 5000; y += 100) {
+            paint.setColor(Color.rgb(y % 256, 80, 160));
+            canvas.drawRect(0, y, 3000, y + 100, paint);
+        }
+        File original = new File(RuntimeEnvironment.getApplication().getCacheDir(), "wallpaper_original.png");
+        try (OutputStream os = new FileOutputStream(original)) {
+            bitmap.compress(Bitmap.CompressFormat.PNG, 100, os);
+        }
+        bitmap.recycle();
+
+        int[] opens = {0};
+        WallpaperCache cache = new WallpaperCache(
+                new File(RuntimeEnvironment.getApplication().getCacheDir(), "wallpaper_cache_test"),
+                new WallpaperCache.Source() {
+                    @Override public InputStream open(String name) throws IOException {
+                        opens[0]++;
+                        return new FileInputStream(original);
+                    }
+                    @Override public String stamp(String name) { return original.length() + "@1"; }
+                });
+        cache.clear();
+
+        WallpaperCache.Variant first = cache.variant("test.png", 1080, 2400);
+        assertFalse(first.cached);
+        assertEquals(1440, first.width);
+        assertEquals(2400, first.height);
+        assertTrue(first.file.getName().endsWith("_1080x2400.webp"));
+        assertTrue("bytes=" + first.file.length(), first.file.length() < original.length());
+        assertEquals(4, WallpaperCache.sampleSize(WallpaperCache.coverScale(3000, 5000, 540, 960)));
+
+        // 再次获取（含重启后）命中缓存，不再读取原图
+        int opensBefore = opens[0];
+        WallpaperCache.Variant second = cache.variant("test.png", 1080, 2400);
+        assertTrue(second.cached);
+        assertEquals(first.file, second.file);
+        assertEquals(1440, second.width);
+        assertEquals(opensBefore, opens[0]);
+
+        // 缩略图是另一个变体
+        WallpaperCache.Variant thumb = cache.variant("test.png", 540, 960);
+        assertFalse(thumb.cached);
+        assertEquals(960, thumb.height);
+    }
+}
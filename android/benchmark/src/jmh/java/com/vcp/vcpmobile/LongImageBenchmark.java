@@ -0,0 +1,46 @@
+package com.vcp.vcpmobile;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.OutputStream;
+
+/**
+ * 话题长图的逐行 PNG 编码：对应 ImageSaverPlugin.appendSegment 中一个分段（4000px × 2x）的编码开销
+ */
+@State(Scope.Benchmark)
+public class LongImageBenchmark {
+    // 长图宽度（像素），约为手机聊天区宽度 × 2
+    @Param({"800", "1440"})
+    public int width;
+
+    private static final int SEGMENT_ROWS = 8000;
+    private static final int BACKGROUND = 0xff1a1a2e;
+
+    private int[] pixels;
+
+    @Setup
+    public void setup() {
+        // 模拟聊天气泡：纯色背景上每 40 行一段文字
+        pixels = new int[width * 40];
+        for (int y = 0; y < 40; y++) {
+            for (int x = 0; x < width; x++) {
+                boolean text = y > 10 && y < 30 && x > width / 8 && x < width * 7 / 8 && (x * 31 + y * 17) % 5 < 2;
+                pixels[y * width + x] = text ? 0xffe0e0e0 : BACKGROUND;
+            }
+        }
+    }
+
+    @Benchmark
+    public long encodeSegment() throws Exception {
+        PngStreamEncoder encoder = new PngStreamEncoder(width, OutputStream.nullOutputStream());
+        for (int y = 0; y < SEGMENT_ROWS; y++) {
+            encoder.writeRow(pixels, (y % 40) * width, width, BACKGROUND);
+        }
+        encoder.finish();
+        return encoder.idatBytes();
+    }
+}
@@ -0,0 +1,82 @@
+package com.vcp.vcpmobile;
+
+import org.json.JSONArray;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * chat/completions 请求体构建：对应 VCPApiHelper.chatText / chatImage / chatImages
+ */
+@State(Scope.Benchmark)
+public class RequestBodyBenchmark {
+    // 剪贴板文本长度（字符）
+    @Param({"200", "20000"})
+    public int textChars;
+
+    // 截图 JPEG 字节数（1024 长边、质量 60 的截图通常在 80~200KB）
+    @Param({"150000"})
+    public int jpegBytes;
+
+    private String userText;
+    private byte[] jpeg;
+    private String base64Jpeg;
+    private List<String> fourImages;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder(textChars);
+        String sample = "分析以下内容 The quick brown fox \"quoted\"\n\t";
+        while (sb.length() < textChars) sb.append(sample);
+        userText = sb.substring(0, textChars);
+
+        jpeg = new byte[jpegBytes];
+        random.nextBytes(jpeg);
+        base64Jpeg = Base64Codec.encode(jpeg);
+        fourImages = new ArrayList<>(Collections.nCopies(4, base64Jpeg));
+    }
+
+    @Benchmark
+    public byte[] chatText() throws Exception {
+        JSONArray messages = VCPProtocol.buildMessages("你是一个助手", userText, null);
+        return VCPProtocol.buildCompletionBody("gemini-2.5-flash", messages, "native_bench");
+    }
+
+    @Benchmark
+    public byte[] chatImage() throws Exception {
+        JSONArray messages = VCPProtocol.buildMessages("你是一个助手", "分析这张截图",
+                Collections.singletonList(base64Jpeg));
+        return VCPProtocol.buildCompletionBody("gemini-2.5-flash", messages, "native_bench");
+    }
+
+    @Benchmark
+    public byte[] chatFourImages() throws Exception {
+        JSONArray messages = VCPProtocol.buildMessages("你是一个助手", "分析这些图片", fourImages);
+        return VCPProtocol.buildCompletionBody("gemini-2.5-flash", messages, "native_bench");
+    }
+
+    /** 开启 compressCompletions=gzip 时的额外开销：构建后整体压缩 */
+    @Benchmark
+    public byte[] chatTextGzip() throws Exception {
+        return BodyEncoding.compress(chatText(), BodyEncoding.GZIP);
+    }
+
+    @Benchmark
+    public byte[] chatImageGzip() throws Exception {
+        return BodyEncoding.compress(chatImage(), BodyEncoding.GZIP);
+    }
+
+    /** 截图编码的最后一步：JPEG 字节 → base64 */
+    @Benchmark
+    public String encodeJpegBase64() {
+        return Base64Codec.encode(jpeg);
+    }
+}
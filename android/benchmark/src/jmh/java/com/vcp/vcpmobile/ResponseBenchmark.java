@@ -0,0 +1,60 @@
+package com.vcp.vcpmobile;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * 响应处理与每次请求都会经过的小开销：响应解析、HTML 检测、鉴权头、文件日志行
+ */
+@State(Scope.Benchmark)
+public class ResponseBenchmark {
+    // AI 回复长度（字符）
+    @Param({"500", "8000"})
+    public int replyChars;
+
+    private String response;
+
+    @Setup
+    public void setup() throws Exception {
+        StringBuilder sb = new StringBuilder(replyChars);
+        while (sb.length() < replyChars) sb.append("截图中显示的是一段代码。\n");
+        JSONObject json = new JSONObject()
+                .put("id", "chatcmpl-bench")
+                .put("object", "chat.completion")
+                .put("choices", new JSONArray().put(new JSONObject()
+                        .put("index", 0)
+                        .put("finish_reason", "stop")
+                        .put("message", new JSONObject()
+                                .put("role", "assistant")
+                                .put("content", sb.substring(0, replyChars)))))
+                .put("usage", new JSONObject()
+                        .put("prompt_tokens", 1200)
+                        .put("completion_tokens", replyChars / 2));
+        response = json.toString();
+    }
+
+    @Benchmark
+    public String parseCompletion() throws Exception {
+        return VCPProtocol.parseCompletionContent(response);
+    }
+
+    @Benchmark
+    public boolean detectHtml() {
+        return VCPProtocol.isHtmlResponse(response);
+    }
+
+    @Benchmark
+    public String basicAuthorization() {
+        return VCPProtocol.basicAuthorization("admin", "p@ssw0rd-管理员");
+    }
+
+    @Benchmark
+    public String formatLogLine() {
+        return VCPProtocol.formatLogLine(System.currentTimeMillis(), "[API] 响应码: 200 (https://vcp.example.com)");
+    }
+}
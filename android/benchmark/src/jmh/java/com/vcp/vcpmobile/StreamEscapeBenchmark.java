@@ -0,0 +1,42 @@
+package com.vcp.vcpmobile;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 流式发送文本文件时的 JSON 转义：对应 VCPApiHelper.chatTextStream 的请求体写入
+ */
+@State(Scope.Benchmark)
+public class StreamEscapeBenchmark {
+    @Param({"65536", "1000000"})
+    public int fileChars;
+
+    private String content;
+
+    @Setup
+    public void setup() {
+        StringBuilder sb = new StringBuilder(fileChars);
+        String line = "{\"key\": \"value\", \"中文\": \"内容\"}\r\n\tindented\\path\n";
+        while (sb.length() < fileChars) sb.append(line);
+        content = sb.substring(0, fileChars);
+    }
+
+    @Benchmark
+    public long escapeToUtf8() throws Exception {
+        // 丢弃输出，只测转义 + UTF-8 编码本身
+        Writer writer = new BufferedWriter(new OutputStreamWriter(
+                java.io.OutputStream.nullOutputStream(), StandardCharsets.UTF_8), VCPProtocol.STREAM_CHUNK_SIZE);
+        long written = VCPProtocol.writeJsonEscaped(new StringReader(content), writer, Long.MAX_VALUE);
+        writer.flush();
+        return written;
+    }
+}
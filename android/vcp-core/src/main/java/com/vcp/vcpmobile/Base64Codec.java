@@ -0,0 +1,43 @@
+package com.vcp.vcpmobile;
+
+/**
+ * 标准 Base64 编码（RFC 4648，无换行），等价于 android.util.Base64.NO_WRAP。
+ * minSdk 24 无法使用 java.util.Base64，这里自行实现以便同一份代码在桌面 JVM 上做基准测试。
+ */
+public final class Base64Codec {
+    private static final byte[] ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes();
+
+    private Base64Codec() {}
+
+    public static int encodedLength(int length) {
+        return (length + 2) / 3 * 4;
+    }
+
+    public static String encode(byte[] data) {
+        return encode(data, 0, data.length);
+    }
+
+    public static String encode(byte[] data, int offset, int length) {
+        byte[] out = new byte[encodedLength(length)];
+        int end = offset + length - length % 3;
+        int o = 0;
+        for (int i = offset; i < end; i += 3) {
+            int bits = (data[i] & 0xff) << 16 | (data[i + 1] & 0xff) << 8 | (data[i + 2] & 0xff);
+            out[o++] = ALPHABET[bits >>> 18];
+            out[o++] = ALPHABET[(bits >>> 12) & 0x3f];
+            out[o++] = ALPHABET[(bits >>> 6) & 0x3f];
+            out[o++] = ALPHABET[bits & 0x3f];
+        }
+        int remaining = length % 3;
+        if (remaining > 0) {
+            int bits = (data[end] & 0xff) << 16 | (remaining == 2 ? (data[end + 1] & 0xff) << 8 : 0);
+            out[o++] = ALPHABET[bits >>> 18];
+            out[o++] = ALPHABET[(bits >>> 12) & 0x3f];
+            out[o++] = remaining == 2 ? ALPHABET[(bits >>> 6) & 0x3f] : (byte) '=';
+            out[o] = '=';
+        }
+        // ISO_8859_1 逐字节映射为 char，避免再做一次字符集解码
+        return new String(out, java.nio.charset.StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,209 @@
+package com.vcp.vcpmobile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 请求/响应体的 Content-Encoding 处理（纯 Java，不依赖 Android）：
+ * 1. 请求体 gzip / deflate 压缩，小于 MIN_COMPRESS_BYTES 的请求体不压缩（压缩头与 CPU 开销大于收益）
+ * 2. 按响应的 Content-Encoding 解压
+ * 3. 计数流，用于统计线上字节数与原始字节数
+ *
+ * 截图请求体大部分是 base64 JPEG，压缩只能收回 base64 的约 1/4 膨胀；文本与话题记录的压缩率通常在 70% 以上。
+ */
+public final class BodyEncoding {
+    public static final String GZIP = "gzip";
+    public static final String DEFLATE = "deflate";
+    public static final int MIN_COMPRESS_BYTES = 2048;
+
+    // 速度优先：级别 6 以上压缩率提升很小，耗时明显增加
+    private static final int LEVEL = 4;
+
+    private BodyEncoding() {}
+
+    /** 规范化配置值：只接受 gzip / deflate，其余（含空串）视为不压缩，返回 null */
+    public static String normalize(String encoding) {
+        if (GZIP.equalsIgnoreCase(encoding)) return GZIP;
+        if (DEFLATE.equalsIgnoreCase(encoding)) return DEFLATE;
+        return null;
+    }
+
+    /** 是否对给定长度的请求体压缩；length 为 -1（流式、长度未知）时只看是否开启 */
+    public static boolean shouldCompress(String encoding, long length) {
+        return normalize(encoding) != null && (length < 0 || length >= MIN_COMPRESS_BYTES);
+    }
+
+    public static byte[] compress(byte[] body, String encoding) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(body.length / 3 + 64);
+        try (DeflaterOutputStream out = compressor(bos, encoding)) {
+            out.write(body);
+        }
+        return bos.toByteArray();
+    }
+
+    /**
+     * 包装输出流进行压缩；写完后调用 finish()，不要 close（底层连接流由调用方关闭）
+     * finish 或 close 后 Deflater 的本地内存立即释放；写入中途放弃时调用 release
+     */
+    public static DeflaterOutputStream compressor(OutputStream os, String encoding) throws IOException {
+        if (GZIP.equals(normalize(encoding))) return new GzipCompressor(os);
+        if (DEFLATE.equals(normalize(encoding))) return new DeflateCompressor(os);
+        throw new IllegalArgumentException("不支持的编码: " + encoding);
+    }
+
+    /** 放弃写入（不输出剩余数据），释放 compressor 返回的流持有的 Deflater */
+    public static void release(DeflaterOutputStream compressor) {
+        if (compressor instanceof OwnsDeflater) ((OwnsDeflater) compressor).endDeflater();
+    }
+
+    /** compressor 返回的流：Deflater 的本地内存不等 GC 回收，结束时显式 end() */
+    private interface OwnsDeflater {
+        void endDeflater();
+    }
+
+    private static final class GzipCompressor extends GZIPOutputStream implements OwnsDeflater {
+        private boolean ended;
+
+        GzipCompressor(OutputStream os) throws IOException {
+            super(os, VCPProtocol.STREAM_CHUNK_SIZE);
+            def.setLevel(LEVEL);
+        }
+
+        @Override
+        public void finish() throws IOException {
+            if (ended) return;
+            super.finish();
+            endDeflater();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                endDeflater();
+            }
+        }
+
+        @Override
+        public void endDeflater() {
+            if (ended) return;
+            ended = true;
+            def.end();
+        }
+    }
+
+    private static final class DeflateCompressor extends DeflaterOutputStream implements OwnsDeflater {
+        private boolean ended;
+
+        DeflateCompressor(OutputStream os) {
+            super(os, new Deflater(LEVEL), VCPProtocol.STREAM_CHUNK_SIZE);
+        }
+
+        @Override
+        public void finish() throws IOException {
+            if (ended) return;
+            super.finish();
+            endDeflater();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                endDeflater();
+            }
+        }
+
+        @Override
+        public void endDeflater() {
+            if (ended) return;
+            ended = true;
+            def.end();
+        }
+    }
+
+    /** 按响应头 Content-Encoding 解压；未压缩或未知编码时原样返回 */
+    public static InputStream decode(InputStream in, String contentEncoding) throws IOException {
+        if (in == null || contentEncoding == null) return in;
+        String encoding = contentEncoding.trim();
+        if (!GZIP.equalsIgnoreCase(encoding) && !DEFLATE.equalsIgnoreCase(encoding)) return in;
+        // 空响应体（部分网关对错误响应也声明 gzip）没有压缩头，直接返回
+        PushbackInputStream body = new PushbackInputStream(in, 1);
+        int first = body.read();
+        if (first < 0) return body;
+        body.unread(first);
+        if (GZIP.equalsIgnoreCase(encoding)) return new GZIPInputStream(body, VCPProtocol.STREAM_CHUNK_SIZE);
+        return new InflaterInputStream(body);
+    }
+
+    // ========== 计数流 ==========
+
+    public static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        public CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        public long count() {
+            return count;
+        }
+    }
+
+    public static class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        public CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        public long count() {
+            return count;
+        }
+    }
+}
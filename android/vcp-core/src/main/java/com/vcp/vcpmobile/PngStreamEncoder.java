@@ -0,0 +1,152 @@
+package com.vcp.vcpmobile;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * 逐行写入的 PNG 编码器（纯 Java，不依赖 Android），用于分段拼接话题长图：
+ * 1. 像素按行写入，压缩数据随时以 IDAT 块输出，整张长图不需要同时存在于内存中
+ * 2. 总高度在写完所有行之前未知，因此 IDAT 块与文件头分开输出：
+ *    先把 IDAT 块写入临时输出，finish 后再用 writeHeader + IDAT + writeEnd 组装成完整 PNG
+ *
+ * 输出为 8 位 RGB（长图背景不透明，省去 alpha 通道），每行使用 Up 滤波：
+ * 聊天界面大面积纯色背景，与上一行相同的像素滤波后为 0，压缩率高且不需要逐行尝试多种滤波。
+ */
+public final class PngStreamEncoder {
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+    private static final int FILTER_UP = 2;
+    // 单个 IDAT 块的最大数据量
+    private static final int IDAT_BYTES = 64 * 1024;
+    // 速度优先：长图压缩耗时与行数成正比，级别 6 以上收益很小
+    private static final int LEVEL = 4;
+
+    private final int width;
+    private final OutputStream idatOut;
+    private final Deflater deflater = new Deflater(LEVEL);
+    private final byte[] row;
+    private final byte[] previousRow;
+    private final byte[] filtered;
+    private final byte[] idatBuffer = new byte[IDAT_BYTES];
+    private int idatPos = 0;
+    private int height = 0;
+    private long idatBytes = 0;
+    private boolean finished = false;
+
+    /**
+     * @param idatOut 接收 IDAT 块（含块长度、类型与 CRC）的输出流
+     */
+    public PngStreamEncoder(int width, OutputStream idatOut) {
+        if (width <= 0) throw new IllegalArgumentException("宽度无效: " + width);
+        this.width = width;
+        this.idatOut = idatOut;
+        this.row = new byte[width * 3];
+        this.previousRow = new byte[width * 3];
+        this.filtered = new byte[width * 3 + 1];
+    }
+
+    public int width() {
+        return width;
+    }
+
+    /** 已写入的行数 */
+    public int height() {
+        return height;
+    }
+
+    /** 已输出的 IDAT 块总字节数 */
+    public long idatBytes() {
+        return idatBytes;
+    }
+
+    /**
+     * 写入一行像素
+     * @param argb ARGB 像素（Bitmap.getPixels 格式），从 offset 开始取 count 个；不足 width 时右侧补 fill
+     */
+    public void writeRow(int[] argb, int offset, int count, int fill) throws IOException {
+        if (finished) throw new IllegalStateException("编码已结束");
+        int n = Math.min(count, width);
+        for (int x = 0, i = 0; x < width; x++, i += 3) {
+            int pixel = x < n ? argb[offset + x] : fill;
+            row[i] = (byte) (pixel >> 16);
+            row[i + 1] = (byte) (pixel >> 8);
+            row[i + 2] = (byte) pixel;
+        }
+        filtered[0] = FILTER_UP;
+        for (int i = 0; i < row.length; i++) {
+            filtered[i + 1] = (byte) (row[i] - previousRow[i]);
+        }
+        System.arraycopy(row, 0, previousRow, 0, row.length);
+        deflater.setInput(filtered);
+        while (!deflater.needsInput()) drain();
+        height++;
+    }
+
+    /** 写完所有行后调用，输出剩余的 IDAT 数据 */
+    public void finish() throws IOException {
+        if (finished) return;
+        finished = true;
+        deflater.finish();
+        while (!deflater.finished()) drain();
+        flushChunk();
+        deflater.end();
+    }
+
+    /** 释放压缩器（放弃编码时调用） */
+    public void abort() {
+        finished = true;
+        deflater.end();
+    }
+
+    /** 取出压缩数据，攒满 IDAT_BYTES 才输出一个块（避免大量小块的块头开销） */
+    private void drain() throws IOException {
+        idatPos += deflater.deflate(idatBuffer, idatPos, idatBuffer.length - idatPos);
+        if (idatPos == idatBuffer.length) flushChunk();
+    }
+
+    private void flushChunk() throws IOException {
+        if (idatPos == 0) return;
+        writeChunk(idatOut, "IDAT", idatBuffer, idatPos);
+        idatBytes += idatPos + 12;
+        idatPos = 0;
+    }
+
+    // ========== 文件结构 ==========
+
+    /** PNG 签名 + IHDR（8 位 RGB，非隔行） */
+    public static void writeHeader(OutputStream out, int width, int height) throws IOException {
+        out.write(SIGNATURE);
+        byte[] ihdr = new byte[13];
+        putInt(ihdr, 0, width);
+        putInt(ihdr, 4, height);
+        ihdr[8] = 8;  // 位深
+        ihdr[9] = 2;  // 颜色类型：RGB
+        writeChunk(out, "IHDR", ihdr, ihdr.length);
+    }
+
+    public static void writeEnd(OutputStream out) throws IOException {
+        writeChunk(out, "IEND", new byte[0], 0);
+    }
+
+    private static void writeChunk(OutputStream out, String type, byte[] data, int length) throws IOException {
+        byte[] header = new byte[8];
+        putInt(header, 0, length);
+        for (int i = 0; i < 4; i++) header[4 + i] = (byte) type.charAt(i);
+        CRC32 crc = new CRC32();
+        crc.update(header, 4, 4);
+        crc.update(data, 0, length);
+        byte[] trailer = new byte[4];
+        putInt(trailer, 0, (int) crc.getValue());
+        out.write(header);
+        out.write(data, 0, length);
+        out.write(trailer);
+    }
+
+    private static void putInt(byte[] buf, int off, int value) {
+        buf[off] = (byte) (value >>> 24);
+        buf[off + 1] = (byte) (value >>> 16);
+        buf[off + 2] = (byte) (value >>> 8);
+        buf[off + 3] = (byte) value;
+    }
+}
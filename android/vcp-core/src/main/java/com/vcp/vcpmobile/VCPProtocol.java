@@ -0,0 +1,211 @@
+package com.vcp.vcpmobile;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * VCP / OpenAI 兼容协议的纯 Java 部分（从 VCPApiHelper 中抽出，不依赖 Android）：
+ * 1. chat/completions 请求体构建（文本、多图）
+ * 2. completions 响应解析与 HTML 拦截检测
+ * 3. Authorization 请求头构建
+ * 4. 文件日志行格式化
+ */
+public final class VCPProtocol {
+    // 流式请求体的分块大小
+    public static final int STREAM_CHUNK_SIZE = 8192;
+
+    private static final ThreadLocal<SimpleDateFormat> LOG_TIME_FORMAT =
+            ThreadLocal.withInitial(() -> new SimpleDateFormat("HH:mm:ss", Locale.getDefault()));
+
+    private VCPProtocol() {}
+
+    // ========== 请求体 ==========
+
+    /**
+     * 构建 messages 数组：可选的 system 消息 + 一条 user 消息
+     * @param base64Jpegs 为空或 null 时 user 内容为纯文本，否则为 text + image_url 多模态数组；
+     *                    以 http(s):// 开头的项视为已上传附件的地址，原样作为 image_url
+     */
+    public static JSONArray buildMessages(String systemPrompt, String userText,
+                                          List<String> base64Jpegs) throws JSONException {
+        return buildMessages(systemPrompt, null, userText, base64Jpegs);
+    }
+
+    /**
+     * @param history 插在 system 与本次 user 消息之间的上下文消息（摘要、近期轮次），可为 null
+     */
+    public static JSONArray buildMessages(String systemPrompt, JSONArray history, String userText,
+                                          List<String> base64Jpegs) throws JSONException {
+        JSONArray messages = new JSONArray();
+
+        if (systemPrompt != null && !systemPrompt.isEmpty()) {
+            messages.put(new JSONObject()
+                    .put("role", "system")
+                    .put("content", systemPrompt));
+        }
+        if (history != null) {
+            for (int i = 0; i < history.length(); i++) {
+                messages.put(history.get(i));
+            }
+        }
+
+        if (base64Jpegs == null || base64Jpegs.isEmpty()) {
+            messages.put(new JSONObject()
+                    .put("role", "user")
+                    .put("content", userText));
+            return messages;
+        }
+
+        // 多模态用户消息
+        JSONArray contentParts = new JSONArray();
+        contentParts.put(new JSONObject()
+                .put("type", "text")
+                .put("text", userText));
+        for (String base64Jpeg : base64Jpegs) {
+            boolean remote = base64Jpeg.startsWith("https://") || base64Jpeg.startsWith("http://");
+            contentParts.put(new JSONObject()
+                    .put("type", "image_url")
+                    .put("image_url", new JSONObject()
+                            .put("url", remote ? base64Jpeg : "data:image/jpeg;base64," + base64Jpeg)));
+        }
+
+        messages.put(new JSONObject()
+                .put("role", "user")
+                .put("content", contentParts));
+        return messages;
+    }
+
+    /**
+     * 构建非流式 chat/completions 请求体（UTF-8 字节）
+     * @param requestId 可为 null；携带时可通过 /v1/interrupt 中断
+     */
+    public static byte[] buildCompletionBody(String model, JSONArray messages, String requestId) throws JSONException {
+        JSONObject body = new JSONObject();
+        body.put("model", model);
+        body.put("messages", messages);
+        body.put("stream", false);
+        // 与 Web 端 streamChat 一致，携带 requestId 以便 /v1/interrupt 中断
+        if (requestId != null) body.put("requestId", requestId);
+        return body.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 多模型并发请求体的开头：{"model":...,"stream":false,"requestId":...,"messages":
+     * 后接只序列化一次的 messages 与结尾的 "}"，大体积的图片 base64 在各模型之间共享
+     */
+    public static byte[] buildCompletionBodyHead(String model, String requestId) {
+        StringBuilder head = new StringBuilder("{\"model\":").append(JSONObject.quote(model))
+                .append(",\"stream\":false,");
+        if (requestId != null) head.append("\"requestId\":").append(JSONObject.quote(requestId)).append(',');
+        head.append("\"messages\":");
+        return head.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 按块读取字符并以 JSON 字符串转义写出（不含两端引号），用于流式请求体。
+     * 在 maxChars 处截断时若正好切开代理对，丢弃落单的高位代理，避免写出非法的 UTF-16
+     * @return 读取的原始字符数，达到 maxChars 表示已截断
+     */
+    public static long writeJsonEscaped(Reader in, Writer out, long maxChars) throws IOException {
+        char[] buf = new char[STREAM_CHUNK_SIZE];
+        long total = 0;
+        int n;
+        while (total < maxChars && (n = in.read(buf, 0, (int) Math.min(buf.length, maxChars - total))) != -1) {
+            int end = n;
+            if (total + n >= maxChars && Character.isHighSurrogate(buf[n - 1])) end--;
+            for (int i = 0; i < end; i++) {
+                char c = buf[i];
+                switch (c) {
+                    case '"': out.write("\\\""); break;
+                    case '\\': out.write("\\\\"); break;
+                    case '\n': out.write("\\n"); break;
+                    case '\r': out.write("\\r"); break;
+                    case '\t': out.write("\\t"); break;
+                    default:
+                        if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                            out.write(String.format(Locale.ROOT, "\\u%04x", (int) c));
+                        } else {
+                            out.write(c);
+                        }
+                }
+            }
+            total += n;
+        }
+        return total;
+    }
+
+    /**
+     * 粗略估算 token 数（不依赖分词表）：CJK 等非 ASCII 字符按 1 字 1 token，ASCII 按 4 字符 1 token
+     */
+    public static int estimateTokens(CharSequence text) {
+        if (text == null) return 0;
+        int ascii = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) < 0x80) {
+                ascii++;
+            } else {
+                other++;
+            }
+        }
+        return other + (ascii + 3) / 4;
+    }
+
+    // ========== 响应 ==========
+
+    /** 检测 CDN/代理拦截返回的 HTML 页面 */
+    public static boolean isHtmlResponse(String resp) {
+        String trimmed = resp.trim();
+        return trimmed.startsWith("<!") || trimmed.startsWith("<html");
+    }
+
+    /** 取出 choices[0].message.content */
+    public static String parseCompletionContent(String resp) throws JSONException {
+        JSONObject json = new JSONObject(resp);
+        return json.getJSONArray("choices")
+                .getJSONObject(0)
+                .getJSONObject("message")
+                .getString("content");
+    }
+
+    /**
+     * 取出 usage 中的 {prompt_tokens, completion_tokens}
+     * @return 响应不含 usage 或无法解析时返回 null
+     */
+    public static long[] parseUsage(String resp) {
+        try {
+            JSONObject usage = new JSONObject(resp).optJSONObject("usage");
+            if (usage == null) return null;
+            return new long[]{usage.optLong("prompt_tokens"), usage.optLong("completion_tokens")};
+        } catch (JSONException e) {
+            return null;
+        }
+    }
+
+    // ========== 鉴权 ==========
+
+    public static String bearerAuthorization(String apiKey) {
+        return "Bearer " + apiKey;
+    }
+
+    public static String basicAuthorization(String username, String password) {
+        return "Basic " + Base64Codec.encode((username + ":" + password).getBytes(StandardCharsets.UTF_8));
+    }
+
+    // ========== 日志 ==========
+
+    /** 文件日志的一行："HH:mm:ss 消息\n" */
+    public static String formatLogLine(long timeMs, String msg) {
+        return LOG_TIME_FORMAT.get().format(new Date(timeMs)) + " " + msg + "\n";
+    }
+}
@@ -0,0 +1,220 @@
+package com.vcp.vcpmobile;
+
+/**
+ * 音量上键手势识别（纯 Java，不依赖 Android，计时与调度由调用方注入）：
+ * 1. 单击零延迟：按下即调高音量，不再等待双击窗口；随后的按键若构成多击，再把这次调高撤销
+ * 2. 双击、三击：三击未配置时，双击在第二次抬起时立即触发；配置后等待一个窗口确认没有第三次
+ * 3. 长按：按住超过 longPressMs 触发，撤销按下时的调高
+ * 4. 组合键：按住音量上键时按音量下键触发，同样撤销调高
+ *    长按与组合键在松开音量上键时另有 onVolumeGestureRelease 回调（按住说话用）
+ * 5. 双击窗口自适应：按用户实际的双击间隔（上次抬起到再次按下）做指数平均，
+ *    窗口取平均间隔的 WINDOW_FACTOR 倍并限制在 [MIN_WINDOW_MS, MAX_WINDOW_MS]，
+ *    手快的用户窗口更短，连按调音量被误判为双击的机会更少
+ *
+ * 按键路径不分配对象：定时任务是预先创建的 Runnable 字段，状态都是基本类型。
+ * 所有方法需在同一线程（主线程）调用。
+ */
+public final class VolumeGestureEngine {
+    public static final int GESTURE_DOUBLE_CLICK = 0;
+    public static final int GESTURE_TRIPLE_CLICK = 1;
+    public static final int GESTURE_LONG_PRESS = 2;
+    public static final int GESTURE_CHORD = 3;
+    public static final int GESTURE_COUNT = 4;
+
+    public static final long DEFAULT_WINDOW_MS = 400;
+    static final long MIN_WINDOW_MS = 250;
+    static final long MAX_WINDOW_MS = 500;
+    static final float WINDOW_FACTOR = 2f;
+    // 新样本的权重
+    private static final float EWMA_ALPHA = 0.25f;
+
+    /** 手势结果回调 */
+    public interface Listener {
+        /** 按下即调高音量 */
+        void onVolumeRaise();
+
+        /** 撤销本轮按键中已执行的调高 */
+        void onVolumeRevert();
+
+        void onVolumeGesture(int gesture);
+
+        /** 已触发的长按或组合键在音量上键松开时结束 */
+        void onVolumeGestureRelease(int gesture);
+    }
+
+    /** 延时任务调度（Android 上为主线程 Handler） */
+    public interface Scheduler {
+        void postDelayed(Runnable task, long delayMs);
+
+        void cancel(Runnable task);
+    }
+
+    private final Listener listener;
+    private final Scheduler scheduler;
+    private final long longPressMs;
+    private final boolean[] enabled = new boolean[GESTURE_COUNT];
+
+    // 双击间隔的指数平均（ms），0 表示还没有样本
+    private float gapAverageMs;
+    private long windowMs = DEFAULT_WINDOW_MS;
+
+    // 当前一轮按键的状态
+    private boolean upHeld;
+    private int pressCount;
+    private long lastUpTime;
+    private boolean raised;
+    private boolean longPressFired;
+    private boolean chordFired;
+    private boolean downKeyConsumed;
+
+    private final Runnable longPressTask = new Runnable() {
+        @Override
+        public void run() {
+            if (!upHeld || chordFired) return;
+            longPressFired = true;
+            revert();
+            listener.onVolumeGesture(GESTURE_LONG_PRESS);
+        }
+    };
+
+    private final Runnable windowTask = new Runnable() {
+        @Override
+        public void run() {
+            // 三击窗口结束仍只有两次 → 双击
+            if (!upHeld && pressCount == 2) listener.onVolumeGesture(GESTURE_DOUBLE_CLICK);
+            pressCount = 0;
+        }
+    };
+
+    public VolumeGestureEngine(Listener listener, Scheduler scheduler, long longPressMs) {
+        this.listener = listener;
+        this.scheduler = scheduler;
+        this.longPressMs = longPressMs;
+        enabled[GESTURE_DOUBLE_CLICK] = true;
+        enabled[GESTURE_LONG_PRESS] = true;
+    }
+
+    public void setGestureEnabled(int gesture, boolean on) {
+        enabled[gesture] = on;
+    }
+
+    public boolean isGestureEnabled(int gesture) {
+        return enabled[gesture];
+    }
+
+    /** 恢复持久化的平均双击间隔（0 表示没有记录，使用默认窗口） */
+    public void restoreGapAverage(float averageMs) {
+        gapAverageMs = Math.max(0f, averageMs);
+        windowMs = gapAverageMs > 0 ? windowFor(gapAverageMs) : DEFAULT_WINDOW_MS;
+    }
+
+    public float gapAverageMs() {
+        return gapAverageMs;
+    }
+
+    /** 当前的双击判定窗口 */
+    public long windowMs() {
+        return windowMs;
+    }
+
+    static long windowFor(float gapAverageMs) {
+        return Math.max(MIN_WINDOW_MS, Math.min(MAX_WINDOW_MS, Math.round(gapAverageMs * WINDOW_FACTOR)));
+    }
+
+    // ========== 按键输入（time 为事件时间，单调递增） ==========
+
+    /** 音量上键按下（系统的按住重复事件由调用方过滤） */
+    public void volumeUpDown(long time) {
+        if (upHeld) return;
+        upHeld = true;
+        longPressFired = false;
+        chordFired = false;
+
+        boolean multiClick = enabled[GESTURE_DOUBLE_CLICK] || enabled[GESTURE_TRIPLE_CLICK];
+        if (multiClick && pressCount > 0 && time - lastUpTime <= windowMs) {
+            scheduler.cancel(windowTask);
+            pressCount++;
+            if (pressCount == 2) {
+                sampleGap(time - lastUpTime);
+                revert();
+            }
+        } else {
+            scheduler.cancel(windowTask);
+            pressCount = 1;
+            raised = true;
+            listener.onVolumeRaise();
+        }
+        if (enabled[GESTURE_LONG_PRESS]) scheduler.postDelayed(longPressTask, longPressMs);
+    }
+
+    public void volumeUpUp(long time) {
+        if (!upHeld) return;
+        upHeld = false;
+        scheduler.cancel(longPressTask);
+        if (longPressFired || chordFired) {
+            reset();
+            listener.onVolumeGestureRelease(chordFired ? GESTURE_CHORD : GESTURE_LONG_PRESS);
+            return;
+        }
+        lastUpTime = time;
+        if (pressCount == 2) {
+            if (enabled[GESTURE_TRIPLE_CLICK]) {
+                scheduler.postDelayed(windowTask, windowMs);
+            } else {
+                listener.onVolumeGesture(GESTURE_DOUBLE_CLICK);
+                reset();
+            }
+        } else if (pressCount >= 3) {
+            listener.onVolumeGesture(GESTURE_TRIPLE_CLICK);
+            reset();
+        }
+    }
+
+    /**
+     * 音量下键按下
+     * @return 是否消费（只有按住音量上键且组合键已启用时消费，否则保持系统默认行为）
+     */
+    public boolean volumeDownDown(long time) {
+        if (!upHeld || !enabled[GESTURE_CHORD] || longPressFired) return false;
+        if (!chordFired) {
+            chordFired = true;
+            scheduler.cancel(longPressTask);
+            revert();
+            listener.onVolumeGesture(GESTURE_CHORD);
+        }
+        downKeyConsumed = true;
+        return true;
+    }
+
+    /** 音量下键抬起：按下被消费时抬起也一并消费 */
+    public boolean volumeDownUp(long time) {
+        boolean consumed = downKeyConsumed;
+        downKeyConsumed = false;
+        return consumed;
+    }
+
+    /** 服务断开时取消未完成的定时任务 */
+    public void cancelPending() {
+        scheduler.cancel(longPressTask);
+        scheduler.cancel(windowTask);
+        upHeld = false;
+        downKeyConsumed = false;
+        reset();
+    }
+
+    private void revert() {
+        if (!raised) return;
+        raised = false;
+        listener.onVolumeRevert();
+    }
+
+    private void reset() {
+        pressCount = 0;
+        raised = false;
+    }
+
+    private void sampleGap(long gapMs) {
+        gapAverageMs = gapAverageMs == 0 ? gapMs : gapAverageMs + EWMA_ALPHA * (gapMs - gapAverageMs);
+        windowMs = windowFor(gapAverageMs);
+    }
+}
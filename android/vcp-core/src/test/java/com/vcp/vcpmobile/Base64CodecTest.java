@@ -0,0 +1,41 @@
+package com.vcp.vcpmobile;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+
+/**
+ * Base64Codec 与 JDK 的 java.util.Base64 逐字节一致（桌面 JVM 上可用作参照）
+ */
+public class Base64CodecTest {
+
+    @Test
+    public void matchesJdkForAllPaddingLengths() {
+        Random random = new Random(42);
+        for (int length = 0; length <= 64; length++) {
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+            String encoded = Base64Codec.encode(data);
+            assertEquals("length " + length, Base64.getEncoder().encodeToString(data), encoded);
+            assertEquals(Base64Codec.encodedLength(length), encoded.length());
+            assertArrayEquals(data, Base64.getDecoder().decode(encoded));
+        }
+    }
+
+    @Test
+    public void encodesSubrange() {
+        byte[] data = "xxhello worldyy".getBytes(StandardCharsets.US_ASCII);
+        assertEquals(Base64.getEncoder().encodeToString("hello world".getBytes(StandardCharsets.US_ASCII)),
+                Base64Codec.encode(data, 2, 11));
+    }
+
+    @Test
+    public void basicAuthorizationEncodesUtf8() {
+        assertEquals("Basic " + Base64.getEncoder().encodeToString("用户:p@ss".getBytes(StandardCharsets.UTF_8)),
+                VCPProtocol.basicAuthorization("用户", "p@ss"));
+    }
+}
@@ -0,0 +1,102 @@
+package com.vcp.vcpmobile;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * BodyEncoding：gzip / deflate 往返、压缩阈值、空的压缩响应体与计数流
+ */
+public class BodyEncodingTest {
+    private static byte[] text(int minBytes) {
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < minBytes) sb.append("{\"line\": \"内容\\t\\\"quoted\\\"\"}\n");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] decode(byte[] body, String encoding) throws IOException {
+        try (InputStream in = BodyEncoding.decode(new ByteArrayInputStream(body), encoding)) {
+            return in.readAllBytes();
+        }
+    }
+
+    @Test
+    public void normalizesEncodingAndAppliesThreshold() {
+        assertEquals(BodyEncoding.GZIP, BodyEncoding.normalize("GZIP"));
+        assertEquals(BodyEncoding.DEFLATE, BodyEncoding.normalize("deflate"));
+        assertNull(BodyEncoding.normalize(""));
+        assertNull(BodyEncoding.normalize("br"));
+
+        assertFalse(BodyEncoding.shouldCompress("gzip", BodyEncoding.MIN_COMPRESS_BYTES - 1));
+        assertTrue(BodyEncoding.shouldCompress("gzip", BodyEncoding.MIN_COMPRESS_BYTES));
+        assertTrue(BodyEncoding.shouldCompress("deflate", -1));
+        assertFalse(BodyEncoding.shouldCompress(null, -1));
+    }
+
+    @Test
+    public void compressedBodiesRoundTrip() throws Exception {
+        byte[] body = text(50_000);
+        for (String encoding : new String[] {BodyEncoding.GZIP, BodyEncoding.DEFLATE}) {
+            byte[] compressed = BodyEncoding.compress(body, encoding);
+            assertTrue(encoding + " " + compressed.length, compressed.length * 5 < body.length);
+            assertArrayEquals(encoding, body, decode(compressed, encoding));
+        }
+    }
+
+    @Test
+    public void streamingCompressorFinishesWithoutClosingTheWire() throws Exception {
+        byte[] body = text(200_000);
+        for (String encoding : new String[] {BodyEncoding.GZIP, BodyEncoding.DEFLATE}) {
+            ByteArrayOutputStream wire = new ByteArrayOutputStream();
+            BodyEncoding.CountingOutputStream counted = new BodyEncoding.CountingOutputStream(wire);
+            DeflaterOutputStream compressor = BodyEncoding.compressor(counted, encoding);
+            for (int off = 0; off < body.length; off += 4096) {
+                compressor.write(body, off, Math.min(4096, body.length - off));
+            }
+            compressor.finish();
+            // finish 已释放 Deflater，重复 finish、release 与 close 都是安全的
+            compressor.finish();
+            BodyEncoding.release(compressor);
+            compressor.close();
+
+            assertEquals(wire.size(), counted.count());
+            assertArrayEquals(encoding, body, decode(wire.toByteArray(), encoding));
+        }
+    }
+
+    @Test
+    public void abandonedCompressorCanBeReleased() throws Exception {
+        for (String encoding : new String[] {BodyEncoding.GZIP, BodyEncoding.DEFLATE}) {
+            DeflaterOutputStream compressor = BodyEncoding.compressor(new ByteArrayOutputStream(), encoding);
+            compressor.write(text(10_000));
+            BodyEncoding.release(compressor);
+            BodyEncoding.release(compressor);
+        }
+    }
+
+    @Test
+    public void emptyCompressedResponseAndUnknownEncodingPassThrough() throws Exception {
+        assertEquals(0, decode(new byte[0], "gzip").length);
+        byte[] plain = "plain".getBytes(StandardCharsets.UTF_8);
+        assertArrayEquals(plain, decode(plain, "identity"));
+        assertArrayEquals(plain, decode(plain, null));
+    }
+
+    @Test
+    public void countingInputStreamCountsReadAndSkippedBytes() throws Exception {
+        BodyEncoding.CountingInputStream in = new BodyEncoding.CountingInputStream(
+                new ByteArrayInputStream(new byte[100]));
+        assertEquals(0, in.read());
+        assertEquals(10, in.read(new byte[10]));
+        assertEquals(20, in.skip(20));
+        in.readAllBytes();
+        assertEquals(100, in.count());
+    }
+}
@@ -0,0 +1,104 @@
+package com.vcp.vcpmobile;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+/**
+ * PngStreamEncoder 分段写入后按 writeHeader + IDAT + writeEnd 组装，用 ImageIO 解码逐像素比对
+ */
+public class PngStreamEncoderTest {
+    private static final int WIDTH = 120;
+    private static final int FILL = 0xFFF0F0F0;
+
+    /** 逐段编码：每段 rows 行，rowWidth 可小于 WIDTH（右侧补 FILL） */
+    private static byte[] encode(int[][] bands, int[] bandWidths) throws Exception {
+        ByteArrayOutputStream idat = new ByteArrayOutputStream();
+        PngStreamEncoder encoder = new PngStreamEncoder(WIDTH, idat);
+        for (int b = 0; b < bands.length; b++) {
+            int rowWidth = bandWidths[b];
+            for (int offset = 0; offset < bands[b].length; offset += rowWidth) {
+                encoder.writeRow(bands[b], offset, rowWidth, FILL);
+            }
+        }
+        encoder.finish();
+        assertEquals(idat.size(), encoder.idatBytes());
+
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        PngStreamEncoder.writeHeader(png, WIDTH, encoder.height());
+        idat.writeTo(png);
+        PngStreamEncoder.writeEnd(png);
+        return png.toByteArray();
+    }
+
+    private static int expected(int[][] bands, int[] bandWidths, int x, int y) {
+        for (int b = 0; b < bands.length; b++) {
+            int rows = bands[b].length / bandWidths[b];
+            if (y < rows) return x < bandWidths[b] ? bands[b][y * bandWidths[b] + x] : FILL;
+            y -= rows;
+        }
+        throw new IllegalArgumentException("y 越界");
+    }
+
+    private static void assertDecodesTo(int[][] bands, int[] bandWidths) throws Exception {
+        int height = 0;
+        for (int b = 0; b < bands.length; b++) height += bands[b].length / bandWidths[b];
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(encode(bands, bandWidths)));
+        assertNotNull(image);
+        assertEquals(WIDTH, image.getWidth());
+        assertEquals(height, image.getHeight());
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int want = expected(bands, bandWidths, x, y) & 0xFFFFFF;
+                int got = image.getRGB(x, y) & 0xFFFFFF;
+                if (want != got) fail("像素 (" + x + "," + y + ") 期望 " + Integer.toHexString(want)
+                        + " 实际 " + Integer.toHexString(got));
+            }
+        }
+    }
+
+    @Test
+    public void bandsOfSolidAndStripedRowsRoundTrip() throws Exception {
+        // 聊天界面式内容：纯色背景、横条与窄于整图宽度的分段
+        int[] solid = new int[WIDTH * 30];
+        Arrays.fill(solid, 0xFFFFFFFF);
+        int[] stripes = new int[WIDTH * 40];
+        for (int i = 0; i < stripes.length; i++) stripes[i] = (i / WIDTH) % 4 == 0 ? 0xFF3366CC : 0xFFFFFFFF;
+        int narrowWidth = 80;
+        int[] narrow = new int[narrowWidth * 25];
+        for (int i = 0; i < narrow.length; i++) narrow[i] = 0xFF000000 | (i * 0x9E3779B1 >>> 8);
+        assertDecodesTo(new int[][] {solid, stripes, narrow}, new int[] {WIDTH, WIDTH, narrowWidth});
+    }
+
+    @Test
+    public void noiseSpanningSeveralIdatChunksRoundTrips() throws Exception {
+        // 随机像素几乎不可压缩，约 130KB 数据会分成多个 64KB 的 IDAT 块
+        Random random = new Random(7);
+        int[][] bands = new int[3][];
+        for (int b = 0; b < bands.length; b++) {
+            bands[b] = new int[WIDTH * 125];
+            for (int i = 0; i < bands[b].length; i++) bands[b][i] = random.nextInt();
+        }
+        assertDecodesTo(bands, new int[] {WIDTH, WIDTH, WIDTH});
+    }
+
+    @Test
+    public void writeAfterFinishIsRejected() throws Exception {
+        PngStreamEncoder encoder = new PngStreamEncoder(4, new ByteArrayOutputStream());
+        encoder.writeRow(new int[4], 0, 4, FILL);
+        encoder.finish();
+        try {
+            encoder.writeRow(new int[4], 0, 4, FILL);
+            fail("finish 之后不应再接受写入");
+        } catch (IllegalStateException expected) {
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.vcp.vcpmobile;
+
+import static org.junit.Assert.*;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * VCPProtocol 的请求体构建：转义结果能被 JSON 解析还原，截断不切开代理对
+ */
+public class VCPProtocolTest {
+
+    private static String escape(String text, long maxChars) throws Exception {
+        StringWriter out = new StringWriter();
+        VCPProtocol.writeJsonEscaped(new StringReader(text), out, maxChars);
+        return out.toString();
+    }
+
+    /** 把转义结果放回引号中解析 */
+    private static String unescape(String escaped) throws Exception {
+        return new JSONArray("[\"" + escaped + "\"]").getString(0);
+    }
+
+    @Test
+    public void escapedTextRoundTrips() throws Exception {
+        String text = "引号\" 反斜杠\\ 换行\n回车\r制表\t 控制\u0001\u001f 分隔   表情😀 /斜杠";
+        String escaped = escape(text, Long.MAX_VALUE);
+        assertFalse(escaped.contains("\n"));
+        assertFalse(escaped.contains(" "));
+        assertEquals(text, unescape(escaped));
+    }
+
+    @Test
+    public void longTextRoundTripsAcrossChunks() throws Exception {
+        StringBuilder text = new StringBuilder();
+        while (text.length() < VCPProtocol.STREAM_CHUNK_SIZE * 3) text.append("行\"😀\\\n");
+        assertEquals(text.toString(), unescape(escape(text.toString(), Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void truncationReportsLimitAndKeepsSurrogatePairs() throws Exception {
+        String text = "ab😀cd";
+        StringWriter out = new StringWriter();
+        assertEquals(3, VCPProtocol.writeJsonEscaped(new StringReader(text), out, 3));
+        // 第 3 个字符是高位代理，落单时丢弃
+        assertEquals("ab", out.toString());
+
+        out = new StringWriter();
+        assertEquals(4, VCPProtocol.writeJsonEscaped(new StringReader(text), out, 4));
+        assertEquals("ab😀", unescape(out.toString()));
+
+        out = new StringWriter();
+        assertEquals(text.length(), VCPProtocol.writeJsonEscaped(new StringReader(text), out, 100));
+        assertEquals(text, unescape(out.toString()));
+    }
+
+    @Test
+    public void truncationAtChunkBoundaryKeepsSurrogatePairs() throws Exception {
+        StringBuilder text = new StringBuilder();
+        while (text.length() < VCPProtocol.STREAM_CHUNK_SIZE * 2) text.append("😀");
+        long limit = VCPProtocol.STREAM_CHUNK_SIZE + 1;
+        String escaped = escape(text.toString(), limit);
+        String decoded = unescape(escaped);
+        assertEquals(VCPProtocol.STREAM_CHUNK_SIZE, decoded.length());
+        assertFalse(Character.isHighSurrogate(decoded.charAt(decoded.length() - 1)));
+        // 编码为 UTF-8 后不出现替换字符
+        assertEquals(decoded, new String(decoded.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void completionBodyHeadConcatenatesToValidJson() throws Exception {
+        JSONArray messages = VCPProtocol.buildMessages("系统\"提示", "你好\n😀", null);
+        byte[] head = VCPProtocol.buildCompletionBodyHead("model\"x", "req-1");
+        String body = new String(head, StandardCharsets.UTF_8) + messages + "}";
+        JSONObject json = new JSONObject(body);
+        assertEquals("model\"x", json.getString("model"));
+        assertEquals("req-1", json.getString("requestId"));
+        assertFalse(json.getBoolean("stream"));
+        assertEquals(messages.toString(), json.getJSONArray("messages").toString());
+    }
+
+    @Test
+    public void parsesCompletionContentAndUsage() throws Exception {
+        String resp = "{\"choices\":[{\"message\":{\"content\":\"回复😀\"}}],"
+                + "\"usage\":{\"prompt_tokens\":12,\"completion_tokens\":3}}";
+        assertEquals("回复😀", VCPProtocol.parseCompletionContent(resp));
+        assertArrayEquals(new long[]{12, 3}, VCPProtocol.parseUsage(resp));
+        assertNull(VCPProtocol.parseUsage("{}"));
+        assertNull(VCPProtocol.parseUsage("<html>"));
+        assertTrue(VCPProtocol.isHtmlResponse("  <!DOCTYPE html>"));
+    }
+}
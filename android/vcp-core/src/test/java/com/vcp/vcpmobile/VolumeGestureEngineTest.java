@@ -0,0 +1,102 @@
+package com.vcp.vcpmobile;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.LongConsumer;
+
+/**
+ * VolumeGestureEngine：按下即调高音量，多击撤销；双击窗口按实际间隔自适应。定时器用虚拟时钟驱动
+ */
+public class VolumeGestureEngineTest {
+    @Test
+    public void raisesImmediatelyAndAdaptsWindow() {
+        StringBuilder log = new StringBuilder();
+        long[] now = {0};
+        Map<Runnable, Long> pending = new HashMap<>();
+        VolumeGestureEngine engine = new VolumeGestureEngine(new VolumeGestureEngine.Listener() {
+            @Override public void onVolumeRaise() { log.append('+'); }
+            @Override public void onVolumeRevert() { log.append('-'); }
+            @Override public void onVolumeGesture(int gesture) { log.append(gesture); }
+            @Override public void onVolumeGestureRelease(int gesture) { log.append('^'); }
+        }, new VolumeGestureEngine.Scheduler() {
+            @Override public void postDelayed(Runnable task, long delayMs) { pending.put(task, now[0] + delayMs); }
+            @Override public void cancel(Runnable task) { pending.remove(task); }
+        }, 600);
+        // 推进虚拟时钟，执行到期的定时任务
+        LongConsumer advance = to -> {
+            now[0] = to;
+            for (Runnable task : new ArrayList<>(pending.keySet())) {
+                if (pending.get(task) <= to) {
+                    pending.remove(task);
+                    task.run();
+                }
+            }
+        };
+
+        // 单击：按下即调高，不等待窗口
+        engine.volumeUpDown(0);
+        assertEquals("+", log.toString());
+        advance.accept(80);
+        engine.volumeUpUp(80);
+        // 窗口外的第二次单击再次调高
+        advance.accept(1000);
+        engine.volumeUpDown(1000);
+        engine.volumeUpUp(1080);
+        assertEquals("++", log.toString());
+
+        // 双击：第二次按下撤销调高，抬起立即触发
+        log.setLength(0);
+        engine.volumeUpDown(3000);
+        engine.volumeUpUp(3080);
+        engine.volumeUpDown(3200);
+        engine.volumeUpUp(3280);
+        assertEquals("+-" + VolumeGestureEngine.GESTURE_DOUBLE_CLICK, log.toString());
+        // 间隔 120ms → 窗口收紧到下限，300ms 的连按不再被当作双击
+        assertEquals(VolumeGestureEngine.MIN_WINDOW_MS, engine.windowMs());
+        log.setLength(0);
+        engine.volumeUpDown(5000);
+        engine.volumeUpUp(5050);
+        engine.volumeUpDown(5350);
+        engine.volumeUpUp(5400);
+        assertEquals("++", log.toString());
+
+        // 长按：撤销调高后触发
+        log.setLength(0);
+        advance.accept(8000);
+        engine.volumeUpDown(8000);
+        advance.accept(8700);
+        engine.volumeUpUp(8700);
+        assertEquals("+-" + VolumeGestureEngine.GESTURE_LONG_PRESS + "^", log.toString());
+
+        // 三击启用后，双击等窗口结束才确认；组合键消费音量下键
+        engine.setGestureEnabled(VolumeGestureEngine.GESTURE_TRIPLE_CLICK, true);
+        engine.setGestureEnabled(VolumeGestureEngine.GESTURE_CHORD, true);
+        log.setLength(0);
+        for (long t = 10000; t < 10300; t += 100) {
+            engine.volumeUpDown(t);
+            engine.volumeUpUp(t + 40);
+        }
+        assertEquals("+-" + VolumeGestureEngine.GESTURE_TRIPLE_CLICK, log.toString());
+        log.setLength(0);
+        advance.accept(12000);
+        engine.volumeUpDown(12000);
+        engine.volumeUpUp(12040);
+        engine.volumeUpDown(12150);
+        engine.volumeUpUp(12190);
+        assertEquals("+-", log.toString());
+        advance.accept(12190 + engine.windowMs());
+        assertEquals("+-" + VolumeGestureEngine.GESTURE_DOUBLE_CLICK, log.toString());
+        log.setLength(0);
+        engine.volumeUpDown(14000);
+        assertTrue(engine.volumeDownDown(14100));
+        assertTrue(engine.volumeDownUp(14150));
+        engine.volumeUpUp(14200);
+        assertFalse(engine.volumeDownDown(14300));
+        assertEquals("+-" + VolumeGestureEngine.GESTURE_CHORD + "^", log.toString());
+    }
+}
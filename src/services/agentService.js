@@ -2,6 +2,7 @@
 // 从 VCPToolBox 服务端拉取 Agent 列表
 
 import { normalizeBaseUrl } from './vcpApi'
+import { cachedGet } from './httpCache'
 
 const LOG_PREFIX = '[AgentService]'
 
@@ -96,16 +97,14 @@ export async function fetchTopicHistory(config, agentDirId, topicId, ifModifiedS
   try {
     const params = new URLSearchParams({ agentDirId, topicId })
     if (ifModifiedSince) params.set('ifModifiedSince', String(ifModifiedSince))
-    const response = await fetch(`${baseUrl}/admin_api/agents/vcpchat-history?${params}`, {
-      headers: buildAdminHeaders(config),
-    })
+    // 原生平台走 HttpCache：服务端返回 ETag，话题未变化时 304 无响应体，使用本地副本
+    const response = await cachedGet(`${baseUrl}/admin_api/agents/vcpchat-history?${params}`, buildAdminHeaders(config))
 
     if (!response.ok) {
-      const text = await response.text()
-      return { success: false, error: `HTTP ${response.status}: ${text}` }
+      return { success: false, error: `HTTP ${response.status}: ${response.text}` }
     }
 
-    const data = await response.json()
+    const data = response.json()
     if (!data.success) {
       return { success: false, error: data.error || '返回数据格式错误' }
     }
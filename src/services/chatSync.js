@@ -3,6 +3,7 @@
 // 与 VCPToolBox 的 ChatSync 插件通信，实现跨设备消息级增量同步
 
 import { normalizeBaseUrl } from './vcpApi'
+import { cachedGet } from './httpCache'
 
 const SYNC_PREFIX = '[ChatSync]'
 const SYNC_TIMESTAMP_KEY = 'vcpSyncTimestamps' // localStorage key for per-topic sync timestamps
@@ -218,7 +219,7 @@ export async function syncTopics(syncConfig, agentId, localTopics) {
  * @param {string} agentId - Agent ID
  * @param {Array} localTopics - 本地话题列表
  * @param {Function} getMessages - (topicId) => messages[] 获取本地消息的函数
- * @param {Function} setMessages - (topicId, messages[]) => void 设置本地消息的函数
+ * @param {Function} setMessages - (topicId, messages[]) => void | Promise 设置本地消息的函数
  * @param {Function} onProgress - (current, total, topicTitle) => void 进度回调
  */
 export async function fullSync(syncConfig, agentId, localTopics, getMessages, setMessages, onProgress) {
@@ -247,7 +248,7 @@ export async function fullSync(syncConfig, agentId, localTopics, getMessages, se
       // 合并服务端新消息到本地
       const merged = mergeServerMessages(localMessages, result.serverNewMessages)
       if (merged !== localMessages) {
-        setMessages(topicId, merged)
+        await setMessages(topicId, merged)
       }
       syncedCount++
     } else {
@@ -268,15 +269,14 @@ export async function pullHistory(syncConfig, agentId, topicId) {
   if (!syncUrl) return { success: false, error: '未配置同步地址' }
 
   try {
-    const response = await fetch(`${syncUrl}/history/${agentId}/${topicId}`, {
-      headers: buildSyncHeaders(syncConfig),
-    })
+    // 未变化的话题由服务端返回 304，直接使用本地缓存副本
+    const response = await cachedGet(`${syncUrl}/history/${agentId}/${topicId}`, buildSyncHeaders(syncConfig))
 
     if (!response.ok) {
       return { success: false, error: `HTTP ${response.status}` }
     }
 
-    const data = await response.json()
+    const data = response.json()
     if (data.success) {
       // 更新同步时间戳
       if (data.messages && data.messages.length > 0) {
@@ -0,0 +1,48 @@
+// services/httpCache.js
+// GET 请求的条件缓存：原生平台走 HttpCache 插件（ETag / Last-Modified 磁盘缓存，未变化时 304 无响应体），
+// Web 平台直接 fetch（浏览器自带 HTTP 缓存）
+
+import { Capacitor, registerPlugin } from '@capacitor/core'
+
+const isNative = Capacitor.isNativePlatform()
+const HttpCache = isNative ? registerPlugin('HttpCache') : null
+
+/**
+ * 带缓存的 GET
+ * @param {string} url
+ * @param {Object} headers
+ * @returns {Promise<{ok: boolean, status: number, text: string, json: Function, fromCache: boolean, notModified: boolean, stale: boolean}>}
+ */
+export async function cachedGet(url, headers = {}) {
+  if (!HttpCache) {
+    const response = await fetch(url, { headers })
+    const text = await response.text()
+    return wrap(response.status, text, false, false, false)
+  }
+
+  const result = await HttpCache.get({ url, headers })
+  return wrap(result.status, result.body || '', result.fromCache, result.notModified, result.stale)
+}
+
+/** 清空原生磁盘缓存（切换服务器或账号时调用） */
+export async function clearHttpCache() {
+  if (HttpCache) await HttpCache.clear()
+}
+
+/** 原生缓存统计：{ entries, bytes, hits, misses, bytesSaved } */
+export async function getHttpCacheStats() {
+  if (!HttpCache) return null
+  return HttpCache.stats()
+}
+
+function wrap(status, text, fromCache, notModified, stale) {
+  return {
+    ok: status >= 200 && status < 300,
+    status,
+    text,
+    json: () => JSON.parse(text),
+    fromCache: !!fromCache,
+    notModified: !!notModified,
+    stale: !!stale,
+  }
+}
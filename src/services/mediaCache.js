@@ -0,0 +1,72 @@
+// services/mediaCache.js
+// 回复中媒体的本地缓存：原生平台由 MediaCache 插件在后台预取到磁盘（LRU，有总大小上限），
+// 渲染时把已缓存的地址替换为本地文件地址，消息滚动到可见时不再从网络加载；Web 平台不处理
+
+import { ref } from 'vue'
+import { Capacitor, registerPlugin } from '@capacitor/core'
+
+const isNative = Capacitor.isNativePlatform()
+const MediaCache = isNative ? registerPlugin('MediaCache') : null
+
+// 远程地址 -> WebView 可访问的本地地址（原生端淘汰文件后随 prefetch 结果的 evicted 撤销）
+const localUrls = new Map()
+// 已请求过预取的消息 -> 预取完成的 Promise（同一条消息只提交一次，按提交顺序保留最近 MAX_PREFETCHED_KEYS 条）
+const prefetchedKeys = new Map()
+const MAX_PREFETCHED_KEYS = 500
+// 有新文件缓存完成时递增，渲染函数读取它以便重新渲染
+const mediaCacheVersion = ref(0)
+
+const MEDIA_ATTR_REGEX = /\b(src|poster)=(["'])(https?:\/\/[^"']+)\2/gi
+const MEDIA_LINK_REGEX = /\bhref=(["'])(https?:\/\/[^"']+\.(?:png|jpe?g|gif|webp|mp3|m4a|wav|mp4|webm|pdf)(?:\?[^"']*)?)\1/gi
+
+const decodeAmp = (url) => url.replace(/&amp;/g, '&')
+
+/**
+ * 提交渲染后 HTML 中的媒体地址进行预取（地址已经过 fixStickerUrls 等处理，与 WebView 实际请求的一致）
+ * 应在消息显示之前调用（回复完成、载入历史时），否则首次渲染仍使用远程地址，同一文件会被下载两次
+ * @param {string} key 消息标识（通常为消息 id 加内容长度）
+ * @param {string} html 渲染结果
+ * @returns {Promise<void>} 预取结束（成功或失败）时完成，已缓存的地址此后可由 localizeMedia 替换
+ */
+export function prefetchRenderedMedia(key, html) {
+  if (!MediaCache || !html) return Promise.resolve()
+  if (prefetchedKeys.has(key)) return prefetchedKeys.get(key)
+  const urls = new Set()
+  for (const match of html.matchAll(MEDIA_ATTR_REGEX)) urls.add(decodeAmp(match[3]))
+  for (const match of html.matchAll(MEDIA_LINK_REGEX)) urls.add(decodeAmp(match[2]))
+  const pending = [...urls].filter(url => !localUrls.has(url))
+  const done = !pending.length ? Promise.resolve() : MediaCache.prefetch({ urls: pending, wait: true })
+    .then(({ files, evicted }) => {
+      let changed = false
+      for (const [url, path] of Object.entries(files || {})) {
+        if (localUrls.has(url)) continue
+        localUrls.set(url, Capacitor.convertFileSrc(path))
+        changed = true
+      }
+      // 已被淘汰的文件改回远程地址
+      for (const url of evicted || []) {
+        if (localUrls.delete(url)) changed = true
+      }
+      if (changed) mediaCacheVersion.value++
+    })
+    .catch(e => console.warn('[MediaCache] 预取失败:', e))
+  prefetchedKeys.set(key, done)
+  if (prefetchedKeys.size > MAX_PREFETCHED_KEYS) prefetchedKeys.delete(prefetchedKeys.keys().next().value)
+  return done
+}
+
+/** 把 HTML 中已缓存的媒体地址替换为本地地址（在渲染函数中调用，缓存有新文件时触发重新渲染） */
+export function localizeMedia(html) {
+  if (!mediaCacheVersion.value || !html) return html
+  return html.replace(MEDIA_ATTR_REGEX, (match, attr, quote, url) => {
+    const local = localUrls.get(decodeAmp(url))
+    return local ? `${attr}=${quote}${local}${quote}` : match
+  })
+}
+
+/** 清空原生媒体缓存（切换服务器时调用） */
+export async function clearMediaCache() {
+  localUrls.clear()
+  prefetchedKeys.clear()
+  if (MediaCache) await MediaCache.clear()
+}
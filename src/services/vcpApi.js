@@ -1,3 +1,5 @@
+import { cachedGet } from './httpCache'
+
 const normalizeBaseUrl = (baseUrl) => {
   let fixed = (baseUrl || '').trim()
   if (!fixed) return ''
@@ -34,10 +36,14 @@ const handleJsonResponse = async (response) => {
 export const fetchModels = async ({ baseUrl, apiKey }) => {
   const normalized = normalizeBaseUrl(baseUrl)
   if (!normalized) return []
-  const response = await fetch(`${normalized}/v1/models`, {
-    headers: buildHeaders(apiKey),
-  })
-  const data = await handleJsonResponse(response)
+  const response = await cachedGet(`${normalized}/v1/models`, buildHeaders(apiKey))
+  if (!response.ok) {
+    throw new Error(response.text || `HTTP ${response.status}`)
+  }
+  const data = response.json()
+  if (data?.error) {
+    throw new Error(data.error.message || JSON.stringify(data.error))
+  }
   if (Array.isArray(data?.data)) {
     return data.data.map((item) => item.id).filter(Boolean)
   }
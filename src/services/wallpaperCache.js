@@ -0,0 +1,39 @@
+// services/wallpaperCache.js
+// 壁纸的屏幕尺寸缓存：原生平台由 Wallpaper 插件把 public/wallpapers 的原图降采样解码一次，
+// 以 WebP 缓存到磁盘，背景与选择器缩略图都使用缓存文件，WebView 不再解码数 MB 的原图；Web 平台直接用原图
+
+import { Capacitor, registerPlugin } from '@capacitor/core'
+
+const isNative = Capacitor.isNativePlatform()
+const Wallpaper = isNative ? registerPlugin('Wallpaper') : null
+
+// `${name}@${尺寸}` -> Promise<url>
+const urlCache = new Map()
+
+export const originalWallpaperUrl = (name) => `/wallpapers/${encodeURIComponent(name)}`
+
+const resolve = (name, size, key) => {
+  if (!Wallpaper) return Promise.resolve(originalWallpaperUrl(name))
+  if (urlCache.has(key)) return urlCache.get(key)
+  const pending = Wallpaper.get({ name, ...size })
+    .then(({ path }) => Capacitor.convertFileSrc(path))
+    .catch(e => {
+      console.warn('[Wallpaper] 缓存失败，使用原图:', name, e)
+      urlCache.delete(key)
+      return originalWallpaperUrl(name)
+    })
+  urlCache.set(key, pending)
+  return pending
+}
+
+/** 屏幕尺寸的背景图地址（首次生成需解码原图，之后命中缓存） */
+export function wallpaperUrl(name) {
+  return resolve(name, {}, `${name}@screen`)
+}
+
+/** 选择器缩略图地址（两列网格，9:16） */
+export function wallpaperThumbUrl(name) {
+  const width = Math.round((window.screen?.width || 360) * (window.devicePixelRatio || 1) / 2)
+  const height = Math.round(width * 16 / 9)
+  return resolve(name, { width, height }, `${name}@${width}x${height}`)
+}
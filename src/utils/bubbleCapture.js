@@ -4,6 +4,7 @@
  * 使用 html2canvas 将消息气泡或整个话题渲染为高清图片。
  * - 单气泡：2x 像素比，直接下载 PNG
  * - 话题长图：分段渲染后拼接，避免内存溢出
+ *   原生端每段渲染完立即交给 ImageSaver 会话逐行编码，WebView 中同一时间只保留一段
  */
 
 import html2canvas from 'html2canvas'
@@ -209,6 +210,8 @@ export async function captureTopicAsImage(chatContainer, topicTitle, onProgress)
       const canvas = await captureElement(clone)
       const filename = `vcp_topic_${Date.now()}.png`
       await saveImage(canvas, filename)
+    } else if (isNative && ImageSaver) {
+      await captureSegmentsNative(clone, totalHeight, width, onProgress)
     } else {
       // 分段截图后拼接
       const segments = Math.ceil(totalHeight / MAX_SEGMENT_HEIGHT)
@@ -245,3 +248,43 @@ export async function captureTopicAsImage(chatContainer, topicTitle, onProgress)
     document.body.removeChild(clone)
   }
 }
+
+/**
+ * 原生端分段长图：每段渲染后立即写入原生会话并释放 canvas，
+ * 拼接与 PNG 编码在原生端逐行完成，内存占用与话题长度无关
+ * @param {HTMLElement} clone - 离屏克隆容器
+ * @param {number} totalHeight - 总高度（CSS px）
+ * @param {number} width - 宽度（CSS px）
+ * @param {function} onProgress - 进度回调 (current, total)
+ */
+async function captureSegmentsNative(clone, totalHeight, width, onProgress) {
+  const segments = Math.ceil(totalHeight / MAX_SEGMENT_HEIGHT)
+  const { sessionId } = await ImageSaver.beginImage({
+    filename: `vcp_topic_${Date.now()}.png`,
+    width: Math.round(width * SCALE),
+  })
+
+  try {
+    for (let i = 0; i < segments; i++) {
+      onProgress?.(i + 1, segments)
+      const y = i * MAX_SEGMENT_HEIGHT
+      const h = Math.min(MAX_SEGMENT_HEIGHT, totalHeight - y)
+      let segCanvas = await captureElement(clone, {
+        y,
+        height: h,
+        windowHeight: h,
+      })
+      let base64 = canvasToBase64(segCanvas)
+      // 尽早释放 canvas 位图，避免与下一段同时占用内存
+      segCanvas.width = 0
+      segCanvas.height = 0
+      segCanvas = null
+      await ImageSaver.appendSegment({ sessionId, base64 })
+      base64 = null
+    }
+    await ImageSaver.finishImage({ sessionId })
+  } catch (e) {
+    ImageSaver.cancelImage({ sessionId }).catch(() => {})
+    throw new Error('原生保存失败: ' + (e.message || e))
+  }
+}
@@ -3,6 +3,9 @@
  * 提供手机端读取 VCPChat 桌面端 Agent 列表和聊天记录的 API
  */
 const path = require('path');
+const crypto = require('crypto');
+const { pathToFileURL } = require('url');
+const express = require('express');
 const fs = require('fs').promises;
 
 module.exports = function (adminApiRouter, AGENT_MAP_FILE, parseAgentAssistantConfig) {
@@ -175,6 +178,13 @@ module.exports = function (adminApiRouter, AGENT_MAP_FILE, parseAgentAssistantCo
 
             const lastModified = stat.mtimeMs;
 
+            // 标准 HTTP 校验器：客户端携带 If-None-Match / If-Modified-Since 且文件未变化时返回 304，无响应体
+            res.set('ETag', `W/"${stat.size.toString(16)}-${Math.floor(lastModified).toString(16)}"`);
+            res.set('Last-Modified', stat.mtime.toUTCString());
+            if (req.fresh) {
+                return res.status(304).end();
+            }
+
             // 如果客户端传了 ifModifiedSince 且文件未变化，返回 notModified
             if (ifModifiedSince && Number(ifModifiedSince) >= lastModified) {
                 return res.json({ success: true, notModified: true, lastModified });
@@ -235,15 +245,18 @@ module.exports = function (adminApiRouter, AGENT_MAP_FILE, parseAgentAssistantCo
                 return res.json({ success: true, appended: 0, total: existing.length });
             }
 
-            // 格式化为 VCPChat 兼容格式
-            const formatted = toAppend.map(m => ({
-                id: m.id,
-                role: m.role || 'user',
-                name: m.name || '',
-                content: m.content || '',
-                timestamp: m.timestamp || Date.now(),
-                attachments: m.attachments || [],
-            }));
+            // 格式化为 VCPChat 兼容格式（按 attachmentId 引用的附件展开为本地文件）
+            const formatted = [];
+            for (const m of toAppend) {
+                formatted.push({
+                    id: m.id,
+                    role: m.role || 'user',
+                    name: m.name || '',
+                    content: m.content || '',
+                    timestamp: m.timestamp || Date.now(),
+                    attachments: await resolveAttachments(m.attachments || []),
+                });
+            }
 
             const merged = [...existing, ...formatted];
             await fs.writeFile(historyPath, JSON.stringify(merged, null, 2), 'utf-8');
@@ -375,4 +388,175 @@ module.exports = function (adminApiRouter, AGENT_MAP_FILE, parseAgentAssistantCo
             res.status(500).json({ success: false, error: error.message });
         }
     });
+
+    // ========== 附件分块上传（可续传） ==========
+    // 上传 ID 为内容的 SHA-1，完成后校验；分块按 offset 顺序追加，偏移不一致返回 409 和已接收字节数
+    // 完成的附件保存在 AppData/UserData/attachments/mobile_<id>.<ext>，话题消息以 attachmentId 引用
+    // 设置环境变量 VCP_MOBILE_ATTACHMENT_PUBLIC_BASE（指向 attachments 目录的公开地址）后，响应附带 url，手机端可直接把地址发给 AI
+
+    const UPLOAD_ID_RE = /^[0-9a-f]{40}$/;
+    const MAX_ATTACHMENT_BYTES = 32 * 1024 * 1024;
+    const UPLOAD_CHUNK_LIMIT = '2mb';
+    const EXT_BY_TYPE = { 'image/jpeg': '.jpg', 'image/png': '.png', 'image/webp': '.webp', 'image/gif': '.gif' };
+
+    function getAttachmentDir() {
+        return path.join(getVCPChatPath(), 'AppData', 'UserData', 'attachments');
+    }
+
+    function getUploadPaths(uploadId) {
+        const tmpDir = path.join(getAttachmentDir(), '.mobile_uploads');
+        return { tmpDir, meta: path.join(tmpDir, `${uploadId}.json`), part: path.join(tmpDir, `${uploadId}.part`) };
+    }
+
+    async function readUploadMeta(uploadId) {
+        try {
+            return JSON.parse(await fs.readFile(getUploadPaths(uploadId).meta, 'utf-8'));
+        } catch {
+            return null;
+        }
+    }
+
+    function attachmentFileName(uploadId, type) {
+        return `mobile_${uploadId}${EXT_BY_TYPE[type] || '.bin'}`;
+    }
+
+    function describeAttachment(meta) {
+        const fileName = attachmentFileName(meta.uploadId, meta.type);
+        const publicBase = (process.env.VCP_MOBILE_ATTACHMENT_PUBLIC_BASE || '').replace(/\/+$/, '');
+        return {
+            success: true,
+            complete: true,
+            received: meta.size,
+            attachmentId: meta.uploadId,
+            name: meta.name,
+            type: meta.type,
+            size: meta.size,
+            ...(publicBase ? { url: `${publicBase}/${fileName}` } : {}),
+        };
+    }
+
+    async function resolveAttachments(attachments) {
+        const resolved = [];
+        for (const a of attachments) {
+            if (!a || !a.attachmentId || !UPLOAD_ID_RE.test(a.attachmentId)) {
+                resolved.push(a);
+                continue;
+            }
+            const meta = await readUploadMeta(a.attachmentId);
+            if (!meta || !meta.complete) {
+                // 附件尚未上传完成：保留引用，桌面端显示文件名
+                resolved.push({ name: a.name || '', type: a.type || '', attachmentId: a.attachmentId });
+                continue;
+            }
+            const filePath = path.join(getAttachmentDir(), attachmentFileName(meta.uploadId, meta.type));
+            resolved.push({
+                type: meta.type,
+                src: pathToFileURL(filePath).href,
+                name: meta.name,
+                size: meta.size,
+                attachmentId: meta.uploadId,
+            });
+        }
+        return resolved;
+    }
+
+    // GET /agents/vcpchat-upload/:uploadId — 查询上传进度（404 表示未创建）
+    adminApiRouter.get('/agents/vcpchat-upload/:uploadId', async (req, res) => {
+        const { uploadId } = req.params;
+        if (!UPLOAD_ID_RE.test(uploadId)) {
+            return res.status(400).json({ success: false, error: '非法 uploadId' });
+        }
+        const meta = await readUploadMeta(uploadId);
+        if (!meta) return res.status(404).json({ success: false, error: '上传不存在' });
+        if (meta.complete) return res.json(describeAttachment(meta));
+        res.json({ success: true, complete: false, received: meta.received, size: meta.size });
+    });
+
+    // POST /agents/vcpchat-upload — 创建上传 { uploadId, name, type, size }，已存在时返回当前进度
+    adminApiRouter.post('/agents/vcpchat-upload', async (req, res) => {
+        const { uploadId, name, type, size } = req.body || {};
+        if (!UPLOAD_ID_RE.test(uploadId || '') || !Number.isInteger(size) || size <= 0 || size > MAX_ATTACHMENT_BYTES) {
+            return res.status(400).json({ success: false, error: '缺少或非法的 uploadId / size' });
+        }
+        try {
+            const existing = await readUploadMeta(uploadId);
+            if (existing) {
+                return res.json(existing.complete ? describeAttachment(existing)
+                    : { success: true, complete: false, received: existing.received, size: existing.size });
+            }
+            const { tmpDir, meta, part } = getUploadPaths(uploadId);
+            await fs.mkdir(tmpDir, { recursive: true });
+            await fs.writeFile(part, Buffer.alloc(0));
+            const record = {
+                uploadId,
+                name: path.basename(String(name || 'attachment')),
+                type: EXT_BY_TYPE[type] ? type : 'application/octet-stream',
+                size,
+                received: 0,
+                complete: false,
+                createdAt: Date.now(),
+            };
+            await fs.writeFile(meta, JSON.stringify(record), 'utf-8');
+            res.json({ success: true, complete: false, received: 0, size });
+        } catch (error) {
+            console.error('[VCPChatMobile] Error creating upload:', error);
+            res.status(500).json({ success: false, error: error.message });
+        }
+    });
+
+    // PUT /agents/vcpchat-upload/:uploadId?offset=N — 追加一个分块（原始字节）
+    // 同一上传的分块按顺序到达，Node 单线程下读-判断-追加之间没有其它请求插入同一文件
+    const uploadsInFlight = new Set();
+    adminApiRouter.put('/agents/vcpchat-upload/:uploadId',
+        express.raw({ type: 'application/octet-stream', limit: UPLOAD_CHUNK_LIMIT }),
+        async (req, res) => {
+            const { uploadId } = req.params;
+            const offset = Number(req.query.offset);
+            if (!UPLOAD_ID_RE.test(uploadId) || !Number.isInteger(offset) || offset < 0 || !Buffer.isBuffer(req.body)) {
+                return res.status(400).json({ success: false, error: '非法的 uploadId / offset / 请求体' });
+            }
+            if (uploadsInFlight.has(uploadId)) {
+                return res.status(409).json({ success: false, error: '分块正在写入', received: -1 });
+            }
+            uploadsInFlight.add(uploadId);
+            try {
+                const meta = await readUploadMeta(uploadId);
+                if (!meta) return res.status(404).json({ success: false, error: '上传不存在' });
+                if (meta.complete) return res.json(describeAttachment(meta));
+                if (offset !== meta.received) {
+                    return res.status(409).json({ success: false, error: '偏移不一致', received: meta.received });
+                }
+                if (offset + req.body.length > meta.size) {
+                    return res.status(400).json({ success: false, error: '超出声明的大小' });
+                }
+
+                const paths = getUploadPaths(uploadId);
+                await fs.appendFile(paths.part, req.body);
+                meta.received += req.body.length;
+
+                if (meta.received === meta.size) {
+                    const content = await fs.readFile(paths.part);
+                    const digest = crypto.createHash('sha1').update(content).digest('hex');
+                    if (digest !== uploadId) {
+                        // 内容损坏：丢弃重传
+                        await fs.rm(paths.part, { force: true });
+                        await fs.rm(paths.meta, { force: true });
+                        return res.status(422).json({ success: false, error: '校验失败，请重新上传' });
+                    }
+                    await fs.rename(paths.part, path.join(getAttachmentDir(), attachmentFileName(uploadId, meta.type)));
+                    meta.complete = true;
+                    await fs.writeFile(paths.meta, JSON.stringify(meta), 'utf-8');
+                    console.log(`[VCPChatMobile] 附件上传完成 ${uploadId} (${meta.size} 字节)`);
+                    return res.json(describeAttachment(meta));
+                }
+
+                await fs.writeFile(paths.meta, JSON.stringify(meta), 'utf-8');
+                res.json({ success: true, complete: false, received: meta.received, size: meta.size });
+            } catch (error) {
+                console.error('[VCPChatMobile] Error writing upload chunk:', error);
+                res.status(500).json({ success: false, error: error.message });
+            } finally {
+                uploadsInFlight.delete(uploadId);
+            }
+        });
 };